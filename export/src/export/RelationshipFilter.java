@@ -21,7 +21,9 @@ package export;
 
 import genj.common.SelectEntityWidget;
 import genj.gedcom.Entity;
+import genj.gedcom.Fam;
 import genj.gedcom.Gedcom;
+import genj.gedcom.Indi;
 import genj.gedcom.Property;
 import genj.io.Filter;
 import genj.util.Resources;
@@ -30,6 +32,12 @@ import genj.util.swing.NestedBlockLayout;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
@@ -38,6 +46,8 @@ import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.border.BevelBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * A relationship-based filter
@@ -67,6 +77,7 @@ import javax.swing.border.BevelBorder;
   private SelectEntityWidget root;
   
   private Handler handler = new Handler();
+  private Radius radius;
 
   RelationshipFilter(Gedcom gedcom) {
     
@@ -88,6 +99,11 @@ import javax.swing.border.BevelBorder;
 
     // events
     root.addActionListener(handler);
+    ancestors.addChangeListener(handler);
+    descendants.addChangeListener(handler);
+    kinship.addChangeListener(handler);
+    removal.addChangeListener(handler);
+    inlaws.addChangeListener(handler);
     
     handler.actionPerformed(null);
     
@@ -104,10 +120,27 @@ import javax.swing.border.BevelBorder;
 
   @Override
   public boolean veto(Entity entity) {
-    return false;
+    
+    // only individuals and families are subject to relationship
+    if (!(entity instanceof Indi||entity instanceof Fam))
+      return false;
+    
+    // no root no filtering
+    Indi indi = (Indi)root.getSelection();
+    if (indi==null)
+      return false;
+    
+    // traverse once for all vetoes
+    if (radius==null)
+      radius = new Radius(indi, 
+          (Integer)ancestors.getValue(), (Integer)descendants.getValue(), 
+          (Integer)kinship.getValue(), (Integer)removal.getValue(), 
+          inlaws.isSelected());
+    
+    return !radius.contains(entity);
   }
 
-  private class Handler implements ActionListener {
+  private class Handler implements ActionListener, ChangeListener {
     public void actionPerformed(ActionEvent e) {
       boolean b = root.getSelection()!=null;
       ancestors.setEnabled(b);
@@ -115,6 +148,132 @@ import javax.swing.border.BevelBorder;
       kinship.setEnabled(b);
       removal.setEnabled(b);
       inlaws.setEnabled(b);
+      radius = null;
+    }
+    public void stateChanged(ChangeEvent e) {
+      radius = null;
+    }
+  }
+  
+  /**
+   * Individuals and families within a relationship radius of a root - ancestors are walked 
+   * up generation by generation and are the sources of a bounded breadth first walk down 
+   * (root for descendants, ancestors of generation g up to kinship for g+removal generations).
+   * What's reached is marked in a bitset by index - only what's visited is indexed.
+   */
+  /*package*/ static class Radius {
+    
+    private Map<Entity, Integer> index = new HashMap<Entity, Integer>();
+    private List<Entity> entities = new ArrayList<Entity>();
+    private BitSet included = new BitSet();
+    private int[] left = new int[0];
+    
+    /*package*/ Radius(Indi root, int ancestors, int descendants, int kinship, int removal, boolean inlaws) {
+      
+      // walks down by generations left 
+      List<List<Indi>> down = new ArrayList<List<Indi>>();
+      
+      included.set(index(root));
+      push(root, descendants, down);
+      
+      // walk up
+      List<Indi> generation = new ArrayList<Indi>();
+      generation.add(root);
+      for (int g=1; g<=ancestors && !generation.isEmpty(); g++) {
+        List<Indi> parents = new ArrayList<Indi>();
+        for (Indi indi : generation) {
+          for (Fam fam : indi.getFamiliesWhereChild()) {
+            for (Indi parent : fam.getSpouses()) {
+              int i = index(parent);
+              if (included.get(i)) continue;
+              included.set(i);
+              parents.add(parent);
+            }
+          }
+        }
+        if (g<=kinship) {
+          for (Indi parent : parents) 
+            push(parent, g+removal, down);
+        }
+        generation = parents;
+      }
+      
+      // walk down starting with most generations left so everyone's reached with the most left 
+      for (int l=down.size()-1; l>0; l--) {
+        for (Indi indi : down.get(l)) {
+          if (left[index(indi)]!=l) 
+            continue;
+          for (Fam fam : indi.getFamiliesWhereSpouse()) {
+            for (Indi child : fam.getChildren(false)) {
+              included.set(index(child));
+              push(child, l-1, down);
+            }
+          }
+        }
+      }
+      
+      // spouses and families connecting what's included
+      List<Fam> fams = new ArrayList<Fam>();
+      BitSet indis = (BitSet)included.clone();
+      for (int i=indis.nextSetBit(0); i>=0; i=indis.nextSetBit(i+1)) {
+        Indi indi = (Indi)entities.get(i);
+        fams.addAll(Arrays.asList(indi.getFamiliesWhereChild()));
+        for (Fam fam : indi.getFamiliesWhereSpouse()) {
+          fams.add(fam);
+          Indi spouse = fam.getOtherSpouse(indi);
+          if (inlaws && spouse!=null) 
+            included.set(index(spouse));
+        }
+      }
+      for (Fam fam : fams) {
+        int members = 0, in = 0;
+        for (Indi indi : fam.getSpouses()) {
+          members++;
+          if (contains(indi)) in++;
+        }
+        for (Indi indi : fam.getChildren(false)) {
+          members++;
+          if (contains(indi)) in++;
+        }
+        if (in>=Math.min(2, members))
+          included.set(index(fam));
+      }
+      
+      // done
+    }
+    
+    private int index(Entity entity) {
+      Integer i = index.get(entity);
+      if (i==null) {
+        i = entities.size();
+        index.put(entity, i);
+        entities.add(entity);
+      }
+      return i;
+    }
+    
+    private void push(Indi indi, int generations, List<List<Indi>> down) {
+      int i = index(indi);
+      if (i>=left.length) {
+        int from = left.length;
+        left = Arrays.copyOf(left, Math.max(i+1, left.length*2));
+        Arrays.fill(left, from, left.length, -1);
+      }
+      if (left[i]>=generations) 
+        return;
+      left[i] = generations;
+      while (down.size()<=generations)
+        down.add(new ArrayList<Indi>());
+      down.get(generations).add(indi);
+    }
+    
+    /*package*/ boolean contains(Entity entity) {
+      Integer i = index.get(entity);
+      return i!=null && included.get(i);
+    }
+    
+    /*package*/ int size() {
+      return included.cardinality();
     }
   }
 
@@ -1,16 +1,115 @@
 package export;
 
+import genj.gedcom.Entity;
+import genj.gedcom.Fam;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomException;
+import genj.gedcom.Indi;
+import genj.gedcom.Property;
+import genj.gedcom.UnitOfWork;
+import genj.io.Filter;
+import genj.io.GedcomWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
 import junit.framework.TestCase;
 
 
 public class TestExport extends TestCase {
   
+  private Gedcom gedcom;
+  
+  @Override
+  protected void setUp() throws Exception {
+    
+    // G1+G2 > P1,U  P1+P2 > R,B  U > C  R+S > K  K > KK
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        fam("F2", indi("G1"), indi("G2"), indi("P1"), indi("U"));
+        fam("F1", (Indi)gedcom.getEntity("P1"), indi("P2"), indi("R"), indi("B"));
+        fam("F5", (Indi)gedcom.getEntity("U"), null, indi("C"));
+        fam("F3", (Indi)gedcom.getEntity("R"), indi("S"), indi("K"));
+        fam("F4", (Indi)gedcom.getEntity("K"), null, indi("KK"));
+      }
+    });
+  }
+  
+  private Indi indi(String id) throws GedcomException {
+    return (Indi)gedcom.createEntity(Gedcom.INDI, id);
+  }
+  
+  private void fam(String id, Indi husband, Indi wife, Indi... children) throws GedcomException {
+    Fam fam = (Fam)gedcom.createEntity(Gedcom.FAM, id);
+    fam.setHusband(husband);
+    if (wife!=null)
+      fam.setWife(wife);
+    for (Indi child : children)
+      fam.addChild(child);
+  }
+  
+  private String radius(RelationshipFilter.Radius radius) {
+    Set<String> ids = new TreeSet<String>();
+    for (Entity e : gedcom.getEntities()) {
+      if (radius.contains(e))
+        ids.add(e.getId());
+    }
+    StringBuffer result = new StringBuffer();
+    for (String id : ids)
+      result.append(id).append(' ');
+    return result.toString().trim();
+  }
+  
   public void testDataFilter() {
     
   }
   
   public void testRelationshipFilter() {
     
+    Indi root = (Indi)gedcom.getEntity("R");
+    
+    // parents, siblings and children
+    assertEquals("B F1 F3 K P1 P2 R", radius(new RelationshipFilter.Radius(root, 1, 1, 1, 0, false)));
+    assertEquals("B F1 F3 K P1 P2 R S", radius(new RelationshipFilter.Radius(root, 1, 1, 1, 0, true)));
+    
+    // cousins and grandchildren
+    assertEquals("B C F1 F2 F3 F4 F5 G1 G2 K KK P1 P2 R U", radius(new RelationshipFilter.Radius(root, 2, 2, 2, 1, false)));
+    
+    // direct line only
+    assertEquals("F1 F2 G1 G2 P1 P2 R", radius(new RelationshipFilter.Radius(root, 2, 0, 0, 0, false)));
+  }
+  
+  public void testUnion() throws Exception {
+    
+    final RelationshipFilter.Radius radius = new RelationshipFilter.Radius((Indi)gedcom.getEntity("R"), 1, 1, 1, 0, false);
+    Filter filter = new Filter() {
+      public String getName() {
+        return "radius";
+      }
+      public boolean veto(Property property) {
+        return false;
+      }
+      public boolean veto(Entity entity) {
+        return !radius.contains(entity);
+      }
+    };
+    
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GedcomWriter writer = new GedcomWriter(gedcom, out);
+    writer.setFilters(Collections.singletonList(filter));
+    writer.write();
+    String ged = out.toString("UTF-8");
+    
+    // what's vetoed isn't written nor referenced
+    assertTrue(ged.contains("0 @R@ INDI"));
+    assertTrue(ged.contains("0 @F3@ FAM"));
+    assertFalse(ged.contains("@S@"));
+    assertFalse(ged.contains("@G1@"));
+    assertFalse(ged.contains("@F2@"));
+    assertFalse(ged.contains("@KK@"));
   }
 
 }
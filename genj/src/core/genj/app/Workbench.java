@@ -24,12 +24,14 @@ import genj.gedcom.Context;
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
 import genj.gedcom.GedcomException;
+import genj.gedcom.GedcomListenerAdapter;
 import genj.gedcom.Property;
 import genj.gedcom.PropertyXRef;
 import genj.gedcom.Submitter;
 import genj.gedcom.UnitOfWork;
 import genj.io.GedcomEncodingException;
 import genj.io.GedcomIOException;
+import genj.io.GedcomJournal;
 import genj.io.GedcomReader;
 import genj.io.GedcomReaderContext;
 import genj.io.GedcomReaderFactory;
@@ -119,6 +121,7 @@ public class Workbench extends JPanel implements SelectionSink {
   private List<Object> plugins = new ArrayList<Object>();
   private List<ViewFactory> viewFactories = ServiceLookup.lookup(ViewFactory.class);
   private Context context = new Context();
+  private GedcomJournal journal;
   private DockingPane dockingPane = new WorkbenchPane();
   private Menu menu = new Menu(this);
   private Toolbar toolbar = new Toolbar(this);
@@ -394,6 +397,9 @@ public class Workbench extends JPanel implements SelectionSink {
       context = new Context(gedcom, adam!=null ? Collections.singletonList(adam) : null, null);
     } 
     
+    // journal changes to a local file
+    startJournal(gedcom);
+    
     // tell everyone
     for (WorkbenchListener listener: listeners)
       listener.gedcomOpened(this, gedcom);
@@ -478,10 +484,70 @@ public class Workbench extends JPanel implements SelectionSink {
     
   }
   
+  /**
+   * start journaling changes to gedcom if it's in a local file
+   */
+  private void startJournal(Gedcom gedcom) {
+    
+    File file = gedcom.getOrigin().getFile();
+    if (file==null||!file.isFile())
+      return;
+    if (!Boolean.parseBoolean(EnvironmentChecker.getProperty("genj.gedcom.journal", "true", "checking for journaled saves")))
+      return;
+    
+    try {
+      journal = new GedcomJournal(gedcom);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Can't journal changes to "+gedcom.getName(), e);
+    }
+  }
+  
   /**
    * save gedcom file
    */
   private boolean saveGedcomImpl(Gedcom gedcom) {
+    
+    // .. all changes are in the journal already or we write the file (with an eye on changes made meanwhile)
+    SaveMonitor monitor = new SaveMonitor();
+    gedcom.addGedcomListener(monitor);
+    try {
+      if (!saveJournal(gedcom) && !writeGedcom(gedcom))
+        return false;
+    } finally {
+      gedcom.removeGedcomListener(monitor);
+    }
+    
+    // .. note changes are saved now (unless there were more while saving)
+    if (gedcom.hasChanged() && !monitor.isChanged)
+      gedcom.doMuteUnitOfWork(new UnitOfWork() {
+        public void perform(Gedcom gedcom) throws GedcomException {
+          gedcom.setUnchanged();
+        }
+      });
+
+    // .. done
+    return true;
+  }
+  
+  /**
+   * save journaled changes 
+   * @return false if the file has to be written
+   */
+  private boolean saveJournal(Gedcom gedcom) {
+    if (journal==null)
+      return false;
+    try {
+      return journal.save();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Can't save journal of "+gedcom.getName(), e);
+      return false;
+    }
+  }
+  
+  /**
+   * write gedcom file
+   */
+  private boolean writeGedcom(Gedcom gedcom) {
   
 //  // .. open progress dialog
 //  progress = WindowManager.openNonModalDialog(null, RES.getString("cc.save.saving", file.getName()), WindowManager.INFORMATION_MESSAGE, new ProgressWidget(gedWriter, getThread()), Action2.cancelOnly(), getTarget());
@@ -533,13 +599,16 @@ public class Workbench extends JPanel implements SelectionSink {
 //  // close progress
 //  WindowManager.close(progress);
     
-    // .. note changes are saved now
-    if (gedcom.hasChanged())
-      gedcom.doMuteUnitOfWork(new UnitOfWork() {
-        public void perform(Gedcom gedcom) throws GedcomException {
-          gedcom.setUnchanged();
-        }
-      });
+    // .. the journal starts over
+    if (journal!=null) {
+      try {
+        journal.reset();
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Can't reset journal of "+gedcom.getName(), e);
+      }
+    } else {
+      startJournal(gedcom);
+    }
 
     // .. done
     return true;
@@ -597,6 +666,12 @@ public class Workbench extends JPanel implements SelectionSink {
 
     }
     
+    // stop journaling - what's not saved is dropped, what's saved goes into the file
+    if (journal!=null) {
+      journal.close();
+      journal = null;
+    }
+    
     // tell 
     for (WorkbenchListener listener: listeners)
       listener.gedcomClosed(this, context.getGedcom());
@@ -1185,4 +1260,15 @@ public class Workbench extends JPanel implements SelectionSink {
     }
   }
 
+  /**
+   * Notices units of work (e.g. of reports) while a gedcom is saved
+   */
+  private static class SaveMonitor extends GedcomListenerAdapter {
+    private volatile boolean isChanged = false;
+    @Override
+    public void gedcomWriteLockAcquired(Gedcom gedcom) {
+      isChanged = true;
+    }
+  }
+  
 } // ControlCenter
@@ -21,10 +21,15 @@ package genj.common;
 
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
-import genj.gedcom.GedcomListener;
+import genj.gedcom.GedcomBatchListener;
+import genj.gedcom.GedcomChanges;
 import genj.gedcom.Property;
+import genj.gedcom.PropertyAge;
+import genj.gedcom.PropertyChange;
 import genj.gedcom.PropertyDate;
+import genj.gedcom.PropertyName;
 import genj.gedcom.PropertySex;
+import genj.gedcom.PropertyXRef;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -36,7 +41,7 @@ import spin.Spin;
 /**
  * A default base-type for property models
  */
-public abstract class AbstractPropertyTableModel implements PropertyTableModel, GedcomListener {
+public abstract class AbstractPropertyTableModel implements PropertyTableModel, GedcomBatchListener {
   
   protected final static int 
     LEFT = SwingConstants.LEFT,
@@ -60,8 +65,8 @@ public abstract class AbstractPropertyTableModel implements PropertyTableModel,
   public void addListener(PropertyTableModelListener listener) {
     listeners.add(listener);
     if (listeners.size()==1) {
-      // and start listening (make sure events are spin over to the EDT)
-      gedcom.addGedcomListener((GedcomListener)Spin.over((GedcomListener)this));
+      // and start listening (make sure changes are spin over to the EDT - once per write lock)
+      gedcom.addGedcomBatchListener((GedcomBatchListener)Spin.over((GedcomBatchListener)this));
     }
   }
   
@@ -72,7 +77,7 @@ public abstract class AbstractPropertyTableModel implements PropertyTableModel,
     listeners.remove(listener);
     // stop listening
     if (listeners.isEmpty())
-      gedcom.removeGedcomListener((GedcomListener)Spin.over(this));
+      gedcom.removeGedcomBatchListener((GedcomBatchListener)Spin.over(this));
   }
   
   /**
@@ -109,35 +114,7 @@ public abstract class AbstractPropertyTableModel implements PropertyTableModel,
   /**
    * Gedcom callback
    */
-  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
-    // ignored
-  }
-
-  /**
-   * Gedcom callback
-   */
-  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
-    // ignored
-  }
-
-  /**
-   * Gedcom callback
-   */
-  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
-    // ignored
-  }
-
-  /**
-   * Gedcom callback
-   */
-  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
-    // ignored
-  }
-
-  /**
-   * Gedcom callback
-   */
-  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
+  public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
     // ignored
   }
 
@@ -176,4 +153,28 @@ public abstract class AbstractPropertyTableModel implements PropertyTableModel,
   /*package*/ static int defaultCompare(Property valueA, Property valueB, int col) {
     return valueA.compareTo(valueB);
   }
+  
+  /**
+   * A key for sorting - keys have to be ordered like compare() orders properties
+   */
+  public Object getSortKey(Property property, int col) {
+    return defaultSortKey(property, col);
+  }
+  
+  /*package*/ static Object defaultSortKey(Property property, int col) {
+    // dates and changes by their time
+    if (property instanceof PropertyDate)
+      return ((PropertyDate)property).getSortKey();
+    if (property instanceof PropertyChange)
+      return ((PropertyChange)property).getTime();
+    // properties with an order of their own
+    if (property instanceof Entity||property instanceof PropertyName||property instanceof PropertyAge
+      ||property instanceof PropertyXRef)
+      return property;
+    // others by their collated display value
+    Gedcom gedcom = property.getGedcom();
+    if (gedcom==null)
+      return property.getDisplayValue();
+    return gedcom.getCollator().getCollationKey(property.getDisplayValue());
+  }
 }
@@ -50,7 +50,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.logging.Logger;
@@ -82,6 +84,9 @@ public class PropertyTableWidget extends JPanel  {
   
   private final static Logger LOG = Logger.getLogger("genj.common");
   
+  /** number of cells cached */
+  private final static int CELLS = 1<<14;
+  
   private JPanel panelShortcuts;
   private Table table;
   private boolean ignoreSelection  = false;
@@ -718,13 +723,19 @@ public class PropertyTableWidget extends JPanel  {
     /**
      * The logical model
      */
-    private class Model extends AbstractTableModel implements PropertyTableModelListener, SortableTableModel.RowComparator {
+    private class Model extends AbstractTableModel implements PropertyTableModelListener, SortableTableModel.RowComparator, SortableTableModel.KeyProvider {
       
       /** our model */
       private PropertyTableModel model;
       
-      /** cached table content */
-      private Property cells[][];
+      /** cached table content - the cells looked at last */
+      @SuppressWarnings("serial")
+      private Map<Long, Property> cells = new LinkedHashMap<Long, Property>(CELLS, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Property> eldest) {
+          return size()>CELLS;
+        }
+      };
       
       /** constructor */
       private Model(PropertyTableModel set) {
@@ -736,10 +747,7 @@ public class PropertyTableWidget extends JPanel  {
       public void handleRowsAdded(PropertyTableModel model, int rowStart, int rowEnd) {
         
         // flush cell state
-        int 
-          rows = model.getNumRows(), 
-          cols = model.getNumCols();
-        cells = new Property[rows][cols];
+        cells.clear();
         
         // tell about it
         fireTableRowsInserted(rowStart, rowEnd);
@@ -747,10 +755,7 @@ public class PropertyTableWidget extends JPanel  {
       
       public void handleRowsDeleted(PropertyTableModel model, int rowStart, int rowEnd) {
         // flush cell state
-        int 
-          rows = model.getNumRows(), 
-          cols = model.getNumCols();
-        cells = new Property[rows][cols];
+        cells.clear();
         
         // tell about it
         fireTableRowsDeleted(rowStart, rowEnd);
@@ -759,7 +764,7 @@ public class PropertyTableWidget extends JPanel  {
       public void handleRowsChanged(PropertyTableModel model, int rowStart, int rowEnd, int col) {
         // flush cell state
         for (int i=rowStart; i<=rowEnd; i++) 
-          cells[i][col] = null;
+          cells.remove(key(i, col));
         // tell about it
         fireTableChanged(new TableModelEvent(this, rowStart, rowEnd, col));
       }
@@ -787,6 +792,18 @@ public class PropertyTableWidget extends JPanel  {
         return AbstractPropertyTableModel.defaultCompare((Property)valueA,(Property)valueB, col);
       }
       
+      @Override
+      public Object getSortKey(int row, int col) {
+        // not going through cells for all rows
+        Property root = model.getRowRoot(row);
+        Property prop = root!=null ? root.getProperty(model.getColPath(col)) : null;
+        if (prop==null)
+          return null;
+        if (propertyModel instanceof AbstractPropertyTableModel)
+          return ((AbstractPropertyTableModel)propertyModel).getSortKey(prop, col);
+        return AbstractPropertyTableModel.defaultSortKey(prop, col);
+      }
+      
       /**
        *  patched column name
        */
@@ -807,18 +824,19 @@ public class PropertyTableWidget extends JPanel  {
       /** property */
       private Property getPropertyAt(int row, int col) {
         
-        // is cache setup?
-        if (cells==null) 
-          cells = new Property[model.getNumRows()][model.getNumCols()];
-        
-        Property prop = cells[row][col];
-        if (prop==null) {
+        Long key = key(row, col);
+        Property prop = cells.get(key);
+        if (prop==null&&!cells.containsKey(key)) {
           prop = model.getRowRoot(row).getProperty(model.getColPath(col));
-          cells[row][col] = prop;
+          cells.put(key, prop);
         }
         return prop;
       }
       
+      private Long key(int row, int col) {
+        return Long.valueOf(((long)row<<16)|col);
+      }
+      
       /** value */
       public Object getValueAt(int row, int col) {
         return getPropertyAt(row, col);
@@ -24,6 +24,8 @@ import java.io.OutputStream;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.stream.StreamResult;
 
+import org.xml.sax.ContentHandler;
+
 /** 
  * Format for CSV 
  */
@@ -57,4 +59,11 @@ public class CSVFormat extends Format {
     // done
   }
   
+  /**
+   * Streaming logic
+   */
+  protected ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return getContentHandler(getTemplates("./contrib/xslt/fo2csv.xsl"), out);
+  }
+  
 }
\ No newline at end of file
@@ -25,9 +25,13 @@ import genj.util.Resources;
 
 import java.awt.geom.Dimension2D;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,8 +43,13 @@ import java.util.regex.Pattern;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.dom.DOMSource;
 
+import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * An abstract layer above docbook handling and transformations.
@@ -58,6 +67,11 @@ import org.w3c.dom.Node;
  * <li><a href="http://xmlgraphics.apache.org/fop/resources.html">The Apache FOP Resources page</a>
  * <li><a ref="http://www.renderx.com/demos/src_examples.html">Samples at renderx.com</a>
  * </ul>
+ * 
+ * <p>A document created for a format and file is written while it's being added to - 
+ * what's done is passed on to the format as SAX events and dropped so memory is bounded by 
+ * the nesting depth rather than the document size. The table of content is appended at
+ * the end in that case.
  */
 public class Document {
   /** Symbolic constant for font size for sections.
@@ -101,10 +115,18 @@ public class Document {
   };
   private int minSectionFontSize;
   private int maxSectionFontSize;
-  private Map index2primary2secondary2elements = new TreeMap();
+  private Map index2primary2secondary2ids = new TreeMap();
   private int idSequence = 0;
   private boolean containsCSV = false;
   
+  /** streaming - number of children in an element that triggers writing of what's done */
+  private final static int FLUSH = 64;
+  private Format format;
+  private File file;
+  private OutputStream stream;
+  private ContentHandler out;
+  private Set<Node> started = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+  
   /**
    * Constructor
    */
@@ -212,6 +234,37 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
 
     // done - cursor points to first block
   }
+  
+  /**
+   * Constructor for a document that is written to file in given format while it's being added to
+   */
+  public Document(String title, Format format, File file) throws IOException {
+    
+    this(title);
+    
+    if (format.getFileExtension()==null)
+      throw new IllegalArgumentException(format+" doesn't write files");
+    
+    this.format = format;
+    this.file = file;
+    
+    // nothing has been written yet (boilerplate is still pending) so we can switch to streaming
+    stream = new FileOutputStream(file);
+    try {
+      out = format.getContentHandler(stream);
+    } catch (Throwable t) {
+      try { stream.close(); } catch (Throwable u) {}
+      throw new IOException("can't write "+format+" to "+file+": "+t.getMessage());
+    }
+    
+    // format can't stream? then we keep everything until formatted
+    if (out==null) {
+      stream.close();
+      stream = null;
+    }
+    
+    // done
+  }
 
   /**
    * Sets the range of logical font sizes to be used for section headings.
@@ -246,7 +299,7 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
   /**
    * Closes the document finalizing output
    */
-  protected void close() {
+  protected void close() throws IOException {
     
     // closed already?
     if (cursor==null)
@@ -261,6 +314,38 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     
     // done
     cursor = null;
+    
+    // write what's left
+    if (out!=null) {
+      try {
+        write(doc.getDocumentElement());
+      } catch (SAXException e) {
+        throw new IOException("writing "+file+" failed: "+e.getMessage());
+      } finally {
+        stream.close();
+      }
+    }
+  }
+  
+  /**
+   * The file this document is written to (null if it's not known yet)
+   */
+  public File getFile() {
+    return file;
+  }
+  
+  /**
+   * The format this document is written in (null if it's not known yet) 
+   */
+  public Format getFormat() {
+    return format;
+  }
+  
+  /**
+   * Whether the document is written while it's being added to
+   */
+  /*package*/ boolean isStreaming() {
+    return out!=null;
   }
   
   /**
@@ -274,6 +359,8 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
    * Access to DOM source
    */
   /*package*/ DOMSource getDOMSource() {
+    if (out!=null)
+      throw new IllegalStateException("document has been written already");
     return new DOMSource(doc);
   }
   
@@ -414,35 +501,39 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     secondary = trimIndexTerm(secondary);
     
     // remember
-    Map primary2secondary2elements = (Map)index2primary2secondary2elements.get(index);
-    if (primary2secondary2elements==null) {
-      primary2secondary2elements = new TreeMap();
-      index2primary2secondary2elements.put(index, primary2secondary2elements);
+    Map primary2secondary2ids = (Map)index2primary2secondary2ids.get(index);
+    if (primary2secondary2ids==null) {
+      primary2secondary2ids = new TreeMap();
+      index2primary2secondary2ids.put(index, primary2secondary2ids);
     }
-    Map secondary2elements = (Map)primary2secondary2elements.get(primary);
-    if (secondary2elements==null) {
-      secondary2elements = new TreeMap();
-      primary2secondary2elements.put(primary, secondary2elements);
+    Map secondary2ids = (Map)primary2secondary2ids.get(primary);
+    if (secondary2ids==null) {
+      secondary2ids = new TreeMap();
+      primary2secondary2ids.put(primary, secondary2ids);
     }
-    List elements = (List)secondary2elements.get(secondary);
-    if (elements==null) {
-      elements = new ArrayList();
-      secondary2elements.put(secondary, elements);
+    List ids = (List)secondary2ids.get(secondary);
+    if (ids==null) {
+      ids = new ArrayList();
+      secondary2ids.put(secondary, ids);
     }
     
     // add anchor - normally that would be a fo:inline 
     //   push("inline", "id=_"+(++idSequence));
     // but FOP doesn't support IDs on those elements
-    // so instead we attach an id to the surrounding block
+    // so instead we attach an id to the surrounding block (or an
+    // empty one if the surrounding block has been written already)
     String id = cursor.getAttribute("id");
     if (id.length()==0) {
       id = ""+(++idSequence);
-      cursor.setAttribute("id", id);
+      if (started.contains(cursor))
+        push("block", "id="+id).pop();
+      else
+        cursor.setAttribute("id", id);
     }
     
-    // remember the element for primary+secondary if the element isn't in there already
-    if (!elements.contains(cursor))
-        elements.add(cursor);
+    // remember the id for primary+secondary if it isn't in there already
+    if (!ids.contains(id))
+        ids.add(id);
     
     return this;
   }
@@ -504,12 +595,18 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     push("external-graphic", "src="+file.getAbsolutePath()+","+atts);
     
     // remember file in case a formatter wants to resolve file location later
-    List elements = (List)file2elements.get(file);
-    if (elements==null) {
-      elements = new ArrayList(3);
-      file2elements.put(file, elements);
+    if (out!=null) {
+      String src = format.externalizeFile(file, this.file);
+      if (src!=null)
+        cursor.setAttribute("src", src);
+    } else {
+      List elements = (List)file2elements.get(file);
+      if (elements==null) {
+        elements = new ArrayList(3);
+        file2elements.put(file, elements);
+      }
+      elements.add(cursor);
     }
-    elements.add(cursor);
     
     // back to enclosing block
     pop();
@@ -606,7 +703,7 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     Element list = peek("list-block", "nextListItem() is not applicable outside list block");
     
     // a list with only one item containing an empty block?
-    if (list.getChildNodes().getLength()==1&&cursor.getFirstChild()==null&&cursor.getPreviousSibling()==null&&cursor.getParentNode().getLocalName().equals("list-item-body")) {
+    if (list.getChildNodes().getLength()==1&&!started.contains(list)&&cursor.getFirstChild()==null&&cursor.getPreviousSibling()==null&&cursor.getParentNode().getLocalName().equals("list-item-body")) {
       // delete list-item and start over
       list.removeChild(list.getFirstChild());
     } 
@@ -619,7 +716,7 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     if (label!=null) {
       // check provisional-distance-between-starts - we assume a certain 'em' per label character
       String dist = list.getAttribute("provisional-distance-between-starts");
-      if (dist.endsWith("em")) {
+      if (dist.endsWith("em")&&!started.contains(list)) {
         float len = label.length()*0.6F;
         if (Float.parseFloat(dist.substring(0, dist.length()-2))<len)
           list.setAttribute("provisional-distance-between-starts", len+"em");
@@ -718,6 +815,10 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     
     // find the enclosing table
     pop("table", "addTableColumn() is not applicable outside enclosing table");
+    if (started.contains(cursor)) {
+      cursor = save;
+      throw new IllegalArgumentException("addTableColumn() is not applicable after table rows have been written");
+    }
     
     // find last table definition
     Node before = cursor.getFirstChild();
@@ -852,7 +953,7 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     // so i have to use block here - since the EditorPane uses extra space even for
     // empty blocks i'm trying to reuse the current block here IF it doesn't have an ID
     // already
-    if (cursor.getAttribute("id").length()==0)
+    if (cursor.getAttribute("id").length()==0&&!started.contains(cursor))
       cursor.setAttribute("id", id);
     else
       push("block", "id="+id).pop();
@@ -913,10 +1014,10 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
   private Document indexes() {
     
     // loop over indexes
-    for (Iterator indexes = index2primary2secondary2elements.keySet().iterator(); indexes.hasNext(); ) {
+    for (Iterator indexes = index2primary2secondary2ids.keySet().iterator(); indexes.hasNext(); ) {
       
       String index = (String)indexes.next();
-      Map primary2secondary2elements = (Map)index2primary2secondary2elements.get(index);
+      Map primary2secondary2ids = (Map)index2primary2secondary2ids.get(index);
       
       // add section
       nextPage();
@@ -924,31 +1025,30 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
       push("block", "start-indent=1cm");
       
       // loop over primaries
-      for (Iterator primaries = primary2secondary2elements.keySet().iterator(); primaries.hasNext(); ) {
+      for (Iterator primaries = primary2secondary2ids.keySet().iterator(); primaries.hasNext(); ) {
         
         String primary = (String)primaries.next();
-        Map secondary2elements = (Map)primary2secondary2elements.get(primary);
+        Map secondary2ids = (Map)primary2secondary2ids.get(primary);
         
         // add block and primary
         push("block", "");
         text(primary+" ", "");
 
         // loop over secondaries
-        for (Iterator secondaries = secondary2elements.keySet().iterator(); secondaries.hasNext(); ) {
+        for (Iterator secondaries = secondary2ids.keySet().iterator(); secondaries.hasNext(); ) {
           
           String secondary = (String)secondaries.next();
-          List elements = (List)secondary2elements.get(secondary);
+          List ids = (List)secondary2ids.get(secondary);
           
           if (secondary.length()>0) {
             push("block", "start-indent=2cm"); //start-indent?
             text(secondary+" ", "");
           }
           
-          // loop over elements
-          for (int e=0;e<elements.size();e++) {
+          // loop over ids
+          for (int e=0;e<ids.size();e++) {
             if (e>0) text(", ", "");
-            Element element = (Element)elements.get(e);
-            String id = element.getAttribute("id");
+            String id = (String)ids.get(e);
             
             push("basic-link", "internal-destination="+id);
             push("page-number-citation", "ref-id="+id);
@@ -988,8 +1088,8 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
     // pop back to flow
     pop("flow", "can't create TOC without enclosing flow");
     
-    // add block for toc AS FIRST child
-    push("block", "", cursor.getFirstChild());
+    // add block for toc AS FIRST child (last if we're streaming)
+    push("block", "", out!=null ? null : cursor.getFirstChild());
     
     //<block>
     //  Table of Contents
@@ -1040,6 +1140,8 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
   private Document push(String name, String attributes, Node before) {
     // create it, set attributes and hook it up
     Element elem = doc.createElementNS(NS_XSLFO, name);
+    if (before==null)
+      flush();
     if (before!=null)
       cursor.insertBefore(elem, before);
     else
@@ -1097,10 +1199,106 @@ select="$header-width * 0.3333"/><xsl:text>pc</xsl:text>
       cursor.appendChild(txt);
       pop();
     } else {
+      flush();
       cursor.appendChild(txt);
     }
     return this;
   }
+  
+  /**
+   * write what's done in current element if we're streaming and there's enough of it
+   */
+  private void flush() {
+    if (out==null||cursor.getChildNodes().getLength()<FLUSH)
+      return;
+    try {
+      flush(cursor);
+    } catch (SAXException e) {
+      throw new RuntimeException("writing "+file+" failed", e);
+    }
+  }
+  
+  /**
+   * write start of element (and everything before it) and its children that are done 
+   */
+  private void flush(Element elem) throws SAXException {
+    
+    // start it first
+    if (!started.contains(elem)) {
+      if (elem.getParentNode() instanceof Element)
+        flush((Element)elem.getParentNode());
+      start(elem);
+    }
+    
+    // write and forget children up to the one we're still adding to
+    for (Node child = elem.getFirstChild(); child!=null && !isOpen(child); child = elem.getFirstChild()) {
+      write(child);
+      elem.removeChild(child);
+    }
+  }
+  
+  /**
+   * whether a node is still being added to
+   */
+  private boolean isOpen(Node node) {
+    for (Node open = cursor; open!=null; open = open.getParentNode())
+      if (open==node) return true;
+    return false;
+  }
+  
+  /**
+   * write a node that's done (or what's left of it if it has been started already)
+   */
+  private void write(Node node) throws SAXException {
+    
+    if (!(node instanceof Element)) {
+      char[] chars = node.getNodeValue().toCharArray();
+      out.characters(chars, 0, chars.length);
+      return;
+    }
+    
+    Element elem = (Element)node;
+    if (!started.contains(elem))
+      start(elem);
+    for (Node child = elem.getFirstChild(); child!=null; child = child.getNextSibling())
+      write(child);
+    out.endElement(NS_XSLFO, elem.getLocalName(), elem.getLocalName());
+    started.remove(elem);
+    
+    if (elem==doc.getDocumentElement()) {
+      out.endPrefixMapping("genj");
+      out.endPrefixMapping("");
+      out.endDocument();
+    }
+  }
+  
+  /**
+   * write start of an element
+   */
+  private void start(Element elem) throws SAXException {
+    
+    if (elem==doc.getDocumentElement()) {
+      out.startDocument();
+      out.startPrefixMapping("", NS_XSLFO);
+      out.startPrefixMapping("genj", NS_GENJ);
+    }
+    
+    AttributesImpl atts = new AttributesImpl();
+    NamedNodeMap attributes = elem.getAttributes();
+    for (int i=0;i<attributes.getLength();i++) {
+      Attr attr = (Attr)attributes.item(i);
+      String name = attr.getName();
+      if (name.startsWith("xmlns"))
+        continue;
+      if (attr.getNamespaceURI()!=null)
+        atts.addAttribute(attr.getNamespaceURI(), attr.getLocalName(), name, "CDATA", attr.getValue());
+      else
+        atts.addAttribute("", name, name, "CDATA", attr.getValue());
+    }
+    out.startElement(NS_XSLFO, elem.getLocalName(), elem.getLocalName(), atts);
+    
+    started.add(elem);
+  }
 
   /**
    * pop element from stack
@@ -37,8 +37,13 @@ import java.util.logging.Logger;
 import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.xml.sax.ContentHandler;
+
 /**
  * A document format
  */
@@ -119,22 +124,9 @@ public abstract class Format {
       // copy all images so their local to the generated document
       if (dir.exists()) {
         for (int i = 0; i < files.length; i++) {
-          File file = files[i];
-          File copy = new File(dir, file.getName());
-          FileChannel from = null, to = null;
-          long count = -1;
-          try {
-            from = new FileInputStream(file).getChannel();
-            count = from.size();
-            to = new FileOutputStream(copy).getChannel();
-            from.transferTo(0, count, to);
-            doc.setImage(file, dir.getName() + "/" + copy.getName());
-          } catch (Throwable t) {
-            LOG.log(Level.WARNING, "Copying '"+file+"' to '"+copy+"' failed (size="+count+")", t);
-          } finally {
-            try { to.close(); } catch (Throwable t) {}
-            try { from.close(); } catch (Throwable t) {}
-          }
+          String src = copy(files[i], dir);
+          if (src!=null)
+            doc.setImage(files[i], src);
         }
       }
 
@@ -144,6 +136,44 @@ public abstract class Format {
     // done
   }
   
+  /**
+   * Externalize one file of a document that is written while it's being added to 
+   * @return the file's location relative to out or null if not applicable
+   */
+  /*package*/ String externalizeFile(File file, File out) {
+    if (!isExternalizedFiles)
+      return null;
+    File dir = new File(out.getParentFile(), out.getName()+".images");
+    if (!dir.isDirectory()&&!dir.mkdirs()) {
+      LOG.warning("cannot create directory "+dir);
+      return null;
+    }
+    return copy(file, dir);
+  }
+  
+  /**
+   * Copy a file into directory
+   * @return the copy's location relative to the directory's parent or null if failed
+   */
+  private String copy(File file, File dir) {
+    File copy = new File(dir, file.getName());
+    FileChannel from = null, to = null;
+    long count = -1;
+    try {
+      from = new FileInputStream(file).getChannel();
+      count = from.size();
+      to = new FileOutputStream(copy).getChannel();
+      from.transferTo(0, count, to);
+      return dir.getName() + "/" + copy.getName();
+    } catch (Throwable t) {
+      LOG.log(Level.WARNING, "Copying '"+file+"' to '"+copy+"' failed (size="+count+")", t);
+      return null;
+    } finally {
+      try { to.close(); } catch (Throwable t) {}
+      try { from.close(); } catch (Throwable t) {}
+    }
+  }
+  
   /**
    * By default all formats support all documents
    */
@@ -156,6 +186,12 @@ public abstract class Format {
    */
   public void format(Document doc, File file) throws IOException {
     
+    // written while it was added to already?
+    if (doc.isStreaming()) {
+      doc.close();
+      return;
+    }
+    
     FileOutputStream out = null;
     
     // no need for stream?
@@ -182,6 +218,10 @@ public abstract class Format {
    */
   public void format(Document doc, OutputStream out) throws IOException {
     
+    // written while it was added to already?
+    if (doc.isStreaming())
+      throw new IllegalArgumentException("document is written to "+doc.getFile()+" already");
+    
     // close doc
     doc.close();
     
@@ -205,6 +245,24 @@ public abstract class Format {
    */
   protected abstract void formatImpl(Document doc, OutputStream out) throws Throwable;
   
+  /**
+   * A handler for SAX events of a document that is written while it's being added to
+   * @return handler or null if not supported
+   */
+  protected ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return null;
+  }
+  
+  /**
+   * A handler transforming SAX events into out with given templates (identity if null)
+   */
+  protected ContentHandler getContentHandler(Templates templates, OutputStream out) throws Throwable {
+    SAXTransformerFactory factory = (SAXTransformerFactory)TransformerFactory.newInstance();
+    TransformerHandler handler = templates!=null ? factory.newTransformerHandler(templates) : factory.newTransformerHandler();
+    handler.setResult(new StreamResult(out));
+    return handler;
+  }
+  
   /**
    * Get transformation templates for given file
    */
@@ -154,8 +154,8 @@ public class FormatOptionsWidget extends JPanel {
     // check file support
     chooseFile.setEnabled(format.getFileExtension()!=null);
     
-    // check document support
-    if (!format.supports(doc))
+    // check document support (unless it's yet to be written)
+    if (doc!=null&&!format.supports(doc))
       valid = false;
     
     // update filename
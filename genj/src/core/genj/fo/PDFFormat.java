@@ -54,4 +54,11 @@ public class PDFFormat extends Format {
     // done
   }
   
+  /**
+   * Streaming logic
+   */
+  protected org.xml.sax.ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return new org.apache.fop.fo.FOTreeBuilder("application/pdf", new org.apache.fop.apps.FOUserAgent(), out);
+  }
+  
 }
@@ -54,4 +54,11 @@ public class PSFormat extends Format {
     // done
   }
   
+  /**
+   * Streaming logic
+   */
+  protected org.xml.sax.ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return new org.apache.fop.fo.FOTreeBuilder("application/postscript", new org.apache.fop.apps.FOUserAgent(), out);
+  }
+  
 }
@@ -24,6 +24,8 @@ import java.io.OutputStream;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.stream.StreamResult;
 
+import org.xml.sax.ContentHandler;
+
 /**
  * Format  for text - using FOP
  */
@@ -55,4 +57,11 @@ public class TXTFormat extends Format {
     // done
   }
   
+  /**
+   * Streaming logic
+   */
+  protected ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return getContentHandler(getTemplates("./contrib/xslt/fo2txt.xsl"), out);
+  }
+  
 }
@@ -26,6 +26,8 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 
+import org.xml.sax.ContentHandler;
+
 /** 
  * Format for XLSFO - a simple identity transformation 
  */
@@ -52,4 +54,11 @@ public class XSLFOFormat extends Format {
     // done
   }
   
+  /**
+   * Streaming logic
+   */
+  protected ContentHandler getContentHandler(OutputStream out) throws Throwable {
+    return getContentHandler(null, out);
+  }
+  
 }
\ No newline at end of file
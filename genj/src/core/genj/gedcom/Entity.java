@@ -28,6 +28,9 @@ public class Entity extends Property {
   /** the containing gedcom */
   private Gedcom gedcom;
   
+  /** the grammar to follow while not contained in a gedcom (detached) */
+  private Grammar grammar;
+  
   /** the id */
   private String id;
   
@@ -48,6 +51,7 @@ public class Entity extends Property {
   /*package*/ void addNotify(Gedcom ged) {
     // remember
     gedcom = ged;
+    grammar = null;
     // propagate change (see Property.addNotify() for motivation why propagate is here)
     ged.propagateEntityAdded(this);
     // done    
@@ -70,6 +74,13 @@ public class Entity extends Property {
     // done    
   }
   
+  /**
+   * Lifecycle - detached entities follow a grammar until added to Gedcom
+   */
+  /*package*/ void setDetached(Grammar grammar) {
+    this.grammar = grammar;
+  }
+  
   /**
    * Return the last change of this entity (might be null)
    */
@@ -85,6 +96,13 @@ public class Entity extends Property {
     return gedcom;
   }
   
+  /**
+   * Grammar of containing gedcom or the one we follow while detached
+   */
+  /*package*/ Grammar getGrammar() {
+    return gedcom!=null ? gedcom.getGrammar() : grammar;
+  }
+  
   /**
    * @see genj.gedcom.Property#getEntity()
    */
@@ -34,12 +34,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -154,9 +158,13 @@ public class Gedcom {
   /** maximum ID length in file */
   private int maxIDLength = 0;
   
-  /** entities */
-  private LinkedList<Entity> allEntities = new LinkedList<Entity>();
+  /** entities in order of addition (with a list snapshot created lazily) */
+  private Set<Entity> allEntities = new LinkedHashSet<Entity>();
+  private List<Entity> allEntitiesList = null;
+  
+  /** entities by tag and id and by id only */
   private Map<String, Map<String,Entity>> tag2id2entity = new HashMap<String, Map<String,Entity>>();
+  private Map<String, Entity> id2entity = new HashMap<String, Entity>();
   
   /** currently collected undos and redos */
   private boolean isDirty = false;
@@ -170,8 +178,21 @@ public class Gedcom {
   /** current lock */
   private Lock lock = null;
   
+  /** changes of released locks not yet delivered to batch listeners */
+  private List<GedcomChanges> undelivered = new LinkedList<GedcomChanges>();
+  private boolean isDelivering = false;
+  
+  /** readers share, units of work are exclusive */
+  private ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final static long WRITE_WAIT = 5000;
+  
+  /** kinship of individuals (created on first use) */
+  private KinshipIndex kinship = null;
+  private RelationshipFinder relationships = null;
+  
   /** listeners */
   private List<GedcomListener> listeners = new CopyOnWriteArrayList<GedcomListener>();
+  private List<GedcomBatchListener> batchListeners = new CopyOnWriteArrayList<GedcomBatchListener>();
   
   /** mapping tags refence sets */
   private Map<String, ReferenceSet<String,Property>> tags2refsets = new HashMap<String, ReferenceSet<String, Property>>();
@@ -310,6 +331,23 @@ public class Gedcom {
     LOG.log(Level.FINER, "removeGedcomListener() from "+new Throwable().getStackTrace()[1]+" (now "+listeners.size()+")");
   }
   
+  /**
+   * Adds a Listener which will be notified of all changes once a write lock is released
+   */
+  public void addGedcomBatchListener(GedcomBatchListener listener) {
+    if (listener==null)
+      throw new IllegalArgumentException("listener can't be null");
+    if (!batchListeners.add(SafeProxy.harden(listener)))
+      throw new IllegalArgumentException("can't add gedcom listener "+listener+"twice");
+  }
+
+  /**
+   * Removes a Listener from receiving notifications
+   */
+  public void removeGedcomBatchListener(GedcomBatchListener listener) {
+    batchListeners.remove(SafeProxy.harden(listener));
+  }
+  
   /**
    * Final destination for a change propagation
    */
@@ -330,6 +368,8 @@ public class Gedcom {
     });
     
     // let listeners know
+    lock.touched(property1.getEntity(), property1);
+    lock.touched(property2.getEntity(), property2);
     for (GedcomListener listener : listeners) {
       listener.gedcomPropertyChanged(this, property1);
       listener.gedcomPropertyChanged(this, property2);
@@ -358,6 +398,8 @@ public class Gedcom {
       });
     
     // let listeners know
+    lock.touched(property1.getEntity(), property1);
+    lock.touched(property2.getEntity(), property2);
     for (GedcomListener listener : listeners) {
       listener.gedcomPropertyChanged(this, property1);
       listener.gedcomPropertyChanged(this, property2);
@@ -386,6 +428,8 @@ public class Gedcom {
     });
     
     // let listeners know
+    if (lock.changes!=null)
+      lock.changes.entityAdded(entity);
     for (GedcomListener listener : listeners) 
       listener.gedcomEntityAdded(this, entity);
 
@@ -412,6 +456,8 @@ public class Gedcom {
       });
     
     // let listeners know
+    if (lock.changes!=null)
+      lock.changes.entityDeleted(entity);
     for (GedcomListener listener : listeners) 
       listener.gedcomEntityDeleted(this, entity);
 
@@ -444,6 +490,7 @@ public class Gedcom {
       });
     
     // let listeners know
+    lock.touched(entity, added);
     for (GedcomListener listener : listeners) 
       listener.gedcomPropertyAdded(this, container, pos, added);
 
@@ -475,6 +522,7 @@ public class Gedcom {
       });
     
     // let listeners know
+    lock.touched(entity, deleted);
     for (GedcomListener listener : listeners) 
       listener.gedcomPropertyDeleted(this, container, pos, deleted);
     
@@ -501,6 +549,7 @@ public class Gedcom {
       });
     
     // notify
+    lock.touched(entity, property);
     for (GedcomListener listener : listeners) 
       listener.gedcomPropertyChanged(this, property);
 
@@ -527,6 +576,7 @@ public class Gedcom {
       });
     
     // notify
+    lock.touched(property.getEntity(), moved);
     for (GedcomListener listener : listeners) {
       listener.gedcomPropertyDeleted(this, property, from, moved);
       listener.gedcomPropertyAdded(this, property, to, moved);
@@ -574,8 +624,52 @@ public class Gedcom {
       if (listener instanceof GedcomMetaListener) 
         ((GedcomMetaListener)listener).gedcomWriteLockReleased(this);
     }
+    
+    // all changes at once - after the write lock is gone
+    GedcomChanges changes = lock.changes;
+    if (changes!=null && !changes.isEmpty())
+      undelivered.add(changes);
   }  
   
+  /**
+   * Whether there are changes of released write locks that batch listeners haven't all got yet
+   */
+  public boolean hasUndeliveredChanges() {
+    synchronized (writeSemaphore) {
+      return isDelivering || !undelivered.isEmpty();
+    }
+  }
+  
+  /**
+   * Final destination for a change propagation - batch listeners get changes of released
+   * write locks in order without any lock held (by whoever isn't delivering already)
+   */
+  private void propagateChanges() {
+    
+    synchronized (writeSemaphore) {
+      if (isDelivering||undelivered.isEmpty())
+        return;
+      isDelivering = true;
+    }
+    
+    try {
+      while (true) {
+        GedcomChanges changes;
+        synchronized (writeSemaphore) {
+          if (undelivered.isEmpty()) 
+            return;
+          changes = undelivered.remove(0);
+        }
+        for (GedcomBatchListener listener : batchListeners)
+          listener.gedcomChanged(this, changes);
+      }
+    } finally {
+      synchronized (writeSemaphore) {
+        isDelivering = false;
+      }
+    }
+  }
+  
   /**
    * Final destination for a change propagation
    */
@@ -584,7 +678,7 @@ public class Gedcom {
     Map<String, Entity> id2entity = getEntityMap(entity.getTag());
     
     // known?
-    if (!id2entity.containsValue(entity))
+    if (id2entity.get(old)!=entity)
       throw new GedcomException("Can't change ID of entity not part of this Gedcom instance");
     
     // valid prefix/id?
@@ -592,13 +686,15 @@ public class Gedcom {
     if (id==null||id.length()==0)
       throw new GedcomException("Need valid ID length");
     
-    // dup?
-    if (getEntity(id)!=null)
+    // dup? (like on add only within the same type)
+    if (id2entity.containsKey(id))
       throw new GedcomException("Duplicate ID is not allowed");
 
     // do the housekeeping
     id2entity.remove(old);
     id2entity.put(entity.getId(), entity);
+    forgetID(old, entity);
+    rememberID(id, entity);
     
     // remember maximum ID length
     maxIDLength = Math.max(id.length(), maxIDLength);
@@ -619,6 +715,9 @@ public class Gedcom {
       });
     
     // notify
+    if (lock.changes!=null)
+      lock.changes.idChanged(entity, old);
+    lock.touched(entity, entity);
     for (GedcomListener listener : listeners) 
       listener.gedcomPropertyChanged(this, entity);
 
@@ -641,10 +740,12 @@ public class Gedcom {
       
       // remember id2entity
       id2entity.put(id, entity);
+      rememberID(id, entity);
     }
     
     // remember entity
     allEntities.add(entity);
+    allEntitiesList = null;
     
     // notify
     entity.addNotify(this);
@@ -687,6 +788,65 @@ public class Gedcom {
     // remember maximum ID length
     maxIDLength = Math.max(id.length(), maxIDLength);
 
+    // Create entity
+    Entity result = instantiateEntity(tag, id);
+
+    // keep it
+    addEntity(result);
+
+    // Done
+    return result;
+  }  
+  
+  /**
+   * Create an entity by tag that is not part of a Gedcom yet. Properties can be added
+   * to it following given grammar without touching any Gedcom's state - that makes it 
+   * possible to build up entities concurrently and add them later in a well defined order.
+   * @see #addDetachedEntity(Entity)
+   * @exception GedcomException in case of missing id for well known type
+   */
+  public static Entity createDetachedEntity(Grammar grammar, String tag, String id) throws GedcomException {
+    Entity result = instantiateEntity(tag, id);
+    result.setDetached(grammar);
+    return result;
+  }
+  
+  /**
+   * Add an entity created detached including all the properties it contains already
+   * @see #createDetachedEntity(Grammar, String, String)
+   * @exception GedcomException in case of duplicate id
+   */
+  public void addDetachedEntity(Entity entity) throws GedcomException {
+    
+    if (entity.getGedcom()!=null)
+      throw new IllegalArgumentException("Entity is already part of a gedcom");
+    
+    // remember maximum ID length
+    maxIDLength = Math.max(entity.getId().length(), maxIDLength);
+    
+    // keep it
+    addEntity(entity);
+    
+    // let properties know about us now
+    attachProperties(entity, entity);
+    
+    // done
+  }
+  
+  private void attachProperties(Entity entity, Property parent) {
+    for (int i=0, j=parent.getNoOfProperties(); i<j; i++) {
+      Property child = parent.getProperty(i);
+      propagatePropertyAdded(entity, parent, i, child);
+      child.afterAttachNotify();
+      attachProperties(entity, child);
+    }
+  }
+
+  /**
+   * Instantiate an entity by tag - all well known types need id
+   */
+  private static Entity instantiateEntity(String tag, String id) throws GedcomException {
+    
     // lookup a type - all well known types need id
     Class<? extends Entity> clazz = (Class<? extends Entity>)E2TYPE.get(tag);
     if (clazz!=null) {
@@ -697,19 +857,12 @@ public class Gedcom {
     }
     
     // Create entity
-    Entity result; 
     try {
-      result = (Entity)clazz.getDeclaredConstructor(String.class, String.class).newInstance(tag, id);
+      return (Entity)clazz.getDeclaredConstructor(String.class, String.class).newInstance(tag, id);
     } catch (Throwable t) {
       throw new RuntimeException("Can't instantiate "+clazz, t);
     }
-
-    // keep it
-    addEntity(result);
-
-    // Done
-    return result;
-  }  
+  }
 
   /**
    * Deletes entity
@@ -731,6 +884,7 @@ public class Gedcom {
 
       // forget id
       id2entity.remove(id);
+      forgetID(id, which);
     }
     
     // Tell it first
@@ -738,6 +892,7 @@ public class Gedcom {
 
     // Forget it now
     allEntities.remove(which);
+    allEntitiesList = null;
 
     // was it the submitter?    
     if (submitter==which) submitter = null;
@@ -745,6 +900,60 @@ public class Gedcom {
     // Done
   }
 
+  /**
+   * Deletes entities - listeners are notified as part of one unit of work 
+   * unless there's one already in progress
+   * @exception IllegalArgumentException in case of an entity that's not part of this gedcom
+   */
+  public void deleteEntities(final Collection<? extends Entity> which) {
+    
+    // check all first
+    for (Entity entity : which) {
+      if (!allEntities.contains(entity))
+        throw new IllegalArgumentException("Unknown entity "+entity);
+    }
+    
+    // in a unit of work already?
+    if (lock!=null) {
+      for (Entity entity : which)
+        deleteEntity(entity);
+      return;
+    }
+    
+    // do it as one
+    doMuteUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) {
+        for (Entity entity : which)
+          deleteEntity(entity);
+      }
+    });
+    
+  }
+  
+  /**
+   * Remember an entity's id in global lookup - the first one added keeps an id shared by different types
+   */
+  private void rememberID(String id, Entity entity) {
+    if (!id2entity.containsKey(id))
+      id2entity.put(id, entity);
+  }
+  
+  /**
+   * Forget an entity's id in global lookup - another one of a different type with the same id takes over
+   */
+  private void forgetID(String id, Entity entity) {
+    if (id2entity.get(id)!=entity)
+      return;
+    id2entity.remove(id);
+    for (Map<String,Entity> ents : tag2id2entity.values()) {
+      Entity other = ents.get(id);
+      if (other!=null&&other!=entity) {
+        id2entity.put(id, other);
+        break;
+      }
+    }
+  }
+  
   /**
    * Internal entity lookup
    */
@@ -779,11 +988,23 @@ public class Gedcom {
     return result==null ? 0 : result;
   }
 
+  /**
+   * Trims the storage used by all properties (e.g. after a load) - this doesn't
+   * change any values and is transparent to listeners
+   */
+  public void compact() {
+    Map<String,String> pool = new HashMap<String,String>();
+    for (Entity entity : allEntities)
+      entity.compact(pool);
+  }
+
   /**
    * Returns all entities
    */
   public List<Entity> getEntities() {
-    return Collections.unmodifiableList(allEntities);
+    if (allEntitiesList==null)
+      allEntitiesList = Collections.unmodifiableList(new ArrayList<Entity>(allEntities));
+    return allEntitiesList;
   }
 
   /**
@@ -835,15 +1056,7 @@ public class Gedcom {
    * Returns the entity with given id (or null)
    */
   public Entity getEntity(String id) {
-    // loop all types
-    for (Map<String,Entity> ents : tag2id2entity.values()) {
-      Entity result = ents.get(id);
-      if (result!=null)
-        return result;
-    }
-    
-    // not found
-    return null;
+    return id2entity.get(id);
   }
 
   /**
@@ -929,6 +1142,13 @@ public class Gedcom {
     return isDirty || !undoHistory.isEmpty();
   }
 
+  /**
+   * Sets flag for unsaved changes (made outside of units of work)
+   */
+  public void setChanged() {
+    isDirty = true;
+  }
+
   /**
    * Clears flag for unsaved changes
    */
@@ -978,6 +1198,19 @@ public class Gedcom {
    */
   public void doUnitOfWork(UnitOfWork uow) throws GedcomException {
     
+    // wait for readers
+    if (!lockForWrite())
+      throw new GedcomException("Cannot obtain write lock");
+    try {
+      doUnitOfWorkImpl(uow);
+    } finally {
+      readWriteLock.writeLock().unlock();
+      propagateChanges();
+    }
+  }
+  
+  private void doUnitOfWorkImpl(UnitOfWork uow) throws GedcomException {
+    
     PropertyChange.Monitor updater;
     
     // grab lock
@@ -1039,6 +1272,63 @@ public class Gedcom {
       throw new RuntimeException(rethrow);
     }
   }
+  
+  /**
+   * Performs a unit of work that only reads - any number of these can run at the same time while
+   * units of work changing the gedcom wait for them to finish (and vice versa). Keep readers short
+   * and don't wait for the EDT while reading - see {@link #suspendRead()}.
+   */
+  public void doReadUnitOfWork(UnitOfWork uow) throws GedcomException {
+    readWriteLock.readLock().lock();
+    try {
+      uow.perform(this);
+    } finally {
+      readWriteLock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * The lock held while reading - see {@link #doReadUnitOfWork(UnitOfWork)}
+   */
+  public ReentrantReadWriteLock.ReadLock getReadLock() {
+    return readWriteLock.readLock();
+  }
+  
+  /**
+   * Let units of work run while the current thread waits for something else (e.g. the user) - 
+   * the read locks it holds are given up until {@link #resumeRead(int)}
+   * @return number of read locks given up
+   */
+  public int suspendRead() {
+    int holds = readWriteLock.getReadHoldCount();
+    for (int i=0;i<holds;i++)
+      readWriteLock.readLock().unlock();
+    return holds;
+  }
+  
+  /**
+   * Take back read locks given up by {@link #suspendRead()}
+   */
+  public void resumeRead(int holds) {
+    for (int i=0;i<holds;i++)
+      readWriteLock.readLock().lock();
+  }
+  
+  /**
+   * Wait for readers to finish (readers can't change the gedcom)
+   */
+  private boolean lockForWrite() {
+    if (readWriteLock.getReadHoldCount()>0)
+      return false;
+    try {
+      while (!readWriteLock.writeLock().tryLock(WRITE_WAIT, TimeUnit.MILLISECONDS))
+        LOG.info("Waiting for readers of "+getName()+" to finish");
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
 
   /**
    * Test for undo
@@ -1059,6 +1349,19 @@ public class Gedcom {
    */
   public void undoUnitOfWork(boolean keepRedo) {
     
+    // wait for readers
+    if (!lockForWrite())
+      throw new IllegalStateException("Cannot obtain write lock");
+    try {
+      undoUnitOfWorkImpl(keepRedo);
+    } finally {
+      readWriteLock.writeLock().unlock();
+      propagateChanges();
+    }
+  }
+  
+  private void undoUnitOfWorkImpl(boolean keepRedo) {
+    
     // there?
     if (undoHistory.isEmpty())
       throw new IllegalArgumentException("undo n/a");
@@ -1113,6 +1416,19 @@ public class Gedcom {
    */
   public void redoUnitOfWork() {
     
+    // wait for readers
+    if (!lockForWrite())
+      throw new IllegalStateException("Cannot obtain write lock");
+    try {
+      redoUnitOfWorkImpl();
+    } finally {
+      readWriteLock.writeLock().unlock();
+      propagateChanges();
+    }
+  }
+  
+  private void redoUnitOfWorkImpl() {
+    
     // there?
     if (redoHistory.isEmpty())
       throw new IllegalArgumentException("redo n/a");
@@ -1179,7 +1495,8 @@ public class Gedcom {
   }
 
   /**
-   * Returns a readable name for the given tag   */
+   * Returns a readable name for the given tag
+   */
   public static String getName(String tag) {
     return getName(tag, false);
   }
@@ -1279,7 +1596,29 @@ public class Gedcom {
    * Check for containment
    */
   public boolean contains(Entity entity) {
-    return getEntityMap(entity.getTag()).containsValue(entity);
+    return getEntityMap(entity.getTag()).get(entity.getId())==entity;
+  }
+  
+  /**
+   * Kinship of individuals - kept up to date with changes in units of work
+   */
+  public synchronized KinshipIndex getKinshipIndex() {
+    if (kinship==null) {
+      kinship = new KinshipIndex(this);
+      addGedcomListener(kinship);
+    }
+    return kinship;
+  }
+  
+  /**
+   * Paths of relationship between individuals - kept up to date with changes in units of work
+   */
+  public synchronized RelationshipFinder getRelationshipFinder() {
+    if (relationships==null) {
+      relationships = new RelationshipFinder(this);
+      addGedcomListener(relationships);
+    }
+    return relationships;
   }
   
   /**
@@ -1346,11 +1685,17 @@ public class Gedcom {
    */
   private class Lock {
     List<Undo> undos = new ArrayList<Undo>();
+    GedcomChanges changes = batchListeners.isEmpty() ? null : new GedcomChanges();
     
     void addChange(Undo run) {
       undos.add(run);
     }
     
+    void touched(Entity entity, Property property) {
+      if (changes!=null)
+        changes.propertyTouched(entity, property);
+    }
+    
   }
   
 } //Gedcom
@@ -0,0 +1,31 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.gedcom;
+
+/**
+ * Interface for Listeners of changes in gedcom data that want to know about all changes
+ * of a write lock at once after the fact instead of each change as it happens
+ * @see Gedcom#addGedcomBatchListener(GedcomBatchListener)
+ */
+public interface GedcomBatchListener {
+
+  public void gedcomChanged(Gedcom gedcom, GedcomChanges changes);
+  
+}
@@ -0,0 +1,124 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.gedcom;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes made to a gedcom while it was write locked - entities added and deleted
+ * and properties touched (added, changed or deleted) per entity that existed before
+ * and still exists
+ * @see GedcomBatchListener
+ */
+public class GedcomChanges {
+  
+  private Set<Entity> added = new LinkedHashSet<Entity>();
+  private Set<Entity> deleted = new LinkedHashSet<Entity>();
+  private Map<Entity, Set<Property>> changed = new LinkedHashMap<Entity, Set<Property>>();
+  private Map<Entity, String> ids = new HashMap<Entity, String>();
+  
+  /*package*/ GedcomChanges() {
+  }
+  
+  /**
+   * whether there are no changes
+   */
+  public boolean isEmpty() {
+    return added.isEmpty() && deleted.isEmpty() && changed.isEmpty();
+  }
+  
+  /**
+   * entities added
+   */
+  public Set<Entity> getAdded() {
+    return Collections.unmodifiableSet(added);
+  }
+  
+  /**
+   * entities deleted
+   */
+  public Set<Entity> getDeleted() {
+    return Collections.unmodifiableSet(deleted);
+  }
+  
+  /**
+   * entities with properties touched
+   */
+  public Set<Entity> getChanged() {
+    return Collections.unmodifiableSet(changed.keySet());
+  }
+  
+  /**
+   * properties touched in a changed entity (deleted ones aren't part of it anymore)
+   */
+  public Set<Property> getProperties(Entity entity) {
+    Set<Property> result = changed.get(entity);
+    return result==null ? Collections.<Property>emptySet() : Collections.unmodifiableSet(result);
+  }
+  
+  /**
+   * the ID an entity had before it was changed (null if it didn't change)
+   */
+  public String getPreviousID(Entity entity) {
+    return ids.get(entity);
+  }
+  
+  /*package*/ void entityAdded(Entity entity) {
+    // deleted and added again is a change
+    if (deleted.remove(entity))
+      propertyTouched(entity, entity);
+    else
+      added.add(entity);
+  }
+  
+  /*package*/ void entityDeleted(Entity entity) {
+    changed.remove(entity);
+    // added and deleted again is nothing
+    if (!added.remove(entity))
+      deleted.add(entity);
+  }
+  
+  /*package*/ void propertyTouched(Entity entity, Property property) {
+    if (entity==null || added.contains(entity) || deleted.contains(entity))
+      return;
+    Set<Property> properties = changed.get(entity);
+    if (properties==null) {
+      properties = new LinkedHashSet<Property>();
+      changed.put(entity, properties);
+    }
+    properties.add(property);
+  }
+  
+  /*package*/ void idChanged(Entity entity, String old) {
+    if (!added.contains(entity) && !ids.containsKey(entity))
+      ids.put(entity, old);
+  }
+  
+  @Override
+  public String toString() {
+    return "+"+added.size()+" -"+deleted.size()+" ~"+changed.size();
+  }
+
+} //GedcomChanges
@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,7 +59,7 @@ public class Grammar {
   private String version;
   
   /** meta roots */
-  private Map<String, MetaProperty> tag2root = new HashMap<String, MetaProperty>();
+  private Map<String, MetaProperty> tag2root = new ConcurrentHashMap<String, MetaProperty>();
   
   /**
    * Singleton Constructor
@@ -165,12 +166,17 @@ public class Grammar {
     
     String tag = path.get(0);
     
-    MetaProperty root = (MetaProperty)tag2root.get(tag);
+    MetaProperty root = tag2root.get(tag);
     
     // something we didn't know about yet?
     if (root==null) {
-      root = new MetaProperty(this, tag, new HashMap<String, String>(), false);
-      tag2root.put(tag, root);
+      synchronized (tag2root) {
+        root = tag2root.get(tag);
+        if (root==null) {
+          root = new MetaProperty(this, tag, new HashMap<String, String>(), false);
+          tag2root.put(tag, root);
+        }
+      }
     }
     
     // recurse into      
@@ -0,0 +1,485 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.gedcom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of individuals' ancestors for questions of kinship. The ancestors of an individual
+ * are found walking up generation by generation through parents (not known to be adoptive or
+ * foster - like Indi.isAncestorOf()) and kept as an array of ids and generations sorted by id
+ * for the individuals asked about last. Changes to links between individuals and families
+ * drop the arrays of their descendants.
+ * <pre>
+ *   KinshipIndex kinship = gedcom.getKinshipIndex();
+ *   if (kinship.isAncestorOf(indi, other)) ...
+ *   KinshipIndex.Relationship r = kinship.getRelationship(indi, other);
+ * </pre>
+ */
+public class KinshipIndex implements GedcomListener {
+
+  private final static long[] NONE = new long[0];
+  private final static int MAX_GENERATION = 0xffff;
+  private final static int CACHE = 256;
+
+  private Gedcom gedcom;
+
+  /** individuals by id and vice versa */
+  private Map<Indi, Node> indi2node = new HashMap<Indi, Node>();
+  private List<Node> nodes = new ArrayList<Node>();
+
+  /** ancestors of the individuals asked about last */
+  @SuppressWarnings("serial")
+  private Map<Node, long[]> node2ancestors = new LinkedHashMap<Node, long[]>(CACHE, 0.75F, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Node, long[]> eldest) {
+      return size()>CACHE;
+    }
+  };
+
+  /** individuals whose parents changed since last update */
+  private Set<Indi> dirty = new HashSet<Indi>();
+
+  /**
+   * Constructor - the index has to be registered as a listener to keep track of changes
+   */
+  public KinshipIndex(Gedcom gedcom) {
+    this.gedcom = gedcom;
+  }
+
+  /**
+   * Check whether an individual is the ancestor of another
+   */
+  public synchronized boolean isAncestorOf(Indi ancestor, Indi indi) {
+    update();
+    long[] ancestors = getAncestors(getNode(indi));
+    Node node = indi2node.get(ancestor);
+    return node!=null && getGeneration(ancestors, node.id)>0;
+  }
+
+  /**
+   * All ancestors of an individual - closer generations first
+   */
+  public synchronized List<Indi> getAncestors(Indi indi) {
+    update();
+    long[] ancestors = getAncestors(getNode(indi));
+    List<Relationship> result = new ArrayList<Relationship>(ancestors.length);
+    for (long key : ancestors)
+      result.add(new Relationship(nodes.get(id(key)).indi, generation(key), 0));
+    return toIndis(result);
+  }
+
+  /**
+   * All common ancestors of two individuals (including the individuals themselves if one is
+   * ancestor of the other) - closest first
+   */
+  public synchronized List<Indi> getCommonAncestors(Indi indi, Indi other) {
+    update();
+    return toIndis(getCommon(indi, other));
+  }
+
+  /**
+   * The lowest common ancestors of two individuals - those that are not an ancestor of
+   * another common ancestor - closest first
+   */
+  public synchronized List<Indi> getLowestCommonAncestors(Indi indi, Indi other) {
+
+    update();
+
+    List<Relationship> common = getCommon(indi, other);
+
+    // parents of common ancestors are common ancestors as well but not lowest
+    Set<Indi> parents = new HashSet<Indi>();
+    for (Relationship r : common)
+      parents.addAll(getParents(r.ancestor));
+    List<Indi> result = new ArrayList<Indi>(common.size());
+    for (Relationship r : common) {
+      if (!parents.contains(r.ancestor))
+        result.add(r.ancestor);
+    }
+    return result;
+  }
+
+  /**
+   * The relationship of two individuals by way of their closest common ancestor - one of the
+   * individuals themselves if it is an ancestor of the other
+   * @return relationship or null if not related
+   */
+  public synchronized Relationship getRelationship(Indi indi, Indi other) {
+    update();
+    List<Relationship> common = getCommon(indi, other);
+    return common.isEmpty() ? null : common.get(0);
+  }
+
+  private List<Indi> toIndis(List<Relationship> rs) {
+    Collections.sort(rs, CLOSEST);
+    List<Indi> result = new ArrayList<Indi>(rs.size());
+    for (Relationship r : rs)
+      result.add(r.ancestor);
+    return result;
+  }
+
+  /**
+   * common ancestors - closest first
+   */
+  private List<Relationship> getCommon(Indi indi, Indi other) {
+
+    Node node1 = getNode(indi), node2 = getNode(other);
+    long[]
+      ancestors1 = merge(getAncestors(node1), key(node1.id, 0)),
+      ancestors2 = merge(getAncestors(node2), key(node2.id, 0));
+
+    // intersect by ids
+    List<Relationship> result = new ArrayList<Relationship>();
+    for (int i=0,j=0; i<ancestors1.length && j<ancestors2.length; ) {
+      int id1 = id(ancestors1[i]), id2 = id(ancestors2[j]);
+      if (id1<id2) {
+        i++;
+      } else if (id1>id2) {
+        j++;
+      } else {
+        result.add(new Relationship(nodes.get(id1).indi, generation(ancestors1[i]), generation(ancestors2[j])));
+        i++;
+        j++;
+      }
+    }
+
+    Collections.sort(result, CLOSEST);
+    return result;
+  }
+
+  private Node getNode(Indi indi) {
+    Node result = indi2node.get(indi);
+    if (result==null) {
+      result = new Node(nodes.size(), indi);
+      nodes.add(result);
+      indi2node.put(indi, result);
+    }
+    return result;
+  }
+
+  /**
+   * parents (not known to be adoptive or foster)
+   */
+  private List<Indi> getParents(Indi indi) {
+    List<Indi> result = new ArrayList<Indi>(2);
+    for (PropertyFamilyChild famc : indi.getProperties(PropertyFamilyChild.class)) {
+      if (!famc.isValid()||Boolean.FALSE.equals(famc.isBiological()))
+        continue;
+      Fam fam = famc.getFamily();
+      Indi father = fam.getHusband();
+      if (father!=null)
+        result.add(father);
+      Indi mother = fam.getWife();
+      if (mother!=null)
+        result.add(mother);
+    }
+    return result;
+  }
+
+  /**
+   * ancestors of given node - found generation by generation so that the first
+   * time an ancestor is seen is its closest
+   */
+  private long[] getAncestors(Node node) {
+
+    long[] result = node2ancestors.get(node);
+    if (result!=null)
+      return result;
+
+    BitSet seen = new BitSet();
+    seen.set(node.id);
+    long[] keys = new long[16];
+    int k = 0;
+
+    List<Node> generation = Collections.singletonList(node);
+    for (int g=1; !generation.isEmpty(); g++) {
+      List<Node> parents = new ArrayList<Node>(generation.size()*2);
+      for (Node child : generation) {
+        for (Indi indi : getParents(child.indi)) {
+          Node parent = getNode(indi);
+          if (seen.get(parent.id))
+            continue;
+          seen.set(parent.id);
+          parents.add(parent);
+          if (k==keys.length)
+            keys = Arrays.copyOf(keys, k*2);
+          keys[k++] = key(parent.id, g);
+        }
+      }
+      generation = parents;
+    }
+
+    result = Arrays.copyOf(keys, k);
+    Arrays.sort(result);
+    node2ancestors.put(node, result);
+    return result;
+  }
+
+  private static long[] merge(long[] keys, long key) {
+    return merge(keys, new long[] { key }, 0);
+  }
+
+  /**
+   * merge two sets of ancestors sorted by id - keeping the smaller generation of two
+   */
+  private static long[] merge(long[] keys1, long[] keys2, int generations) {
+
+    long[] result = new long[keys1.length+keys2.length];
+    int i=0, j=0, k=0;
+    while (i<keys1.length || j<keys2.length) {
+      if (j==keys2.length) {
+        result[k++] = keys1[i++];
+        continue;
+      }
+      long key2 = key(id(keys2[j]), generation(keys2[j])+generations);
+      if (i==keys1.length || id(key2)<id(keys1[i])) {
+        result[k++] = key2;
+        j++;
+      } else if (id(key2)>id(keys1[i])) {
+        result[k++] = keys1[i++];
+      } else {
+        result[k++] = Math.min(keys1[i++], key2);
+        j++;
+      }
+    }
+
+    return k==result.length ? result : Arrays.copyOf(result, k);
+  }
+
+  private static long key(int id, int generation) {
+    return ((long)id<<16) | Math.min(generation, MAX_GENERATION);
+  }
+
+  private static int id(long key) {
+    return (int)(key>>>16);
+  }
+
+  private static int generation(long key) {
+    return (int)(key&MAX_GENERATION);
+  }
+
+  /**
+   * generation of ancestor with given id or -1
+   */
+  private static int getGeneration(long[] keys, int id) {
+    int i = Arrays.binarySearch(keys, key(id, 0));
+    if (i<0)
+      i = -i-1;
+    return i<keys.length && id(keys[i])==id ? generation(keys[i]) : -1;
+  }
+
+  /**
+   * drop ancestors of changed individuals and their descendants - only those that are
+   * kept have to be looked at
+   */
+  private void update() {
+
+    // grab what changed - events don't wait for us
+    Set<Indi> changed;
+    synchronized (dirty) {
+      if (dirty.isEmpty())
+        return;
+      changed = new HashSet<Indi>(dirty);
+      dirty.clear();
+    }
+
+    BitSet ids = new BitSet();
+    for (Indi indi : changed) {
+      Node node = indi2node.get(indi);
+      if (node!=null)
+        ids.set(node.id);
+    }
+    if (ids.isEmpty())
+      return;
+
+    for (Iterator<Map.Entry<Node, long[]>> it = node2ancestors.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Node, long[]> entry = it.next();
+      if (ids.get(entry.getKey().id)) {
+        it.remove();
+        continue;
+      }
+      for (int id=ids.nextSetBit(0); id>=0; id=ids.nextSetBit(id+1)) {
+        if (getGeneration(entry.getValue(), id)>=0) {
+          it.remove();
+          break;
+        }
+      }
+    }
+
+    // forget deleted
+    for (Indi indi : changed) {
+      if (!gedcom.contains(indi)) {
+        Node node = indi2node.remove(indi);
+        if (node!=null)
+          nodes.set(node.id, null);
+      }
+    }
+
+  }
+
+  /**
+   * keep track of individuals whose parents might have changed
+   */
+  private void changed(Property property) {
+
+    if (!(property instanceof PropertyXRef || "PEDI".equals(property.getTag())))
+      return;
+
+    Entity entity = property.getEntity();
+    synchronized (dirty) {
+      if (entity instanceof Indi) {
+        // indi and descendants
+        dirty.add((Indi)entity);
+        // children of families as spouse
+        if (property instanceof PropertyFamilySpouse && property.isValid())
+          dirty.addAll(Arrays.asList(((PropertyFamilySpouse)property).getFamily().getChildren(false)));
+      }
+      if (entity instanceof Fam) {
+        // children of family
+        dirty.addAll(Arrays.asList(((Fam)entity).getChildren(false)));
+        if (property instanceof PropertyChild && property.isValid())
+          dirty.add(((PropertyChild)property).getChild());
+      }
+    }
+  }
+
+  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
+    // no links yet
+  }
+
+  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
+    if (entity instanceof Indi) synchronized (dirty) {
+      dirty.add((Indi)entity);
+    }
+  }
+
+  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
+    changed(added);
+  }
+
+  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
+    changed(property);
+  }
+
+  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
+    changed(deleted);
+    changed(property);
+  }
+
+  /**
+   * An individual with ancestors
+   */
+  private static class Node {
+    private int id;
+    private Indi indi;
+    Node(int id, Indi indi) {
+      this.id = id;
+      this.indi = indi;
+    }
+  }
+
+  private final static Comparator<Relationship> CLOSEST = new Comparator<Relationship>() {
+    public int compare(Relationship r1, Relationship r2) {
+      return r1.getDegree() - r2.getDegree();
+    }
+  };
+
+  /**
+   * A relationship of two individuals by way of a common ancestor
+   */
+  public static class Relationship {
+
+    private Indi ancestor;
+    private int up, down;
+
+    private Relationship(Indi ancestor, int up, int down) {
+      this.ancestor = ancestor;
+      this.up = up;
+      this.down = down;
+    }
+
+    /**
+     * the common ancestor
+     */
+    public Indi getAncestor() {
+      return ancestor;
+    }
+
+    /**
+     * generations from first individual up to ancestor
+     */
+    public int getUp() {
+      return up;
+    }
+
+    /**
+     * generations from ancestor down to second individual
+     */
+    public int getDown() {
+      return down;
+    }
+
+    /**
+     * degree of relationship (generations between the individuals)
+     */
+    public int getDegree() {
+      return up+down;
+    }
+
+    /**
+     * whether one individual is the ancestor of the other
+     */
+    public boolean isDirect() {
+      return up==0||down==0;
+    }
+
+    /**
+     * cousinship - 0 for siblings, 1 for first cousins, ... and -1 if direct
+     */
+    public int getCousin() {
+      return Math.min(up, down)-1;
+    }
+
+    /**
+     * generations removed
+     */
+    public int getRemoval() {
+      return Math.abs(up-down);
+    }
+
+    @Override
+    public String toString() {
+      return ancestor.getId()+" ("+up+"/"+down+")";
+    }
+  }
+
+}
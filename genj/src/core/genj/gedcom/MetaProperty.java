@@ -26,6 +26,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 /**
@@ -77,9 +79,9 @@ public class MetaProperty implements Comparable<MetaProperty> {
   /** properties */
   private Map<String,String> attrs;
   
-  /** subs */
-  private Map<String,MetaProperty> tag2nested = new HashMap<String,MetaProperty>();
-  List<MetaProperty> nested = new ArrayList<MetaProperty>();
+  /** subs (read concurrently by e.g. parallel loaders so we're using concurrent collections) */
+  private Map<String,MetaProperty> tag2nested = new ConcurrentHashMap<String,MetaProperty>();
+  List<MetaProperty> nested = new CopyOnWriteArrayList<MetaProperty>();
 
   /**
    * Constructor
@@ -456,10 +458,19 @@ public class MetaProperty implements Comparable<MetaProperty> {
     if (tag==null||tag.length()==0)
       throw new IllegalArgumentException("tag can't be empty");
     // current tag in map?
-    MetaProperty result = (MetaProperty)tag2nested.get(tag);
-    if (result==null) {
-      result = new MetaProperty(grammar, tag, new HashMap<String,String>(), false);
-      if (persist) addNested(result);
+    MetaProperty result = tag2nested.get(tag);
+    if (result!=null)
+      return result;
+    // a transient one?
+    if (!persist)
+      return new MetaProperty(grammar, tag, new HashMap<String,String>(), false);
+    // check again and keep (only one thread gets to add it)
+    synchronized (this) {
+      result = tag2nested.get(tag);
+      if (result==null) {
+        result = new MetaProperty(grammar, tag, new HashMap<String,String>(), false);
+        addNested(result);
+      }
     }
     // done
     return result;
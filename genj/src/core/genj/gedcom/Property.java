@@ -27,6 +27,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
@@ -50,8 +51,8 @@ public abstract class Property implements Comparable<Property> {
   // 20070128 made this a lazy list so we're not wasting the space for all those leaf nodes out there
   private List<Property> children = null;
   
-  /** images */
-  protected ImageIcon image, imageErr;
+  /** image - the error image of an invalid property is looked up when needed */
+  private ImageIcon image;
   
   /** whether we're transient or not */
   protected boolean isTransient = false;
@@ -77,6 +78,14 @@ public abstract class Property implements Comparable<Property> {
     
   }
 
+  /**
+   * Lifecycle - callback after the containing entity has been added to a Gedcom
+   * with this property already in place (e.g. built up while detached)
+   */
+  /*package*/ void afterAttachNotify() {
+    
+  }
+
   /**
    * Lifecycle - callback before being removed from parent
    */
@@ -421,6 +430,13 @@ public abstract class Property implements Comparable<Property> {
     return parent!=null ? parent.getGedcom() : null;
   }
   
+  /**
+   * Returns the grammar this property follows
+   */
+  /*package*/ Grammar getGrammar() {
+    return parent!=null ? parent.getGrammar() : null;
+  }
+  
   /**
    * Returns the image which is associated with this property.
    */
@@ -435,16 +451,41 @@ public abstract class Property implements Comparable<Property> {
     
     // valid or not ?
     if (!checkValid||isValid()) {
-      if (image==null) 
-        image = getGedcom()!=null ? getMetaProperty().getImage() : MetaProperty.IMG_CUSTOM; 
+      if (image==null) {
+        if (getGedcom()==null)
+          return MetaProperty.IMG_CUSTOM;
+        image = getMetaProperty().getImage();
+      }
       return image;
     }
     
     // not valid
-    if (imageErr==null) 
-      imageErr = getMetaProperty().getImage("err"); 
-      
-    return imageErr;
+    return getMetaProperty().getImage("err");
+  }
+
+  /**
+   * Trims storage of this property and its children - equal strings are
+   * shared through given pool
+   */
+  /*package*/ void compact(Map<String,String> pool) {
+    if (children==null)
+      return;
+    ((ArrayList<Property>)children).trimToSize();
+    for (Property child : children)
+      child.compact(pool);
+  }
+  
+  /**
+   * Share an equal string instance through given pool
+   */
+  /*package*/ static String share(Map<String,String> pool, String s) {
+    if (s==null)
+      return null;
+    String shared = pool.get(s);
+    if (shared!=null)
+      return shared;
+    pool.put(s, s);
+    return s;
   }
 
   /**
@@ -942,7 +983,7 @@ public abstract class Property implements Comparable<Property> {
    * Resolve meta property
    */
   public MetaProperty getMetaProperty() {
-    return getGedcom().getGrammar().getMeta(getPath());    
+    return getGrammar().getMeta(getPath());    
   }
 
   /**
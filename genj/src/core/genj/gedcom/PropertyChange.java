@@ -21,7 +21,6 @@ package genj.gedcom;
 
 import genj.gedcom.time.PointInTime;
 
-import java.text.DecimalFormat;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -40,8 +39,6 @@ import java.util.StringTokenizer;
  */
 public class PropertyChange extends Property implements MultiLineProperty {
 
-  private final static DecimalFormat decimal = new DecimalFormat("00");
-
   public final static String
    CHAN = "CHAN",
    TIME = "TIME",
@@ -102,15 +99,22 @@ public class PropertyChange extends Property implements MultiLineProperty {
       min = (time/1000/60)%60,
       hr  = (time/1000/60/60)%24;
 
+    // no shared DecimalFormat here - this is called by more than one thread (e.g. report workers)
     StringBuffer buffer = new StringBuffer();
-    buffer.append(decimal.format(hr));
+    append(buffer, hr);
     buffer.append(':');
-    buffer.append(decimal.format(min));
+    append(buffer, min);
     buffer.append(':');
-    buffer.append(decimal.format(sec));
+    append(buffer, sec);
 
     return buffer.toString();
   }
+  
+  private static void append(StringBuffer buffer, long twoDigits) {
+    if (twoDigits<10)
+      buffer.append('0');
+    buffer.append(twoDigits);
+  }
 
   /**
    * @see genj.gedcom.MultiLineProperty#getLineCollector()()
@@ -153,6 +157,16 @@ public class PropertyChange extends Property implements MultiLineProperty {
     // done
   }
 
+  /**
+   * @see genj.gedcom.Property#afterAttachNotify()
+   */
+  /*package*/ void afterAttachNotify() {
+    super.afterAttachNotify();
+    // update gedcom's last change time now that we know it
+    if (time>=0)
+      getGedcom().updateLastChange(this);
+  }
+
   /**
    * Gets the Gedcom value for the DATE part of the change
    */
@@ -207,7 +221,9 @@ public class PropertyChange extends Property implements MultiLineProperty {
       }
 
       // update gedcom's last change time
-      getGedcom().updateLastChange(this);
+      Gedcom ged = getGedcom();
+      if (ged!=null)
+        ged.updateLastChange(this);
 
     } catch (IllegalArgumentException | GedcomException t) {
       Gedcom.LOG.info("Invalid CHAN value: " + value);
@@ -174,6 +174,17 @@ public class PropertyChoiceValue extends PropertySimpleValue {
     // done
   }
 
+  /**
+   * @see genj.gedcom.Property#afterAttachNotify()
+   */
+  /*package*/ void afterAttachNotify() {
+    // delegate
+    super.afterAttachNotify();
+    // a remember didn't have access to gedcom until now
+    remember("", super.getValue());
+    // done
+  }
+
   /**
    * Removing us from the reference set (our value is not used anymore)
    * @see genj.gedcom.PropertyRelationship#delNotify()
@@ -30,13 +30,18 @@ import genj.util.WordBuffer;
  */
 public class PropertyDate extends Property {
 
-  /** time values */
+  /** time values - end is only allocated when needed */
   private PIT 
     start = new PIT(),
-    end = new PIT();
+    end = null;
   private boolean isAdjusting = false;
   private String valueAsString = null;
 
+  /** sort key (computed when needed) */
+  private volatile long sortKey = UNSORTED;
+  private final static long UNSORTED = Long.MAX_VALUE;
+  private final static int MAX_RANGE = (1<<30)-1;
+
   /** the format of the contained date */
   private Format format = DATE;
 
@@ -84,7 +89,36 @@ public class PropertyDate extends Property {
    * @see java.lang.Comparable#compareTo(Object)
    */
   public int compareTo(Property other) {
-    return start.compareTo(((PropertyDate)other).start);
+    long key = getSortKey(), otherKey = ((PropertyDate)other).getSortKey();
+    return key<otherKey ? -1 : (key>otherKey ? 1 : 0);
+  }
+  
+  /**
+   * A key for sorting dates by - julian day of start, precision of start (year, month or day) and
+   * length of range packed into a long. Dates without a valid start come first.
+   */
+  public long getSortKey() {
+    
+    long result = sortKey;
+    if (result!=UNSORTED)
+      return result;
+    
+    result = Long.MIN_VALUE;
+    try {
+      if (start.isValid()) {
+        int jd = start.getJulianDay();
+        long precision = (start.getMonth()!=PointInTime.UNKNOWN ? 1 : 0) + (start.getDay()!=PointInTime.UNKNOWN ? 1 : 0);
+        long range = 0;
+        if (isRange() && getEnd().isValid())
+          range = Math.max(0, Math.min(MAX_RANGE, getEnd().getJulianDay()-jd));
+        result = ((long)jd<<32) | (precision<<30) | range;
+      }
+    } catch (GedcomException e) {
+      // not comparable
+    }
+    
+    sortKey = result;
+    return result;
   }
   
   /**
@@ -105,6 +139,8 @@ public class PropertyDate extends Property {
    * Returns ending point
    */
   public PointInTime getEnd() {
+    if (end==null)
+      end = new PIT();
     return end;
   }
 
@@ -160,14 +196,14 @@ public class PropertyDate extends Property {
         start.reset();
       else
         start.set(newStart);
-      if (newEnd==null)
-        end.reset();
-      else
-        end.set(newEnd);
+      if (newEnd==null) {
+        if (end!=null) end.reset();
+      } else
+        getEnd().set(newEnd);
       phrase = newPhrase;
       valueAsString = null;
       
-      format = (newFormat.needsValidStart() && !start.isValid()) || (newFormat.needsValidEnd() && !end.isValid()) ? DATE : newFormat ;
+      format = (newFormat.needsValidStart() && !start.isValid()) || (newFormat.needsValidEnd() && !getEnd().isValid()) ? DATE : newFormat ;
     } finally {
       isAdjusting = false;
     }
@@ -190,9 +226,10 @@ public class PropertyDate extends Property {
     try {
       // set end == start?
       if (!isRange()&&set.isRange()) 
-        end.set(start);
+        getEnd().set(start);
       // remember
       format = set;
+      sortKey = UNSORTED;
     } finally {
       isAdjusting = false;
     }
@@ -217,14 +254,15 @@ public class PropertyDate extends Property {
       
       // Reset value
       start.reset();
-      end.reset();
+      if (end!=null) end.reset();
       format = DATE;
       phrase= "";
       valueAsString = newValue.trim();
   
-      // try to apply one of the formats for non empty
-      if (valueAsString.length()>0) for (int f=0; f<FORMATS.length;f++) {
-        if (FORMATS[f].setValue(newValue, this)) {
+      // try to apply one of the formats for non empty - those that can start with first word
+      String first = valueAsString.length()>0 ? new DirectAccessTokenizer(valueAsString, " ", true).get(0) : null;
+      if (first!=null) for (int f=0; f<FORMATS.length;f++) {
+        if (FORMATS[f].accepts(first) && FORMATS[f].setValue(newValue, this)) {
           format  = FORMATS[f];
           valueAsString = null;
           break;
@@ -327,6 +365,14 @@ public class PropertyDate extends Property {
       // done
     }
     
+    /**
+     * Setter - all changes end up here
+     */
+    public void set(int d, int m, int y, Calendar cal) {
+      super.set(d, m, y, cal);
+      sortKey = UNSORTED;
+    }
+    
   } // class PointInTime
   
   /**
@@ -357,6 +403,11 @@ public class PropertyDate extends Property {
       return true;
     }
 
+    /** whether a value starting with given word can be in this format */
+    protected boolean accepts(String first) {
+      return start.length()==0 || start.equalsIgnoreCase(first);
+    }
+
     protected boolean needsValidEnd() {
       return isRange();
     }
@@ -378,7 +429,7 @@ public class PropertyDate extends Property {
     
     protected boolean isValid(PropertyDate date) {
       // valid point in times?
-      return date.start.isValid() && (!isRange()||date.end.isValid());
+      return date.start.isValid() && (!isRange()||date.getEnd().isValid());
     }
     
     protected String getValue(PropertyDate date) {
@@ -389,7 +440,7 @@ public class PropertyDate extends Property {
       date.start.getValue(result);
       if (isRange())  {
         result.append(end);
-        date.end.getValue(result);
+        date.getEnd().getValue(result);
       }
 
       // done    
@@ -413,10 +464,10 @@ public class PropertyDate extends Property {
         // end modifier & point in time
         if (isRange()) {
           result.append(Gedcom.getResources().getString("prop.date.mod."+end));
-          if (calendar==null||date.end.getCalendar()==calendar) 
-            date.end.toString(result);
+          if (calendar==null||date.getEnd().getCalendar()==calendar) 
+            date.getEnd().toString(result);
           else 
-            date.end.getPointInTime(calendar).toString(result);
+            date.getEnd().getPointInTime(calendar).toString(result);
         }
     
         // done    
@@ -450,7 +501,7 @@ public class PropertyDate extends Property {
         String token = tokens.get(pos);
         if (token==null) break;
         if ( token.equalsIgnoreCase(end) ) 
-          return date.start.set(text.substring(afterFirst, tokens.getStart())) && date.end.set(text.substring(tokens.getEnd()));
+          return date.start.set(text.substring(afterFirst, tokens.getStart())) && date.getEnd().set(text.substring(tokens.getEnd()));
       }
 
       // didn't work
@@ -480,6 +531,11 @@ public class PropertyDate extends Property {
       return false;
     }
 
+    protected boolean accepts(String first) {
+      // also bracketed phrases
+      return true;
+    }
+
     protected boolean needsValidEnd() {
       return false;
     }
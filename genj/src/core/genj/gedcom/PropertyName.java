@@ -342,6 +342,18 @@ public class PropertyName extends Property {
     // done
   }
   
+  /**
+   * Hook:
+   * + Remember last names in reference set once gedcom is known
+   */
+  /*package*/ void afterAttachNotify() {
+    // continue
+    super.afterAttachNotify();
+    // our change to remember the last name
+    remember(firstName, lastName);
+    // done
+  }
+  
   /**
    * Callback:
    * + Forget last names in reference set
@@ -19,6 +19,7 @@
  */
 package genj.gedcom;
 
+import java.util.Map;
 
 /**
  * Gedcom Property for simple values
@@ -60,4 +61,12 @@ public class PropertySimpleValue extends Property {
     propagatePropertyChanged(this, old);
   }
   
+  /**
+   * @see genj.gedcom.Property#compact(Map)
+   */
+  /*package*/ void compact(Map<String,String> pool) {
+    super.compact(pool);
+    value = share(pool, value);
+  }
+  
 } //PropertySimpleValue
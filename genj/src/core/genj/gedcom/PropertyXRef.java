@@ -23,6 +23,7 @@ import genj.util.swing.ImageIcon;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Gedcom Property : ABC
@@ -35,7 +36,7 @@ public abstract class PropertyXRef extends Property {
   /** the target property that this xref references */
   private PropertyXRef target = null;
 
-  /** the value for a broken xref */
+  /** the value for a broken xref (null if dropped while linked) */
   private String  value  = "";
 
   /**
@@ -143,10 +144,30 @@ public abstract class PropertyXRef extends Property {
     if (target==null)
       throw new IllegalArgumentException("can't unlink without target");
     PropertyXRef old = target;
+    // restore values dropped while linked
+    if (value==null)
+      value = getId(old);
+    if (old.value==null)
+      old.value = getId(this);
     target.target = null;
     target = null;
     propagateXRefUnlinked(this, old);
   }
+  
+  private static String getId(Property prop) {
+    Entity entity = prop.getEntity();
+    return entity!=null ? entity.getId() : "";
+  }
+  
+  /**
+   * @see genj.gedcom.Property#compact(Map)
+   */
+  /*package*/ void compact(Map<String,String> pool) {
+    super.compact(pool);
+    // the value is implied by the target while linked
+    if (target!=null)
+      value = null;
+  }
 
   /**
    * @see genj.gedcom.Property#getDisplayValue()
@@ -0,0 +1,418 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.gedcom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A finder for the shortest ways individuals are related by blood and marriage - that is
+ * steps from individuals to their parents, children and spouses. The relations of all
+ * individuals are kept in int arrays that are built on first use and again after links changed.
+ * Paths are found with a breadth first search from both ends - k shortest paths by deviating
+ * from shorter ones (Yen's algorithm).
+ * <pre>
+ *   for (RelationshipFinder.Path path : gedcom.getRelationshipFinder().getPaths(indi, other, 3))
+ *     ...
+ * </pre>
+ */
+public class RelationshipFinder implements GedcomListener {
+
+  /** a step's relation */
+  public enum Relation {
+    PARENT,
+    CHILD,
+    SPOUSE
+  }
+
+  private final static Relation[] RELATIONS = Relation.values();
+
+  private Gedcom gedcom;
+
+  /** individuals and their index */
+  private Indi[] indis;
+  private Map<Indi, Integer> indi2index;
+
+  /** relations of individual i are targets[offsets[i]..offsets[i+1]) */
+  private int[] offsets;
+  private int[] targets;
+  private byte[] relations;
+
+  /** search state (marked by stamps instead of clearing) */
+  private int stamp = 0;
+  private int[] forwardStamps, backwardStamps, forwardPreds, backwardPreds, forwardDists, backwardDists;
+
+  private volatile boolean isDirty = true;
+
+  /**
+   * Constructor - the finder has to be registered as a listener to keep track of changes
+   */
+  public RelationshipFinder(Gedcom gedcom) {
+    this.gedcom = gedcom;
+  }
+
+  /**
+   * The shortest path from one individual to another
+   * @return path or null if not related
+   */
+  public Path getPath(Indi from, Indi to) {
+    List<Path> result = getPaths(from, to, 1);
+    return result.isEmpty() ? null : result.get(0);
+  }
+
+  /**
+   * The k shortest paths from one individual to another - shortest first
+   */
+  public synchronized List<Path> getPaths(Indi from, Indi to, int k) {
+
+    update();
+
+    Integer source = indi2index.get(from), target = indi2index.get(to);
+    if (source==null||target==null||k<1)
+      return Collections.emptyList();
+
+    List<int[]> result = new ArrayList<int[]>(k);
+    int[] shortest = search(source, target, new BitSet(), Collections.<Long>emptySet());
+    if (shortest==null)
+      return Collections.emptyList();
+    result.add(shortest);
+
+    // deviate from last found path at each of its nodes
+    List<int[]> candidates = new ArrayList<int[]>();
+    while (result.size()<k) {
+
+      int[] last = result.get(result.size()-1);
+      for (int i=0; i<last.length-1; i++) {
+
+        int spur = last[i];
+
+        // no edges taken by known paths sharing root and no nodes of root
+        Set<Long> blockedEdges = new HashSet<Long>();
+        for (int[] path : result) {
+          if (path.length>i+1 && startsWith(path, last, i+1))
+            blockedEdges.add(edge(path[i], path[i+1]));
+        }
+        BitSet blockedNodes = new BitSet();
+        for (int j=0; j<i; j++)
+          blockedNodes.set(last[j]);
+
+        int[] deviation = search(spur, target, blockedNodes, blockedEdges);
+        if (deviation==null)
+          continue;
+
+        int[] candidate = new int[i+deviation.length];
+        System.arraycopy(last, 0, candidate, 0, i);
+        System.arraycopy(deviation, 0, candidate, i, deviation.length);
+        if (!contains(candidates, candidate) && !contains(result, candidate))
+          candidates.add(candidate);
+      }
+
+      if (candidates.isEmpty())
+        break;
+
+      // next shortest
+      int next = 0;
+      for (int c=1; c<candidates.size(); c++) {
+        if (candidates.get(c).length<candidates.get(next).length)
+          next = c;
+      }
+      result.add(candidates.remove(next));
+    }
+
+    List<Path> paths = new ArrayList<Path>(result.size());
+    for (int[] path : result)
+      paths.add(toPath(path));
+    return paths;
+  }
+
+  private static boolean startsWith(int[] path, int[] prefix, int length) {
+    for (int i=0; i<length; i++) {
+      if (path[i]!=prefix[i])
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean contains(List<int[]> paths, int[] path) {
+    for (int[] p : paths) {
+      if (Arrays.equals(p, path))
+        return true;
+    }
+    return false;
+  }
+
+  private static Long edge(int from, int to) {
+    return Long.valueOf(((long)from<<32) | (to&0xffffffffL));
+  }
+
+  private Path toPath(int[] path) {
+    Indi[] steps = new Indi[path.length];
+    Relation[] rs = new Relation[path.length-1];
+    for (int i=0; i<path.length; i++) {
+      steps[i] = indis[path[i]];
+      if (i>0)
+        rs[i-1] = getRelation(path[i-1], path[i]);
+    }
+    return new Path(steps, rs);
+  }
+
+  private Relation getRelation(int from, int to) {
+    for (int e=offsets[from]; e<offsets[from+1]; e++) {
+      if (targets[e]==to)
+        return RELATIONS[relations[e]];
+    }
+    throw new IllegalArgumentException("no relation");
+  }
+
+  /**
+   * search from both ends - expanding the smaller frontier one level at a time
+   * @return nodes of path or null
+   */
+  private int[] search(int source, int target, BitSet blockedNodes, Set<Long> blockedEdges) {
+
+    if (source==target)
+      return new int[]{ source };
+
+    stamp++;
+    forwardStamps[source] = stamp;
+    forwardPreds[source] = -1;
+    forwardDists[source] = 0;
+    backwardStamps[target] = stamp;
+    backwardPreds[target] = -1;
+    backwardDists[target] = 0;
+
+    int[] forward = { source }, backward = { target };
+    int forwardLevel = 0, backwardLevel = 0;
+    int best = Integer.MAX_VALUE, meetFrom = -1, meetTo = -1;
+
+    while (forward.length>0 && backward.length>0 && forwardLevel+backwardLevel+1<best) {
+
+      boolean isForward = forward.length<=backward.length;
+      int[] frontier = isForward ? forward : backward;
+      int[] stamps = isForward ? forwardStamps : backwardStamps, otherStamps = isForward ? backwardStamps : forwardStamps;
+      int[] preds = isForward ? forwardPreds : backwardPreds;
+      int[] dists = isForward ? forwardDists : backwardDists, otherDists = isForward ? backwardDists : forwardDists;
+
+      int[] next = new int[16];
+      int size = 0;
+      for (int node : frontier) {
+        for (int e=offsets[node]; e<offsets[node+1]; e++) {
+          int neighbour = targets[e];
+          if (blockedNodes.get(neighbour))
+            continue;
+          if (!blockedEdges.isEmpty() && blockedEdges.contains(isForward ? edge(node, neighbour) : edge(neighbour, node)))
+            continue;
+          // met the other side?
+          if (otherStamps[neighbour]==stamp) {
+            int length = dists[node]+1+otherDists[neighbour];
+            if (length<best) {
+              best = length;
+              meetFrom = isForward ? node : neighbour;
+              meetTo = isForward ? neighbour : node;
+            }
+          }
+          if (stamps[neighbour]==stamp)
+            continue;
+          stamps[neighbour] = stamp;
+          preds[neighbour] = node;
+          dists[neighbour] = dists[node]+1;
+          if (size==next.length)
+            next = Arrays.copyOf(next, size*2);
+          next[size++] = neighbour;
+        }
+      }
+
+      if (isForward) {
+        forward = Arrays.copyOf(next, size);
+        forwardLevel++;
+      } else {
+        backward = Arrays.copyOf(next, size);
+        backwardLevel++;
+      }
+    }
+
+    if (meetFrom<0)
+      return null;
+
+    // source..meetFrom and meetTo..target
+    int[] result = new int[best+1];
+    int i = forwardDists[meetFrom];
+    for (int node=meetFrom; node>=0; node=forwardPreds[node])
+      result[i--] = node;
+    i = forwardDists[meetFrom]+1;
+    for (int node=meetTo; node>=0; node=backwardPreds[node])
+      result[i++] = node;
+
+    return result;
+  }
+
+  /**
+   * (re)build relations if necessary
+   */
+  private void update() {
+
+    if (!isDirty)
+      return;
+    isDirty = false;
+
+    Collection<Indi> all = gedcom.getIndis();
+    indis = all.toArray(new Indi[all.size()]);
+    indi2index = new HashMap<Indi, Integer>(indis.length*2);
+    for (int i=0; i<indis.length; i++)
+      indi2index.put(indis[i], i);
+
+    offsets = new int[indis.length+1];
+    targets = new int[indis.length*3];
+    relations = new byte[targets.length];
+    int edges = 0;
+    for (int i=0; i<indis.length; i++) {
+      offsets[i] = edges;
+      Indi indi = indis[i];
+      for (Fam fam : indi.getFamiliesWhereChild()) {
+        edges = add(i, edges, fam.getHusband(), Relation.PARENT);
+        edges = add(i, edges, fam.getWife(), Relation.PARENT);
+      }
+      for (Fam fam : indi.getFamiliesWhereSpouse()) {
+        edges = add(i, edges, fam.getOtherSpouse(indi), Relation.SPOUSE);
+        for (Indi child : fam.getChildren(false))
+          edges = add(i, edges, child, Relation.CHILD);
+      }
+    }
+    offsets[indis.length] = edges;
+
+    forwardStamps = new int[indis.length];
+    backwardStamps = new int[indis.length];
+    forwardPreds = new int[indis.length];
+    backwardPreds = new int[indis.length];
+    forwardDists = new int[indis.length];
+    backwardDists = new int[indis.length];
+    stamp = 0;
+  }
+
+  private int add(int from, int edges, Indi indi, Relation relation) {
+
+    if (indi==null)
+      return edges;
+    Integer to = indi2index.get(indi);
+    if (to==null)
+      return edges;
+
+    // known already?
+    for (int e=offsets[from]; e<edges; e++) {
+      if (targets[e]==to)
+        return edges;
+    }
+
+    if (edges==targets.length) {
+      targets = Arrays.copyOf(targets, edges*2);
+      relations = Arrays.copyOf(relations, edges*2);
+    }
+    targets[edges] = to;
+    relations[edges] = (byte)relation.ordinal();
+    return edges+1;
+  }
+
+  /**
+   * only links between individuals and families matter (not notes, sources, media, ...)
+   */
+  private void changed(Property property) {
+    if (property instanceof PropertyFamilyChild || property instanceof PropertyFamilySpouse
+      || property instanceof PropertyHusband || property instanceof PropertyWife || property instanceof PropertyChild)
+      isDirty = true;
+  }
+
+  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
+    if (entity instanceof Indi)
+      isDirty = true;
+  }
+
+  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
+    if (entity instanceof Indi||entity instanceof Fam)
+      isDirty = true;
+  }
+
+  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
+    changed(added);
+  }
+
+  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
+    changed(property);
+  }
+
+  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
+    changed(deleted);
+  }
+
+  /**
+   * A path of individuals each related to the next
+   */
+  public static class Path {
+
+    private Indi[] indis;
+    private Relation[] relations;
+
+    private Path(Indi[] indis, Relation[] relations) {
+      this.indis = indis;
+      this.relations = relations;
+    }
+
+    /**
+     * number of steps
+     */
+    public int getLength() {
+      return relations.length;
+    }
+
+    /**
+     * the n-th individual (0 is start, getLength() is end)
+     */
+    public Indi getIndi(int n) {
+      return indis[n];
+    }
+
+    /**
+     * the relation of the n+1-th individual to the n-th (e.g. PARENT for n's parent)
+     */
+    public Relation getRelation(int n) {
+      return relations[n];
+    }
+
+    @Override
+    public String toString() {
+      StringBuffer result = new StringBuffer(indis[0].getId());
+      for (int i=0; i<relations.length; i++) {
+        result.append(" -");
+        result.append(relations[i].name().toLowerCase());
+        result.append("-> ");
+        result.append(indis[i+1].getId());
+      }
+      return result.toString();
+    }
+  }
+
+}
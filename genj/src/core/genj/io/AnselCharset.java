@@ -536,7 +536,7 @@ import java.util.logging.Logger;
   /**
    * Decoder
    */
-  private class Decoder extends CharsetDecoder {
+  /*package*/ static class Decoder extends CharsetDecoder {
 
     /**
      * Constructor
@@ -616,7 +616,7 @@ import java.util.logging.Logger;
     /**
      * ansel to unicode
      */
-    private int ansel1byte2unicode(int ansel) {
+    /*package*/ static int ansel1byte2unicode(int ansel) {
     
       switch (ansel) {
         case 0x8D :
@@ -759,7 +759,7 @@ import java.util.logging.Logger;
     /**
      * ansel to unicode
      */
-    private int ansel2byte2unicode(int ansel) {
+    /*package*/ static int ansel2byte2unicode(int ansel) {
       switch (ansel) {
         case 0xE041 :
           return 0x1EA2; //  capital a with hook above
@@ -0,0 +1,290 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A reader decoding characters straight from a byte buffer (e.g. a memory mapped file).
+ * UTF-8, Latin1 and Ansel are decoded byte by byte without intermediate buffers - everything
+ * else goes through the charset's decoder. Decoding results are the same as with an
+ * InputStreamReader over the same bytes.
+ */
+/*package*/ class ByteBufferReader extends Reader {
+
+  private final static int LATIN1 = 0, UTF8 = 1, ANSEL = 2, OTHER = 3;
+
+  /** ansel single byte characters and bytes that can start a two byte sequence */
+  private static char[] ansel1byte;
+  private static boolean[] ansel2byte;
+
+  private ByteBuffer in;
+  private Charset charset;
+  private int mode;
+
+  /** decoder for OTHER and for malformed UTF-8 */
+  private CharsetDecoder decoder;
+  private boolean flushed = false;
+
+  /** decoded characters that didn't fit into the caller's buffer */
+  private CharBuffer pending;
+
+  /**
+   * Constructor
+   * @param in bytes to decode from the buffer's position to its limit
+   * @param charset the charset to decode
+   */
+  /*package*/ ByteBufferReader(ByteBuffer in, Charset charset) {
+
+    this.in = in;
+    this.charset = charset;
+
+    String name = charset.name();
+    if (charset instanceof AnselCharset) {
+      mode = ANSEL;
+      initAnsel();
+    } else if ("UTF-8".equals(name))
+      mode = UTF8;
+    else if ("ISO-8859-1".equals(name))
+      mode = LATIN1;
+    else {
+      mode = OTHER;
+      decoder = newDecoder();
+    }
+
+  }
+
+  /**
+   * A decoder that replaces malformed input like InputStreamReader does
+   */
+  private CharsetDecoder newDecoder() {
+    return charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * lookup tables for ansel
+   */
+  private synchronized static void initAnsel() {
+    if (ansel1byte!=null)
+      return;
+    char[] singles = new char[256];
+    boolean[] leads = new boolean[256];
+    for (int a=0;a<256;a++) {
+      singles[a] = (char)AnselCharset.Decoder.ansel1byte2unicode(a);
+      for (int b=0;b<256&&!leads[a];b++)
+        leads[a] = AnselCharset.Decoder.ansel2byte2unicode(a<<8|b)>0;
+    }
+    ansel2byte = leads;
+    ansel1byte = singles;
+  }
+
+  /**
+   * The number of bytes decoded so far
+   */
+  /*package*/ int getPosition() {
+    return in.position();
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+
+    if (len==0)
+      return 0;
+
+    // characters left over from last time?
+    if (pending!=null) {
+      int n = Math.min(len, pending.remaining());
+      pending.get(cbuf, off, n);
+      if (!pending.hasRemaining())
+        pending = null;
+      return n;
+    }
+
+    int n;
+    switch (mode) {
+      case LATIN1:
+        n = readLatin1(cbuf, off, len);
+        break;
+      case UTF8:
+        n = readUTF8(cbuf, off, len);
+        break;
+      case ANSEL:
+        n = readAnsel(cbuf, off, len);
+        break;
+      default:
+        n = readOther(cbuf, off, len);
+        break;
+    }
+
+    // nothing decoded only at the end of input
+    return n==0 ? -1 : n;
+  }
+
+  /**
+   * decode latin1 - one byte is one character
+   */
+  private int readLatin1(char[] cbuf, int off, int len) {
+    int pos = in.position();
+    int n = Math.min(len, in.limit()-pos);
+    for (int i=0;i<n;i++)
+      cbuf[off+i] = (char)(in.get(pos+i)&0xff);
+    ((Buffer)in).position(pos+n);
+    return n;
+  }
+
+  /**
+   * decode ansel - a combining diacritic followed by a character might form a single character
+   */
+  private int readAnsel(char[] cbuf, int off, int len) {
+    int pos = in.position(), limit = in.limit();
+    int n = 0;
+    while (n<len && pos<limit) {
+      int a = in.get(pos)&0xff;
+      if (ansel2byte[a] && pos+1<limit) {
+        int unicode = AnselCharset.Decoder.ansel2byte2unicode(a<<8 | in.get(pos+1)&0xff);
+        if (unicode>0) {
+          cbuf[off+n++] = (char)unicode;
+          pos += 2;
+          continue;
+        }
+      }
+      cbuf[off+n++] = ansel1byte[a];
+      pos++;
+    }
+    ((Buffer)in).position(pos);
+    return n;
+  }
+
+  /**
+   * decode utf8 - ascii, two and three byte sequences are decoded right here. Anything else is
+   * handed to a decoder up to the next ascii character (which can't be part of a multi-byte
+   * sequence)
+   */
+  private int readUTF8(char[] cbuf, int off, int len) {
+    int pos = in.position(), limit = in.limit();
+    int n = 0;
+    while (n<len && pos<limit) {
+
+      int a = in.get(pos);
+
+      // ascii
+      if (a>=0) {
+        cbuf[off+n++] = (char)a;
+        pos++;
+        continue;
+      }
+      a &= 0xff;
+
+      // 110xxxxx 10xxxxxx (no overlongs)
+      if ((a&0xE0)==0xC0 && a>=0xC2 && pos+1<limit) {
+        int b = in.get(pos+1);
+        if ((b&0xC0)==0x80) {
+          cbuf[off+n++] = (char)((a&0x1F)<<6 | b&0x3F);
+          pos += 2;
+          continue;
+        }
+      }
+
+      // 1110xxxx 10xxxxxx 10xxxxxx (no overlongs, no surrogates)
+      if ((a&0xF0)==0xE0 && pos+2<limit) {
+        int b = in.get(pos+1)&0xff, c = in.get(pos+2);
+        if ((b&0xC0)==0x80 && (c&0xC0)==0x80 && (a!=0xE0||b>=0xA0) && (a!=0xED||b<0xA0)) {
+          cbuf[off+n++] = (char)((a&0x0F)<<12 | (b&0x3F)<<6 | c&0x3F);
+          pos += 3;
+          continue;
+        }
+      }
+
+      // let the decoder handle the non-ascii run
+      int end = pos+1;
+      while (end<limit && in.get(end)<0) end++;
+      ByteBuffer run = in.duplicate();
+      ((Buffer)run).position(pos);
+      ((Buffer)run).limit(end);
+      CharBuffer chars = decode(run);
+      pos = end;
+      int fit = Math.min(len-n, chars.remaining());
+      chars.get(cbuf, off+n, fit);
+      n += fit;
+      if (chars.hasRemaining()) {
+        pending = chars;
+        break;
+      }
+    }
+    ((Buffer)in).position(pos);
+    return n;
+  }
+
+  /**
+   * decode a run of bytes completely
+   */
+  private CharBuffer decode(ByteBuffer run) {
+    if (decoder==null)
+      decoder = newDecoder();
+    try {
+      return decoder.reset().decode(run);
+    } catch (IOException e) {
+      // can't happen with replace
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * decode through the charset's decoder - at least one character unless input is exhausted
+   * and the decoder flushed. A surrogate pair doesn't fit into a single character so a
+   * temporary buffer is used for that and the overflow is kept pending.
+   */
+  private int readOther(char[] cbuf, int off, int len) {
+
+    CharBuffer out = len<2 ? CharBuffer.allocate(2) : CharBuffer.wrap(cbuf, off, len);
+    int start = out.position();
+    while (out.position()==start && !flushed) {
+      decoder.decode(in, out, true);
+      if (!in.hasRemaining() && decoder.flush(out)==CoderResult.UNDERFLOW)
+        flushed = true;
+    }
+
+    if (out.array()==cbuf)
+      return out.position()-start;
+
+    out.flip();
+    int n = Math.min(len, out.remaining());
+    out.get(cbuf, off, n);
+    if (out.hasRemaining())
+      pending = out;
+    return n;
+  }
+
+  @Override
+  public void close() {
+    // nothing to do - a mapped buffer is released when garbage collected
+  }
+
+} //ByteBufferReader
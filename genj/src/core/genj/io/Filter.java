@@ -25,9 +25,11 @@ import genj.gedcom.Property;
 import genj.gedcom.PropertyXRef;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -43,22 +45,37 @@ public interface Filter {
   
   public static class Union implements Filter {
 
-    private Set<Property> vetoed;
+    /** entities that passed (null without filters) - typically way less than the vetoed ones */
+    private Set<Entity> passed;
+    private Set<Property> vetoed = new HashSet<Property>();
     
     public Union(Gedcom gedcom, Collection<Filter> filters) {
+      
+      if (filters.isEmpty())
+        return;
+      
+      // check entities first - what's vetoed as a whole doesn't need its properties looked at
+      List<Entity> entities = new ArrayList<Entity>();
+      for (Entity e : gedcom.getEntities()) {
+        if (!isVetoed(e, filters))
+          entities.add(e);
+      }
+      passed = new HashSet<Entity>(entities);
 
-      // go through all entities/properties and check supplied filters
-      vetoed = new HashSet<Property>();    
-      for (Entity e : gedcom.getEntities()) 
-        scan(e, filters);
+      // go through properties of what's left and check supplied filters
+      Deque<Property> transitive = new ArrayDeque<Property>();
+      for (Entity e : entities) {
+        for (Property p : e.getProperties())
+          scan(p, filters, transitive);
+      }
 
-      // check transitive vetoes
-      Deque<Property> transitive = new ArrayDeque<Property>(vetoed);
+      // check transitive vetoes of vetoed properties (references into vetoed entities are caught in scan)
       while (!transitive.isEmpty()) {
         Property property = transitive.removeLast();
         for (PropertyXRef xref : property.getProperties(PropertyXRef.class)) {
           if (!xref.isValid()) continue;
           PropertyXRef target = xref.getTarget();
+          if (veto(target.getEntity())) continue;
           if (!vetoed.add(target)) continue;
           transitive.add(target);
         }
@@ -66,18 +83,22 @@ public interface Filter {
       
     }
     
-    private void scan(Entity entity, Collection<Filter> filters) {
-      if (isVetoed(entity, filters))
-        vetoed.add(entity);
-      else for (Property p : entity.getProperties())
-        scan(p, filters);
-    }
-    
-    private void scan(Property property, Collection<Filter> filters) {
-      if (isVetoed(property, filters))
-        vetoed.add(property);
-      else for (Property p : property.getProperties())
-        scan(p, filters);
+    private void scan(Property property, Collection<Filter> filters, Deque<Property> transitive) {
+      if (isVetoed(property, filters)) {
+        if (vetoed.add(property))
+          transitive.add(property);
+        return;
+      }
+      // a reference into a vetoed entity goes, too
+      if (property instanceof PropertyXRef) {
+        PropertyXRef xref = (PropertyXRef)property;
+        if (xref.isValid() && veto(xref.getTargetEntity())) {
+          vetoed.add(property);
+          return;
+        }
+      }
+      for (Property p : property.getProperties())
+        scan(p, filters, transitive);
     }
     
     private boolean isVetoed(Entity entity, Collection<Filter> filters) {
@@ -103,7 +124,7 @@ public interface Filter {
     }
 
     public boolean veto(Entity entity) {
-      return vetoed.contains(entity);
+      return passed!=null && !passed.contains(entity);
     }
 
   }
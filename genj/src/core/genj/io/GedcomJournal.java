@@ -0,0 +1,721 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.io;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomBatchListener;
+import genj.gedcom.GedcomChanges;
+import genj.gedcom.GedcomListener;
+import genj.gedcom.GedcomListenerAdapter;
+import genj.gedcom.PropertyXRef;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal next to a gedcom file - each unit of work is appended once it's
+ * committed (entities added or changed as their gedcom lines, entities deleted by tag
+ * and id) and forced to disk. Saving marks what's in the journal as saved, reading the
+ * file replays the journal on top of it (see GedcomReaderFactory) and compacting writes
+ * the file again.
+ * <p>
+ * Records are whole entities so replaying them more than once doesn't change the outcome.
+ * A journal starts with the length and timestamp of the file it applies to and is set aside
+ * for any other version of the file. Compacting adds the new version's length and timestamp
+ * before the file is replaced, so the journal applies to the old and the new file until it's
+ * replaced by one with what came in meanwhile.
+ */
+public class GedcomJournal implements GedcomBatchListener {
+
+  private final static Logger LOG = Logger.getLogger("genj.io");
+
+  /** suffix of a journal next to a gedcom file */
+  public final static String SUFFIX = ".journal";
+
+  private final static Charset UTF8 = Charset.forName("UTF-8");
+
+  /** lines other than gedcom lines */
+  private final static String
+    BASE = "BASE ",
+    DELETE = "DEL ",
+    COMMIT = "COMMIT ",
+    SAVE = "SAVE";
+
+  /** size of journaled changes worth compacting (at least - the file's size counts as well) */
+  private final static long COMPACT_SIZE = 64*1024;
+
+  /** compactions run in the background */
+  private final static ExecutorService COMPACTIONS = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new GedcomReaderFactory.Daemons("genj.io.journal"));
+
+  /** files compacted after their journal was closed - reading them waits for that */
+  private final static Set<File> CLOSING = new HashSet<File>();
+
+  /** state */
+  private Gedcom gedcom;
+  private File file, journal;
+  private FileChannel channel;
+  private String header;
+  private long end, saved, base;
+  private int compactions;
+  private boolean isBroken, isClosed, isTouched;
+
+  /** units of work after closing - what's compacted then isn't all saved */
+  private GedcomListener touched = new GedcomListenerAdapter() {
+    @Override
+    public void gedcomWriteLockAcquired(Gedcom gedcom) {
+      touch();
+    }
+  };
+
+  /**
+   * Constructor - starts journaling changes to a gedcom as read from its file (with the
+   * journal next to it replayed)
+   */
+  public GedcomJournal(Gedcom gedcom) throws IOException {
+
+    this.gedcom = gedcom;
+
+    init();
+
+    // pick up where we left off - anything torn at the end is dropped
+    Log log = read(file);
+    if (log!=null&&log.base>0) {
+      base = log.base;
+      end = log.end;
+      saved = log.saved;
+      if (journal.length()>end)
+        channel().truncate(end);
+    } else if (log!=null) {
+      setAside();
+    }
+
+    // start listening
+    gedcom.addGedcomBatchListener(this);
+  }
+
+  private void init() throws IOException {
+    File local = gedcom.getOrigin().getFile();
+    if (local==null)
+      throw new IOException("Can't journal changes to "+gedcom.getName()+" without a local file");
+    file = local.getCanonicalFile();
+    journal = getFile(file);
+    header = getHeader(gedcom);
+    end = saved = base = 0;
+    isBroken = false;
+  }
+
+  /**
+   * Keep a journal for another version of the file out of the way - it might still hold changes
+   */
+  private void setAside() {
+    
+    if (journal.length()==0) {
+      journal.delete();
+      return;
+    }
+    
+    File aside = new File(journal.getPath()+"."+journal.lastModified());
+    if (journal.renameTo(aside)) {
+      LOG.warning("Journal "+journal+" doesn't apply to "+file+" - kept as "+aside);
+    } else {
+      LOG.warning("Journal "+journal+" doesn't apply to "+file+" and can't be kept aside - saving all of it next time");
+      isBroken = true;
+    }
+  }
+
+  /**
+   * The journal for a gedcom file
+   */
+  public static File getFile(File gedcom) {
+    return new File(gedcom.getPath()+SUFFIX);
+  }
+
+  /**
+   * What a journal's base line looks like for the current version of a gedcom file
+   */
+  private static String getBase(File file) {
+    return BASE+file.length()+" "+file.lastModified();
+  }
+
+  /**
+   * What's written to a file's header - a change to that can't be journaled
+   */
+  private static String getHeader(Gedcom gedcom) {
+    return gedcom.getEncoding()+"|"+gedcom.getLanguage()+"|"+gedcom.getPlaceFormat()+"|"+gedcom.getGrammar().getVersion()+"|"+(gedcom.getSubmitter()!=null ? gedcom.getSubmitter().getId() : "");
+  }
+
+  /**
+   * Key of an entity in a journal
+   */
+  private static String getKey(String tag, String id) {
+    return tag+" "+id;
+  }
+
+  /**
+   * Gedcom callback - the changes of a unit of work are appended and forced to disk
+   */
+  public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+
+    if (isBroken)
+      return;
+
+    try {
+
+      // entities don't change while we look at them
+      byte[] bytes;
+      Lock lock = gedcom.getReadLock();
+      lock.lock();
+      try {
+        bytes = getBytes(changes);
+      } finally {
+        lock.unlock();
+      }
+
+      append(bytes);
+
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Can't journal changes to "+gedcom.getName()+" - saving all of it next time", e);
+      isBroken = true;
+    }
+
+  }
+
+  /**
+   * the changes of a unit of work as journaled
+   */
+  private byte[] getBytes(GedcomChanges changes) throws IOException {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    Writer out = new OutputStreamWriter(bytes, UTF8);
+
+    // deleted first (and entities known by a different id before)
+    for (Entity entity : changes.getDeleted()) {
+      String id = changes.getPreviousID(entity);
+      out.write(DELETE+getKey(entity.getTag(), id!=null ? id : entity.getId())+"\n");
+    }
+    Set<Entity> entities = new LinkedHashSet<Entity>(changes.getAdded());
+    for (Entity entity : changes.getChanged()) {
+      entities.add(entity);
+      String id = changes.getPreviousID(entity);
+      if (id!=null) {
+        out.write(DELETE+getKey(entity.getTag(), id)+"\n");
+        // references to it show the new id
+        for (PropertyXRef xref : entity.getProperties(PropertyXRef.class)) {
+          Entity other = xref.getTargetEntity();
+          if (other!=null)
+            entities.add(other);
+        }
+      }
+    }
+    out.flush();
+
+    // then what's new
+    PropertyWriter writer = new PropertyWriter(out, false);
+    for (Entity entity : entities)
+      write(entity, writer);
+
+    // commit with checksum
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.write(COMMIT+Long.toHexString(crc.getValue())+"\n");
+    out.flush();
+
+    return bytes.toByteArray();
+  }
+
+  private void write(Entity entity, PropertyWriter writer) throws IOException {
+    if (entity.getId().length()==0)
+      throw new IOException("Can't journal entity "+entity.getTag()+" without ID");
+    writer.write(0, entity);
+  }
+
+  private synchronized FileChannel channel() throws IOException {
+    if (channel==null)
+      channel = new RandomAccessFile(journal, "rw").getChannel();
+    return channel;
+  }
+
+  private synchronized void append(byte[] bytes) throws IOException {
+
+    // a new journal for the file as it is now (never over an old one)
+    if (base==0) {
+      if (channel().size()>0)
+        throw new IOException("Journal "+journal+" is in the way");
+      byte[] line = (getBase(file)+"\n").getBytes(UTF8);
+      write(line, 0);
+      end = saved = base = line.length;
+    }
+
+    write(bytes, end);
+    channel.force(false);
+    end += bytes.length;
+  }
+
+  private void write(byte[] bytes, long pos) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining())
+      pos += channel().write(buffer, pos);
+  }
+
+  /**
+   * Save what's been journaled
+   * @return false if the journal can't account for all changes and the file has to be written
+   */
+  public synchronized boolean save() throws IOException {
+
+    // a different file or a change we couldn't journal?
+    File local = gedcom.getOrigin().getFile();
+    if (isBroken||local==null||!file.equals(local.getCanonicalFile())||!header.equals(getHeader(gedcom)))
+      return false;
+
+    // mark what's saved
+    if (end>saved) {
+      append((SAVE+"\n").getBytes(UTF8));
+      saved = end;
+    }
+
+    // time to compact?
+    if (compactions==0 && end-base > Math.max(COMPACT_SIZE, file.length()/8)) {
+      compactions++;
+      COMPACTIONS.execute(new Runnable() {
+        public void run() {
+          try {
+            compact();
+          } catch (Throwable t) {
+            LOG.log(Level.WARNING, "Can't compact journal of "+gedcom.getName(), t);
+          } finally {
+            compacted();
+          }
+        }
+      });
+    }
+
+    return true;
+  }
+
+  /**
+   * The file was written with all changes - the journal starts over
+   */
+  public synchronized void reset() throws IOException {
+    close(channel);
+    channel = null;
+    init();
+    if (journal.exists()&&!journal.delete())
+      throw new IOException("Can't delete journal "+journal);
+  }
+
+  /**
+   * Stop journaling - unsaved changes are dropped from the journal and saved ones are
+   * compacted into the file in the background (unless there are unsaved ones in the gedcom)
+   */
+  public void close() {
+
+    // no unit of work is half done while we look
+    Lock lock = gedcom.getReadLock();
+    lock.lock();
+    try {
+      synchronized (this) {
+        
+        if (isClosed)
+          return;
+        gedcom.removeGedcomBatchListener(this);
+        isClosed = true;
+        
+        boolean isUnsaved = end>saved || gedcom.hasUndeliveredChanges();
+        try {
+          if (end>saved) {
+            channel().truncate(saved);
+            end = saved;
+          }
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "Can't drop unsaved changes from journal of "+gedcom.getName(), e);
+        }
+        
+        if (isUnsaved || isBroken || end==base) {
+          if (compactions==0) {
+            close(channel);
+            channel = null;
+          }
+          return;
+        }
+        
+        // saved changes go into the file (after a compaction running already)
+        gedcom.addGedcomListener(touched);
+        compactions++;
+        synchronized (CLOSING) {
+          CLOSING.add(file);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    
+    COMPACTIONS.execute(new Runnable() {
+      public void run() {
+        try {
+          compact();
+        } catch (Throwable t) {
+          LOG.log(Level.WARNING, "Can't compact journal of "+gedcom.getName()+" - changes stay in the journal", t);
+        } finally {
+          gedcom.removeGedcomListener(touched);
+          compacted();
+          synchronized (CLOSING) {
+            CLOSING.remove(file);
+            CLOSING.notifyAll();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Wait for a compaction of a file whose journal was closed
+   */
+  /*package*/ static void awaitClose(File file) throws IOException {
+    file = file.getCanonicalFile();
+    synchronized (CLOSING) {
+      while (CLOSING.contains(file)) try {
+        CLOSING.wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private synchronized void touch() {
+    isTouched = true;
+  }
+
+  /**
+   * whether everything in the gedcom is journaled and saved (while no unit of work can run)
+   */
+  private synchronized boolean isSaved() {
+    return end==saved && !isTouched && !gedcom.hasUndeliveredChanges();
+  }
+
+  private synchronized void compacted() {
+    compactions--;
+    if (isClosed&&compactions==0) {
+      close(channel);
+      channel = null;
+      // nothing left to replay
+      if (base>0&&end==base)
+        journal.delete();
+    }
+  }
+
+  private static void close(FileChannel channel) {
+    if (channel!=null) try {
+      channel.close();
+    } catch (IOException e) {
+      // ignored
+    }
+  }
+
+  /**
+   * Write the file with everything saved so far (including what's in the journal) - what
+   * comes in meanwhile stays in the journal. Nothing's written if the file would contain
+   * changes that aren't saved. Each step leaves a file and journal that
+   * go together: the journal learns about the new file before it's moved into place
+   * and is replaced by a shorter one only after that.
+   * @return whether the file was written (not while there are unsaved changes)
+   */
+  public boolean compact() throws IOException {
+
+    long from, marker;
+    byte[] line;
+    File temp = File.createTempFile("genj", ".ged", file.getParentFile());
+    temp.deleteOnExit();
+
+    try {
+
+      // what's in the journal up to here goes into the file - it's fine to see later changes
+      // as well (each entity is written as it is at the time) since they're replayed again
+      synchronized (this) {
+        if (isBroken || base==0 || end>saved || !header.equals(getHeader(gedcom)))
+          return false;
+        from = end;
+      }
+      checkpoint("started");
+
+      // units of work up to the point the entities are looked at are in the file - all saved?
+      final boolean[] isSaved = new boolean[1];
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        new GedcomWriter(gedcom, out) {
+          @Override
+          void snapshot() {
+            isSaved[0] = isSaved();
+          }
+        }.write();
+      } finally {
+        out.close();
+      }
+      if (!isSaved[0])
+        return false;
+      force(temp);
+      
+      // the journal applies to the new file as well
+      synchronized (this) {
+        line = (getBase(temp)+"\n").getBytes(UTF8);
+        marker = end;
+        write(line, end);
+        channel.force(false);
+        if (saved==end)
+          saved += line.length;
+        end += line.length;
+      }
+      checkpoint("rebased");
+
+      // keep a backup and move it into place
+      File bak = new File(file.getAbsolutePath()+"~");
+      Files.copy(file.toPath(), bak.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      checkpoint("moved");
+
+      // replace the journal with one of what came in meanwhile on top of the new file
+      synchronized (this) {
+
+        // (around the line for the new file)
+        byte[] tail = new byte[(int)(end-from-line.length)];
+        int head = (int)(marker-from);
+        read(tail, 0, head, from);
+        read(tail, head, tail.length-head, marker+line.length);
+
+        File next = new File(journal.getPath()+".tmp");
+        FileOutputStream jout = new FileOutputStream(next);
+        try {
+          jout.write(line);
+          jout.write(tail);
+          jout.getFD().sync();
+        } finally {
+          jout.close();
+        }
+        
+        close(channel);
+        channel = null;
+        Files.move(next.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        saved = line.length + Math.max(0, saved<=marker ? saved-from : saved-from-line.length);
+        base = line.length;
+        end = line.length + tail.length;
+      }
+
+    } finally {
+      temp.delete();
+    }
+
+    LOG.fine("Compacted journal of "+gedcom.getName()+" into "+file);
+
+    return true;
+  }
+  
+  private void read(byte[] bytes, int off, int len, long pos) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, off, len);
+    while (buffer.hasRemaining()) {
+      if (channel().read(buffer, pos+buffer.position()-off)<0)
+        throw new IOException("Can't read journal "+journal);
+    }
+  }
+
+  /**
+   * Hook for tests - called between the steps of a compaction
+   */
+  /*package*/ void checkpoint(String step) throws IOException {
+  }
+
+  private static void force(File file) throws IOException {
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      out.getChannel().force(true);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read what's been committed to the journal of a gedcom file
+   * @return null if there's no journal
+   */
+  /*package*/ static Log read(File file) throws IOException {
+
+    File journal = getFile(file);
+    if (!journal.isFile())
+      return null;
+
+    byte[] bytes = new byte[(int)journal.length()];
+    FileInputStream in = new FileInputStream(journal);
+    try {
+      int read = 0;
+      while (read<bytes.length) {
+        int n = in.read(bytes, read, bytes.length-read);
+        if (n<0)
+          break;
+        read += n;
+      }
+    } finally {
+      in.close();
+    }
+
+    Log log = new Log();
+
+    // for this version of the file? (or the one it was compacted into)
+    String version = getBase(file);
+    int pos = 0, eol = indexOf(bytes, pos);
+    if (eol<0 || !new String(bytes, 0, eol, UTF8).startsWith(BASE)) {
+      LOG.info("Ignoring journal "+journal+" without a base");
+      return log;
+    }
+    boolean applies = version.equals(new String(bytes, 0, eol, UTF8).trim());
+    pos = eol+1;
+    log.base = log.end = log.saved = pos;
+
+    // units of work and saves until something's torn
+    Map<String, String> pending = new LinkedHashMap<String, String>();
+    String key = null;
+    StringBuilder record = new StringBuilder();
+    int start = pos;
+    while ((eol=indexOf(bytes, pos))>=0) {
+
+      String line = new String(bytes, pos, eol-pos, UTF8);
+      if (line.endsWith("\r"))
+        line = line.substring(0, line.length()-1);
+
+      // a line of a record
+      if (line.length()>0&&Character.isDigit(line.charAt(0))) {
+        if (line.startsWith("0 ")) {
+          if (key!=null)
+            put(pending, key, record.toString());
+          key = null;
+          record.setLength(0);
+          String[] tokens = line.split(" ", 4);
+          if (tokens.length<3 || tokens[1].length()<3 || tokens[1].charAt(0)!='@')
+            break;
+          key = getKey(tokens[2], tokens[1].substring(1, tokens[1].length()-1));
+        } else if (key==null) {
+          break;
+        }
+        record.append(line).append('\n');
+        pos = eol+1;
+        continue;
+      }
+
+      // end of the record before
+      if (key!=null)
+        put(pending, key, record.toString());
+      key = null;
+      record.setLength(0);
+
+      if (line.startsWith(DELETE)) {
+        put(pending, line.substring(DELETE.length()), null);
+      } else if (line.startsWith(COMMIT)) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, start, pos-start);
+        if (!Long.toHexString(crc.getValue()).equals(line.substring(COMMIT.length())))
+          break;
+        for (Map.Entry<String, String> entry : pending.entrySet())
+          put(log.records, entry.getKey(), entry.getValue());
+        pending.clear();
+        log.end = eol+1;
+        start = eol+1;
+      } else if (line.equals(SAVE) && start==pos) {
+        log.end = log.saved = eol+1;
+        start = eol+1;
+      } else if (line.startsWith(BASE) && start==pos) {
+        applies |= line.equals(version);
+        if (log.saved==log.end)
+          log.saved = eol+1;
+        log.end = eol+1;
+        start = eol+1;
+      } else {
+        break;
+      }
+
+      pos = eol+1;
+    }
+
+    if (!applies) {
+      LOG.info("Ignoring journal "+journal+" of a different version of "+file);
+      return new Log();
+    }
+
+    if (log.end<bytes.length)
+      LOG.info("Dropping "+(bytes.length-log.end)+" bytes of uncommitted changes from journal "+journal);
+
+    return log;
+  }
+
+  private static void put(Map<String, String> records, String key, String record) {
+    // keep in order of last change
+    records.remove(key);
+    records.put(key, record);
+  }
+
+  private static int indexOf(byte[] bytes, int from) {
+    for (int i=from; i<bytes.length; i++) {
+      if (bytes[i]=='\n')
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * What's committed to a journal
+   */
+  /*package*/ static class Log {
+
+    /** last record of entities by tag and id - null for deleted */
+    /*package*/ Map<String, String> records = new LinkedHashMap<String, String>();
+
+    /** where units of work start (0 if the journal doesn't apply), end, and what's saved */
+    /*package*/ long base, end, saved;
+
+    /*package*/ boolean isUnsaved() {
+      return end>saved;
+    }
+  }
+
+} //GedcomJournal
@@ -0,0 +1,407 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.io;
+
+import genj.util.Resources;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A lexer for gedcom lines "level [@xref@] tag [value]". Lines are read into a
+ * buffer that is reused from line to line - level, xref, tag and value are kept
+ * as offsets into that buffer and only materialized as strings when asked for.
+ * Tags are shared through a table of well known tags.
+ */
+/*package*/ final class GedcomLineLexer {
+
+  private final static Resources RESOURCES = Resources.get("genj.io");
+
+  /** the tag we're using if there is none */
+  private final static String NO_TAG = "_TAG";
+
+  /** input */
+  private Reader in;
+  private boolean eof = false;
+
+  /** buffer with unread characters in [pos,limit[ */
+  private char[] buf = new char[8192];
+  private int pos = 0, limit = 0;
+
+  /** whether the last line ended with \r and a following \n has to be skipped */
+  private boolean skipLF = false;
+
+  /** the current line in [start,end[ */
+  private int start = 0, end = 0;
+
+  /** the current line's parsed pieces */
+  private int level;
+  private String tag;
+  private int xrefStart, xrefEnd;
+  private int valueStart, valueEnd;
+  private String xref, value;
+
+  /**
+   * Constructor
+   */
+  /*package*/ GedcomLineLexer(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * Constructor for lines already in memory
+   */
+  /*package*/ GedcomLineLexer(char[] text) {
+    this.buf = text;
+    this.limit = text.length;
+    this.eof = true;
+  }
+
+  /**
+   * Read the next raw line - the previous line's content is not available after this
+   * @return false if there are no more lines
+   */
+  /*package*/ boolean next() throws IOException {
+
+    // forget previous line
+    xref = null;
+    value = null;
+
+    int i = pos;
+    while (true) {
+
+      // skip a \n following a \r
+      if (skipLF && i<limit) {
+        if (buf[i]=='\n')
+          pos = ++i;
+        skipLF = false;
+      }
+
+      // look for end of line
+      for (;i<limit;i++) {
+        char c = buf[i];
+        if (c=='\n'||c=='\r') {
+          start = pos;
+          end = i;
+          pos = i+1;
+          skipLF = c=='\r';
+          return true;
+        }
+      }
+
+      // no more input? whatever is left is the last line
+      if (eof) {
+        if (pos==limit)
+          return false;
+        start = pos;
+        end = limit;
+        pos = limit;
+        return true;
+      }
+
+      // make room and grab more
+      if (pos>0) {
+        System.arraycopy(buf, pos, buf, 0, limit-pos);
+        i -= pos;
+        limit -= pos;
+        pos = 0;
+      }
+      if (limit==buf.length) {
+        char[] bigger = new char[buf.length*2];
+        System.arraycopy(buf, 0, bigger, 0, limit);
+        buf = bigger;
+      }
+      int read = in.read(buf, limit, buf.length-limit);
+      if (read<0)
+        eof = true;
+      else
+        limit += read;
+    }
+
+  }
+
+  /**
+   * Whether the current line is empty (when trimmed)
+   */
+  /*package*/ boolean isBlank() {
+    for (int i=start;i<end;i++) {
+      if (buf[i]>' ')
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Whether the current raw line has a level number that is zero
+   */
+  /*package*/ boolean isLevelZero() {
+    int i = skipDelimiters(start);
+    if (i<end && (buf[i]=='+'||buf[i]=='-')) i++;
+    int zeros = 0;
+    while (i<end && buf[i]=='0') { i++; zeros++; }
+    return zeros>0 && (i==end || isDelimiter(buf[i]));
+  }
+
+  /**
+   * Append the current raw line to a buffer
+   */
+  /*package*/ void appendTo(StringBuilder result) {
+    result.append(buf, start, end-start);
+  }
+
+  /**
+   * Parse the current line
+   * @param useIndents whether to use spaces as indent declarations
+   * @param line the line number for error reporting
+   */
+  /*package*/ void parse(boolean useIndents, int line) throws GedcomFormatException {
+
+    int i = start;
+
+    // .. calculate level by looking at spaces or parsing a number
+    if (useIndents) {
+      level = 0;
+      while (i<end && buf[i]==' ') { i++; level++; }
+      level++;
+    } else {
+      i = skipDelimiters(i);
+      i = parseLevel(i, line);
+    }
+
+    // .. tag (?)
+    i = skipDelimiters(i);
+    int tagStart = i;
+    i = skipToken(i);
+    int tagEnd = i;
+
+    // .. xref ?
+    xrefStart = xrefEnd = 0;
+    if (level==0 && tagStart<tagEnd && buf[tagStart]=='@') {
+
+      // .. valid ?
+      if (buf[tagEnd-1]!='@' || tagEnd-tagStart<=2)
+        throw new GedcomFormatException(RESOURCES.getString("read.error.invalidid"), line);
+
+      // .. indeed, xref !
+      xrefStart = tagStart+1;
+      xrefEnd = tagEnd-1;
+
+      // .. tag is the next token
+      i = skipDelimiters(i);
+      if (i==end)
+        throw new GedcomFormatException(RESOURCES.getString("read.error.cantparse"), line);
+      tagStart = i;
+      i = skipToken(i);
+      tagEnd = i;
+    }
+    tag = tagStart<tagEnd ? TagTable.get(buf, tagStart, tagEnd-tagStart) : NO_TAG;
+
+    // .. value - everything to the end of line if there's more than delimiters
+    // (strip only the leading space that forms delimiter to tag/xref)
+    if (skipDelimiters(i)==end) {
+      valueStart = valueEnd = 0;
+    } else {
+      valueStart = buf[i]==' ' ? i+1 : i;
+      valueEnd = end;
+    }
+
+    // done
+  }
+
+  /**
+   * parse a level number (like Integer.parseInt() would)
+   */
+  private int parseLevel(int i, int line) throws GedcomFormatException {
+
+    boolean negative = false;
+    if (i<end && (buf[i]=='+'||buf[i]=='-')) {
+      negative = buf[i]=='-';
+      i++;
+    }
+
+    long result = 0;
+    int digits = 0;
+    for (;i<end&&!isDelimiter(buf[i]);i++,digits++) {
+      char c = buf[i];
+      if (c<'0'||c>'9'||result>Integer.MAX_VALUE)
+        throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), line);
+      result = result*10 + (c-'0');
+    }
+    if (digits==0||result>Integer.MAX_VALUE)
+      throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), line);
+
+    level = (int)(negative ? -result : result);
+
+    return i;
+  }
+
+  private int skipDelimiters(int i) {
+    while (i<end && isDelimiter(buf[i])) i++;
+    return i;
+  }
+
+  private int skipToken(int i) {
+    while (i<end && !isDelimiter(buf[i])) i++;
+    return i;
+  }
+
+  /** 20040322 use space and also \t for delim in case someone used tabs in file */
+  private static boolean isDelimiter(char c) {
+    return c==' '||c=='\t';
+  }
+
+  /**
+   * level of current line
+   */
+  /*package*/ int getLevel() {
+    return level;
+  }
+
+  /**
+   * tag of current line
+   */
+  /*package*/ String getTag() {
+    return tag;
+  }
+
+  /**
+   * xref of current line (empty if n/a)
+   */
+  /*package*/ String getXRef() {
+    if (xref==null)
+      xref = xrefStart<xrefEnd ? new String(buf, xrefStart, xrefEnd-xrefStart) : "";
+    return xref;
+  }
+
+  /**
+   * value of current line (empty if n/a)
+   */
+  /*package*/ String getValue() {
+    if (value==null)
+      value = valueStart<valueEnd ? new String(buf, valueStart, valueEnd-valueStart) : "";
+    return value;
+  }
+
+  /**
+   * close input
+   */
+  /*package*/ void close() throws IOException {
+    if (in!=null)
+      in.close();
+  }
+
+  /**
+   * A table of tags - for tags we expect a lot of repeating strings (limited number of tags)
+   * so we share string instances. The table is pre-seeded with well known tags and shared by
+   * concurrent readers - new tags go into a free slot (a reader missing it falls back to add())
+   * and only a bigger table is published as a new array.
+   */
+  private static class TagTable {
+
+    private final static String[] SEED = {
+      "HEAD", "TRLR", "INDI", "FAM", "OBJE", "NOTE", "SOUR", "SUBM", "SUBN", "REPO",
+      "NAME", "GIVN", "SURN", "NPFX", "NSFX", "NICK", "SPFX", "SEX", "TITL", "OCCU", "RELI", "EDUC", "RESI", "NATI",
+      "BIRT", "CHR", "BAPM", "CONF", "DEAT", "BURI", "CREM", "ADOP", "PROB", "WILL", "GRAD", "RETI", "EVEN", "CENS", "EMIG", "IMMI", "NATU",
+      "MARR", "MARB", "MARC", "MARL", "MARS", "DIV", "DIVF", "ENGA", "ANUL",
+      "DATE", "TIME", "PLAC", "ADDR", "ADR1", "ADR2", "CITY", "STAE", "POST", "CTRY", "PHON", "EMAIL", "WWW", "AGE", "AGNC", "CAUS", "TYPE",
+      "FAMC", "FAMS", "HUSB", "WIFE", "CHIL", "ASSO", "RELA", "PEDI", "ALIA", "ANCI", "DESI", "NCHI", "NMR",
+      "CONT", "CONC", "PAGE", "DATA", "TEXT", "QUAY", "ROLE", "AUTH", "PUBL", "ABBR", "CALN", "MEDI", "FILE", "FORM", "BLOB",
+      "CHAN", "REFN", "RIN", "RFN", "AFN", "_UID", "RESN", "LANG", "CHAR", "GEDC", "VERS", "DEST", "CORP", "COPR", "MAP", "LATI", "LONG",
+      "BAPL", "CONL", "ENDL", "SLGC", "SLGS", "TEMP", "STAT", NO_TAG
+    };
+
+    private static volatile String[] table = new String[512];
+    private static int size = 0;
+    static {
+      for (String tag : SEED)
+        add(tag.toCharArray(), 0, tag.length());
+    }
+
+    /**
+     * Lookup tag for given characters
+     */
+    static String get(char[] buf, int off, int len) {
+      String[] t = table;
+      for (int i=hash(buf, off, len)&(t.length-1); ; i=(i+1)&(t.length-1)) {
+        String s = t[i];
+        if (s==null)
+          break;
+        if (matches(s, buf, off, len))
+          return s;
+      }
+      return add(buf, off, len);
+    }
+
+    /**
+     * Add a new tag
+     */
+    private static synchronized String add(char[] buf, int off, int len) {
+
+      // try again with what's current now
+      String[] t = table;
+      int i = hash(buf, off, len)&(t.length-1);
+      for (; t[i]!=null ; i=(i+1)&(t.length-1)) {
+        if (matches(t[i], buf, off, len))
+          return t[i];
+      }
+
+      // keep an intern'd instance - in place unless the table has to grow
+      String result = new String(buf, off, len).intern();
+      if ((size+1)*2>t.length) {
+        String[] bigger = new String[t.length*2];
+        for (String s : t) {
+          if (s==null) continue;
+          int j = hash(s.toCharArray(), 0, s.length())&(bigger.length-1);
+          while (bigger[j]!=null) j = (j+1)&(bigger.length-1);
+          bigger[j] = s;
+        }
+        t = bigger;
+        i = hash(buf, off, len)&(t.length-1);
+        while (t[i]!=null) i = (i+1)&(t.length-1);
+        t[i] = result;
+        table = t;
+      } else {
+        t[i] = result;
+      }
+      size++;
+
+      return result;
+    }
+
+    private static int hash(char[] buf, int off, int len) {
+      int h = 0;
+      for (int i=0;i<len;i++)
+        h = 31*h + buf[off+i];
+      return h ^ (h>>>16);
+    }
+
+    private static boolean matches(String s, char[] buf, int off, int len) {
+      if (s.length()!=len)
+        return false;
+      for (int i=0;i<len;i++) {
+        if (s.charAt(i)!=buf[off+i])
+          return false;
+      }
+      return true;
+    }
+
+  } //TagTable
+
+} //GedcomLineLexer
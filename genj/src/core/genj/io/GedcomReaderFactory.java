@@ -26,6 +26,7 @@ import genj.gedcom.Gedcom;
 import genj.gedcom.GedcomException;
 import genj.gedcom.Grammar;
 import genj.gedcom.Property;
+import genj.gedcom.PropertyAssociation;
 import genj.gedcom.PropertyDate;
 import genj.gedcom.PropertyXRef;
 import genj.gedcom.Submitter;
@@ -34,12 +35,32 @@ import genj.util.MeteredInputStream;
 import genj.util.Origin;
 import genj.util.Resources;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,16 +78,90 @@ public class GedcomReaderFactory {
   /** estimated average byte size of one entity */
   private final static int ENTITY_AVG_SIZE = 150;
   
+  /** number of records read ahead per thread during a parallel load */
+  private final static int RECORDS_PER_THREAD = 64;
+  
   /**
    * factory method
    */
   public static GedcomReader createReader(Origin origin, GedcomReaderContext context) throws IOException {
+    return createReader(origin, context, getDefaultThreads());
+  }
+
+  /**
+   * factory method
+   * @param threads number of threads to use for reading records and linking references (1 for sequential)
+   */
+  public static GedcomReader createReader(Origin origin, GedcomReaderContext context, int threads) throws IOException {
     LOG.info("Initializing reader for "+origin);
-    return new Impl(new Gedcom(origin), origin.open(), context!=null?context:new DefaultContext());
+    // a local file we can map into memory? (once its journal is compacted)
+    File file = origin.getFile();
+    if (file!=null&&file.isFile())
+      GedcomJournal.awaitClose(file);
+    ByteBuffer mapped = map(file);
+    Impl result;
+    if (mapped!=null)
+      result = new Impl(new Gedcom(origin), mapped, context!=null?context:new DefaultContext(), threads);
+    else
+      result = new Impl(new Gedcom(origin), origin.open(), context!=null?context:new DefaultContext(), threads);
+    // changes journaled since the file was written?
+    if (file!=null&&file.isFile())
+      result.journal = GedcomJournal.read(file);
+    return result;
   }
 
   public static GedcomReader createReader(InputStream in, GedcomReaderContext context) throws IOException {
-    return new Impl(new Gedcom(), in, context!=null?context:new DefaultContext());
+    return createReader(in, context, getDefaultThreads());
+  }
+  
+  /**
+   * factory method
+   * @param threads number of threads to use for reading records and linking references (1 for sequential)
+   */
+  public static GedcomReader createReader(InputStream in, GedcomReaderContext context, int threads) throws IOException {
+    return new Impl(new Gedcom(), in, context!=null?context:new DefaultContext(), threads);
+  }
+  
+  /**
+   * map a local file into memory - this is skipped on windows by default since a mapped file
+   * can't be renamed or deleted until the mapping is garbage collected
+   * @return mapped file or null if n/a
+   */
+  private static ByteBuffer map(File file) {
+    
+    if (file==null||!file.isFile()||file.length()>Integer.MAX_VALUE)
+      return null;
+    
+    String mmap = EnvironmentChecker.getProperty("genj.gedcom.mmap", EnvironmentChecker.isWindows() ? "false" : "true", "checking for memory mapped read");
+    if (!Boolean.parseBoolean(mmap))
+      return null;
+    
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+        raf.close();
+      }
+    } catch (Throwable t) {
+      LOG.log(Level.INFO, "Can't map "+file+" into memory - reading as stream", t);
+      return null;
+    }
+  }
+  
+  /**
+   * the number of threads to use for reading and writing by default - parallel loading is opt-in via genj.gedcom.threads
+   */
+  /*package*/ static int getDefaultThreads() {
+    String threads = EnvironmentChecker.getProperty("genj.gedcom.threads", "1", "checking for number of threads for read/write");
+    try {
+      if ("auto".equals(threads))
+        return Runtime.getRuntime().availableProcessors();
+      return Math.max(1, Integer.parseInt(threads));
+    } catch (NumberFormatException e) {
+      LOG.warning("Can't use "+threads+" threads for reading");
+      return 1;
+    }
   }
   
   /**
@@ -80,24 +175,64 @@ public class GedcomReaderFactory {
     /** lots of state we keep during reading */
     private Gedcom gedcom;
     private int progress;
-    private int entity = 0;
-    private int state;
+    private volatile int entity = 0;
+    private volatile int state;
     private int length;
+    private int threads;
+    private long started;
     private ArrayList<LazyLink> lazyLinks = new ArrayList<LazyLink>();
     private String tempSubmitter;
     private boolean cancel=false;
     private Object lock = new Object();
     private EntityReader reader;
     private MeteredInputStream meter;
+    private ByteBufferReader mapped;
     private Enigma enigma;
     private GedcomReaderContext context;
+    private GedcomJournal.Log journal;
   
     /**
      * Constructor
      */
-    private Impl(Gedcom ged, InputStream in, GedcomReaderContext context) throws IOException {
+    private Impl(Gedcom ged, InputStream in, GedcomReaderContext context, int threads) throws IOException {
       
       GedcomEncodingSniffer sniffer = new GedcomEncodingSniffer(in);
+      Charset charset = init(ged, sniffer, context, threads);
+      
+      this.length = sniffer.available();
+      this.meter = new MeteredInputStream(sniffer);
+      this.reader = new EntityReader(new InputStreamReader(meter, charset));
+      
+      // Done
+    }
+    
+    /**
+     * Constructor for bytes in memory - decoding straight from the buffer
+     */
+    private Impl(Gedcom ged, ByteBuffer in, GedcomReaderContext context, int threads) throws IOException {
+      
+      // sniff what's at the beginning
+      byte[] head = new byte[Math.min(4096, in.remaining())];
+      in.duplicate().get(head);
+      GedcomEncodingSniffer sniffer = new GedcomEncodingSniffer(new ByteArrayInputStream(head));
+      Charset charset = init(ged, sniffer, context, threads);
+      
+      // skip what the sniffer consumed (BOM)
+      ((Buffer)in).position(in.position() + head.length - sniffer.available());
+      
+      this.length = in.limit();
+      this.mapped = new ByteBufferReader(in, charset);
+      this.reader = new EntityReader(mapped);
+      
+      // Done
+    }
+    
+    /**
+     * Initialize from sniffed encoding
+     * @return charset to use
+     */
+    private Charset init(Gedcom ged, GedcomEncodingSniffer sniffer, GedcomReaderContext context, int threads) {
+      
       Charset charset = sniffer.getCharset();
       String encoding = sniffer.getEncoding();
   
@@ -115,14 +250,12 @@ public class GedcomReaderFactory {
       }
   
       // init some data
-      this.length = sniffer.available();
       this.gedcom = ged;
       this.gedcom.setEncoding(encoding);
       this.context = context;
-      this.meter = new MeteredInputStream(sniffer);
-      this.reader = new EntityReader(new InputStreamReader(meter, charset));
-  
-      // Done
+      this.threads = Math.max(1, threads);
+      
+      return charset;
     }
   
     /**
@@ -139,8 +272,10 @@ public class GedcomReaderFactory {
     public int getProgress() {
       
       // reading right now?
-      if (state==READENTITIES&&length>0)
-          progress = (int)Math.min(100, meter.getCount()*100/length);
+      if (state==READENTITIES&&length>0) {
+        long read = mapped!=null ? mapped.getPosition() : meter.getCount();
+        progress = (int)Math.min(100, read*100/length);
+      }
   
       // done
       return progress;
@@ -154,7 +289,10 @@ public class GedcomReaderFactory {
         case READHEADER :
           return RESOURCES.getString("progress.read.header");
         case READENTITIES :default:
-          return RESOURCES.getString("progress.read.entities", ""+reader.getLines(), ""+entity );
+          long millis = System.currentTimeMillis()-started;
+          if (millis<1000)
+            return RESOURCES.getString("progress.read.entities", ""+reader.getLines(), ""+entity );
+          return RESOURCES.getString("progress.read.throughput", ""+reader.getLines(), ""+entity, ""+(reader.getLines()*1000L/millis) );
         case LINKING      :
           return RESOURCES.getString("progress.read.linking");
       }
@@ -191,7 +329,7 @@ public class GedcomReaderFactory {
         throw new GedcomIOException(t.toString(), reader.getLines());
       } finally  {
         // close in
-        try { reader.in.close(); } catch (Throwable t) {};
+        try { reader.lexer.close(); } catch (Throwable t) {};
         // allow gc to collect gedcom
         gedcom  = null;
         lazyLinks.clear();
@@ -214,11 +352,20 @@ public class GedcomReaderFactory {
       long header =System.currentTimeMillis();
   
       // Read records after the other
-      while (reader.readEntity()!=null) {
-        if (cancel)
-          throw new GedcomIOException("Cancelled", getLines());
+      started = header;
+      if (threads>1) {
+        readEntitiesParallel();
+      } else {
+        while (reader.readEntity()!=null) {
+          if (cancel)
+            throw new GedcomIOException("Cancelled", getLines());
+        }
       }
         
+      // replay what's been journaled since the file was written
+      if (journal!=null&&journal.base>0)
+        replayJournal();
+        
       long records = System.currentTimeMillis();
   
       // Next state
@@ -235,14 +382,155 @@ public class GedcomReaderFactory {
       }
   
       // Link references
-      linkReferences();
+      if (threads>1)
+        linkReferencesParallel();
+      else
+        linkReferences();
       long linking = System.currentTimeMillis();
+      
+      // changes journaled but not saved yet
+      if (journal!=null&&journal.isUnsaved())
+        gedcom.setChanged();
+      
+      // trim storage if asked to
+      if (Boolean.parseBoolean(EnvironmentChecker.getProperty("genj.gedcom.compact", "false", "checking for compact storage after read")))
+        gedcom.compact();
   
       long total = System.currentTimeMillis();
-      LOG.log(Level.FINE, gedcom.getName()+" loaded in "+(total-start)/1000+"s (header "+(header-start)/1000+"s, records "+(records-header)/1000+"s, linking "+(linking-records)/1000+"s)");
+      LOG.log(Level.FINE, gedcom.getName()+" loaded in "+(total-start)/1000+"s (header "+(header-start)/1000+"s, records "+(records-header)/1000+"s, linking "+(linking-records)/1000+"s) with "+threads+" thread(s)");
   
       // Done
     }
+    
+    /**
+     * Replace entities with their last record in the journal - entities without links
+     * yet can go without affecting others
+     */
+    private void replayJournal() throws IOException {
+      
+      Set<Entity> replaced = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+      StringBuilder records = new StringBuilder();
+      for (Map.Entry<String, String> record : journal.records.entrySet()) {
+        String key = record.getKey();
+        int space = key.indexOf(' ');
+        Entity old = gedcom.getEntity(key.substring(0, space), key.substring(space+1));
+        if (old!=null) {
+          gedcom.deleteEntity(old);
+          replaced.add(old);
+        }
+        if (record.getValue()!=null)
+          records.append(record.getValue());
+      }
+      
+      // forget links of what's been replaced
+      if (!replaced.isEmpty()) {
+        ArrayList<LazyLink> keep = new ArrayList<LazyLink>(lazyLinks.size());
+        for (LazyLink link : lazyLinks) {
+          if (!replaced.contains(link.xref.getEntity()))
+            keep.add(link);
+        }
+        lazyLinks = keep;
+      }
+      
+      // read the new ones
+      records.append("0 TRLR\n");
+      EntityReader replay = new EntityReader(new StringReader(records.toString()));
+      while (replay.readEntity()!=null) {
+        if (cancel)
+          throw new GedcomIOException("Cancelled", getLines());
+      }
+      
+      LOG.info("Replayed "+journal.records.size()+" records journaled for "+gedcom.getName());
+    }
+    
+    /**
+     * Read records in parallel - the current thread decodes and splits the input into 
+     * records that are built into detached entities by a pool of workers. Entities are 
+     * added to gedcom in file order with warnings reported in the same order as a 
+     * sequential read would.
+     */
+    private void readEntitiesParallel() throws IOException {
+      
+      ExecutorService workers = Executors.newFixedThreadPool(threads, new Daemons("genj.io.read"));
+      LinkedList<Future<Record>> pending = new LinkedList<Future<Record>>();
+      RecordSplitter splitter = new RecordSplitter(gedcom.getGrammar());
+      
+      try {
+        
+        while (true) {
+          
+          if (cancel)
+            throw new GedcomIOException("Cancelled", getLines());
+          
+          // next record - anything wrong in between records is reported after the records before
+          Record record;
+          try {
+            record = splitter.next();
+          } catch (GedcomIOException e) {
+            while (!pending.isEmpty())
+              addRecord(pending.removeFirst());
+            throw e;
+          }
+          if (record==null)
+            break;
+          
+          // let a worker build it
+          pending.add(workers.submit(record));
+          
+          // add what's ready in order (or wait if we're too far ahead)
+          while (!pending.isEmpty() && (pending.size()>=threads*RECORDS_PER_THREAD || pending.getFirst().isDone()))
+            addRecord(pending.removeFirst());
+        }
+        
+        // add the rest
+        while (!pending.isEmpty())
+          addRecord(pending.removeFirst());
+        
+      } finally {
+        workers.shutdownNow();
+      }
+      
+      // done
+    }
+    
+    /**
+     * Add a record that was read by a worker to gedcom
+     */
+    private void addRecord(Future<Record> future) throws IOException {
+      
+      Record record;
+      try {
+        record = future.get();
+      } catch (InterruptedException e) {
+        throw new GedcomIOException("Cancelled", getLines());
+      } catch (ExecutionException e) {
+        throw new GedcomIOException(e.getCause().toString(), getLines());
+      }
+      
+      // reading failed?
+      if (record.error!=null)
+        throw record.error;
+      
+      // add it
+      try {
+        gedcom.addDetachedEntity(record.entity);
+      } catch (GedcomException ex) {
+        throw new GedcomIOException(ex.getMessage(), record.line);
+      }
+      
+      // warnings
+      for (Warning warning : record.warnings)
+        context.handleWarning(warning.line, warning.getMessage(), warning.property!=null ? new Context(warning.property) : new Context(gedcom));
+      
+      // decrypt what's necessary
+      for (int i=0;i<record.encrypted.size();i++)
+        decrypt(record.encrypted.get(i), record.encryptedLines.get(i));
+      
+      // keep links
+      lazyLinks.addAll(record.links);
+      
+      entity++;
+    }
   
     /**
      * linkage
@@ -265,6 +553,94 @@ public class GedcomReaderFactory {
   
       // done
     }
+    
+    /**
+     * linkage in parallel - links that only add a back-reference to their target (notes, sources, 
+     * media, repositories, submitters) are resolved concurrently in partitions by target while 
+     * the order sensitive links between individuals and families are resolved in order on the
+     * current thread. Warnings and errors are reported in the same order as a sequential linkage.
+     */
+    private void linkReferencesParallel() throws GedcomIOException {
+      
+      final int n = lazyLinks.size();
+      final Object[] outcomes = new Object[n];
+      final AtomicInteger linked = new AtomicInteger();
+      
+      // make sure all entity lookups are read-only from here on
+      for (String tag : Gedcom.ENTITIES)
+        gedcom.getEntities(tag);
+      
+      // partition links by target 
+      List<List<Integer>> partitions = new ArrayList<List<Integer>>(threads);
+      for (int p=0;p<threads;p++)
+        partitions.add(new ArrayList<Integer>(n/threads+1));
+      List<Integer> inOrder = new ArrayList<Integer>();
+      for (int i=0;i<n;i++) {
+        PropertyXRef xref = lazyLinks.get(i).xref;
+        if (xref instanceof PropertyAssociation || Gedcom.INDI.equals(xref.getTargetType()) || Gedcom.FAM.equals(xref.getTargetType())) 
+          inOrder.add(i);
+        else
+          partitions.get( ((xref.getValue().hashCode()%threads)+threads)%threads ).add(i);
+      }
+      
+      // link partitions concurrently
+      ExecutorService workers = Executors.newFixedThreadPool(threads, new Daemons("genj.io.link"));
+      List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+      for (final List<Integer> partition : partitions) {
+        futures.add(workers.submit(new Runnable() {
+          public void run() {
+            for (Integer i : partition) {
+              outcomes[i] = link(lazyLinks.get(i));
+              linked.incrementAndGet();
+            }
+          }
+        }));
+      }
+      
+      // and the rest in order
+      try {
+        for (Integer i : inOrder) {
+          outcomes[i] = link(lazyLinks.get(i));
+          progress = Math.min(100,(int)(linked.incrementAndGet()*(100*2L)/n));
+        }
+        for (Future<?> future : futures)
+          future.get();
+      } catch (InterruptedException e) {
+        throw new GedcomIOException("Cancelled", getLines());
+      } catch (ExecutionException e) {
+        throw new GedcomIOException(e.getCause().toString(), getLines());
+      } finally {
+        workers.shutdownNow();
+      }
+      
+      // report in order
+      for (int i=0;i<n;i++) {
+        if (outcomes[i] instanceof GedcomIOException)
+          throw (GedcomIOException)outcomes[i];
+        if (outcomes[i] instanceof Warning) {
+          Warning warning = (Warning)outcomes[i];
+          context.handleWarning(warning.line, warning.getMessage(), new Context(warning.property));
+        }
+      }
+      
+      // done
+    }
+    
+    /**
+     * link one lazy link
+     * @return null, warning or exception 
+     */
+    private Object link(LazyLink lazyLink) {
+      try {
+        if (lazyLink.xref.getParent()!=null && lazyLink.xref.getTarget()==null)
+          lazyLink.xref.link();
+        return null;
+      } catch (GedcomException ex) {
+        return new Warning(lazyLink.line, ex.getMessage(), lazyLink.xref);
+      } catch (Throwable t) {
+        return new GedcomIOException(RESOURCES.getString("read.error.xref", new Object[]{ lazyLink.xref.getTag(), lazyLink.xref.getValue() }), lazyLink.line);
+      }
+    }
   
     /**
      * Read Header
@@ -404,7 +780,7 @@ public class GedcomReaderFactory {
             context.handleWarning(getLines(), RESOURCES.getString("read.warn.recordnoid", Gedcom.getName(tag)), new Context(result));
   
           // preserve value for those who care
-          result.setValue(value);
+          result.setValue(getValue());
   
           // continue into properties
           readProperties(result, 0, 0);
@@ -426,55 +802,8 @@ public class GedcomReaderFactory {
         // let super do its thing
         super.readProperties(prop, currentLevel, pos);
         // decrypt lazy
-        decryptLazy(prop);
-      }
-  
-      /**
-       * Decrypt a value if necessary
-       */
-      private void decryptLazy(Property prop) throws GedcomIOException {
-  
-        // 20060128 an xref is never crypted and getValue() is expensive so we try to avoid this
-        if (prop instanceof PropertyXRef)
-          return;
-        // 20060128 a valid date can't need decryption and getValue() is expensive so we try to avoid this
-        if ((prop instanceof PropertyDate)&&prop.isValid())
-          return;
-  
-        // no need to do anything if not encrypted value
-        String value = prop.getValue();
-        if (!Enigma.isEncrypted(value))
-          return;
-  
-        // absolutely try to decrypt until we have a good password or bailed
-        while (enigma==null) {
-
-          // ask for it
-          String pwd = context.getPassword();
-          
-          // bail if not provided
-          if (pwd==null) 
-            throw new GedcomIOException(RESOURCES.getString("crypt.password.required"), this.lines);
-          
-          // try it
-          try {
-            enigma = Enigma.getInstance(pwd);
-            enigma.decrypt(value);
-          } catch (IOException e) {
-            enigma = null;
-          }
-
-          // try again if needed
-        }
-  
-        // have enigma - has to work now
-        try {
-          prop.setValue(enigma.decrypt(value));
-        } catch (IOException e) {
-          throw new GedcomIOException(RESOURCES.getString("crypt.password.mismatch"), lines);
-        }
-  
-        // done
+        if (isEncrypted(prop))
+          decrypt(prop, lines);
       }
   
       /** keep track of xrefs - we're going to link them lazily afterwards */
@@ -502,6 +831,124 @@ public class GedcomReaderFactory {
   
     } //EntityReader
   
+    /**
+     * Check whether a value needs decryption
+     */
+    private boolean isEncrypted(Property prop) {
+      
+      // 20060128 an xref is never crypted and getValue() is expensive so we try to avoid this
+      if (prop instanceof PropertyXRef)
+        return false;
+      // 20060128 a valid date can't need decryption and getValue() is expensive so we try to avoid this
+      if ((prop instanceof PropertyDate)&&prop.isValid())
+        return false;
+
+      // encrypted value?
+      return Enigma.isEncrypted(prop.getValue());
+    }
+    
+    /**
+     * Decrypt a value
+     */
+    private void decrypt(Property prop, int line) throws GedcomIOException {
+      
+      String value = prop.getValue();
+
+      // absolutely try to decrypt until we have a good password or bailed
+      while (enigma==null) {
+
+        // ask for it
+        String pwd = context.getPassword();
+        
+        // bail if not provided
+        if (pwd==null) 
+          throw new GedcomIOException(RESOURCES.getString("crypt.password.required"), line);
+        
+        // try it
+        try {
+          enigma = Enigma.getInstance(pwd);
+          enigma.decrypt(value);
+        } catch (IOException e) {
+          enigma = null;
+        }
+
+        // try again if needed
+      }
+
+      // have enigma - has to work now
+      try {
+        prop.setValue(enigma.decrypt(value));
+      } catch (IOException e) {
+        throw new GedcomIOException(RESOURCES.getString("crypt.password.mismatch"), line);
+      }
+
+      // done
+    }
+    
+    /**
+     * Splits the input following the header into the raw lines of records
+     */
+    private class RecordSplitter {
+      
+      /** the grammar records follow */
+      private Grammar grammar;
+      
+      /** whether the line read ahead by the header's reader has been considered */
+      private boolean isStarted = false;
+      
+      RecordSplitter(Grammar grammar) {
+        this.grammar = grammar;
+      }
+      
+      /**
+       * next record
+       * @return record or null for trailer
+       */
+      Record next() throws IOException {
+        
+        // the first record starts with what the header's reader has looked at already
+        if (!isStarted) {
+          isStarted = true;
+          if (!reader.readLine(false))
+            throw new GedcomFormatException(RESOURCES.getString("read.error.norecord"),reader.lines);
+          if (reader.level!=0)
+            throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), reader.lines);
+        } else {
+          if (!reader.isPending)
+            throw new GedcomFormatException(RESOURCES.getString("read.error.norecord"),reader.lines);
+        }
+        reader.isPending = false;
+        
+        // Trailer? we're done
+        if ("TRLR".equals(reader.tag)) {
+          // consume any trailing blanks
+          if (reader.readLine(true))
+            throw new GedcomFormatException(RESOURCES.getString("read.error.aftertrlr"), reader.lines);
+          return null;
+        }
+        
+        // collect lines until next record
+        Record result = new Record(reader.lines, grammar);
+        StringBuilder text = new StringBuilder(ENTITY_AVG_SIZE);
+        reader.lexer.appendTo(text);
+        text.append('\n');
+        while (reader.lexer.next()) {
+          reader.lines++;
+          if (reader.lexer.isLevelZero()) {
+            reader.parseLine();
+            break;
+          }
+          reader.lexer.appendTo(text);
+          text.append('\n');
+        }
+        result.text = new char[text.length()];
+        text.getChars(0, result.text.length, result.text, 0);
+        
+        return result;
+      }
+      
+    } //RecordSplitter
+    
     /**
      * A lazy link
      */
@@ -516,8 +963,178 @@ public class GedcomReaderFactory {
       }
     }
 
+    /**
+     * A warning to report
+     */
+    private static class Warning {
+      
+      private int line;
+      private String key, message;
+      private Object[] args;
+      private Property property;
+      
+      Warning(int line, String message, Property property) {
+        this.line = line;
+        this.message = message;
+        this.property = property;
+      }
+      
+      Warning(int line, Property property, String key, Object... args) {
+        this.line = line;
+        this.key = key;
+        this.args = args;
+        this.property = property;
+      }
+      
+      String getMessage() {
+        return message!=null ? message : RESOURCES.getString(key, args);
+      }
+    }
+    
+    /**
+     * A record read into a detached entity
+     */
+    private static class Record implements Callable<Record> {
+      
+      /** input */
+      private int line;
+      private char[] text;
+      private Grammar grammar;
+      
+      /** output */
+      private Entity entity;
+      private GedcomIOException error;
+      private List<Warning> warnings = new ArrayList<Warning>(0);
+      private List<LazyLink> links = new ArrayList<LazyLink>();
+      private List<Property> encrypted = new ArrayList<Property>(0);
+      private List<Integer> encryptedLines = new ArrayList<Integer>(0);
+      
+      Record(int line, Grammar grammar) {
+        this.line = line;
+        this.grammar = grammar;
+      }
+      
+      public Record call() {
+        try {
+          entity = new RecordReader(this).readEntity();
+        } catch (GedcomIOException e) {
+          error = e;
+        } catch (Throwable t) {
+          LOG.log(Level.SEVERE, "unexpected throwable", t);
+          error = new GedcomIOException(t.toString(), line);
+        }
+        // done with input
+        text = null;
+        return this;
+      }
+    }
+    
+    /**
+     * Reader for a single record's lines into a detached entity
+     */
+    private static class RecordReader extends PropertyReader {
+      
+      private Record record;
+      
+      RecordReader(Record record) {
+        super(new GedcomLineLexer(record.text), null, false);
+        this.record = record;
+        this.lines = record.line-1;
+      }
+      
+      /** read the entity */
+      Entity readEntity() throws IOException {
+        
+        // record's first line
+        if (!readLine(true)||level!=0)
+          throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), lines);
+        
+        // Create entity and read its properties
+        Entity result;
+        try {
+          
+          result = Gedcom.createDetachedEntity(record.grammar, tag, xref);
+          
+          // warn about missing xref if it's a well known type
+          if (result.getClass()!=Entity.class&&xref.length()==0)
+            record.warnings.add(new Warning(getLines(), result, "read.warn.recordnoid", Gedcom.getName(tag)));
+          
+          // preserve value for those who care
+          result.setValue(getValue());
+          
+          // continue into properties
+          readProperties(result, 0, 0);
+          
+        } catch (GedcomException ex) {
+          throw new GedcomIOException(ex.getMessage(), lines);
+        }
+        
+        // nothing else should be left in record
+        if (isPending)
+          throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), lines);
+        
+        return result;
+      }
+      
+      /** override read to collect values that need decrypting */
+      protected void readProperties(Property prop, int currentLevel, int pos) throws IOException {
+        // let super do its thing
+        super.readProperties(prop, currentLevel, pos);
+        // 20060128 an xref is never crypted and getValue() is expensive so we try to avoid this
+        if (prop instanceof PropertyXRef)
+          return;
+        // 20060128 a valid date can't need decryption and getValue() is expensive so we try to avoid this
+        if ((prop instanceof PropertyDate)&&prop.isValid())
+          return;
+        // keep if encrypted
+        if (Enigma.isEncrypted(prop.getValue())) {
+          record.encrypted.add(prop);
+          record.encryptedLines.add(lines);
+        }
+      }
+      
+      /** keep track of xrefs - they're linked lazily afterwards */
+      protected void link(PropertyXRef xref, int line) {
+        record.links.add(new LazyLink(xref, line));
+      }
+      
+      /** keep track of empty lines */
+      protected void trackEmptyLine() {
+        // care about empty lines before TRLR
+        if (!"TRLR".equals(tag))
+          record.warnings.add(new Warning(getLines(), null, "read.error.emptyline"));
+      }
+      
+      /** keep track of bad levels */
+      protected void trackBadLevel(int level, Property parent) {
+        record.warnings.add(new Warning(getLines(), parent, "read.warn.badlevel", ""+level));
+      }
+      
+      /** keep track of bad properties */
+      protected void trackBadProperty(Property property, String message) {
+        record.warnings.add(new Warning(getLines(), message, property));
+      }
+      
+    } //RecordReader
+    
   } //GedcomReaderImpl
   
+  /**
+   * Daemon worker threads
+   */
+  /*package*/ static class Daemons implements ThreadFactory {
+    private String name;
+    private AtomicInteger count = new AtomicInteger();
+    Daemons(String name) {
+      this.name = name;
+    }
+    public Thread newThread(Runnable r) {
+      Thread result = new Thread(r, name+"-"+count.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    }
+  }
+  
   private static class DefaultContext implements GedcomReaderContext {
     public String getPassword() {
       return null;
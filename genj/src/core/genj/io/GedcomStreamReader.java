@@ -0,0 +1,292 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.io;
+
+import genj.gedcom.Context;
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomException;
+import genj.gedcom.Grammar;
+import genj.gedcom.Property;
+import genj.gedcom.PropertyXRef;
+import genj.util.MeteredInputStream;
+import genj.util.Resources;
+import genj.util.Trackable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * A reader handing gedcom records one after the other to a visitor - no Gedcom is built and
+ * memory needed is bounded by the largest record rather than the size of the input. Entities
+ * are detached and references are not linked, a reference's value is the id of the record
+ * it points to (e.g. @I1@). Encrypted values are passed on as they are.
+ * <pre>
+ *   GedcomStreamReader reader = new GedcomStreamReader(in, null);
+ *   reader.read(new GedcomStreamReader.Visitor() {
+ *     public boolean visit(Entity entity) {
+ *       ...
+ *       return true;
+ *     }
+ *   });
+ * </pre>
+ */
+public class GedcomStreamReader implements Trackable {
+
+  private final static Resources RESOURCES = Resources.get("genj.io");
+
+  /**
+   * A visitor for records read
+   */
+  public interface Visitor {
+
+    /**
+     * callback for a record read - the entity is not referenced by the reader afterwards
+     * @return whether to continue reading
+     */
+    public boolean visit(Entity entity) throws IOException;
+  }
+
+  /** input */
+  private long length;
+  private MeteredInputStream meter;
+  private RecordReader reader;
+  private GedcomReaderContext context;
+
+  /** state */
+  private Grammar grammar = Grammar.V55;
+  private String encoding;
+  private Entity header;
+  private int entity = 0;
+  private boolean done = false;
+  private volatile boolean cancel = false;
+
+  /**
+   * Constructor
+   * @param file the file to read
+   * @param context context for warnings or null
+   */
+  public GedcomStreamReader(File file, GedcomReaderContext context) throws IOException {
+    this(new FileInputStream(file), context);
+    this.length = file.length();
+  }
+
+  /**
+   * Constructor
+   * @param in the stream to read
+   * @param context context for warnings or null
+   */
+  public GedcomStreamReader(InputStream in, GedcomReaderContext context) throws IOException {
+
+    GedcomEncodingSniffer sniffer = new GedcomEncodingSniffer(in);
+
+    this.context = context;
+    this.encoding = sniffer.getEncoding();
+    this.length = sniffer.available();
+    this.meter = new MeteredInputStream(sniffer);
+    this.reader = new RecordReader(new InputStreamReader(meter, sniffer.getCharset()));
+
+    if (!sniffer.isDeterministic())
+      warn(0, RESOURCES.getString("read.warn.nochar"), null);
+  }
+
+  /**
+   * The header record - read on first access
+   */
+  public Entity getHeader() throws IOException {
+
+    if (header!=null)
+      return header;
+
+    header = reader.readEntity();
+    if (header==null||!header.getTag().equals("HEAD"))
+      throw new GedcomFormatException(RESOURCES.getString("read.error.noheader"),0);
+
+    // grammar
+    Property vers = header.getPropertyByPath("HEAD:GEDC:VERS");
+    if (vers==null)
+      warn(0, RESOURCES.getString("read.warn.badgedc"), null);
+    else if ("5.5.1".equals(vers.getValue()))
+      grammar = Grammar.V551;
+    else if (!"5.5".equals(vers.getValue()))
+      warn(0, RESOURCES.getString("read.warn.badversion", vers.getValue(), grammar.getVersion()), null);
+
+    // encoding
+    String encoding = header.getPropertyValue("CHAR");
+    if (encoding.length()>0)
+      this.encoding = encoding;
+
+    return header;
+  }
+
+  /**
+   * The encoding declared in the header
+   */
+  public String getEncoding() throws IOException {
+    getHeader();
+    return encoding;
+  }
+
+  /**
+   * The grammar declared in the header
+   */
+  public Grammar getGrammar() throws IOException {
+    getHeader();
+    return grammar;
+  }
+
+  /**
+   * Read records following the header until the trailer or until the visitor stops. Reading can
+   * be continued with another call after the visitor stopped.
+   * @return number of records visited
+   */
+  public int read(Visitor visitor) throws IOException {
+
+    getHeader();
+
+    int visited = 0;
+    try {
+      while (!done) {
+        if (cancel)
+          throw new GedcomIOException("Cancelled", reader.getLines());
+        Entity record = reader.readEntity();
+        if (record==null) {
+          done = true;
+          close();
+          break;
+        }
+        entity++;
+        visited++;
+        if (!visitor.visit(record))
+          break;
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+
+    return visited;
+  }
+
+  /**
+   * Close the input
+   */
+  public void close() {
+    try {
+      reader.lexer.close();
+    } catch (IOException e) {
+      // ignored
+    }
+  }
+
+  /**
+   * Number of lines read
+   */
+  public int getLines() {
+    return reader.getLines();
+  }
+
+  public void cancelTrackable() {
+    cancel = true;
+  }
+
+  public int getProgress() {
+    return length>0 ? (int)Math.min(100, meter.getCount()*100/length) : 0;
+  }
+
+  public String getState() {
+    return RESOURCES.getString("progress.read.entities", ""+reader.getLines(), ""+entity );
+  }
+
+  private void warn(int line, String message, Property property) {
+    if (context!=null)
+      context.handleWarning(line, message, property!=null ? new Context(property) : new Context());
+  }
+
+  /**
+   * Reader for records into detached entities
+   */
+  private class RecordReader extends PropertyReader {
+
+    RecordReader(InputStreamReader in) {
+      super(in, null, false);
+    }
+
+    /** read one entity - null for trailer */
+    Entity readEntity() throws IOException {
+
+      if (!readLine(true))
+        throw new GedcomFormatException(RESOURCES.getString("read.error.norecord"),lines);
+
+      if (level!=0)
+        throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), lines);
+
+      // Trailer? we're done
+      if (tag.equals("TRLR")) {
+        if (readLine(true))
+          throw new GedcomFormatException(RESOURCES.getString("read.error.aftertrlr"), lines);
+        return null;
+      }
+
+      Entity result;
+      try {
+
+        result = Gedcom.createDetachedEntity(grammar, tag, xref);
+
+        // warn about missing xref if it's a well known type
+        if (result.getClass()!=Entity.class&&xref.length()==0)
+          warn(getLines(), RESOURCES.getString("read.warn.recordnoid", Gedcom.getName(tag)), result);
+
+        result.setValue(getValue());
+        readProperties(result, 0, 0);
+
+      } catch (GedcomException ex) {
+        throw new GedcomIOException(ex.getMessage(), lines);
+      }
+
+      return result;
+    }
+
+    /** references stay unlinked */
+    protected void link(PropertyXRef xref, int line) {
+    }
+
+    /** keep track of empty lines */
+    protected void trackEmptyLine() {
+      if (!"TRLR".equals(tag))
+        warn(getLines(), RESOURCES.getString("read.error.emptyline"), null);
+    }
+
+    /** keep track of bad levels */
+    protected void trackBadLevel(int level, Property parent) {
+      warn(getLines(), RESOURCES.getString("read.warn.badlevel", ""+level), parent);
+    }
+
+    /** keep track of bad properties */
+    protected void trackBadProperty(Property property, String message) {
+      warn(getLines(), message, property);
+    }
+
+  } //RecordReader
+
+} //GedcomStreamReader
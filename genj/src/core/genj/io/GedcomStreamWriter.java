@@ -0,0 +1,153 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.io;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Property;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.UnmappableCharacterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A writer for records one after the other without a Gedcom - the counterpart of
+ * GedcomStreamReader. The header is written like any other record, the trailer is
+ * written on close().
+ * <pre>
+ *   final GedcomStreamWriter writer = new GedcomStreamWriter(out, reader.getEncoding());
+ *   writer.write(reader.getHeader());
+ *   reader.read(new GedcomStreamReader.Visitor() {
+ *     public boolean visit(Entity entity) throws IOException {
+ *       writer.write(entity);
+ *       return true;
+ *     }
+ *   });
+ *   writer.close();
+ * </pre>
+ * Filters are applied to each record on its own - unlike GedcomWriter references into
+ * records vetoed by a filter are not vetoed transitively.
+ */
+public class GedcomStreamWriter {
+
+  private OutputStreamWriter out;
+  private String encoding;
+  private List<Filter> filters = new ArrayList<Filter>();
+  private RecordWriter writer;
+  private int line = 0;
+  private int entity = 0;
+
+  /**
+   * Constructor
+   * @param stream the stream to write to
+   * @param encoding the gedcom encoding to write with (e.g. Gedcom.UTF8)
+   */
+  public GedcomStreamWriter(OutputStream stream, String encoding) throws GedcomEncodingException {
+
+    CharsetEncoder encoder = GedcomWriter.getCharset(false, stream, encoding).newEncoder();
+    encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    this.encoding = encoding;
+    this.out = new OutputStreamWriter(stream, encoder);
+    this.writer = new RecordWriter();
+  }
+
+  /**
+   * Sets filters to use for checking whether to write entities/properties or not
+   */
+  public void setFilters(Collection<Filter> fs) {
+    filters = new ArrayList<Filter>(fs);
+  }
+
+  /**
+   * Write a record
+   * @return whether the record was written (or vetoed by a filter)
+   */
+  public boolean write(Entity record) throws IOException {
+
+    for (Filter filter : filters)
+      if (filter.veto(record))
+        return false;
+
+    try {
+      line = writer.write(0, record);
+    } catch(UnmappableCharacterException unme) {
+      throw new GedcomEncodingException(record, encoding);
+    }
+    entity++;
+
+    return true;
+  }
+
+  /**
+   * Write the trailer and close the output
+   */
+  public void close() throws IOException {
+    out.write("0 TRLR");
+    out.write(System.getProperty("line.separator"));
+    line++;
+    out.close();
+  }
+
+  /**
+   * Number of lines written
+   */
+  public int getLines() {
+    return line;
+  }
+
+  /**
+   * Number of records written
+   */
+  public int getEntities() {
+    return entity;
+  }
+
+  /**
+   * our record writer
+   */
+  private class RecordWriter extends PropertyWriter {
+
+    RecordWriter() {
+      // records are encoded right away (catching unmappable characters) but not flushed through to the stream
+      super(new FilterWriter(out) {
+        public void flush() {}
+      }, false);
+    }
+
+    /** intercept prop decoding to check filters */
+    protected void writeProperty(int level, Property prop) throws IOException {
+      if (!prop.isTransient() ) {
+        for (Filter filter : filters)
+          if (filter.veto(prop))
+            return;
+      }
+      super.writeProperty(level, prop);
+    }
+
+  } //RecordWriter
+
+} //GedcomStreamWriter
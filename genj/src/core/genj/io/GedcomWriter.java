@@ -22,22 +22,37 @@ package genj.io;
 import genj.Version;
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomListenerAdapter;
+import genj.gedcom.Options;
 import genj.gedcom.Property;
 import genj.gedcom.PropertyChange;
+import genj.util.EnvironmentChecker;
 import genj.util.Trackable;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.UnmappableCharacterException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 /**
@@ -50,9 +65,17 @@ public class GedcomWriter implements Trackable {
 
   private static Logger LOG = Logger.getLogger("genj.io");
   
+  /** encoded entities of gedcoms written before (opt-in via genj.gedcom.cache) */
+  private final static Map<Gedcom, Cache> caches = new WeakHashMap<Gedcom, Cache>();
+  
   /** lots of state */
   private Gedcom gedcom;
+  private OutputStream stream;
   private BufferedWriter out;
+  private Charset charset;
+  private int threads;
+  private boolean isFiltered = false;
+  private ConcurrentLinkedQueue<Encoder> encoders = new ConcurrentLinkedQueue<Encoder>();
   private String file;
   private String date;
   private String time;
@@ -60,6 +83,7 @@ public class GedcomWriter implements Trackable {
   private int line;
   private int entity;
   private boolean cancel = false;
+  private Collection<Filter> filters = Collections.emptyList();
   private Filter filter;
 
   /**
@@ -78,19 +102,36 @@ public class GedcomWriter implements Trackable {
     line = 0;
     date = now.getDateValue();
     time = now.getTimeValue();
-    filter = new Filter.Union(gedcom, Collections.<Filter>emptyList());
 
-    CharsetEncoder encoder = getCharset(false, stream, ged.getEncoding()).newEncoder();
-    encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
-    out = new BufferedWriter(new OutputStreamWriter(stream, encoder));
+    charset = getCharset(false, stream, ged.getEncoding());
+    threads = GedcomReaderFactory.getDefaultThreads();
+    
+    this.stream = new BufferedOutputStream(stream);
+    out = new BufferedWriter(new OutputStreamWriter(this.stream, newEncoder()));
     
     // Done
   }
+  
+  /**
+   * An encoder reporting unmappable characters
+   */
+  private CharsetEncoder newEncoder() {
+    CharsetEncoder encoder = charset.newEncoder();
+    encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+    return encoder;
+  }
+  
+  /**
+   * Sets the number of threads to use for encoding entities
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
 
   /**
    * Create the charset we're using for out
    */
-  private Charset getCharset(boolean writeBOM, OutputStream out, String encoding) throws GedcomEncodingException {
+  /*package*/ static Charset getCharset(boolean writeBOM, OutputStream out, String encoding) throws GedcomEncodingException {
 
     // Attempt encoding
     try {
@@ -162,7 +203,8 @@ public class GedcomWriter implements Trackable {
    * entities/properties or not
    */
   public void setFilters(Collection<Filter> fs) {
-    filter = new Filter.Union(gedcom, fs);
+    filters = fs;
+    isFiltered = !fs.isEmpty();
   }
   
   /**
@@ -182,15 +224,30 @@ public class GedcomWriter implements Trackable {
     if (gedcom==null)
       throw new IllegalStateException("can't call write() twice");
     
-    List<Entity> ents = gedcom.getEntities(); 
-    total = ents.size();
-
     // Out operation
     try {
 
+      // everything's encoded while units of work wait (not for long) - the file shows the gedcom
+      // as it was at one point and units of work can run while it's written
+      List<String> header;
+      List<Encoding> entities;
+      Cache cache = isFiltered ? null : getCache(gedcom, charset);
+      Lock lock = gedcom.getReadLock();
+      lock.lock();
+      try {
+        snapshot();
+        filter = new Filter.Union(gedcom, filters);
+        header = getHeader();
+        entities = encodeEntities(gedcom.getEntities(), cache);
+      } finally {
+        lock.unlock();
+      }
+
       // Data
-      writeHeader();
-      writeEntities(ents);
+      for (String line : header)
+        writeLine(line);
+      out.flush();
+      writeEntities(entities);
       writeTail();
 
       // Close Output
@@ -207,6 +264,12 @@ public class GedcomWriter implements Trackable {
     // Done
   }
   
+  /**
+   * Called before entities are encoded - no unit of work can run until they are
+   */
+  /*package*/ void snapshot() throws IOException {
+  }
+  
   /** write line for header and footer */
   private void writeLine(String line) throws IOException {
     out.write(line);
@@ -215,63 +278,134 @@ public class GedcomWriter implements Trackable {
   }
   
   /**
-   * Write Header information
-   * @exception IOException
+   * Header information
    */
-  private void writeHeader() throws IOException {
+  private List<String> getHeader() {
+    
+    List<String> result = new ArrayList<String>();
     
     // Header
-    writeLine( "0 HEAD");
-    writeLine( "1 SOUR GENJ");
-    writeLine( "2 VERS "+Version.getInstance());
-    writeLine( "2 NAME GenealogyJ");
-    writeLine( "2 CORP Nils Meier");
-    writeLine( "3 ADDR http://genj.sourceforge.net");
-    writeLine( "1 DEST ANY");
-    writeLine( "1 DATE "+date);
-    writeLine( "2 TIME "+time);
+    result.add( "0 HEAD");
+    result.add( "1 SOUR GENJ");
+    result.add( "2 VERS "+Version.getInstance());
+    result.add( "2 NAME GenealogyJ");
+    result.add( "2 CORP Nils Meier");
+    result.add( "3 ADDR http://genj.sourceforge.net");
+    result.add( "1 DEST ANY");
+    result.add( "1 DATE "+date);
+    result.add( "2 TIME "+time);
     if (gedcom.getSubmitter()!=null)
-      writeLine( "1 SUBM @"+gedcom.getSubmitter().getId()+'@');
-    writeLine( "1 FILE "+file);
-    writeLine( "1 GEDC");
-    writeLine( "2 VERS "+gedcom.getGrammar().getVersion());
-    writeLine( "2 FORM Lineage-Linked");
-    writeLine( "1 CHAR "+gedcom.getEncoding());
+      result.add( "1 SUBM @"+gedcom.getSubmitter().getId()+'@');
+    result.add( "1 FILE "+file);
+    result.add( "1 GEDC");
+    result.add( "2 VERS "+gedcom.getGrammar().getVersion());
+    result.add( "2 FORM Lineage-Linked");
+    result.add( "1 CHAR "+gedcom.getEncoding());
     if (gedcom.getLanguage()!=null)
-      writeLine( "1 LANG "+gedcom.getLanguage());
+      result.add( "1 LANG "+gedcom.getLanguage());
     if (gedcom.getPlaceFormat().length()>0) {
-      writeLine( "1 PLAC");
-      writeLine( "2 FORM "+gedcom.getPlaceFormat());
+      result.add( "1 PLAC");
+      result.add( "2 FORM "+gedcom.getPlaceFormat());
     }
     // done
+    return result;
   }
 
   /**
-   * Write Entities information
-   * @exception IOException
+   * Encode entities - entities are encoded into bytes by a pool of workers (unless there's
+   * a cached encoding)
    */
-  private void writeEntities(List<Entity> entities) throws IOException {
-
-    // Loop through entities
-    es: for (Entity e : entities) {
-      // .. check op
-      if (cancel) 
-        throw new GedcomIOException("Operation cancelled", line);
-      // .. filtered?
-      if (filter.veto(e))
-        continue es;
-      // .. writing it and its subs
-      try {
-        line += new EntityWriter().write(0, e);
-      } catch(UnmappableCharacterException unme) {
-        throw new GedcomEncodingException(e, gedcom.getEncoding());
+  private List<Encoding> encodeEntities(List<Entity> entities, Cache cache) throws IOException {
+    
+    total = entities.size();
+    
+    ExecutorService workers = threads>1 ? Executors.newFixedThreadPool(threads, new GedcomReaderFactory.Daemons("genj.io.write")) : null;
+    List<Encoding> result = new ArrayList<Encoding>(entities.size());
+    
+    try {
+      
+      // Loop through entities
+      for (Entity e : entities) {
+        // .. check op
+        if (cancel) 
+          throw new GedcomIOException("Operation cancelled", line);
+        // .. filtered?
+        if (filter.veto(e))
+          continue;
+        // .. cached or to encode
+        Encoding encoding = new Encoding(e, cache!=null ? cache.get(e) : null);
+        if (encoding.chunk==null) {
+          if (workers!=null)
+            encoding.future = workers.submit(encoding);
+          else
+            encoding.run();
+        }
+        result.add(encoding);
       }
-
-      // .. track it
-      entity++;
+      
+      // wait for all of them - and cache them before a unit of work can change them
+      for (Encoding encoding : result) {
+        Chunk chunk = encoding.get();
+        if (cache!=null)
+          cache.put(encoding.entity, chunk);
+      }
+      
+    } finally {
+      if (workers!=null)
+        workers.shutdownNow();
     }
 
     // Done
+    return result;
+  }
+  
+  /**
+   * Write Entities information in order
+   * @exception IOException
+   */
+  private void writeEntities(List<Encoding> entities) throws IOException {
+    for (Encoding encoding : entities) {
+      if (cancel) 
+        throw new GedcomIOException("Operation cancelled", line);
+      writeEncoding(encoding);
+    }
+  }
+  
+  /**
+   * Write an entity's encoding
+   */
+  private void writeEncoding(Encoding encoding) throws IOException {
+    
+    Chunk chunk = encoding.get();
+    stream.write(chunk.bytes);
+    line += chunk.lines;
+    
+    // .. track it
+    entity++;
+  }
+  
+  /**
+   * Encode an entity into bytes
+   */
+  private Chunk encode(Entity e) throws IOException {
+    
+    // grab an encoder
+    Encoder encoder = encoders.poll();
+    if (encoder==null)
+      encoder = new Encoder();
+    
+    // write it and its subs
+    Chunk result;
+    try {
+      result = encoder.encode(e);
+    } catch(UnmappableCharacterException unme) {
+      throw new GedcomEncodingException(e, e.getGedcom().getEncoding());
+    }
+    
+    // keep encoder for next time (not after a problem)
+    encoders.add(encoder);
+    
+    return result;
   }
 
   /**
@@ -283,13 +417,169 @@ public class GedcomWriter implements Trackable {
     writeLine("0 TRLR");
   }
 
+  /**
+   * the cache for a gedcom encoded with given charset
+   */
+  private static Cache getCache(Gedcom gedcom, Charset charset) {
+    
+    if (!Boolean.parseBoolean(EnvironmentChecker.getProperty("genj.gedcom.cache", "false", "checking for caching encoded entities between writes")))
+      return null;
+    
+    synchronized (caches) {
+      Cache result = caches.get(gedcom);
+      if (result==null) {
+        result = new Cache();
+        gedcom.addGedcomListener(result);
+        caches.put(gedcom, result);
+      }
+      result.validate(charset.name()+"/"+Options.getInstance().getValueLineBreak());
+      return result;
+    }
+  }
+  
+  /**
+   * An entity's bytes
+   */
+  private static class Chunk {
+    
+    private byte[] bytes;
+    private int lines;
+    
+    Chunk(byte[] bytes, int lines) {
+      this.bytes = bytes;
+      this.lines = lines;
+    }
+  }
+  
+  /**
+   * Encoding an entity into a chunk of bytes
+   */
+  private class Encoding implements Runnable {
+    
+    private Entity entity;
+    private Chunk chunk;
+    private IOException error;
+    private Future<?> future;
+    
+    Encoding(Entity entity, Chunk chunk) {
+      this.entity = entity;
+      this.chunk = chunk;
+    }
+    
+    public void run() {
+      try {
+        chunk = encode(entity);
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    
+    boolean isDone() {
+      return future==null || future.isDone();
+    }
+    
+    Chunk get() throws IOException {
+      if (future!=null) try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw new GedcomIOException("Operation cancelled", line);
+      } catch (ExecutionException e) {
+        throw new GedcomIOException(e.getCause().toString(), line);
+      }
+      if (error!=null)
+        throw error;
+      return chunk;
+    }
+  }
+  
+  /**
+   * A reusable encoder of entities
+   */
+  private class Encoder {
+    
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    private EntityWriter writer = new EntityWriter(new OutputStreamWriter(bytes, newEncoder()));
+    
+    Chunk encode(Entity entity) throws IOException {
+      bytes.reset();
+      int lines = writer.getLines();
+      lines = writer.write(0, entity) - lines;
+      return new Chunk(bytes.toByteArray(), lines);
+    }
+  }
+  
+  /**
+   * Encoded entities of a gedcom - entities are forgotten when they change
+   */
+  private static class Cache extends GedcomListenerAdapter {
+    
+    /** what the chunks are valid for */
+    private String key;
+    
+    /** chunks and ids they were encoded with per entity - not keeping entities from being garbage collected */
+    private Map<Entity, Chunk> chunks = new WeakHashMap<Entity, Chunk>();
+    private Map<Entity, String> ids = new WeakHashMap<Entity, String>();
+    
+    synchronized void validate(String key) {
+      if (!key.equals(this.key)) {
+        chunks.clear();
+        ids.clear();
+      }
+      this.key = key;
+    }
+    
+    synchronized Chunk get(Entity entity) {
+      return chunks.get(entity);
+    }
+    
+    synchronized void put(Entity entity, Chunk chunk) {
+      chunks.put(entity, chunk);
+      ids.put(entity, entity.getId());
+    }
+    
+    private synchronized void forget(Property property) {
+      Entity entity = property.getEntity();
+      if (entity==null)
+        return;
+      chunks.remove(entity);
+      // a new id shows in references from other entities as well
+      if (property==entity) {
+        String id = ids.get(entity);
+        if (id!=null&&!id.equals(entity.getId())) {
+          chunks.clear();
+          ids.clear();
+        }
+      }
+    }
+    
+    @Override
+    public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
+      forget(entity);
+    }
+    
+    @Override
+    public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
+      forget(property);
+    }
+    
+    @Override
+    public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
+      forget(property);
+    }
+    
+    @Override
+    public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property removed) {
+      forget(property);
+    }
+  }
+  
   /**
    * our entity writer
    */
   private class EntityWriter extends PropertyWriter {
     
     /** constructor */
-    EntityWriter() {
+    EntityWriter(Writer out) {
       super(out, false);
     }
 
@@ -29,8 +29,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 
 /**
  * Reads gedcom lines into properties
@@ -41,18 +39,17 @@ public class PropertyReader {
 
   protected boolean useIndents = false;
   protected int lines = 0;
-  protected String line = null;
-  protected Collection collectXRefs;
+  protected boolean isPending = false;
+  protected Collection<PropertyXRef> collectXRefs;
   protected boolean isMerge = false;
   
   /** variables read line by line */
   protected int level;
   protected String tag;
   protected String xref;
-  protected String value;
   
   /** input */
-  protected BufferedReader in;
+  protected GedcomLineLexer lexer;
   
   /** 
    * Constructor 
@@ -60,16 +57,16 @@ public class PropertyReader {
    * @param collectXRefs collection to collect xrefs in (otherwise xrefs are linked immediately)
    * @param useIndents whether to use spaces as indent declarations
    */
-  public PropertyReader(Reader in, Collection collectXRefs, boolean useIndents) {
-    this(new BufferedReader(in), collectXRefs, useIndents);
+  public PropertyReader(Reader in, Collection<PropertyXRef> collectXRefs, boolean useIndents) {
+    this(new GedcomLineLexer(in), collectXRefs, useIndents);
   }
   
   /** 
    * Constructor 
    * @see PropertyReader#PropertyReader(Reader, Collection, boolean)
    */
-  public PropertyReader(BufferedReader in, Collection collectXRefs, boolean useIndents) {
-    this.in = in;
+  /*package*/ PropertyReader(GedcomLineLexer lexer, Collection<PropertyXRef> collectXRefs, boolean useIndents) {
+    this.lexer = lexer;
     this.useIndents = useIndents;
     this.collectXRefs = collectXRefs;
   }
@@ -86,17 +83,20 @@ public class PropertyReader {
     read(prop, -1);
   }
   
+  /**
+   * Constructor 
+   * @see PropertyReader#PropertyReader(Reader, Collection, boolean)
+   */
+  public PropertyReader(BufferedReader in, Collection<PropertyXRef> collectXRefs, boolean useIndents) {
+    this((Reader)in, collectXRefs, useIndents);
+  }
+  
   /**
    * read into property
    */
   public void read(Property prop, int index) throws IOException {
-    // do the recursive read
+    // do the recursive read - a pending line stays with us for a subsequent read
     readProperties(prop, 0, index);
-    // put back a pending line? this works only if the constructor received a buffered reader
-    if (line!=null) {
-      line = null;
-      in.reset();
-    }
     // done
   }
   
@@ -121,10 +121,10 @@ public class PropertyReader {
         if (!readLine(false))
           break;
         // collect as far as we can
-        if (level<currentLevel+1 || !collector.append(level-currentLevel, tag, value))
+        if (level<currentLevel+1 || !collector.append(level-currentLevel, tag, getValue()))
           break;
         // consume it
-        line = null;
+        isPending = false;
         // next line
       } 
       // commit collected value
@@ -143,7 +143,7 @@ public class PropertyReader {
         return;
       
       // consume it
-      line = null;
+      isPending = false;
       
       // check for wrong level value
       //  0 INDI
@@ -160,7 +160,7 @@ public class PropertyReader {
       int lineNoForChild = lines;
 
       // add sub property
-      Property child = addProperty(prop, tag, value, pos);
+      Property child = addProperty(prop, tag, getValue(), pos);
       
       // first recurse into child(ren)
       readProperties(child, level, 0);
@@ -204,102 +204,48 @@ public class PropertyReader {
   protected boolean readLine(boolean consume) throws IOException {
     
     // need a line?
-    if (line==null) {
-      
-      // mark current position in reader
-      in.mark(256);
+    if (!isPending) {
       
       // grab it ignoring empty lines
-      while (line==null) {
-        line = in.readLine();
-        if (line==null) 
+      while (true) {
+        if (!lexer.next()) 
           return false;
         lines ++;
-        if (line.trim().length()==0) {
-          trackEmptyLine();
-          line = null;
-        }
-      }
-      
-      // 20040322 use space and also \t for delim in case someone used tabs in file
-      StringTokenizer tokens = new StringTokenizer(line," \t");
-  
-      try {
-        
-        // .. caclulate level by looking at spaces or parsing a number
-        try {
-          if (useIndents) {
-            level = 0;
-            while (line.charAt(level)==' ') level++;
-            level++;
-          } else {
-            level = Integer.parseInt(tokens.nextToken(),10);
-          }
-        } catch (StringIndexOutOfBoundsException sioobe) {
-          throw new GedcomFormatException(RESOURCES.getString("read.error.emptyline"), lines);
-        } catch (NumberFormatException nfe) {
-          throw new GedcomFormatException(RESOURCES.getString("read.error.nonumber"), lines);
-        }
-  
-        // .. tag (?)
-        if (tokens.hasMoreTokens()) 
-          tag = tokens.nextToken();
-        else {
-          tag = "_TAG";
-        }
-          
-        // .. xref ?
-        if (level==0&&tag.startsWith("@")) {
-  
-          // .. valid ?
-          if (!tag.endsWith("@")||tag.length()<=2)
-            throw new GedcomFormatException(RESOURCES.getString("read.error.invalidid"), lines);
-   
-          // .. indeed, xref !
-          xref = tag.substring(1,tag.length()-1);
-          
-          // .. tag is the next token
-          tag = tokens.nextToken();
-  
-        } else {
-  
-          // .. no reference in line !
-          xref = "";
-        }
-  
-        // .. value
-        if (tokens.hasMoreElements()) {
-          // 20030530 o.k. gotta switch to delim "\n" because we want everything 
-          // to end of line including contained spaces 
-          value = tokens.nextToken("\n");
-          // 20030609 strip leading space that forms delimiter to tag/xref
-          // (this was trim() once but identified as too greedy)
-          if (value.startsWith(" "))
-            value = value.substring(1);
-        } else {
-          value = "";
-        }
-  
-      } catch (NoSuchElementException ex) {
-        // .. not enough tokens
-        throw new GedcomFormatException(RESOURCES.getString("read.error.cantparse"), lines);
+        if (!lexer.isBlank())
+          break;
+        trackEmptyLine();
       }
       
-      // TUNING: for tags we expect a lot of repeating strings (limited numbe of tags) so
-      // we build the intern representation of tag here - this makes us share string 
-      // instances for an upfront cost
-      tag = tag.intern();
-          
+      // parse it
+      parseLine();
     }
     
     // consume it already?
     if (consume)
-      line = null;
+      isPending = false;
       
     // we're ready
     return true;
   }
   
+  /**
+   * parse the lexer's current line into level, xref and tag - the line becomes pending
+   */
+  protected void parseLine() throws GedcomFormatException {
+    lexer.parse(useIndents, lines);
+    level = lexer.getLevel();
+    tag = lexer.getTag();
+    xref = lexer.getXRef();
+    isPending = true;
+  }
+  
+  /**
+   * the value of the current line - materialized only when asked for
+   */
+  protected String getValue() {
+    return lexer.getValue();
+  }
+  
   /** link a reference - keep in lazyXRefs is available otherwise link and ignore errors */
   protected void link(PropertyXRef xref, int line) {
     if (collectXRefs!=null)
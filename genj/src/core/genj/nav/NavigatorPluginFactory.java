@@ -22,10 +22,13 @@ package genj.nav;
 import genj.app.PluginFactory;
 import genj.app.Workbench;
 import genj.gedcom.Context;
+import genj.gedcom.Entity;
 import genj.gedcom.Indi;
 import genj.gedcom.PropertySex;
+import genj.gedcom.RelationshipFinder;
 import genj.util.Resources;
 import genj.util.swing.Action2;
+import genj.util.swing.DialogHelper;
 import genj.util.swing.ImageIcon;
 import genj.util.swing.Action2.Group;
 import genj.view.ActionProvider;
@@ -59,6 +62,14 @@ public class NavigatorPluginFactory implements PluginFactory, ActionProvider {
   @Override
   public void createActions(Context context, Purpose purpose, Group into) {
     
+    // how two individuals are related
+    if (purpose == Purpose.CONTEXT && context.getEntities().size()==2) {
+      List<? extends Entity> entities = context.getEntities();
+      if (entities.get(0) instanceof Indi && entities.get(1) instanceof Indi)
+        into.add(new Relationship((Indi)entities.get(0), (Indi)entities.get(1)));
+      return;
+    }
+    
     if (purpose != Purpose.TOOLBAR)
       return;
 
@@ -148,5 +159,43 @@ public class NavigatorPluginFactory implements PluginFactory, ActionProvider {
       super("children", Arrays.asList(indi.getChildren()),CHILDREN,-1);
     }
   }
+  
+  /**
+   * shortest ways two individuals are related
+   */
+  private class Relationship extends Action2 {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private Indi indi, other;
+    
+    public Relationship(Indi indi, Indi other) {
+      this.indi = indi;
+      this.other = other;
+      setText(RES.getString("relationship"));
+    }
+    
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      
+      List<RelationshipFinder.Path> paths = indi.getGedcom().getRelationshipFinder().getPaths(indi, other, 3);
+      
+      StringBuffer txt = new StringBuffer();
+      if (paths.isEmpty())
+        txt.append(RES.getString("relationship.none", indi, other));
+      for (RelationshipFinder.Path path : paths) {
+        txt.append(path.getIndi(0));
+        for (int i=0; i<path.getLength(); i++) {
+          txt.append("\n  ");
+          txt.append(RES.getString("relationship."+path.getRelation(i).name().toLowerCase()));
+          txt.append(" ");
+          txt.append(path.getIndi(i+1));
+        }
+        txt.append("\n\n");
+      }
+      
+      DialogHelper.openDialog(getText(), DialogHelper.INFORMATION_MESSAGE, txt.toString().trim(), Action2.okOnly(), e.getSource());
+    }
+  }
 
 }
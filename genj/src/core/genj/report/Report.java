@@ -22,6 +22,9 @@
 package genj.report;
 
 import genj.common.SelectEntityWidget;
+import genj.fo.Document;
+import genj.fo.Format;
+import genj.fo.FormatOptionsWidget;
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
 import genj.gedcom.GedcomException;
@@ -49,6 +52,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -130,6 +134,7 @@ public abstract class Report implements Cloneable {
   /** outs */
   private PrintWriter out = NUL;
   private Component owner = null;
+  private Gedcom reading = null;
   
 
   /**
@@ -167,6 +172,13 @@ public abstract class Report implements Cloneable {
     owner = set;
   }
 
+  /** 
+   * Set gedcom read while running (units of work wait for a read-only report except while it asks the user)
+   */
+  /*package*/ void setReading(Gedcom set) {
+    reading = set;
+  }
+
   /**
    * Store report's options
    */
@@ -361,7 +373,7 @@ public abstract class Report implements Cloneable {
     if (extension != null)
         chooser.setFileFilter(new FileExtensionFilter(extension));
 
-    int rc = chooser.showDialog(owner,button);
+    int rc = showDialog(chooser, button);
 
     // check result
     File result = chooser.getSelectedFile();
@@ -370,7 +382,7 @@ public abstract class Report implements Cloneable {
 
     // choose an existing file?
     if (result.exists()&&askForOverwrite) {
-      rc = DialogHelper.openDialog(title, DialogHelper.WARNING_MESSAGE, ReportView.RESOURCES.getString("report.file.overwrite"), Action2.yesNo(), owner);
+      rc = openDialog(title, DialogHelper.WARNING_MESSAGE, ReportView.RESOURCES.getString("report.file.overwrite"), Action2.yesNo());
       if (rc!=0)
         return null;
     }
@@ -389,7 +401,7 @@ public abstract class Report implements Cloneable {
     JFileChooser chooser = new JFileChooser(dir);
     chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
     chooser.setDialogTitle(title);
-    int rc = chooser.showDialog(owner,button);
+    int rc = showDialog(chooser, button);
 
     // check result
     File result = chooser.getSelectedFile();
@@ -443,7 +455,7 @@ public abstract class Report implements Cloneable {
       select.setSelection(entity);
 
     // show it
-    int rc = DialogHelper.openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),select},Action2.okCancel(),owner);
+    int rc = openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),select},Action2.okCancel());
     if (rc!=0)
       return null;
 
@@ -457,6 +469,40 @@ public abstract class Report implements Cloneable {
     return result;
   }
 
+  /**
+   * A sub-class can ask the user for format and file of a document up front with this method - the
+   * document is then written while the report adds to it instead of being kept in memory until done
+   * @param title the document's title
+   * @return document or null if the user cancelled
+   */
+  public final Document getDocumentFromUser(String title) {
+
+    Registry foRegistry = Registry.get(ReportView.class);
+
+    Action[] actions = Action2.okCancel();
+    FormatOptionsWidget options = new FormatOptionsWidget(null, foRegistry);
+    options.connect(actions[0]);
+
+    int rc = openDialog(title, DialogHelper.QUESTION_MESSAGE, options, actions);
+    if (rc!=0)
+      return null;
+    options.remember(foRegistry);
+
+    // no file to write to? then the document is formatted when done
+    Format format = options.getFormat();
+    File file = options.getFile();
+    if (format.getFileExtension()==null || file==null)
+      return new Document(title);
+
+    try {
+      file.getParentFile().mkdirs();
+      return new Document(title, format, file);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "can't write "+file, e);
+      return new Document(title);
+    }
+  }
+
 // could do that too - simply show a component to the user
 //
 //  /**
@@ -475,7 +521,7 @@ public abstract class Report implements Cloneable {
     ChoiceWidget choice = new ChoiceWidget(choices, selected);
     choice.setEditable(false);
 
-    int rc = DialogHelper.openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),choice},Action2.okCancel(),owner);
+    int rc = openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),choice},Action2.okCancel());
 
     return rc==0 ? choice.getSelectedItem() : null;
   }
@@ -503,7 +549,7 @@ public abstract class Report implements Cloneable {
 
     // show 'em
     ChoiceWidget choice = new ChoiceWidget(defaultChoices, defaultChoices.length>0 ? defaultChoices[0] : "");
-    int rc = DialogHelper.openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),choice},Action2.okCancel(),owner);
+    int rc = openDialog(getName(),DialogHelper.QUESTION_MESSAGE,new JComponent[]{new JLabel(msg),choice},Action2.okCancel());
     String result = rc==0 ? choice.getText() : null;
 
     // Remember?
@@ -552,7 +598,7 @@ public abstract class Report implements Cloneable {
 
     // show to user and check for non-ok
     OptionsWidget widget = new OptionsWidget(title, os);
-    int rc = DialogHelper.openDialog(getName(), DialogHelper.QUESTION_MESSAGE, widget, Action2.okCancel(), owner);
+    int rc = openDialog(getName(), DialogHelper.QUESTION_MESSAGE, widget, Action2.okCancel());
     if (rc!=0)
       return false;
 
@@ -584,10 +630,37 @@ public abstract class Report implements Cloneable {
     for (int i=0;i<as.length;i++)
       as[i]  = new Action2(actions[i]);
 
-    return DialogHelper.openDialog(getName(), DialogHelper.QUESTION_MESSAGE, msg, as, owner);
+    return openDialog(getName(), DialogHelper.QUESTION_MESSAGE, msg, as);
 
   }
 
+  /**
+   * Show a dialog - units of work can run while the user decides
+   */
+  private int openDialog(String title, int messageType, Object content, Action[] actions) {
+    int holds = reading!=null ? reading.suspendRead() : 0;
+    try {
+      if (content instanceof String)
+        return DialogHelper.openDialog(title, messageType, (String)content, actions, owner);
+      if (content instanceof JComponent[])
+        return DialogHelper.openDialog(title, messageType, (JComponent[])content, actions, owner);
+      return DialogHelper.openDialog(title, messageType, (JComponent)content, actions, owner);
+    } finally {
+      if (reading!=null)
+        reading.resumeRead(holds);
+    }
+  }
+
+  private int showDialog(JFileChooser chooser, String button) {
+    int holds = reading!=null ? reading.suspendRead() : 0;
+    try {
+      return chooser.showDialog(owner, button);
+    } finally {
+      if (reading!=null)
+        reading.resumeRead(holds);
+    }
+  }
+
   /**
    * Translates the name of a report option. First tries to translate the usual way,
    * by calling translate(). If this is unsuccessful, tries to use properties file from GenJ report package.
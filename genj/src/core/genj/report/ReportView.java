@@ -426,6 +426,19 @@ public class ReportView extends View {
 
       genj.fo.Document doc = (genj.fo.Document) object;
       String title = "Document " + doc.getTitle();
+      
+      // format and file known up front?
+      if (doc.getFile()!=null) {
+        try {
+          doc.getFormat().format(doc, doc.getFile());
+        } catch (Throwable t) {
+          LOG.log(Level.WARNING, "formatting " + doc + " failed", t);
+          output.add("*** formatting " + doc + " failed");
+          return;
+        }
+        showResult(doc.getFile());
+        return;
+      }
 
       Registry foRegistry = Registry.get(getClass());
 
@@ -25,6 +25,8 @@ import genj.gedcom.UnitOfWork;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +45,9 @@ import java.util.logging.Logger;
   private Callback callback;
   private Object result;
   
+  /** output is handed on without waiting for it (the report might hold off units of work) */
+  private ExecutorService output = Executors.newSingleThreadExecutor();
+  
   /**
    * Constructor
    * @param gedcom Gedcom the report works on
@@ -64,20 +69,29 @@ import java.util.logging.Logger;
     
     // run
     try{
-      if (report.isReadOnly()) {
-        result = report.start(context);
-      } else {
-        final Object finalContext = context;
-        gedcom.doUnitOfWork(new UnitOfWork() {
-          public void perform(Gedcom gedcom) {
-            try {
-              result = report.start(finalContext);
-            } catch (Throwable t) {
-              throw new RuntimeException(t);
-            }
+      final Object finalContext = context;
+      UnitOfWork start = new UnitOfWork() {
+        public void perform(Gedcom gedcom) {
+          try {
+            result = report.start(finalContext);
+          } catch (Throwable t) {
+            throw new RuntimeException(t);
           }
-        });
-      }    
+        }
+      };
+      // reading holds off units of work - except while the report asks the user
+      if (gedcom==null) {
+        start.perform(gedcom);
+      } else if (report.isReadOnly()) {
+        report.setReading(gedcom);
+        try {
+          gedcom.doReadUnitOfWork(start);
+        } finally {
+          report.setReading(null);
+        }
+      } else {
+        gedcom.doUnitOfWork(start);
+      }
     } catch (Throwable t) {
       if (t.getCause()!=null)
         t = t.getCause();
@@ -89,7 +103,12 @@ import java.util.logging.Logger;
     }
     
     // signal done
-    callback.handleResult(report, result);
+    output.execute(new Runnable() {
+      public void run() {
+        callback.handleResult(report, result);
+      }
+    });
+    output.shutdown();
 
   }
   
@@ -125,7 +144,12 @@ import java.util.logging.Logger;
       lastFlush = System.currentTimeMillis();
 
       // dump buffer
-      callback.handleOutput(report, buffer.toString());
+      final String s = buffer.toString();
+      output.execute(new Runnable() {
+        public void run() {
+          callback.handleOutput(report, s);
+        }
+      });
         
       // clear it
       buffer.setLength(0);
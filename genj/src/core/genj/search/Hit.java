@@ -48,6 +48,11 @@ import javax.swing.text.StyledDocument;
   /** a document (cached) */
   private StyledDocument doc;
   
+  /** what's shown in document */
+  private String value;
+  private Matcher.Match[] matches;
+  private boolean isID;
+  
   /** n-th entity  */
   private int entity;
 
@@ -59,11 +64,31 @@ import javax.swing.text.StyledDocument;
     property = setProp;
     // keep sequence
     entity = setEntity;
+    // keep for document
+    this.value = value;
+    this.matches = matches;
+    this.isID = isID;
+    // done
+  }
+  
+  /**
+   * Document - prepared when first shown
+   */
+  /*package*/ StyledDocument getDocument() {
+    if (doc==null) {
+      doc = createDocument();
+      value = null;
+      matches = null;
+    }
+    return doc;
+  }
+  
+  private StyledDocument createDocument() {
     // prepare document
-    doc = new DefaultStyledDocument();
+    StyledDocument doc = new DefaultStyledDocument();
     try {
       int offset = 0;
-      String tag = setProp.getPropertyName();
+      String tag = property.getPropertyName();
       // indent
       doc.insertString(offset++, " ", null);
       // tag first for values and not IDs
@@ -86,17 +111,11 @@ import javax.swing.text.StyledDocument;
       }
       // keep image
       SimpleAttributeSet img = new SimpleAttributeSet();
-      StyleConstants.setIcon(img, setProp.getImage(false));
+      StyleConstants.setIcon(img, property.getImage(false));
       doc.insertString(0, " ", img);
     } catch (Throwable t) {
     }
     // done
-  }
-  
-  /**
-   * Document
-   */
-  /*package*/ StyledDocument getDocument() {
     return doc;
   }
   
@@ -114,4 +133,8 @@ import javax.swing.text.StyledDocument;
     return entity;
   }
   
+  /*package*/ void setEntity(int set) {
+    entity = set;
+  }
+  
 } //Hit
@@ -0,0 +1,502 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.search;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomListener;
+import genj.gedcom.Property;
+import genj.gedcom.PropertyXRef;
+import genj.gedcom.TagPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An index of distinct display values by tag path and of the (lowercase) tokens in them.
+ * A query is matched against distinct values instead of every property - for simple
+ * queries only against the values containing a token that contains one of the words
+ * looked for, found through one sorted array of all tokens' suffixes. The result are the entities
+ * containing the matching values. The index is built on first use (a chunk of entities at a
+ * time) and kept current by re-indexing entities that changed - values no entity contains
+ * anymore are dropped.
+ */
+/*package*/ class Index implements GedcomListener {
+
+  /** entities indexed per read lock while building */
+  private final static int CHUNK = 1000;
+
+  /** tokens added or removed before suffixes are sorted again */
+  private final static int UNSORTED = 1000;
+
+  private Gedcom gedcom;
+
+  /** paths starting with entity tags */
+  private Map<String, Node> roots = null;
+
+  /** entities not indexed yet while building */
+  private List<Entity> unindexed = null;
+
+  /** entity ids (not restricted by tags) */
+  private Node ids = new Node(null);
+
+  /** values by tokens */
+  private Map<String, Set<Key>> tokens = new HashMap<String, Set<Key>>();
+
+  /** tokens' suffixes (token and offset) sorted - tokens containing a word are those with a suffix starting with it */
+  private String[] sorted = null;
+  private long[] suffixes = null;
+
+  /** tokens added and removed since suffixes were sorted */
+  private Set<String> unsorted = new HashSet<String>();
+  private int dropped = 0;
+
+  /** the values each entity was indexed under */
+  private Map<Entity, Key[]> entity2keys = new HashMap<Entity, Key[]>();
+
+  /** entities changed since last update */
+  private Set<Entity> dirty = new HashSet<Entity>();
+
+  /**
+   * Constructor
+   */
+  /*package*/ Index(Gedcom gedcom) {
+    this.gedcom = gedcom;
+  }
+
+  /**
+   * Build the index (unless built already) - units of work can run between chunks of entities
+   * and are picked up as changes. Not to be called while holding the gedcom's read lock.
+   */
+  /*package*/ void build() throws InterruptedException {
+    Lock lock = gedcom.getReadLock();
+    while (true) {
+      if (Thread.interrupted())
+        throw new InterruptedException();
+      lock.lockInterruptibly();
+      try {
+        synchronized (this) {
+          if (roots==null)
+            start();
+          if (index(CHUNK))
+            return;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Find entities with a value (or id) that matches
+   * @param tags tags that have to be part of a matching value's path (doesn't apply to entities' values)
+   */
+  /*package*/ synchronized Set<Entity> getEntities(Matcher matcher, List<String> tags) {
+
+    update();
+
+    Set<Entity> result = new HashSet<Entity>();
+
+    // narrow down by tokens?
+    String word = matcher instanceof SimpleMatcher ? getLongestPart(((SimpleMatcher)matcher).getWords()) : null;
+    if (word!=null) {
+      Set<Key> keys = new HashSet<Key>();
+      for (String token : getTokens(word))
+        keys.addAll(tokens.get(token));
+      for (Key key : keys) {
+        if (key.node.isOK(tags) && matcher.matches(key.value))
+          result.addAll(key.entities);
+      }
+      return result;
+    }
+
+    // check all distinct values
+    collect(ids, matcher, tags, result);
+    for (Node root : roots.values())
+      collect(root, matcher, tags, result);
+
+    return result;
+  }
+
+  /**
+   * whether a token is known (and found as containing itself)
+   */
+  /*package*/ synchronized boolean containsToken(String token) {
+    update();
+    return tokens.containsKey(token) && getTokens(token).contains(token);
+  }
+
+  /**
+   * tokens containing a word
+   */
+  private Set<String> getTokens(String word) {
+
+    if (suffixes==null || unsorted.size()+dropped>UNSORTED)
+      sort();
+
+    Set<String> result = new HashSet<String>();
+
+    // suffixes starting with word
+    int lo = 0, hi = suffixes.length;
+    while (lo<hi) {
+      int mid = (lo+hi)>>>1;
+      if (compare(sorted[token(suffixes[mid])], offset(suffixes[mid]), word, 0)<0)
+        lo = mid+1;
+      else
+        hi = mid;
+    }
+    for (int i=lo; i<suffixes.length; i++) {
+      String token = sorted[token(suffixes[i])];
+      if (!token.startsWith(word, offset(suffixes[i])))
+        break;
+      if (tokens.containsKey(token))
+        result.add(token);
+    }
+
+    // and those not sorted yet
+    for (String token : unsorted) {
+      if (token.contains(word))
+        result.add(token);
+    }
+
+    return result;
+  }
+
+  /**
+   * sort suffixes of all current tokens
+   */
+  private void sort() {
+
+    final String[] all = tokens.keySet().toArray(new String[tokens.size()]);
+    int n = 0;
+    for (String token : all)
+      n += token.length();
+
+    Long[] keys = new Long[n];
+    for (int t=0, k=0; t<all.length; t++) {
+      for (int i=0; i<all[t].length(); i++)
+        keys[k++] = ((long)t<<32) | i;
+    }
+    Arrays.sort(keys, new Comparator<Long>() {
+      public int compare(Long k1, Long k2) {
+        return Index.compare(all[token(k1)], offset(k1), all[token(k2)], offset(k2));
+      }
+    });
+
+    sorted = all;
+    suffixes = new long[n];
+    for (int k=0; k<n; k++)
+      suffixes[k] = keys[k];
+    unsorted.clear();
+    dropped = 0;
+  }
+
+  private static int token(long suffix) {
+    return (int)(suffix>>>32);
+  }
+
+  private static int offset(long suffix) {
+    return (int)suffix;
+  }
+
+  /**
+   * compare two strings from given offsets on
+   */
+  private static int compare(String s1, int i, String s2, int j) {
+    int n = Math.min(s1.length()-i, s2.length()-j);
+    for (int k=0; k<n; k++) {
+      int c = s1.charAt(i+k) - s2.charAt(j+k);
+      if (c!=0)
+        return c;
+    }
+    return (s1.length()-i) - (s2.length()-j);
+  }
+
+  /**
+   * the longest part of words that tokens can contain
+   */
+  private String getLongestPart(String[] words) {
+    String result = null;
+    for (String word : words) {
+      for (String part : tokenize(word)) {
+        if (result==null||part.length()>result.length())
+          result = part;
+      }
+    }
+    return result;
+  }
+
+  private void collect(Node node, Matcher matcher, List<String> tags, Set<Entity> result) {
+
+    // values
+    if (node.isOK(tags)) for (Key key : node.values.values()) {
+      if (!key.entities.isEmpty() && matcher.matches(key.value))
+        result.addAll(key.entities);
+    }
+
+    // sub paths
+    for (Node child : node.children.values())
+      collect(child, matcher, tags, result);
+  }
+
+  /**
+   * build or update index
+   */
+  private void update() {
+
+    // grab what changed - events don't wait for us
+    Set<Entity> changed;
+    synchronized (dirty) {
+      changed = new HashSet<Entity>(dirty);
+      dirty.clear();
+    }
+
+    // not built yet?
+    if (roots==null)
+      start();
+    index(Integer.MAX_VALUE);
+
+    if (changed.isEmpty())
+      return;
+
+    // references show values of the entities they point to - and those can show values
+    // of others in turn (families their spouses)
+    for (int hop=0; hop<2; hop++) {
+      for (Entity entity : new ArrayList<Entity>(changed)) {
+        if (!gedcom.contains(entity))
+          continue;
+        for (PropertyXRef xref : entity.getProperties(PropertyXRef.class)) {
+          Entity target = xref.getTargetEntity();
+          if (target!=null)
+            changed.add(target);
+        }
+      }
+    }
+
+    // forget what the entities were indexed under (keeping values known)
+    Set<Key> keys = new HashSet<Key>();
+    for (Entity entity : changed) {
+      Key[] old = entity2keys.remove(entity);
+      if (old!=null) for (Key key : old)
+        keys.add(key);
+    }
+    for (Key key : keys)
+      key.entities.removeAll(changed);
+
+    // and index again
+    for (Entity entity : changed) {
+      if (gedcom.contains(entity))
+        index(entity);
+    }
+
+    // drop values not contained anymore
+    for (Key key : keys) {
+      if (key.entities.isEmpty())
+        remove(key);
+    }
+
+  }
+
+  private void start() {
+    roots = new HashMap<String, Node>();
+    unindexed = new ArrayList<Entity>(gedcom.getEntities());
+  }
+
+  /**
+   * index entities not indexed yet (deleted meanwhile or indexed as changed already)
+   * @return whether there are no more
+   */
+  private boolean index(int n) {
+    for (int i=0; i<n && !unindexed.isEmpty(); i++) {
+      Entity entity = unindexed.remove(unindexed.size()-1);
+      if (gedcom.contains(entity) && !entity2keys.containsKey(entity))
+        index(entity);
+    }
+    return unindexed.isEmpty();
+  }
+
+  /**
+   * index an entity's values
+   */
+  private void index(Entity entity) {
+
+    Node root = roots.get(entity.getTag());
+    if (root==null) {
+      root = new Node(new TagPath(entity.getTag()));
+      roots.put(entity.getTag(), root);
+    }
+
+    Set<Key> keys = new LinkedHashSet<Key>();
+    keys.add(getKey(ids, entity.getId()));
+    index(entity, root, keys);
+
+    for (Key key : keys)
+      key.entities.add(entity);
+    entity2keys.put(entity, keys.toArray(new Key[keys.size()]));
+  }
+
+  private void index(Property prop, Node node, Set<Key> keys) {
+
+    // value
+    if (!prop.isTransient())
+      keys.add(getKey(node, prop.getDisplayValue()));
+
+    // subs
+    for (int i=0, j=prop.getNoOfProperties(); i<j; i++) {
+      Property child = prop.getProperty(i);
+      Node sub = node.children.get(child.getTag());
+      if (sub==null) {
+        sub = new Node(new TagPath(node.path, child.getTag()));
+        node.children.put(child.getTag(), sub);
+      }
+      index(child, sub, keys);
+    }
+  }
+
+  /**
+   * key for a value at a path - new values are added to tokens
+   */
+  private Key getKey(Node node, String value) {
+    Key key = node.values.get(value);
+    if (key==null) {
+      key = new Key(node, value);
+      node.values.put(value, key);
+      for (String token : tokenize(value)) {
+        Set<Key> keys = tokens.get(token);
+        if (keys==null) {
+          keys = new HashSet<Key>(2);
+          tokens.put(token, keys);
+          if (suffixes!=null)
+            unsorted.add(token);
+        }
+        keys.add(key);
+      }
+    }
+    return key;
+  }
+
+  /**
+   * remove a key no entity contains anymore - tokens without values go as well
+   */
+  private void remove(Key key) {
+    key.node.values.remove(key.value);
+    for (String token : tokenize(key.value)) {
+      Set<Key> keys = tokens.get(token);
+      keys.remove(key);
+      if (!keys.isEmpty())
+        continue;
+      tokens.remove(token);
+      if (suffixes!=null && !unsorted.remove(token))
+        dropped++;
+    }
+  }
+
+  /**
+   * lowercase letter and digit sequences
+   */
+  private static Set<String> tokenize(String value) {
+    Set<String> result = new HashSet<String>();
+    int start = -1;
+    for (int i=0, j=value.length(); i<=j; i++) {
+      boolean isToken = i<j && Character.isLetterOrDigit(value.charAt(i));
+      if (isToken && start<0)
+        start = i;
+      if (!isToken && start>=0) {
+        result.add(value.substring(start, i).toLowerCase());
+        start = -1;
+      }
+    }
+    return result;
+  }
+
+  private void changed(Property property) {
+    Entity entity = property.getEntity();
+    if (entity!=null) synchronized (dirty) {
+      dirty.add(entity);
+    }
+  }
+
+  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
+    changed(entity);
+  }
+
+  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
+    changed(entity);
+  }
+
+  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
+    changed(property);
+  }
+
+  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
+    changed(property);
+  }
+
+  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
+    changed(property);
+  }
+
+  /**
+   * A path properties' values are found at
+   */
+  private static class Node {
+
+    private TagPath path;
+    private Map<String, Node> children = new HashMap<String, Node>(4);
+    private Map<String, Key> values = new HashMap<String, Key>(4);
+
+    Node(TagPath path) {
+      this.path = path;
+    }
+
+    /** entities' values and ids are always ok - otherwise all tags have to be in path */
+    boolean isOK(List<String> tags) {
+      if (path!=null&&path.length()>1) {
+        for (String tag : tags) {
+          if (!path.contains(tag))
+            return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A distinct value and entities containing it
+   */
+  private static class Key {
+    private Node node;
+    private String value;
+    private List<Entity> entities = new ArrayList<Entity>(1);
+    Key(Node node, String value) {
+      this.node = node;
+      this.value = value;
+    }
+  }
+
+} //Index
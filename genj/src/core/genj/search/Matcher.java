@@ -41,6 +41,15 @@ public abstract class Matcher {
     return (Match[])result.toArray(new Match[result.size()]);
   }
 
+  /**
+   * whether there's any match
+   */
+  public boolean matches(String value) {
+    List<Match> result = new ArrayList<Match>(4);
+    match(value, result);
+    return !result.isEmpty();
+  }
+
   /**
    * match (impl)
    */
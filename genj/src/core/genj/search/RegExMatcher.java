@@ -49,6 +49,13 @@ public class RegExMatcher extends Matcher {
     }
   }
   
+  /**
+   * @see genj.search.Matcher#matches(java.lang.String)
+   */
+  public boolean matches(String input) {
+    return compiled.matcher(input).find();
+  }
+  
   /**
    * @see genj.search.Matcher#match(java.lang.String, java.util.List)
    */
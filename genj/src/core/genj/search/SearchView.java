@@ -113,6 +113,9 @@ public class SearchView extends View {
   
   /** worker */
   private Worker worker;
+  
+  /** index of current gedcom */
+  private Index index;
 
   /**
    * Constructor
@@ -221,7 +224,7 @@ public class SearchView extends View {
     remember(choiceTag , oldTags , tags );
     
     // start anew
-    worker.start(context.getGedcom(), tags, value, checkRegExp.isSelected());
+    worker.start(context.getGedcom(), index, tags, value, checkRegExp.isSelected());
     
     // done
   }
@@ -256,6 +259,8 @@ public class SearchView extends View {
       actionStart.setEnabled(false);
       
       context.getGedcom().removeGedcomListener((GedcomListener)Spin.over(results));
+      context.getGedcom().removeGedcomListener(index);
+      index = null;
     }
     
     // keep new
@@ -265,6 +270,10 @@ public class SearchView extends View {
     if (context.getGedcom()!=null) {
       context = new Context(newContext.getGedcom());
       context.getGedcom().addGedcomListener((GedcomListener)Spin.over(results));
+      if (index==null) {
+        index = new Index(context.getGedcom());
+        context.getGedcom().addGedcomListener(index);
+      }
       actionStart.setEnabled(true);
     }
     
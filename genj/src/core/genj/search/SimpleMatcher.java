@@ -42,6 +42,29 @@ public class SimpleMatcher extends Matcher {
       words[i] = tokens.nextToken();
   }
   
+  /**
+   * the (lowercase) words looked for
+   */
+  /*package*/ String[] getWords() {
+    return words;
+  }
+  
+  /**
+   * @see genj.search.Matcher#matches(java.lang.String)
+   */
+  public boolean matches(String input) {
+    
+    if (words.length==0)
+      return false;
+    
+    input = input.toLowerCase();
+    for (int i=0;i<words.length;i++) {
+      if (input.indexOf(words[i])<0)
+        return false;
+    }
+    return true;
+  }
+  
   /**
    * @see genj.search.Matcher#match(java.lang.String, java.util.List)
    */
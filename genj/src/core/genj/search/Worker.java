@@ -26,103 +26,66 @@ import genj.gedcom.TagPath;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Background search worker
+ * Background search worker - entities are matched in partitions on all cores, hits
+ * are reported in order of entities
  */
 /*package*/ class Worker {
   
-  /** max # hits */
-  private final static int MAX_HITS = 255;
+  /** entities per partition */
+  private final static int PARTITION = 64;
+  
+  /** pool matching partitions */
+  private final static ForkJoinPool POOL = new ForkJoinPool();
   
   /** one listener */
   private WorkerListener listener;
   
-  /** current search state */
-  private Gedcom gedcom;
-  private List<String> tags;
-  private Matcher matcher;
-  private Set<Entity> entities = new HashSet<Entity>();
-  private List<Hit> hits = new ArrayList<Hit>(MAX_HITS);
-  private int hitCount = 0;
+  /** searches one after the other */
+  private ExecutorService control = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread result = new Thread(r, "Search");
+      result.setDaemon(true);
+      return result;
+    }
+  });
   
-  /** thread */
-  private Thread thread;
-  private AtomicBoolean lock = new AtomicBoolean(false);
-  private long lastFlush;
+  /** current search */
+  private Future<?> current;
   
   /*package*/ Worker(WorkerListener listener) {
     this.listener = listener;
   }
   
   /** cancel current ongoing search */
-  /*package*/ void stop() {
-
-    synchronized (lock) {
-      try {
-        lock.set(false);
-        if (thread!=null) thread.interrupt();
-      } catch (Throwable t) {
-      }
-    }
-    
-    // done
+  /*package*/ synchronized void stop() {
+    // interrupts the search
+    if (current!=null)
+      current.cancel(true);
+    current = null;
   }
 
-  /** start search */
-  /*package*/ void start(Gedcom gedcom, String tags, String value, boolean regexp) {
+  /** start search - looking at values in index (if available) instead of all properties */
+  /*package*/ synchronized void start(Gedcom gedcom, Index index, String tags, String value, boolean regexp) {
     
-    // sync up
-    synchronized (lock) {
-      
-      // bail if already running
-      if (thread!=null)
-        throw new IllegalStateException("can't start while running");
-
-      
-      // prepare matcher & path
-      this.gedcom = gedcom;
-      this.matcher = getMatcher(value, regexp);
-      this.tags = split(tags);
-      this.hits.clear();
-      this.entities.clear();
-      this.hitCount = 0;
-      
-      lock.set(true);
-
-      thread = new Thread(new Runnable() {
-        public void run() {
-          try {
-            Worker.this.listener.started();
-            search(Worker.this.gedcom);
-            flush();
-          } catch (Throwable t) {
-            Logger.getLogger("genj.search").log(Level.FINE, "worker bailed", t);
-          } finally {
-            synchronized (lock) {
-              thread = null;
-              lock.set(false);
-              lock.notifyAll(); 
-            }
-            try {
-              Worker.this.listener.stopped();
-            } catch (Throwable t) {
-              // this will happen if we are being interrupted
-              // going through Spin's transition to EDT
-              // and we don't care about the result
-            }
-          }
-        }
-      });
-      thread.setDaemon(true);
-      thread.start();
-    }
+    // a previous search is stopped and finishes before this one starts
+    stop();
+    
+    current = control.submit(new Search(gedcom, index, getMatcher(value, regexp), split(tags)));
     
     // done
   }
@@ -138,83 +101,6 @@ import java.util.logging.Logger;
     return result;
   }
   
-  /** search in gedcom (not on EDT) */
-  private void search(Gedcom gedcom) {
-    for (int t=0; t<Gedcom.ENTITIES.length && hitCount<MAX_HITS; t++) {
-      for (Entity entity : gedcom.getEntities(Gedcom.ENTITIES[t])) {
-        
-        // next
-        search(entity, entity);
-
-        // still going?
-        if (!lock.get())
-          return;
-      }
-    }
-  }
-
-  private void flush() {
-    // still more data to report?
-    if (!hits.isEmpty()) {
-      listener.more(Collections.unmodifiableList(hits));
-      hits.clear();
-    }
-  }
-  
-  private boolean checkPath(Entity entity, Property prop) {
-    // entities are always ok, no path all good as well
-    if (entity==prop || tags.isEmpty())
-      return true;
-    // all tags in path?
-    TagPath path = prop.getPath();
-    for (String tag : tags) {
-      if (!path.contains(tag))
-        return false;
-    }
-    return true;
-  }
-  
-  /** search property (not on EDT) */
-  private void search(Entity entity, Property prop) {
-    // parse all where path ok and not transient
-    if (checkPath(entity,prop)&&!prop.isTransient()) {
-      // check entity's id
-      if (entity==prop)
-        search(entity, entity, entity.getId(), true);
-      // check prop's value
-      search(entity, prop, prop.getDisplayValue(), false);
-    }
-    // check subs
-    int n = prop.getNoOfProperties();
-    for (int i=0;i<n;i++) 
-      search(entity, prop.getProperty(i));
-    // done
-  }
-
-  /** search property's value */
-  private void search(Entity entity, Property prop, String value, boolean isID) {
-    // look for matches
-    Matcher.Match[] matches = matcher.match(value);
-    if (matches.length==0)
-      return;
-    // too many?
-    if (hitCount>=MAX_HITS)
-      return;
-    // keep entity
-    entities.add(entity);
-    // create a hit
-    Hit hit = new Hit(prop, value, matches, entities.size(), isID);
-    // keep it
-    hits.add(hit);
-    hitCount++;
-    // sync every 500ms
-    long now = System.currentTimeMillis();
-    if (now-lastFlush>500) 
-      flush();
-    lastFlush = now;
-    // done
-  }
-
   /**
    * Returns a matcher for given pattern and regex flag
    */
@@ -228,5 +114,178 @@ import java.util.logging.Logger;
     // done
     return result;
   }
+  
+  /**
+   * One search (not on EDT)
+   */
+  private class Search implements Runnable {
+    
+    private Gedcom gedcom;
+    private Index index;
+    private Matcher matcher;
+    private List<String> tags;
+    private volatile boolean cancelled = false;
+    
+    private List<Hit> hits = new ArrayList<Hit>(255);
+    private long lastFlush = 0;
+    
+    Search(Gedcom gedcom, Index index, Matcher matcher, List<String> tags) {
+      this.gedcom = gedcom;
+      this.index = index;
+      this.matcher = matcher;
+      this.tags = tags;
+    }
+    
+    public void run() {
+      List<Partition> partitions = new ArrayList<Partition>();
+      try {
+        listener.started();
+        
+        // build the index first (changes don't wait for that)
+        if (index!=null)
+          index.build();
+        
+        // entities with matching values or all
+        List<Entity> entities = new ArrayList<Entity>();
+        Lock lock = gedcom.getReadLock();
+        lock.lockInterruptibly();
+        try {
+          Set<Entity> candidates = index!=null ? index.getEntities(matcher, tags) : null;
+          for (int t=0; t<Gedcom.ENTITIES.length; t++) {
+            for (Entity entity : gedcom.getEntities(Gedcom.ENTITIES[t])) {
+              if (candidates==null||candidates.contains(entity))
+                entities.add(entity);
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+        
+        // match partitions in parallel
+        for (int i=0; i<entities.size(); i+=PARTITION) {
+          Partition partition = new Partition(entities.subList(i, Math.min(entities.size(), i+PARTITION)));
+          partitions.add(partition);
+          POOL.execute(partition);
+        }
+        
+        // and collect hits in order
+        int entity = 0;
+        for (Partition partition : partitions) {
+          for (Hit hit : partition.get()) {
+            hit.setEntity(entity + hit.getEntity());
+            hits.add(hit);
+          }
+          entity += partition.entities;
+          // sync every 500ms
+          long now = System.currentTimeMillis();
+          if (now-lastFlush>500) {
+            flush();
+            lastFlush = now;
+          }
+        }
+        
+        flush();
+      } catch (InterruptedException e) {
+        // stopped
+      } catch (Throwable t) {
+        Logger.getLogger("genj.search").log(Level.FINE, "worker bailed", t);
+      } finally {
+        cancelled = true;
+        for (Partition partition : partitions)
+          partition.cancel(false);
+        // going through Spin's transition to EDT while interrupted would fail
+        Thread.interrupted();
+        try {
+          listener.stopped();
+        } catch (Throwable t) {
+          Logger.getLogger("genj.search").log(Level.FINE, "worker bailed", t);
+        }
+      }
+    }
+
+    private void flush() {
+      // still more data to report?
+      if (!hits.isEmpty()) {
+        listener.more(Collections.unmodifiableList(hits));
+        hits.clear();
+      }
+    }
+  
+    /**
+     * A partition of entities searched in the pool - hits are numbered by entities in the partition
+     */
+    private class Partition extends RecursiveTask<List<Hit>> {
+      
+      private static final long serialVersionUID = 1L;
+      
+      private List<Entity> todo;
+      private int entities = 0;
+      
+      Partition(List<Entity> todo) {
+        this.todo = todo;
+      }
+      
+      @Override
+      protected List<Hit> compute() {
+        List<Hit> result = new ArrayList<Hit>();
+        // changes wait for partitions (not the whole search)
+        Lock lock = gedcom.getReadLock();
+        lock.lock();
+        try {
+          for (Entity entity : todo) {
+            if (cancelled)
+              break;
+            int size = result.size();
+            search(entity, entity, result);
+            if (result.size()>size)
+              entities++;
+          }
+        } finally {
+          lock.unlock();
+        }
+        return result;
+      }
+      
+      private boolean checkPath(Entity entity, Property prop) {
+        // entities are always ok, no path all good as well
+        if (entity==prop || tags.isEmpty())
+          return true;
+        // all tags in path?
+        TagPath path = prop.getPath();
+        for (String tag : tags) {
+          if (!path.contains(tag))
+            return false;
+        }
+        return true;
+      }
+      
+      /** search property */
+      private void search(Entity entity, Property prop, List<Hit> result) {
+        // parse all where path ok and not transient
+        if (checkPath(entity,prop)&&!prop.isTransient()) {
+          // check entity's id
+          if (entity==prop)
+            search(prop, entity.getId(), true, result);
+          // check prop's value
+          search(prop, prop.getDisplayValue(), false, result);
+        }
+        // check subs
+        int n = prop.getNoOfProperties();
+        for (int i=0;i<n;i++) 
+          search(entity, prop.getProperty(i), result);
+        // done
+      }
+    
+      /** search property's value */
+      private void search(Property prop, String value, boolean isID, List<Hit> result) {
+        // look for matches
+        Matcher.Match[] matches = matcher.match(value);
+        if (matches.length>0)
+          result.add(new Hit(prop, value, matches, entities+1, isID));
+      }
+      
+    } //Partition
+    
+  } //Search
 
 }
@@ -25,6 +25,7 @@ import genj.common.PropertyTableWidget;
 import genj.gedcom.Context;
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomChanges;
 import genj.gedcom.Property;
 import genj.gedcom.TagPath;
 import genj.util.Registry;
@@ -38,9 +39,12 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.swing.ButtonGroup;
@@ -332,67 +336,77 @@ public class TableView extends View {
     }
     
     /** gedcom callback */
-    public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
-      // an entity we're not looking at?
-      if (!mode.getTag().equals(entity.getTag())) 
-        return;
-      // add it
-      rows.add(entity);
-      // tell about it
-      fireRowsAdded(rows.size()-1, rows.size()-1);
-      // done
-    }
-
-    /** gedcom callback */
-    public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
-      // an entity we're not looking at?
-      if (!mode.getTag().equals(entity.getTag())) 
+    public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+      
+      // rows not looked at yet?
+      if (rows==null)
         return;
-      // delete it
-      for (int i=0;i<rows.size();i++) {
-        if (rows.get(i)==entity) {
-          rows.remove(i);
-          // tell about it
-          fireRowsDeleted(i, i);
-          // done
-          return;
+      
+      String tag = mode.getTag();
+      
+      // drop deleted entities - one pass over rows, told about from the bottom up
+      Set<Entity> deleted = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+      for (Entity entity : changes.getDeleted()) {
+        if (tag.equals(entity.getTag()))
+          deleted.add(entity);
+      }
+      if (!deleted.isEmpty()) {
+        int[] removed = new int[deleted.size()];
+        int r = 0, j = 0;
+        for (int i=0;i<rows.size();i++) {
+          Entity entity = rows.get(i);
+          if (r<removed.length && deleted.contains(entity))
+            removed[r++] = i;
+          else
+            rows.set(j++, entity);
+        }
+        rows.subList(j, rows.size()).clear();
+        if (r<removed.length)
+          LOG.warning("got notified that "+(removed.length-r)+" entities were deleted but they weren't in rows in the first place");
+        while (r>0) {
+          int end = removed[--r], start = end;
+          while (r>0 && removed[r-1]==start-1)
+            start = removed[--r];
+          fireRowsDeleted(start, end);
         }
       }
-      // hmm, strange
-      LOG.warning("got notified that entity "+entity.getId()+" was deleted but it wasn't in rows in the first place");
-    }
-
-    /** gedcom callback */
-    public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
-      invalidate(gedcom, property.getEntity(), added.getPath());
-    }
-
-    /** gedcom callback */
-    public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
-      invalidate(gedcom, property.getEntity(), property.getPath());
-    }
-
-    /** gedcom callback */
-    public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
-      invalidate(gedcom, property.getEntity(), new TagPath(property.getPath(), deleted.getTag()));
-    }
-    
-    private void invalidate(Gedcom gedcom, Entity entity, TagPath path) {
-      // an entity we're not looking at?
-      if (!mode.getTag().equals(entity.getTag())) 
-        return;
-      // a path we're interested in?
+      
+      // add new entities at the end
+      int first = rows.size();
+      for (Entity entity : changes.getAdded()) {
+        if (tag.equals(entity.getTag()))
+          rows.add(entity);
+      }
+      if (rows.size()>first)
+        fireRowsAdded(first, rows.size()-1);
+      
+      // changed cells for paths we're interested in
       TagPath[] paths = mode.getPaths();
-      for (int i=0;i<paths.length;i++) {
-        if (paths[i].equals(path)) {
-          for (int j=0;j<rows.size();j++) {
-            if (rows.get(j)==entity) {
-                fireRowsChanged(j,j,i);
-                return;
-            }
-          }      
+      Map<Entity, Integer> entity2row = null;
+      for (Entity entity : changes.getChanged()) {
+        if (!tag.equals(entity.getTag())) 
+          continue;
+        if (entity2row==null) {
+          entity2row = new IdentityHashMap<Entity, Integer>();
+          for (int i=0;i<rows.size();i++)
+            entity2row.put(rows.get(i), i);
+        }
+        Integer row = entity2row.get(entity);
+        if (row==null)
+          continue;
+        boolean[] cols = new boolean[paths.length];
+        for (Property prop : changes.getProperties(entity)) {
+          // a deleted property isn't anywhere anymore
+          TagPath path = prop.getEntity()==entity ? prop.getPath() : null;
+          for (int i=0;i<paths.length;i++) 
+            cols[i] |= path==null || paths[i].startsWith(path) || path.startsWith(paths[i]);
+        }
+        for (int i=0;i<paths.length;i++) {
+          if (cols[i])
+            fireRowsChanged(row, row, i);
         }
       }
+      
       // done
     }
 
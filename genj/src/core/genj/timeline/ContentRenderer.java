@@ -32,7 +32,6 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -133,11 +132,10 @@ public class ContentRenderer {
     // check clip as we go
     Rectangle2D clip = g.getClip();
     // loop
-    List layers = model.layers;
+    List<List<Model.Event>> layers = model.layers;
     for (int l=0; l<layers.size(); l++) {
       if (l<Math.floor(clip.getMinY())||l>Math.ceil(clip.getMaxY())) continue;
-      List layer = (List)layers.get(l);
-      renderEvents(g, model, layer, l);
+      renderEvents(g, model, layers.get(l), l);
     }
     // done
   }
@@ -145,23 +143,20 @@ public class ContentRenderer {
   /** 
    * Renders a layer
    */
-  private final void renderEvents(UnitGraphics g, Model model, List layer, int level) {
+  private final void renderEvents(UnitGraphics g, Model model, List<Model.Event> layer, int level) {
     // check clip as we go
     Rectangle2D clip = g.getClip();
-    // loop through events
-    Iterator events = layer.iterator();
-    Model.Event event = (Model.Event)events.next();
-    while (true) {
+    // loop through events starting with the last one before clip
+    for (int e=Math.max(0, Model.search(layer, clip.getMinX())-1), n=layer.size(); e<n; e++) {
+      Model.Event event = layer.get(e);
+      // past clip?
+      if (event.from>=clip.getMaxX()) break;
       // already grabbing next because we paint as much as we can
-      Model.Event next = events.hasNext() ? (Model.Event)events.next() : null;
+      Model.Event next = e+1<n ? layer.get(e+1) : null;
       // check clipping and draw
-      if ((next==null||next.from>clip.getMinX())&&(event.from<clip.getMaxX())) {
+      if (next==null||next.from>clip.getMinX()) {
         renderEvent(g, model, event, next, level);
       }
-      // no more?
-      if (next==null) break;
-      // one more!
-      event = next;
     } 
     // done
   }
@@ -21,9 +21,12 @@ package genj.timeline;
 
 import genj.gedcom.Context;
 import genj.gedcom.Entity;
+import genj.gedcom.Fam;
 import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomBatchListener;
+import genj.gedcom.GedcomChanges;
 import genj.gedcom.GedcomException;
-import genj.gedcom.GedcomListener;
+import genj.gedcom.Indi;
 import genj.gedcom.Property;
 import genj.gedcom.PropertyDate;
 import genj.gedcom.PropertyEvent;
@@ -36,18 +39,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * A model that wraps the Gedcom information in a timeline fashion
+ * A model that wraps the Gedcom information in a timeline fashion - events are
+ * kept in layers sorted by time and changes are applied per entity
  */
-/*package*/ class Model implements GedcomListener {
+/*package*/ class Model implements GedcomBatchListener {
 
   /** the gedcom we're looking at */
   private Gedcom gedcom;
@@ -66,9 +70,12 @@ import java.util.concurrent.CopyOnWriteArrayList;
     "INDI:BIRT", "FAM:MARR", "INDI:EMIG" 
   };
     
-  /** our levels */
+  /** our levels - events in each don't overlap and are sorted by time */
   /*package*/List<List<Event>> layers;
   
+  /** events by entity */
+  private Map<Entity, List<Event>> entity2events = new HashMap<Entity, List<Event>>();
+  
   /** time per event */
   /*package*/ double 
     timeBeforeEvent = 0.5D,
@@ -102,14 +109,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
     
     // old?
     if (gedcom!=null)
-      gedcom.removeGedcomListener(this);
+      gedcom.removeGedcomBatchListener(this);
     
     // keep
     gedcom = newGedcom;
     
     // new?
     if (gedcom!=null)
-      gedcom.addGedcomListener(this);
+      gedcom.addGedcomBatchListener(this);
     
     // create events
     createEvents();
@@ -186,10 +193,13 @@ import java.util.concurrent.CopyOnWriteArrayList;
    * Returns an event by year/layer
    */
   protected Event getEvent(double year, int layer) {
-    // look for events in appropriate layer
-    Iterator events = ((List)layers.get(layer)).iterator();
-    while (events.hasNext()) {
-      Event event = (Event)events.next();
+    if (layer<0||layer>=layers.size())
+      return null;
+    // only the last event starting before year can cover it
+    List<Event> events = layers.get(layer);
+    int i = search(events, year+timeBeforeEvent)-1;
+    if (i>=0) {
+      Event event = events.get(i);
       if (event.from-timeBeforeEvent<year&&year<event.to+timeAfterEvent)
         return event;
     }
@@ -197,29 +207,40 @@ import java.util.concurrent.CopyOnWriteArrayList;
     return null;
   }
   
+  /**
+   * Position of the first event in a layer starting at or after given year
+   */
+  /*package*/ static int search(List<Event> layer, double year) {
+    int lo = 0, hi = layer.size();
+    while (lo<hi) {
+      int mid = (lo+hi) >>> 1;
+      if (layer.get(mid).from<year)
+        lo = mid+1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+  
   /**
    * Returns the events that cover the given context
    */
   protected Set<Event> getEvents(Context context) {
     
-    Set propertyHits = new HashSet();
-    Set entityHits = new HashSet();
+    Set<Event> propertyHits = new HashSet<Event>();
+    Set<Event> entityHits = new HashSet<Event>();
     
-    List<? extends Property> props = context.getProperties();
-    List<? extends Entity> ents = context.getEntities();
+    for (Entity entity : context.getEntities()) {
+      List<Event> events = entity2events.get(entity);
+      if (events!=null)
+        entityHits.addAll(events);
+    }
     
-    for (int l=0; l<layers.size(); l++) {
-      Iterator events = ((List)layers.get(l)).iterator();
-      while (events.hasNext()) {
-        Event event = (Event)events.next();
-        for (int j = 0; j < ents.size(); j++) {
-          if (ents.get(j)==event.getEntity())
-            entityHits.add(event);
-        }
-        for (int i = 0; i < props.size(); i++) {
-          if (event.getProperty()==props.get(i)||event.getProperty().contains(props.get(i)))
-            propertyHits.add(event);
-        }
+    for (Property prop : context.getProperties()) {
+      List<Event> events = entity2events.get(prop.getEntity());
+      if (events!=null) for (Event event : events) {
+        if (event.getProperty()==prop||event.getProperty().contains(prop))
+          propertyHits.add(event);
       }
     }
 
@@ -275,15 +296,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
    * Retags events for given entity
    */
   private final void contentEvents(Entity entity) {
-    // loop through layers
-    for (int l=0; l<layers.size(); l++) {
-      List layer = (List)layers.get(l);
-      Iterator events = layer.iterator();
-      while (events.hasNext()) {
-        Event event = (Event)events.next();
-        if (event.pe.getEntity()==entity) event.content();
-      }
-    }
+    List<Event> events = entity2events.get(entity);
+    if (events!=null) for (Event event : events)
+      event.content();
     // done
   }
 
@@ -292,24 +307,16 @@ import java.util.concurrent.CopyOnWriteArrayList;
    * and re-stacking them in layers
    */
   private final void layoutEvents() {
-    // reset
-    min = Double.MAX_VALUE;
-    max = -Double.MAX_VALUE;
     // keep old and create some new space
-    List old = layers;
-    layers = new ArrayList(10);
+    List<List<Event>> old = layers;
+    layers = new ArrayList<List<Event>>(10);
     // loop through old
-    for (int l=0; l<old.size(); l++) {
-      List layer = (List)old.get(l);
-      Iterator events = layer.iterator();
-      while (events.hasNext()) {
-        Event event = (Event)events.next();
+    for (List<Event> layer : old) {
+      for (Event event : layer)
         insertEvent(event);
-      }
     }
-    // extend time by before/after
-    max += timeAfterEvent;
-    min -= timeBeforeEvent;
+    // calculate limits
+    extent();
     // trigger
     fireStructureChanged();
     // done
@@ -319,37 +326,60 @@ import java.util.concurrent.CopyOnWriteArrayList;
    * Gather Events
    */
   private final void createEvents() {
-    // reset
-    min = Double.MAX_VALUE;
-    max = -Double.MAX_VALUE;
     // prepare some space
     layers = new ArrayList<List<Event>>(10);
+    entity2events.clear();
     // look for events in INDIs and FAMs
     if (gedcom!=null) {
-      createEventsFrom(gedcom.getEntities(Gedcom.INDI).iterator());
-      createEventsFrom(gedcom.getEntities(Gedcom.FAM ).iterator());
+      for (Entity e : gedcom.getEntities(Gedcom.INDI))
+        createEventsFrom(e);
+      for (Entity e : gedcom.getEntities(Gedcom.FAM))
+        createEventsFrom(e);
     }
-    // extend time by before/after
-    max += timeAfterEvent;
-    min -= timeBeforeEvent;
+    // calculate limits
+    extent();
     // trigger
     fireStructureChanged();
     // done
   }
   
+  /**
+   * Calculate limits of events extended by before/after
+   */
+  private final void extent() {
+    min = Double.MAX_VALUE;
+    max = -Double.MAX_VALUE;
+    // first and last of each layer
+    for (List<Event> layer : layers) {
+      min = Math.min(Math.floor(layer.get(0).from), min);
+      max = Math.max(Math.ceil (layer.get(layer.size()-1).to), max);
+    }
+    // extend time by before/after
+    max += timeAfterEvent;
+    min -= timeBeforeEvent;
+  }
+  
   /** 
-   * Gather Events for given entities
-   * @param es list of entities to find events in
+   * Gather Events for given entity
    */
-  private final void createEventsFrom(Iterator es) {
-    // loop through entities
-    while (es.hasNext()) {
-      Entity e = (Entity)es.next();
-      List ps = e.getProperties(PropertyEvent.class);
-      for (int j=0; j<ps.size(); j++) {
-        PropertyEvent pe = (PropertyEvent)ps.get(j);
-        if (tags.contains(pe.getTag())) createEventFrom(pe);
-      }
+  private final void createEventsFrom(Entity e) {
+    for (PropertyEvent pe : e.getProperties(PropertyEvent.class)) {
+      if (tags.contains(pe.getTag())) createEventFrom(pe);
+    }
+    // done
+  }
+  
+  /**
+   * Remove events of given entity - dropping layers that become empty
+   */
+  private final void removeEventsFrom(Entity e) {
+    List<Event> events = entity2events.remove(e);
+    if (events==null)
+      return;
+    for (Event event : events) {
+      event.layer.remove(search(event.layer, event.from));
+      if (event.layer.isEmpty())
+        layers.remove(event.layer);
     }
     // done
   }
@@ -366,7 +396,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
     
     // get it 
     try { 
-      insertEvent(new Event(pe, pd));
+      Event event = new Event(pe, pd);
+      insertEvent(event);
+      List<Event> events = entity2events.get(event.getEntity());
+      if (events==null) {
+        events = new ArrayList<Event>(4);
+        entity2events.put(event.getEntity(), events);
+      }
+      events.add(event);
     } catch (GedcomException e) {
     }
     // done
@@ -377,48 +414,36 @@ import java.util.concurrent.CopyOnWriteArrayList;
    */
   private final void insertEvent(Event e) {
     
-    // remember min and max
-    min = Math.min(Math.floor(e.from), min);
-    max = Math.max(Math.ceil (e.to  ), max);
-    
     // find a level that suits us
-    for (int l=0;l<layers.size();l++) {
+    for (List<Event> layer : layers) {
       // try to insert in level
-      List layer = (List)layers.get(l);
       if (insertEvent(e, layer)) return;
       // continue
     }
     
     // create a new layer
-    List layer = new LinkedList();
+    List<Event> layer = new ArrayList<Event>();
     layers.add(layer);
     layer.add(e);
+    e.layer = layer;
     
     // done
   }
   
   /**
-   * Insert the Event into a layer
+   * Insert the Event into a layer - only its neighbours can overlap
    * @return whether that was successfull
    */
-  private final boolean insertEvent(Event candidate, List layer) {
-    // loop through layer
-    ListIterator events = layer.listIterator();
-    do {
-      Event event = (Event)events.next();
-      // before?
-      if (candidate.to+timeAfterEvent<event.from-timeBeforeEvent) {
-        events.previous();
-        events.add(candidate);
-        return true;
-      }
-      // overlap?
-      if (candidate.from-timeBeforeEvent<event.to+timeAfterEvent) 
-        return false;
-      // after?
-    } while (events.hasNext());
-    // after!
-    events.add(candidate);
+  private final boolean insertEvent(Event candidate, List<Event> layer) {
+    int i = search(layer, candidate.from);
+    // overlapping the one before?
+    if (i>0 && candidate.from-timeBeforeEvent<layer.get(i-1).to+timeAfterEvent)
+      return false;
+    // overlapping the one after?
+    if (i<layer.size() && !(candidate.to+timeAfterEvent<layer.get(i).from-timeBeforeEvent))
+      return false;
+    layer.add(i, candidate);
+    candidate.layer = layer;
     return true;
   }
   
@@ -431,6 +456,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
     /*package*/ PropertyEvent pe;
     /*package*/ PropertyDate pd;
     /*package*/ String content;
+    /** the layer we're in */
+    private List<Event> layer;
     /** 
      * Constructor
      */
@@ -490,29 +517,43 @@ import java.util.concurrent.CopyOnWriteArrayList;
     public void structureChanged();
   } //ModelListener
 
-  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
-    createEvents();
-  }
-
-  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
-    createEvents();
-  }
-
-  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
-    gedcomPropertyDeleted(gedcom, added, -1, added);
-  }
-
-  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
-    gedcomPropertyDeleted(gedcom, property, -1, property);
-  }
-
-  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
-    if (deleted instanceof PropertyDate) {
-      createEvents();
-    } else if (deleted instanceof PropertyName) {
-      contentEvents(property.getEntity());
-      fireDataChanged();
+  public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+    
+    // entities with events changed
+    Set<Entity> changed = new LinkedHashSet<Entity>(changes.getDeleted());
+    for (Entity entity : changes.getAdded()) {
+      if (entity instanceof Indi||entity instanceof Fam)
+        changed.add(entity);
+    }
+    boolean names = false;
+    for (Entity entity : changes.getChanged()) {
+      for (Property property : changes.getProperties(entity)) {
+        if (property instanceof PropertyDate||property instanceof PropertyEvent) {
+          if (entity instanceof Indi||entity instanceof Fam)
+            changed.add(entity);
+        } else if (property instanceof PropertyName) {
+          contentEvents(entity);
+          names = true;
+        }
+      }
+    }
+    
+    if (changed.isEmpty()) {
+      if (names)
+        fireDataChanged();
+      return;
     }
+    
+    // events of changed entities only
+    for (Entity entity : changed) {
+      removeEventsFrom(entity);
+      if (gedcom.contains(entity))
+        createEventsFrom(entity);
+    }
+    // calculate limits
+    extent();
+    // trigger
+    fireStructureChanged();
   }
   
 } //TimelineModel 
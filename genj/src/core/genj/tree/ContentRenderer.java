@@ -26,7 +26,6 @@ import genj.renderer.EmptyHintKey;
 import genj.renderer.BlueprintRenderer;
 import genj.renderer.RenderPreviewHintKey;
 import genj.util.swing.UnitGraphics;
-import gj.model.Node;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -79,33 +78,23 @@ public class ContentRenderer {
   /**
    * Render the nodes
    */
-  private void renderNodes(UnitGraphics g, Model model) {
+  private void renderNodes(final UnitGraphics g, Model model) {
     
     // clip is the range we'll be looking in range
     Rectangle clip = g.getClip().getBounds();
     
     // loop
-    int count = 0;
-    for (Node node : model.getNodesIn(clip)) {
-      // grab node and its shape
-      Shape shape = node.getShape();
-      Point2D pos = node.getPosition();
-      // no shape -> no rendering
-      if (shape==null) continue;
-      // bounds not intersecting clip -> no rendering
-      Rectangle r = shape.getBounds();
-      if (!clip.intersects(
-        pos.getX()+r.getMinX(), 
-        pos.getY()+r.getMinY(),
-        r.getWidth(),
-        r.getHeight() 
-      )) continue;
-      // render it
-      count++;
-      renderNode(g, pos, shape, node.getContent());
-      // next
-    }
-    if (count>0)
+    final int[] count = new int[1];
+    model.getNodesIn(clip, new RTree.Visitor<TreeNode>() {
+      public boolean visit(TreeNode node) {
+        // render it
+        count[0]++;
+        renderNode(g, node.getPosition(), node.getShape(), node.getContent());
+        // next
+        return true;
+      }
+    });
+    if (count[0]>0)
       g.getGraphics().setRenderingHint(EmptyHintKey.KEY, false);
     
     // done
@@ -173,16 +162,21 @@ public class ContentRenderer {
   /**
    * Render the arcs
    */
-  private void renderArcs(UnitGraphics g, Model model) {
+  private void renderArcs(final UnitGraphics g, Model model) {
     // clip is the range we'll be looking in range
     Rectangle clip = g.getClip().getBounds();
     // prepare color
     g.setColor(cArcs);
     // loop
-    Collection<TreeArc> arcs = model.getArcsIn(clip);
-    for (TreeArc arc : arcs) 
-      g.draw(arc.getPath(), 0, 0);
-    if (!arcs.isEmpty())
+    final int[] count = new int[1];
+    model.getArcsIn(clip, new RTree.Visitor<TreeArc>() {
+      public boolean visit(TreeArc arc) {
+        count[0]++;
+        g.draw(arc.getPath(), 0, 0);
+        return true;
+      }
+    });
+    if (count[0]>0)
       g.getGraphics().setRenderingHint(EmptyHintKey.KEY, false);
 
     // done
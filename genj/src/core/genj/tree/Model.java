@@ -22,53 +22,64 @@ package genj.tree;
 import genj.gedcom.Entity;
 import genj.gedcom.Fam;
 import genj.gedcom.Gedcom;
-import genj.gedcom.GedcomListenerAdapter;
-import genj.gedcom.GedcomMetaListener;
+import genj.gedcom.GedcomBatchListener;
+import genj.gedcom.GedcomChanges;
 import genj.gedcom.Indi;
 import genj.gedcom.Property;
 import genj.gedcom.PropertyXRef;
 import gj.layout.LayoutException;
 import gj.layout.tree.TreeLayout;
-import gj.model.Node;
 
 import java.awt.Rectangle;
-import java.awt.Shape;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
 
 /**
- * Model of our tree
+ * Model of our tree - layouts are done off the EDT with the previous layout
+ * shown until the new one is ready
  */
 /*package*/ class Model {
   
+  /** layouts one after the other */
+  private final static ExecutorService LAYOUTS = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread result = new Thread(r, "Tree Layout");
+      result.setDaemon(true);
+      return result;
+    }
+  });
+  
   /** our gedcom callback */
   private Callback callback = new Callback();
   
   /** listeners */
   private List<ModelListener> listeners = new CopyOnWriteArrayList<ModelListener>();
 
-  /** arcs */
-  private Collection<TreeArc> arcs = new ArrayList<TreeArc>(100);
-
-  /** nodes */
-  private Map<Entity,TreeNode> entities2nodes = new HashMap<Entity, TreeNode>(100);
-  private Collection<TreeNode> nodes = new ArrayList<TreeNode>(100);
-
-  /** bounds */
-  private Rectangle bounds = new Rectangle();
+  /** the layout shown */
+  private Layout layout = new Layout(0);
   
-  /** caching */
-  private GridCache cache = null;
+  /** the last layout asked for */
+  private AtomicInteger generation = new AtomicInteger();
   
   /** whether we're vertical or not */
   private boolean isVertical = true;
@@ -85,14 +96,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
   /** whether we show toggles for un/folding */
   private boolean isFoldSymbols = true;
   
-  /** individuals whose ancestors we're not interested in */
-  private Set<String> hideAncestors = new HashSet<String>();
+  /** individuals whose ancestors we're not interested in (looked at during layout) */
+  private Set<String> hideAncestors = Collections.synchronizedSet(new HashSet<String>());
 
-  /** individuals whose descendants we're not interested in */
-  private Set<String> hideDescendants = new HashSet<String>();
+  /** individuals whose descendants we're not interested in (looked at during layout) */
+  private Set<String> hideDescendants = Collections.synchronizedSet(new HashSet<String>());
   
-  /** individuals' family */
-  private Map<Indi,Fam> indi2fam = new HashMap<Indi, Fam>();
+  /** individuals' family (looked at during layout) */
+  private Map<Indi,Fam> indi2fam = Collections.synchronizedMap(new HashMap<Indi, Fam>());
 
   /** the root we've used */
   private Entity root;
@@ -120,14 +131,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
     
     // detach
     if (root!=null) {
-      root.getGedcom().removeGedcomListener(callback);
+      root.getGedcom().removeGedcomBatchListener(callback);
       root = null;
     }
     
     // attach
     if (entity instanceof Indi ||entity instanceof Fam) {
       root = entity;
-      root.getGedcom().addGedcomListener(callback);
+      root.getGedcom().addGedcomBatchListener(callback);
     }
     
     // start fresh
@@ -227,7 +238,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
   }
 
   /**
-   * Accessor - the metrics   */
+   * Accessor - the metrics
+   */
   public TreeMetrics getMetrics() {
     return metrics;
   } 
@@ -257,49 +269,37 @@ import java.util.concurrent.CopyOnWriteArrayList;
   
   /**
    * Nodes by range
+   * @return whether the visitor went through all nodes in range
    */
-  public Collection<? extends TreeNode> getNodesIn(Rectangle range) {
-    if (cache==null) 
-      return new HashSet<TreeNode>();
-    return cache.get(range);
+  public boolean getNodesIn(Rectangle range, RTree.Visitor<? super TreeNode> visitor) {
+    return layout.nodeIndex.visit(range, visitor);
   }
 
   /**
-   * Arcs by range
+   * Arcs by range (bounds of their paths)
+   * @return whether the visitor went through all arcs in range
    */
-  public Collection<TreeArc> getArcsIn(Rectangle range) {
-    List<TreeArc> result = new ArrayList<TreeArc>(arcs.size());
-    for (TreeArc arc : arcs) {
-      if (arc.getPath()!=null && arc.getPath().intersects(range))
-        result.add(arc);
-    }
-    return result;
+  public boolean getArcsIn(Rectangle range, RTree.Visitor<? super TreeArc> visitor) {
+    return layout.arcIndex.visit(range, visitor);
   }
 
   /**
    * An node by position
    */
-  public TreeNode getNodeAt(int x, int y) {
-    // do we have a cache?
-    if (cache==null) return null;
-    // get nodes in possible range
-    int
-      w = Math.max(metrics.wIndis, metrics.wFams),
-      h = Math.max(metrics.hIndis, metrics.hFams);
-    Rectangle range = new Rectangle(x-w/2, y-h/2, w, h);
-    // loop nodes
-    Iterator it = cache.get(range).iterator();
-    while (it.hasNext()) {
-      TreeNode node = (TreeNode)it.next();
-      Shape shape = node.getShape();
-      if (shape!=null&&shape.getBounds2D().contains(x-node.pos.x,y-node.pos.y))
-        return node;
-    }
-    
-    // nothing found
-    return null;
+  public TreeNode getNodeAt(final int x, final int y) {
+    final TreeNode[] result = new TreeNode[1];
+    layout.nodeIndex.visit(new Rectangle(x, y, 0, 0), new RTree.Visitor<TreeNode>() {
+      public boolean visit(TreeNode node) {
+        if (!node.getShape().getBounds2D().contains(x-node.pos.x,y-node.pos.y))
+          return true;
+        result[0] = node;
+        return false;
+      }
+    });
+    return result[0];
   }
-     /**
+  
+  /**
    * Content by position
    */
   public Object getContentAt(int x, int y) {
@@ -311,14 +311,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
    * A node for entity (might be null)
    */
   public TreeNode getNode(Entity e) {
-    return (TreeNode)entities2nodes.get(e);
+    return (TreeNode)layout.entities2nodes.get(e);
   }
   
   /**
    * The models space bounds
    */
   public Rectangle getBounds() {
-    return bounds;
+    return layout.bounds;
   }
 
   /**
@@ -409,75 +409,88 @@ import java.util.concurrent.CopyOnWriteArrayList;
   }
   
   /**
-   * Adds a node   */
-  /*package*/ TreeNode add(TreeNode node) {
-    // check content
-    Object content = node.getContent();
-    if (content instanceof Entity) {
-      entities2nodes.put((Entity)content, node);
-    }
-    nodes.add(node);
-    return node;
-  }
-  
-  /**
-   * Adds an arc   */
-  /*package*/ TreeArc add(TreeArc arc) {
-    arcs.add(arc);
-    return arc;
-  }
-
-  /**
-   * Parses the current model starting at root   */
+   * Parses the current model starting at root - off the EDT
+   */
   private void update() {
     
-    // clear old
-    arcs.clear();
-    nodes.clear();
-    entities2nodes.clear();
-    bounds.setFrame(0,0,0,0);
+    final int ticket = generation.incrementAndGet();
     
     // nothing to do if no root set
     if (root==null) {
+      layout = new Layout(ticket);
       fireStructureChanged();
       return;
     }
-
-    // parse and layout    
-    try {
-      // make sure families only when root is not family
-      boolean isFams = isFamilies || root instanceof Fam;
-      // parse its descendants
-      Parser descendants = Parser.getInstance(false, isFams, this, metrics);
-      bounds.add(layout(descendants.parse(root), true));
-      // parse its ancestors 
-      bounds.add(layout(descendants.align(Parser.getInstance(true, isFams, this, metrics).parse(root)), false));
-    } catch (LayoutException e) {
-      e.printStackTrace();
-      root = null;
-      update();
-      return;
-    }
     
-    // create gridcache
-    cache = new GridCache(
-      bounds, 3*metrics.calcMax()
-    );
-    Iterator it = nodes.iterator();
-    while (it.hasNext()) {
-      TreeNode n = (TreeNode)it.next();
-      if (n.shape!=null) cache.put(n, n.shape.getBounds(), n.pos);
-    }
+    // parse and layout in the background - a newer request supersedes this one
+    final Entity root = this.root;
+    LAYOUTS.execute(new Runnable() {
+      public void run() {
+        if (ticket!=generation.get())
+          return;
+        Layout result = null;
+        Lock lock = root.getGedcom().getReadLock();
+        lock.lock();
+        try {
+          result = layout(root, ticket);
+        } catch (Throwable t) {
+          Logger.getLogger("genj.tree").log(Level.WARNING, "layout failed", t);
+        } finally {
+          lock.unlock();
+        }
+        show(result, ticket);
+      }
+    });
     
-    // notify
-    fireStructureChanged();
     // done
   }
+  
+  /**
+   * Show a layout on the EDT - unless a newer one was asked for
+   */
+  private void show(final Layout result, final int ticket) {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        if (ticket!=generation.get())
+          return;
+        // no layout for root?
+        if (result==null) {
+          root = null;
+          update();
+          return;
+        }
+        layout = result;
+        fireStructureChanged();
+      }
+    });
+  }
+  
+  /**
+   * Parses and layouts starting at root
+   */
+  private Layout layout(Entity root, int ticket) throws LayoutException {
+    
+    Layout result = new Layout(ticket);
+    
+    // make sure families only when root is not family
+    boolean isFams = isFamilies || root instanceof Fam;
+    // parse its descendants
+    Parser descendants = Parser.getInstance(false, isFams, this, result, metrics);
+    result.bounds.add(layout(result, descendants.parse(root), true));
+    // parse its ancestors 
+    result.bounds.add(layout(result, descendants.align(Parser.getInstance(true, isFams, this, result, metrics).parse(root)), false));
+    
+    // index nodes and arcs
+    result.index();
+    
+    // done
+    return result;
+  }
 
   /**
    * Helper that runs a TreeLayout
    */
-  private Rectangle layout(TreeNode root, boolean isTopDown) throws LayoutException {
+  private Rectangle layout(Layout result, TreeNode root, boolean isTopDown) throws LayoutException {
     
     // prepare theta
     double theta = 0;
@@ -494,9 +507,15 @@ import java.util.concurrent.CopyOnWriteArrayList;
     layout.setOrientation(theta);
     
     // done
-    return layout.layout(root, nodes.size()).getBounds();
+    return layout.layout(root, result.nodes.size()).getBounds();
   }
   
+  /**
+   * Whether a layout newer than the one shown is on its way
+   */
+  private boolean isPending() {
+    return layout.generation!=generation.get();
+  }
   
   /**
    * Fire event
@@ -571,32 +590,69 @@ import java.util.concurrent.CopyOnWriteArrayList;
   /**
    * Our gedcom Callbacks 
    */
-  private class Callback extends GedcomListenerAdapter implements GedcomMetaListener {
-    
-    private Set repaint = new HashSet();
-    private boolean update = false;
-    private Entity added;
+  private class Callback implements GedcomBatchListener {
     
-    public void gedcomWriteLockAcquired(Gedcom gedcom) {
-      added = null;
-      repaint.clear();
-    }
-    
-    public void gedcomWriteLockReleased(Gedcom gedcom) {
+    public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+      
+      // forget about deleted
+      for (Entity entity : changes.getDeleted()) {
+        
+        // clear root?
+        if (entity == root) 
+          root = null;
+        
+        // clear bookmarks?
+        ListIterator it = bookmarks.listIterator();
+        while (it.hasNext()) {
+          Bookmark b = (Bookmark)it.next();
+          if (entity == b.getEntity()) it.remove();
+        }
+        
+        // clear indi2fam?
+        indi2fam.keySet().remove(entity);
+      }
         
       // we're without root we could set now?
       if (root==null) {
-        if (added==null||!gedcom.contains(added))
+        Entity added = null;
+        for (Entity entity : changes.getAdded()) {
+          if (entity instanceof Indi) {
+            added = entity;
+            break;
+          }
+          if (added==null && entity instanceof Fam)
+            added = entity;
+        }
+        if (added==null)
           added = gedcom.getFirstEntity(Gedcom.INDI);
         root = added;
         update();
         return;
       }
       
-      // update necessary?
-      if (update) {
-        update();
-        return;
+      // an individual added to a family in the tree?
+      for (Entity entity : changes.getAdded()) {
+        if (entity instanceof Indi && isAffected((Indi)entity)) {
+          update();
+          return;
+        }
+      }
+      
+      // a reference or pedigree update of something in the tree?
+      List<TreeNode> repaint = new ArrayList<TreeNode>();
+      for (Entity entity : changes.getChanged()) {
+        for (Property property : changes.getProperties(entity)) {
+          if (property instanceof PropertyXRef || "PEDI".equals(property.getTag())) {
+            if (isAffected(entity, property)) {
+              update();
+              return;
+            }
+          }
+        }
+        // something visible?
+        TreeNode node = getNode(entity);
+        if (node!=null)
+          repaint.add(node);
       }
 
       // signal repaint 
@@ -605,56 +661,130 @@ import java.util.concurrent.CopyOnWriteArrayList;
    
     }
     
-    public void gedcomEntityAdded(Gedcom gedcom, Entity added) {
-      if (added instanceof Fam || added instanceof Indi) {
-        if ( !(this.added instanceof Indi) || added instanceof Indi)
-          this.added = added;
+    /**
+     * whether a change to property can change the layout - unaffected branches aren't laid out again
+     */
+    private boolean isAffected(Entity entity, Property property) {
+      // can't tell while the layout shown is outdated
+      if (isPending())
+        return true;
+      if (isShown(entity))
+        return true;
+      if (property instanceof PropertyXRef) {
+        Entity target = ((PropertyXRef)property).getTargetEntity();
+        if (target!=null && isShown(target))
+          return true;
       }
+      return false;
     }
-  
-    public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
-      // clear root?
-      if (entity == root) 
-        root = null;
-      
-      // clear bookmarks?
-      ListIterator it = bookmarks.listIterator();
-      while (it.hasNext()) {
-        Bookmark b = (Bookmark)it.next();
-        if (entity == b.getEntity()) it.remove();
+    
+    private boolean isAffected(Indi indi) {
+      if (isPending())
+        return true;
+      for (Fam fam : indi.getFamiliesWhereChild()) {
+        if (isShown(fam))
+          return true;
       }
-      
-      // clear indi2fam?
-      indi2fam.keySet().remove(entity);
-      
+      for (Fam fam : indi.getFamiliesWhereSpouse()) {
+        if (isShown(fam))
+          return true;
+      }
+      return false;
     }
-  
-    public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
-      gedcomPropertyChanged(gedcom, added);
+    
+    /**
+     * whether an entity is in the tree - families without nodes (when not shown as such) are
+     * there if a spouse or child is
+     */
+    private boolean isShown(Entity entity) {
+      if (getNode(entity)!=null)
+        return true;
+      if (!(entity instanceof Fam))
+        return false;
+      Fam fam = (Fam)entity;
+      if (getNode(fam.getHusband())!=null || getNode(fam.getWife())!=null)
+        return true;
+      for (Indi child : fam.getChildren()) {
+        if (getNode(child)!=null)
+          return true;
+      }
+      return false;
     }
+  } // Callback
   
-    public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
-      // a reference update?
-      if (property instanceof PropertyXRef) {
-        update = true;
-      }
-      // a pedigree update?
-      if ("PEDI".equals(property.getTag())) {
-    	  update = true;
+  /**
+   * A layout of nodes and arcs
+   */
+  /*package*/ class Layout {
+    
+    /** the request this was laid out for */
+    private int generation;
+    
+    /** arcs */
+    private Collection<TreeArc> arcs = new ArrayList<TreeArc>(100);
+
+    /** nodes */
+    private Map<Entity,TreeNode> entities2nodes = new HashMap<Entity, TreeNode>(100);
+    private Collection<TreeNode> nodes = new ArrayList<TreeNode>(100);
+
+    /** bounds */
+    private Rectangle bounds = new Rectangle();
+    
+    /** spatial indexes */
+    private RTree<TreeNode> nodeIndex = new RTree<TreeNode>(Collections.<TreeNode>emptyList(), Collections.<Rectangle>emptyList());
+    private RTree<TreeArc> arcIndex = new RTree<TreeArc>(Collections.<TreeArc>emptyList(), Collections.<Rectangle>emptyList());
+    
+    private Layout(int generation) {
+      this.generation = generation;
+    }
+    
+    /**
+     * Adds a node
+     */
+    /*package*/ TreeNode add(TreeNode node) {
+      // check content
+      Object content = node.getContent();
+      if (content instanceof Entity) {
+        entities2nodes.put((Entity)content, node);
       }
-      // something visible?
-      Node node = getNode(property.getEntity());
-      if (node!=null) 
-        fireNodesChanged(Collections.singletonList(node));
+      nodes.add(node);
+      return node;
     }
-  
-    public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
-      // a reference update?
-      if (deleted instanceof PropertyXRef)
-        update = true;
-      // repaint still makes sense?
-      if (root!=null)
-        repaint.add(getNode(property.getEntity()));
+    
+    /**
+     * Adds an arc
+     */
+    /*package*/ TreeArc add(TreeArc arc) {
+      arcs.add(arc);
+      return arc;
     }
-  } // Callback
+    
+    /**
+     * Index nodes with shapes and arcs with paths once positioned
+     */
+    private void index() {
+      
+      List<TreeNode> ns = new ArrayList<TreeNode>(nodes.size());
+      List<Rectangle> bs = new ArrayList<Rectangle>(nodes.size());
+      for (TreeNode node : nodes) {
+        if (node.shape==null)
+          continue;
+        Rectangle r = node.shape.getBounds();
+        r.translate(node.pos.x, node.pos.y);
+        ns.add(node);
+        bs.add(r);
+      }
+      nodeIndex = new RTree<TreeNode>(ns, bs);
+      
+      List<TreeArc> as = new ArrayList<TreeArc>(arcs.size());
+      bs.clear();
+      for (TreeArc arc : arcs) {
+        if (arc.getPath()==null)
+          continue;
+        as.add(arc);
+        bs.add(arc.getPath().getBounds());
+      }
+      arcIndex = new RTree<TreeArc>(as, bs);
+    }
+  } //Layout
 } //Model
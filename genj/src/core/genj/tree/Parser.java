@@ -41,6 +41,9 @@ import java.util.List;
   
   /** the model we're working on*/
   protected Model model;
+  
+  /** the layout we're adding to */
+  protected Model.Layout layout;
 
   /** metrics */
   protected TreeMetrics metrics;
@@ -56,23 +59,24 @@ import java.util.List;
   /** 
    * gets an instance of a parser
    */
-  public static Parser getInstance(boolean ancestors, boolean families, Model model, TreeMetrics metrics) {
+  public static Parser getInstance(boolean ancestors, boolean families, Model model, Model.Layout layout, TreeMetrics metrics) {
     if (ancestors) {
-      if (families) return new AncestorsWithFams(model, metrics);
-      return new AncestorsNoFams(model, metrics);
+      if (families) return new AncestorsWithFams(model, layout, metrics);
+      return new AncestorsNoFams(model, layout, metrics);
     } else {
-      if (families) return new DescendantsWithFams(model, metrics);
-      return new DescendantsNoFams(model, metrics);
+      if (families) return new DescendantsWithFams(model, layout, metrics);
+      return new DescendantsNoFams(model, layout, metrics);
     }
   }
   
   /**
    * Constructor
    */
-  protected Parser(Model mOdel, TreeMetrics mEtrics) {
+  protected Parser(Model mOdel, Model.Layout lAyout, TreeMetrics mEtrics) {
     
     // keep the model&metrics
     model = mOdel;
+    layout = lAyout;
     metrics = mEtrics;
     
     // init values
@@ -230,8 +234,8 @@ import java.util.List;
     // check if we're doing fold/unfolds
     if (!model.isFoldSymbols()) return parent;
     // do it
-    TreeNode node = model.add(new TreeNode(model.new FoldUnfold(indi,ancestors), plus?shapePlus:shapeMinus, padMinusPlus));
-    model.add(new TreeArc(parent, node, false));
+    TreeNode node = layout.add(new TreeNode(model.new FoldUnfold(indi,ancestors), plus?shapePlus:shapeMinus, padMinusPlus));
+    layout.add(new TreeArc(parent, node, false));
     // done
     return node;
   }
@@ -243,8 +247,8 @@ import java.util.List;
     /**
      * Constructor
      */
-    protected AncestorsNoFams(Model model, TreeMetrics metrics) {
-      super(model, metrics);
+    protected AncestorsNoFams(Model model, Model.Layout layout, TreeMetrics metrics) {
+      super(model, layout, metrics);
     }
     /**
      * @see genj.tree.Model.Parser#parse(genj.gedcom.Fam, java.awt.geom.Point2D)
@@ -261,7 +265,7 @@ import java.util.List;
     
     private TreeNode parse(Indi indi, int generation) {
       // node for indi      
-      TreeNode node = model.add(new TreeNode(indi, shapeIndis, padIndis));
+      TreeNode node = layout.add(new TreeNode(indi, shapeIndis, padIndis));
       // do we have a family we're child in?
       Fam famc = indi.getFamilyWhereBiologicalChild();
       if (famc!=null) {
@@ -274,8 +278,8 @@ import java.util.List;
           // grab the family's husband/wife and their ancestors
           Indi wife = famc.getWife();
           Indi husb = famc.getHusband();
-          if (wife!=null) model.add(new TreeArc(minus, parse(wife, generation+1), true));
-          if (husb!=null) model.add(new TreeArc(minus, parse(husb, generation+1), true));
+          if (wife!=null) layout.add(new TreeArc(minus, parse(wife, generation+1), true));
+          if (husb!=null) layout.add(new TreeArc(minus, parse(husb, generation+1), true));
           // done
         }
       } 
@@ -301,8 +305,8 @@ import java.util.List;
     /**
      * Constructor
      */
-    protected AncestorsWithFams(Model model, TreeMetrics metrics) {
-      super(model, metrics);
+    protected AncestorsWithFams(Model model, Model.Layout layout, TreeMetrics metrics) {
+      super(model, layout, metrics);
       
       // .. fams ancestors (n,w,e,s)
       padFams  = new int[]{  
@@ -340,23 +344,23 @@ import java.util.List;
     private TreeNode parse(Fam fam, int generation) {
 
       // node for the fam
-      TreeNode node = model.add(new TreeNode(fam, shapeFams, padFams));
+      TreeNode node = layout.add(new TreeNode(fam, shapeFams, padFams));
       
       // grab wife&husb
       Indi wife = fam.getWife();
       Indi husb = fam.getHusband();
 
       // node for wife & arc fam-wife 
-      TreeNode nWife = model.add(new TreeNode(wife, shapeIndis, padHusband));
-      model.add(new TreeArc(node, parse(wife, nWife, hasParents(husb)?-offsetSpouse:0, generation+1), false)); 
+      TreeNode nWife = layout.add(new TreeNode(wife, shapeIndis, padHusband));
+      layout.add(new TreeArc(node, parse(wife, nWife, hasParents(husb)?-offsetSpouse:0, generation+1), false)); 
       
       // node for marr & arc fam-marr 
-      TreeNode nMarr = model.add(new TreeNode(null, shapeMarrs, null));
-      model.add(new TreeArc(node, nMarr, false));
+      TreeNode nMarr = layout.add(new TreeNode(null, shapeMarrs, null));
+      layout.add(new TreeArc(node, nMarr, false));
       
       // node for husband & arc fam-husb 
-      TreeNode nHusb = model.add(new TreeNode(husb, shapeIndis, padWife));
-      model.add(new TreeArc(node, parse(husb, nHusb, hasParents(wife)?+offsetSpouse:0, generation+1), false));
+      TreeNode nHusb = layout.add(new TreeNode(husb, shapeIndis, padWife));
+      layout.add(new TreeArc(node, parse(husb, nHusb, hasParents(wife)?+offsetSpouse:0, generation+1), false));
       
       // done
       return node;
@@ -366,7 +370,7 @@ import java.util.List;
      * @see genj.tree.Model.Parser#parse(genj.gedcom.Indi)
      */
     protected TreeNode parse(Indi indi) {
-      return parse(indi, model.add(new TreeNode(indi, shapeIndis, padIndis)), 0, 0);
+      return parse(indi, layout.add(new TreeNode(indi, shapeIndis, padIndis)), 0, 0);
     }
     
     /**
@@ -385,7 +389,7 @@ import java.util.List;
           
           // patch with minus
           TreeNode nMinus = insertPlusMinus(indi, nIndi, true, false);
-          model.add(new TreeArc(nMinus, parse(famc, generation), true));
+          layout.add(new TreeArc(nMinus, parse(famc, generation), true));
           
           // patch alignment
           nMinus.align = align;
@@ -413,8 +417,8 @@ import java.util.List;
     /**
      * Constructor
      */
-    protected DescendantsNoFams(Model model, TreeMetrics metrics) {
-      super(model, metrics);
+    protected DescendantsNoFams(Model model, Model.Layout layout, TreeMetrics metrics) {
+      super(model, layout, metrics);
     }
     /**
      * @see genj.tree.Model.Parser#parse(genj.gedcom.Indi)
@@ -425,7 +429,7 @@ import java.util.List;
     
     private TreeNode parse(Indi indi, int generation) {
       // create node for indi
-      TreeNode node = model.add(new TreeNode(indi, shapeIndis, padIndis)); 
+      TreeNode node = layout.add(new TreeNode(indi, shapeIndis, padIndis)); 
       // grab fams
       Fam[] fams = indi.getFamiliesWhereSpouse();
       TreeNode pivot = node;
@@ -453,7 +457,7 @@ import java.util.List;
           }
           
           // parse child and arc from pivot to child
-          model.add(new TreeArc(pivot, parse(children[c], generation+1), true));       
+          layout.add(new TreeArc(pivot, parse(children[c], generation+1), true));       
 
           // next child          
           } 
@@ -491,8 +495,8 @@ import java.util.List;
     /**
      * Constructor
      */
-    protected DescendantsWithFams(Model model, TreeMetrics metrics) {
-      super(model, metrics);
+    protected DescendantsWithFams(Model model, Model.Layout layout, TreeMetrics metrics) {
+      super(model, layout, metrics);
 
       // how we pad fams (n,w,e,s)
       padFams  = new int[]{  
@@ -543,7 +547,7 @@ import java.util.List;
      */
     protected TreeNode parse(Indi indi) {
       // parse under artificial pivot
-      TreeNode nPivot = model.add(new TreeNode(null, null, null));
+      TreeNode nPivot = layout.add(new TreeNode(null, null, null));
       // the origin is not nPivot!!!
       origin = parse(indi, nPivot, 0);
       // done
@@ -555,7 +559,7 @@ import java.util.List;
     protected TreeNode parse(Fam fam) {
       
       // node for fam (note patched padding)
-      TreeNode nFam = model.add(new TreeNode(fam, shapeFams, padIndis));
+      TreeNode nFam = layout.add(new TreeNode(fam, shapeFams, padIndis));
       
       // grab the children
       Indi[] children = fam.getChildren();
@@ -585,8 +589,8 @@ import java.util.List;
       
       // no families is simply
       if (fams.length==0) {
-        TreeNode nIndi = model.add(new TreeNode(indi,shapeIndis,padIndis));
-        model.add(new TreeArc(pivot, nIndi, pivot.getShape()!=null));
+        TreeNode nIndi = layout.add(new TreeNode(indi,shapeIndis,padIndis));
+        layout.add(new TreeArc(pivot, nIndi, pivot.getShape()!=null));
         return nIndi;        
       }
 
@@ -594,7 +598,7 @@ import java.util.List;
       Fam fam = model.getFamily(indi, fams, false);
       
       // otherwise indi as husband first of family and arc pivot-indi
-      TreeNode nIndi = model.add(new TreeNode(indi,shapeIndis,padHusband) {
+      TreeNode nIndi = layout.add(new TreeNode(indi,shapeIndis,padHusband) {
         /**
          * @see genj.tree.TreeNode#getLongitude(gj.model.Node, gj.layout.tree.Branch[], gj.layout.tree.Orientation)
          */
@@ -602,25 +606,25 @@ import java.util.List;
           return super.getLongitude(node, children, o) + offsetHusband;
         }
       });
-      model.add(new TreeArc(pivot, nIndi, pivot.getShape()!=null));
+      layout.add(new TreeArc(pivot, nIndi, pivot.getShape()!=null));
       
       // add marr and arc pivot-marr
-      TreeNode nMarr = model.add(new TreeNode(null, shapeMarrs, null));
-      model.add(new TreeArc(pivot, nMarr, false));
+      TreeNode nMarr = layout.add(new TreeNode(null, shapeMarrs, null));
+      layout.add(new TreeArc(pivot, nMarr, false));
       
       // add spouse and arc pivot-spouse
-      TreeNode nSpouse = model.add(new TreeNode(fam.getOtherSpouse(indi), shapeIndis, padWife));
-      model.add(new TreeArc(pivot, nSpouse, false));
+      TreeNode nSpouse = layout.add(new TreeNode(fam.getOtherSpouse(indi), shapeIndis, padWife));
+      layout.add(new TreeArc(pivot, nSpouse, false));
       
       // add 'next' spouse and arc spouse-next
       if (fams.length>1&&model.isFoldSymbols()) {
-        TreeNode nNext = model.add(new TreeNode(model.new NextFamily(indi,fams), shapeNext, padNext));
-        model.add(new TreeArc(pivot, nNext, false));
+        TreeNode nNext = layout.add(new TreeNode(model.new NextFamily(indi,fams), shapeNext, padNext));
+        layout.add(new TreeArc(pivot, nNext, false));
       }
             
       // add fam and arc indi-fam
-      TreeNode nFam = model.add(new TreeNode(fam, shapeFams, padFams));
-      model.add(new TreeArc(nIndi, nFam, false));
+      TreeNode nFam = layout.add(new TreeNode(fam, shapeFams, padFams));
+      layout.add(new TreeArc(nIndi, nFam, false));
       
       // grab the children
       Indi[] children = fam.getChildren();
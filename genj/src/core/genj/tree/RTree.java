@@ -0,0 +1,180 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2010 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.tree;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A packed R-tree of objects' bounds - built once (sort-tile-recursive) and not changed
+ * afterwards. Boxes of all levels are kept in flat arrays, leaves first, and queries
+ * don't allocate.
+ */
+/*package*/ class RTree<T> {
+
+  /** children per node */
+  private final static int NODE_SIZE = 16;
+
+  /**
+   * A visitor of objects in range
+   */
+  /*package*/ interface Visitor<T> {
+    /**
+     * callback for an object with bounds intersecting the range looked at
+     * @return whether to continue
+     */
+    public boolean visit(T object);
+  }
+
+  /** objects in order of leaves */
+  private Object[] objects;
+
+  /** boxes (minx, miny, maxx, maxy) of leaves and nodes */
+  private int[] boxes;
+
+  /** first child of nodes */
+  private int[] children;
+
+  /** end of each level - the last one is the root */
+  private int[] levels;
+
+  /**
+   * Constructor
+   * @param objects the objects to index
+   * @param bounds their bounds
+   */
+  /*package*/ RTree(List<? extends T> objects, List<Rectangle> bounds) {
+
+    int n = objects.size();
+
+    // count boxes per level
+    int[] ends = new int[8];
+    int depth = 0, total = n, count = n;
+    ends[depth++] = n;
+    while (count>1) {
+      count = (count+NODE_SIZE-1)/NODE_SIZE;
+      total += count;
+      if (depth==ends.length)
+        ends = Arrays.copyOf(ends, depth*2);
+      ends[depth++] = total;
+    }
+    levels = Arrays.copyOf(ends, depth);
+    this.objects = new Object[n];
+    boxes = new int[total*4];
+    children = new int[total];
+
+    if (n==0)
+      return;
+
+    // sort by x of centers into slices and slices by y
+    int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE;
+    for (Rectangle r : bounds) {
+      minx = Math.min(minx, r.x);
+      miny = Math.min(miny, r.y);
+    }
+    long[] keys = new long[n];
+    for (int i=0; i<n; i++) {
+      Rectangle r = bounds.get(i);
+      keys[i] = ((long)(r.x-minx+r.width/2)<<32) | i;
+    }
+    Arrays.sort(keys);
+    int slice = NODE_SIZE * (int)Math.ceil(Math.sqrt(Math.ceil(n/(double)NODE_SIZE)));
+    for (int s=0; s<n; s+=slice) {
+      int e = Math.min(n, s+slice);
+      for (int i=s; i<e; i++) {
+        Rectangle r = bounds.get((int)keys[i]);
+        keys[i] = ((long)(r.y-miny+r.height/2)<<32) | (keys[i]&0xffffffffL);
+      }
+      Arrays.sort(keys, s, e);
+    }
+
+    // leaves
+    for (int i=0; i<n; i++) {
+      int o = (int)keys[i];
+      Rectangle r = bounds.get(o);
+      this.objects[i] = objects.get(o);
+      boxes[i*4  ] = r.x;
+      boxes[i*4+1] = r.y;
+      boxes[i*4+2] = r.x+r.width;
+      boxes[i*4+3] = r.y+r.height;
+    }
+
+    // nodes spanning children of the level below
+    int pos = n;
+    for (int l=1; l<levels.length; l++) {
+      for (int c=l>1 ? levels[l-2] : 0, end=levels[l-1]; c<end; c+=NODE_SIZE) {
+        int x1 = Integer.MAX_VALUE, y1 = Integer.MAX_VALUE, x2 = Integer.MIN_VALUE, y2 = Integer.MIN_VALUE;
+        for (int i=c, j=Math.min(end, c+NODE_SIZE); i<j; i++) {
+          x1 = Math.min(x1, boxes[i*4  ]);
+          y1 = Math.min(y1, boxes[i*4+1]);
+          x2 = Math.max(x2, boxes[i*4+2]);
+          y2 = Math.max(y2, boxes[i*4+3]);
+        }
+        children[pos] = c;
+        boxes[pos*4  ] = x1;
+        boxes[pos*4+1] = y1;
+        boxes[pos*4+2] = x2;
+        boxes[pos*4+3] = y2;
+        pos++;
+      }
+    }
+
+    // done
+  }
+
+  /**
+   * Number of objects
+   */
+  /*package*/ int size() {
+    return objects.length;
+  }
+
+  /**
+   * Visit objects with bounds intersecting given range
+   * @return whether the visitor went through all objects in range
+   */
+  /*package*/ boolean visit(Rectangle range, Visitor<? super T> visitor) {
+    if (objects.length==0)
+      return true;
+    int top = levels.length-1;
+    return visit(levels[top]-1, top, range.x, range.y, range.x+range.width, range.y+range.height, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean visit(int box, int level, int x1, int y1, int x2, int y2, Visitor<? super T> visitor) {
+
+    // outside?
+    if (boxes[box*4]>x2 || boxes[box*4+1]>y2 || boxes[box*4+2]<x1 || boxes[box*4+3]<y1)
+      return true;
+
+    // a leaf?
+    if (level==0)
+      return visitor.visit((T)objects[box]);
+
+    // children
+    for (int c=children[box], end=Math.min(levels[level-1], children[box]+NODE_SIZE); c<end; c++) {
+      if (!visit(c, level-1, x1, y1, x2, y2, visitor))
+        return false;
+    }
+    return true;
+  }
+
+} //RTree
@@ -82,9 +82,12 @@ public class SortableTableModel extends AbstractTableModel {
     public static final int ASCENDING = 1;
 
     private static Directive EMPTY_DIRECTIVE = new Directive(-1, NOT_SORTED);
+    
+    private final static Object LONG = new Object();
 
     private Row[] viewToModel;
     private int[] modelToView;
+    private Keys[] keys;
 
     private JTableHeader tableHeader;
     private MouseListener mouseListener;
@@ -110,6 +113,7 @@ public class SortableTableModel extends AbstractTableModel {
     private void clearSortingState() {
         viewToModel = null;
         modelToView = null;
+        keys = null;
     }
 
     public TableModel getTableModel() {
@@ -216,6 +220,7 @@ public class SortableTableModel extends AbstractTableModel {
             }
 
             if (isSorting()) {
+                keys = createKeys(tableModelRowCount);
                 Arrays.sort(viewToModel);
             }
         }
@@ -241,6 +246,92 @@ public class SortableTableModel extends AbstractTableModel {
         return modelToView;
     }
 
+    /**
+     * Keys of sorting columns for all rows - null if the model doesn't provide any
+     */
+    private Keys[] createKeys(int rows) {
+        if (!(tableModel instanceof KeyProvider))
+            return null;
+        Keys[] result = new Keys[sortingColumns.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Keys(sortingColumns.get(i).column, rows);
+            for (int row = 0; row < rows; row++)
+                result[i].set(row);
+        }
+        return result;
+    }
+    
+    /**
+     * Position of a row in first rows of view
+     */
+    private int search(Row row, int rows) {
+        int lo = 0, hi = rows;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int comparison = viewToModel[mid].compareTo(row);
+            // same order as the stable sort
+            if (comparison == 0)
+                comparison = viewToModel[mid].modelIndex - row.modelIndex;
+            if (comparison < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+    private void rowInserted(int row) {
+        for (Row r : viewToModel) {
+            if (r.modelIndex >= row)
+                r.modelIndex++;
+        }
+        for (Keys k : keys)
+            k.insert(row);
+        Row inserted = new Row(row);
+        int view = search(inserted, viewToModel.length);
+        Row[] rows = new Row[viewToModel.length + 1];
+        System.arraycopy(viewToModel, 0, rows, 0, view);
+        rows[view] = inserted;
+        System.arraycopy(viewToModel, view, rows, view + 1, viewToModel.length - view);
+        viewToModel = rows;
+        modelToView = null;
+        fireTableRowsInserted(view, view);
+    }
+    
+    private void rowDeleted(int row) {
+        int view = getModelToView()[row];
+        Row[] rows = new Row[viewToModel.length - 1];
+        System.arraycopy(viewToModel, 0, rows, 0, view);
+        System.arraycopy(viewToModel, view + 1, rows, view, rows.length - view);
+        viewToModel = rows;
+        for (Row r : viewToModel) {
+            if (r.modelIndex > row)
+                r.modelIndex--;
+        }
+        for (Keys k : keys)
+            k.remove(row);
+        modelToView = null;
+        fireTableRowsDeleted(view, view);
+    }
+    
+    private void rowUpdated(int row) {
+        int[] modelToView = getModelToView();
+        int view = modelToView[row];
+        Row updated = viewToModel[view];
+        for (Keys k : keys)
+            k.set(row);
+        // take it out and put it back where it belongs now
+        int last = viewToModel.length - 1;
+        System.arraycopy(viewToModel, view + 1, viewToModel, view, last - view);
+        int now = search(updated, last);
+        System.arraycopy(viewToModel, now, viewToModel, now + 1, last - now);
+        viewToModel[now] = updated;
+        int from = Math.min(view, now), to = Math.max(view, now);
+        for (int i = from; i <= to; i++)
+            modelToView[viewToModel[i].modelIndex] = i;
+        fireTableRowsUpdated(from, to);
+    }
+
     // TableModel interface methods 
 
     public int getRowCount() {
@@ -284,30 +375,94 @@ public class SortableTableModel extends AbstractTableModel {
             int row1 = modelIndex;
             int row2 = other.modelIndex;
             
-            for (Directive directive : sortingColumns) {
-                int column = directive.column;
-                Object o1 = tableModel.getValueAt(row1, column);
-                Object o2 = tableModel.getValueAt(row2, column);
-
-                int comparison = 0;
-                // Define null less than everything, except null.
-                if (o1 == null && o2 == null) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
-                } else if (o2 == null) {
-                    comparison = 1;
-                } else {
-                  if (tableModel instanceof RowComparator) 
-                    comparison = ((RowComparator)tableModel).compare(o1, o2, column);
-                  else
-                    comparison = compare(o1,o2);
-                }
+            for (int i = 0; i < sortingColumns.size(); i++) {
+                Directive directive = sortingColumns.get(i);
+                int comparison = keys != null ? keys[i].compare(row1, row2) : compare(row1, row2, directive.column);
                 if (comparison != 0) 
                   return directive.direction == DESCENDING ? -comparison : comparison;
             }
             return 0;
         }
+        
+        private int compare(int row1, int row2, int column) {
+            Object o1 = tableModel.getValueAt(row1, column);
+            Object o2 = tableModel.getValueAt(row2, column);
+
+            int comparison = 0;
+            // Define null less than everything, except null.
+            if (o1 == null && o2 == null) {
+                comparison = 0;
+            } else if (o1 == null) {
+                comparison = -1;
+            } else if (o2 == null) {
+                comparison = 1;
+            } else {
+              if (tableModel instanceof RowComparator) 
+                comparison = ((RowComparator)tableModel).compare(o1, o2, column);
+              else
+                comparison = SortableTableModel.this.compare(o1,o2);
+            }
+            return comparison;
+        }
+    }
+    
+    /**
+     * Keys of a sorting column - longs are kept unboxed
+     */
+    private class Keys {
+        private int column;
+        private long[] longs;
+        private Object[] objects;
+        
+        private Keys(int column, int rows) {
+            this.column = column;
+            longs = new long[rows];
+            objects = new Object[rows];
+        }
+        
+        private void set(int row) {
+            Object key = ((KeyProvider)tableModel).getSortKey(row, column);
+            if (key instanceof Long) {
+                longs[row] = ((Long)key).longValue();
+                key = LONG;
+            }
+            objects[row] = key;
+        }
+        
+        private void insert(int row) {
+            long[] ls = new long[longs.length + 1];
+            Object[] os = new Object[objects.length + 1];
+            System.arraycopy(longs, 0, ls, 0, row);
+            System.arraycopy(longs, row, ls, row + 1, longs.length - row);
+            System.arraycopy(objects, 0, os, 0, row);
+            System.arraycopy(objects, row, os, row + 1, objects.length - row);
+            longs = ls;
+            objects = os;
+            set(row);
+        }
+        
+        private void remove(int row) {
+            long[] ls = new long[longs.length - 1];
+            Object[] os = new Object[objects.length - 1];
+            System.arraycopy(longs, 0, ls, 0, row);
+            System.arraycopy(longs, row + 1, ls, row, ls.length - row);
+            System.arraycopy(objects, 0, os, 0, row);
+            System.arraycopy(objects, row + 1, os, row, os.length - row);
+            longs = ls;
+            objects = os;
+        }
+        
+        private int compare(int row1, int row2) {
+            Object o1 = objects[row1], o2 = objects[row2];
+            if (o1 == LONG && o2 == LONG)
+                return Long.compare(longs[row1], longs[row2]);
+            // Define null less than everything, except null.
+            if (o1 == null)
+                return o2 == null ? 0 : -1;
+            if (o2 == null)
+                return 1;
+            return SortableTableModel.this.compare(o1, o2);
+        }
     }
 
     @SuppressWarnings(value = "unchecked")
@@ -366,6 +521,31 @@ public class SortableTableModel extends AbstractTableModel {
                 return;
             }
 
+            // Single rows can be patched in if we know the keys - that doesn't need a sort 
+            if (e.getFirstRow() == e.getLastRow() && viewToModel != null && keys != null) {
+                int row = e.getFirstRow();
+                switch (e.getType()) {
+                case TableModelEvent.INSERT:
+                    if (row <= viewToModel.length && tableModel.getRowCount() == viewToModel.length + 1) {
+                        rowInserted(row);
+                        return;
+                    }
+                    break;
+                case TableModelEvent.DELETE:
+                    if (row < viewToModel.length && tableModel.getRowCount() == viewToModel.length - 1) {
+                        rowDeleted(row);
+                        return;
+                    }
+                    break;
+                case TableModelEvent.UPDATE:
+                    if (row < viewToModel.length) {
+                        rowUpdated(row);
+                        return;
+                    }
+                    break;
+                }
+            }
+
             // Something has happened to the data that may have invalidated the row order. 
             clearSortingState();
             fireTableDataChanged();
@@ -511,4 +691,15 @@ public class SortableTableModel extends AbstractTableModel {
     public static interface RowComparator {
       public int compare(Object valueA, Object valueB, int col);
     }
+    
+    /**
+     * A model providing keys to sort by instead of comparing values - keys are
+     * ordered like their values (Long keys are compared unboxed)
+     */
+    public static interface KeyProvider {
+      /**
+       * @return key for value in row and column or null if there's no value
+       */
+      public Object getSortKey(int row, int col);
+    }
 }
@@ -76,21 +76,9 @@ public class ReportCommonAncestor extends Report {
   }
 
   private Indi getCommonAncestor(Indi indi, Indi other) {
-    // check father and mother of indi
-    Indi father = indi.getBiologicalFather();
-    if (father!=null) {
-      if (father.isAncestorOf(other))
-        return father;
-      Indi ancestor = getCommonAncestor(father, other);
-      if (ancestor!=null)
-        return ancestor;
-    }
-    Indi mother = indi.getBiologicalMother();
-    if (mother!=null) {
-      if (mother.isAncestorOf(other))
-        return mother;
-      Indi ancestor = getCommonAncestor(mother, other);
-      if (ancestor!=null)
+    // closest by way of kinship - but not one of the two
+    for (Indi ancestor : indi.getGedcom().getKinshipIndex().getCommonAncestors(indi, other)) {
+      if (ancestor!=indi && ancestor!=other)
         return ancestor;
     }
     // none found
@@ -480,7 +480,7 @@ public class ReportFlashList extends Report {
     name = name.trim();
 
     // determine is individual is an ancestor of De-Cujus
-    boolean isSosa = indi.isAncestorOf(indiDeCujus);
+    boolean isSosa = indi.getGedcom().getKinshipIndex().isAncestorOf(indi, indiDeCujus);
     if (indi == indiDeCujus) isSosa = true;
      
     try {
@@ -141,6 +141,8 @@ public class ReportSosa extends Report {
       translate("Red")
    };
 
+  public boolean streamDocument = false;
+
   /** Globale variables */
   // Logic of sources:
   // ----------------
@@ -213,7 +215,9 @@ public class ReportSosa extends Report {
 
     // start with a title in a document
     String title = recursion.getTitle(indi);
-    Document doc = new Document(title);
+    Document doc = streamDocument ? getDocumentFromUser(title) : new Document(title);
+    if (doc==null)
+      return null;
     doc.startSection(title);
 
     // iterate into individual and all its ascendants
@@ -74,6 +74,7 @@ public class ReportNarrative extends Report {
   public String htmlStylesheet = null;
   private boolean alignImages = true; // TODO: option - in formatter.DocumentWriter or doc-wide options; make public when implemented
   public boolean noAds = false;
+  public boolean streamDocument = false;
 
   private String nameIndexTitle;
   private String placeIndexTitle;
@@ -127,7 +128,9 @@ public class ReportNarrative extends Report {
     // 2nd pass - fill document content
     String title = getUtterance(ancestors ? "doc.ancestors.title" : "doc.descendants.title",
                                 new String[] { new IndiWriter(indi, null).getName(indi) }).toString();
-    Document doc = new Document(title);
+    Document doc = streamDocument ? getDocumentFromUser(title) : new Document(title);
+    if (doc==null)
+      return null;
     doc.startSection(title, 1);
 
     // todo bk: used to set style inline if no .css given.  Can of course also
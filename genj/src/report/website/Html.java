@@ -1,6 +1,10 @@
 package website;
 
+import genj.gedcom.Property;
+
 import java.io.File;
+import java.util.List;
+
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
@@ -13,18 +17,59 @@ import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+/**
+ * A page being built - pages are made by several threads at the same time, each page by one thread
+ */
 public class Html {
+	/** Builders and transformers aren't thread-safe, each thread keeps its own */
+	private static ThreadLocal<DOMImplementation> domImpls = new ThreadLocal<DOMImplementation>() {
+		protected DOMImplementation initialValue() {
+			try {
+				DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+				DocumentBuilder builder = builderFactory.newDocumentBuilder();
+				return builder.getDOMImplementation();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+	private static ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>() {
+		protected Transformer initialValue() {
+			try {
+				Transformer transformer = TransformerFactory.newInstance().newTransformer();
+				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+				transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "-//W3C//DTD XHTML 1.0 Strict//EN");
+				transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd");
+				return transformer;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
 	Document doc = null;
 	Element body = null;
 	Element headNode;
+
+	/** Notes and sources listed at the end of this page */
+	Element sourceDiv = null;
+	List<Property> addedSourceProperty = null;
+	int sourceCounter = 0;
+	Element noteDiv = null;
+	List<Property> addedNoteProperty = null;
+	int noteCounter = 0;
+
+	/** Event locations for the map on this page */
+	StringBuffer mapEventLocations = null;
+
+	/** Whether an image for the gallery on the start page was made for this page */
+	boolean galleryImage = false;
 	
 	public Html(String title, String linkPrefix, String lang) {
 		String sPublicId = "-//W3C//DTD XHTML 1.0 Strict//EN";
 		String sSystemId = "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd";
 		try {
-			DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = builderFactory.newDocumentBuilder();
-			DOMImplementation domImpl = builder.getDOMImplementation();
+			DOMImplementation domImpl = domImpls.get();
 			DocumentType doctype = domImpl.createDocumentType("html", sPublicId, sSystemId); 
 			doc = domImpl.createDocument("http://www.w3.org/1999/xhtml","html",doctype);
 		}
@@ -244,11 +289,8 @@ public class Html {
 	public void toFile(File file, boolean omitXmlDeclaration) {
 		// Save the doc into the file
 		try {
-			Transformer transformer = TransformerFactory.newInstance().newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "-//W3C//DTD XHTML 1.0 Strict//EN");
-			transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd");
-			if (omitXmlDeclaration) transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			Transformer transformer = transformers.get();
+			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration ? "yes" : "no");
 			StreamResult result = new StreamResult(file);
 			DOMSource source = new DOMSource(doc);
 			transformer.transform(source, result);
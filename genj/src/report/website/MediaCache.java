@@ -0,0 +1,90 @@
+package website;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies and thumbnails of media files made by earlier runs. Each is stamped with the
+ * size and modification time of the file it was made from, so it's made again only if
+ * that file changed. Each line is the path of a made file, a tab and its stamp.
+ */
+class MediaCache {
+	private File file;
+	private String dir;
+	private Map<String, String> stamps = new ConcurrentHashMap<String, String>();
+	private ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	MediaCache(File file) throws IOException {
+		this.file = file;
+		this.dir = file.getParentFile().getAbsolutePath() + File.separator;
+		if (!file.exists()) return;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int tab = line.indexOf('\t');
+				if (tab > 0) stamps.put(line.substring(0, tab), line.substring(tab + 1));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The lock to hold while making a file - pages made at the same time can share media
+	 */
+	Object getLock(File made) {
+		String key = key(made);
+		Object lock = locks.get(key);
+		if (lock == null) {
+			Object other = locks.putIfAbsent(key, lock = new Object());
+			if (other != null) lock = other;
+		}
+		return lock;
+	}
+
+	/**
+	 * Whether a file was made from the source file as it is now
+	 * @param how how the file was made, e.g. the size of a thumbnail
+	 */
+	boolean isCurrent(File source, File made, String how) {
+		return made.exists() && stamp(source, how).equals(stamps.get(key(made)));
+	}
+
+	/**
+	 * Remember that a file was made from the source file
+	 */
+	void put(File source, File made, String how) {
+		stamps.put(key(made), stamp(source, how));
+	}
+
+	private String key(File made) {
+		String path = made.getAbsolutePath();
+		return path.startsWith(dir) ? path.substring(dir.length()) : path;
+	}
+
+	private String stamp(File source, String how) {
+		return source.length() + " " + source.lastModified() + " " + how + " " + source.getAbsolutePath();
+	}
+
+	void save() throws IOException {
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			for (Map.Entry<String, String> entry : new TreeMap<String, String>(stamps).entrySet()) {
+				out.write(entry.getKey() + '\t' + entry.getValue());
+				out.newLine();
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
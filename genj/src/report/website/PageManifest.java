@@ -0,0 +1,108 @@
+package website;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The pages made by the last run and the hashes of what was shown on them. A page
+ * has to be made again only if its hash changed. Each line is an id, a hash and
+ * "gallery" if the page made an image for the gallery on the start page.
+ */
+class PageManifest {
+	private static final String SETTINGS = "settings";
+	private static final String GALLERY = "gallery";
+
+	private File file;
+	private String settings;
+	private boolean sameSettings = false;
+	private Map<String, String> previous = new HashMap<String, String>();
+	private Map<String, String> current = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Read what was made last time
+	 * @param settings hash of the report options - pages made with other options are made again
+	 */
+	PageManifest(File file, String settings) throws IOException {
+		this.file = file;
+		this.settings = settings;
+		if (!file.exists()) return;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int space = line.indexOf(' ');
+				if (space < 0) continue;
+				String key = line.substring(0, space);
+				String value = line.substring(space + 1);
+				if (key.equals(SETTINGS)) sameSettings = value.equals(settings);
+				else previous.put(key, value);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Whether the page was made last time from the same content
+	 */
+	boolean isUnchanged(String id, String hash) {
+		if (!sameSettings) return false;
+		String entry = previous.get(id);
+		return entry != null && (entry.equals(hash) || entry.equals(hash + ' ' + GALLERY));
+	}
+
+	/**
+	 * Keep the page made last time
+	 */
+	void keep(String id) {
+		current.put(id, previous.get(id));
+	}
+
+	/**
+	 * Remember a page that was made now
+	 */
+	void put(String id, String hash, boolean galleryImage) {
+		current.put(id, galleryImage ? hash + ' ' + GALLERY : hash);
+	}
+
+	boolean hasGalleryImage(String id) {
+		String entry = current.get(id);
+		return entry != null && entry.endsWith(' ' + GALLERY);
+	}
+
+	/**
+	 * Ids of pages made last time but not this time
+	 */
+	List<String> getRemoved() {
+		List<String> result = new ArrayList<String>();
+		for (String id : previous.keySet()) {
+			if (!current.containsKey(id)) result.add(id);
+		}
+		return result;
+	}
+
+	void save() throws IOException {
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.write(SETTINGS + ' ' + settings);
+			out.newLine();
+			for (Map.Entry<String, String> entry : new TreeMap<String, String>(current).entrySet()) {
+				out.write(entry.getKey() + ' ' + entry.getValue());
+				out.newLine();
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -47,13 +47,26 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -80,6 +93,7 @@ public class ReportWebsite extends Report {
 	public String placeDisplayFormat = "all";
 	public String secondaryLanguage = "en";
     public boolean removeAllFiles;
+    public boolean onlyChangedPages;
 
 	/** Base source file of the css */
 	protected static final String cssBaseFile = "html/style.css";
@@ -103,17 +117,13 @@ public class ReportWebsite extends Report {
 	
     /** Collecting data to the index */
     protected List<Indi> personsWithImage = null;
-    
-    /** Used for handling note and sources on a person/item */
-    protected Element sourceDiv = null;
-    protected List<Property> addedSourceProperty = null;
-    protected int sourceCounter = 0;
-    protected Element noteDiv = null;
-    protected List<Property> addedNoteProperty = null;
-    protected int noteCounter = 0;
 
-    /** Used for building an individual map */
-    protected StringBuffer mapEventLocations = null;
+    /** Pages made last time and now, and hashes of the records they're made from */
+    protected PageManifest manifest = null;
+    protected Map<Entity, byte[]> recordHashes = null;
+
+    /** Copies and thumbnails of media files */
+    protected MediaCache mediaCache = null;
 
     /** used for output several languages */ 
 	protected Locale currentLocale = null;  /** Only set when running with the secondary language */ 
@@ -157,8 +167,8 @@ public class ReportWebsite extends Report {
 		// make sure directory exists
 		destDir.mkdirs();
 		
-		// Ask if ok to overwrite if there were files
-		if (destDir.list().length > 0) {
+		// Ask if ok to overwrite if there were files not made by us
+		if (destDir.list().length > 0 && !new File(destDir, "pages.txt").exists()) {
 			if (! getOptionFromUser(translateLocal("qOverwrite"), OPTION_OKCANCEL)) 
 				return; // Operation canceled by user
 		}
@@ -171,6 +181,8 @@ public class ReportWebsite extends Report {
 		
 		// Start modifying things
 		if (removeAllFiles) deleteDirContent(destDir, false);
+		mediaCache = new MediaCache(new File(destDir, "media.txt"));
+		recordHashes = new ConcurrentHashMap<Entity, byte[]>();
 		
 		// Make a css file with current settings
 		makeCss(destDir, translator);
@@ -195,6 +207,7 @@ public class ReportWebsite extends Report {
 			currentLocale = null;
 
 		}
+		mediaCache.save();
 	}
 
 	  /**
@@ -223,56 +236,39 @@ public class ReportWebsite extends Report {
 	
 	
 	protected void generateFiles(Gedcom gedcom, Indi rootIndi) throws Exception {
-	    // Iterate over all media objects, must be before individuals
+		manifest = new PageManifest(new File(destDir, getLocalizedFilename("pages.txt", currentLocale)), getSettingsHash(rootIndi));
+		// Collator is shared by the workers
+		Collator collator = gedcom.getCollator();
+
+	    // All media objects, must be before the others that link to their thumbs
 		Entity[] objects = gedcom.getEntities(Gedcom.OBJE, "");
-		for(Entity object : objects) {
-			println("Exporting object " + object.getId());
-			File objeFile = makeDirFor(object.getId());
-			createMultimediaDoc((Media)object).toFile(objeFile, omitXmlDeclaration);
-		}
+		generatePages(Arrays.asList(objects));
 
-	    // Iterate over all individuals
+	    // All individuals, sources, repositories, notes and submitters
 		Entity[] indis = gedcom.getEntities(Gedcom.INDI, "");
-		for(Entity indi : indis) {
-			println("Exporting person " + indi.getId() + " " + getName((Indi)indi));
-			File indiFile = makeDirFor(indi.getId());
-			createIndiDoc((Indi)indi).toFile(indiFile, omitXmlDeclaration);
-		}
-		
-	    // Iterate over all sources
 		Entity[] sources = gedcom.getEntities(Gedcom.SOUR, "");
-		for(Entity source : sources) {
-			println("Exporting source " + source.getId());
-			File sourFile = makeDirFor(source.getId());
-			createSourceDoc((Source)source).toFile(sourFile, omitXmlDeclaration);
-		}
-
-	    // Iterate over all sources
 		Entity[] repos = gedcom.getEntities(Gedcom.REPO, "");
-		for(Entity repo : repos) {
-			println("Exporting repository " + repo.getId());
-			File repoFile = makeDirFor(repo.getId());
-			createRepoDoc((Repository)repo).toFile(repoFile, omitXmlDeclaration);
+		Entity[] notes = gedcom.getEntities(Gedcom.NOTE, "");
+		Entity[] submitters = gedcom.getEntities(Gedcom.SUBM, "");
+		List<Entity> entities = new ArrayList<Entity>();
+		for (Entity[] some : new Entity[][] {indis, sources, repos, notes, submitters}) {
+			entities.addAll(Arrays.asList(some));
 		}
+		generatePages(entities);
 
-	    // Iterate over all notes
-		Entity[] notes = gedcom.getEntities(Gedcom.NOTE, "");
-		for(Entity note : notes) {
-			println("Exporting note " + note.getId());
-			File noteFile = makeDirFor(note.getId());
-			createNoteDoc((Note)note).toFile(noteFile, omitXmlDeclaration);
+		// Pages of what has been deleted since last time
+		for (String id : manifest.getRemoved()) {
+			new File(destDir, addressTo(id)).delete();
 		}
+		manifest.save();
 
-	    // Iterate over all submitters
-		Entity[] submitters = gedcom.getEntities(Gedcom.SUBM, "");
-		for(Entity submitter : submitters) {
-			println("Exporting submitter " + submitter.getId());
-			File submFile = makeDirFor(submitter.getId());
-			createSubmitterDoc((Submitter)submitter).toFile(submFile, omitXmlDeclaration);
+		// Persons with an image in the gallery, also those whose pages were kept
+		personsWithImage = new ArrayList<Indi>();
+		for (Entity indi : indis) {
+			if (manifest.hasGalleryImage(indi.getId())) personsWithImage.add((Indi)indi);
 		}
 
 		// Make a start page and indexes
-		Collator collator = gedcom.getCollator();
 		Arrays.sort(indis, new PropertyComparator("INDI:NAME"));
 		Arrays.sort(sources, new PropertyComparator("SOUR:TITL"));
 		Arrays.sort(repos, new PropertyComparator("REPO:NAME"));
@@ -285,6 +281,196 @@ public class ReportWebsite extends Report {
 		makeSearchDataPage(destDir, indis);
 		println("Report done!");		
 	}
+
+	/**
+	 * Make the pages of entities, each worker makes the pages of its share of the entities
+	 */
+	protected void generatePages(List<Entity> entities) throws Exception {
+		int workers = Math.max(1, Math.min(entities.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread result = new Thread(r, "website-" + count.incrementAndGet());
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+		for (int w = 0; w < workers; w++) {
+			final List<Entity> partition = new ArrayList<Entity>(entities.size() / workers + 1);
+			for (int i = w; i < entities.size(); i += workers) partition.add(entities.get(i));
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for (Entity entity : partition) generatePage(entity);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Make the page of an entity, unless only changed pages are made and nothing on it changed
+	 */
+	protected void generatePage(Entity entity) throws Exception {
+		String id = entity.getId();
+		String hash = getPageHash(entity);
+		if (onlyChangedPages && manifest.isUnchanged(id, hash) && new File(destDir, addressTo(id)).exists()) {
+			manifest.keep(id);
+			return;
+		}
+		Html html;
+		if (entity instanceof Media) {
+			println("Exporting object " + id);
+			html = createMultimediaDoc((Media)entity);
+		} else if (entity instanceof Indi) {
+			println("Exporting person " + id + " " + getName((Indi)entity));
+			html = createIndiDoc((Indi)entity);
+		} else if (entity instanceof Source) {
+			println("Exporting source " + id);
+			html = createSourceDoc((Source)entity);
+		} else if (entity instanceof Repository) {
+			println("Exporting repository " + id);
+			html = createRepoDoc((Repository)entity);
+		} else if (entity instanceof Note) {
+			println("Exporting note " + id);
+			html = createNoteDoc((Note)entity);
+		} else if (entity instanceof Submitter) {
+			println("Exporting submitter " + id);
+			html = createSubmitterDoc((Submitter)entity);
+		} else {
+			return;
+		}
+		html.toFile(makeDirFor(id), omitXmlDeclaration);
+		manifest.put(id, hash, html.galleryImage);
+	}
+
+	/**
+	 * Hash of what is shown on the page of an entity - its own record, the records of the
+	 * entities it refers to or is referred by, who's in those families, what those notes and
+	 * media refer to and the ancestors in the tree
+	 */
+	protected String getPageHash(Entity entity) {
+		Map<String, Entity> linked = new TreeMap<String, Entity>();
+		MessageDigest digest = newDigest();
+		digest.update(getRecordHash(entity));
+		for (PropertyXRef xref : entity.getProperties(PropertyXRef.class)) {
+			Entity target = xref.getTargetEntity();
+			if (target == null) continue;
+			// Referred by
+			if (xref.isTransient()) hash(digest, xref.getTag() + ' ' + target.getId());
+			linked.put(target.getId(), target);
+			if (target instanceof Fam || target instanceof Note || target instanceof Media) {
+				for (PropertyXRef xref2 : target.getProperties(PropertyXRef.class)) {
+					Entity target2 = xref2.getTargetEntity();
+					if (target2 != null && !xref2.isTransient()) linked.put(target2.getId(), target2);
+				}
+			}
+		}
+		if (entity instanceof Indi) addAncestors((Indi)entity, 3, linked, digest);
+		linked.remove(entity.getId());
+		for (Entity other : linked.values()) {
+			hash(digest, other.getId());
+			digest.update(getRecordHash(other));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Ancestors shown in the tree - and whether the ones at the top have parents
+	 */
+	protected void addAncestors(Indi indi, int generations, Map<String, Entity> linked, MessageDigest digest) {
+		for (Indi parent : new Indi[] {indi.getBiologicalFather(), indi.getBiologicalMother()}) {
+			if (parent == null) continue;
+			if (generations == 0) {
+				hash(digest, parent.getId());
+			} else {
+				linked.put(parent.getId(), parent);
+				addAncestors(parent, generations - 1, linked, digest);
+			}
+		}
+	}
+
+	/**
+	 * Hash of an entity's record (without references back to it) and what's shown of it
+	 * elsewhere, e.g. the size and time of its media files
+	 */
+	protected byte[] getRecordHash(Entity entity) {
+		byte[] result = recordHashes.get(entity);
+		if (result == null) {
+			MessageDigest digest = newDigest();
+			hashProperty(digest, entity);
+			if (entity instanceof Indi) {
+				hash(digest, sosaStradonitzNumber.get(entity.getId()) + " " + isPrivate((Indi)entity));
+			}
+			result = digest.digest();
+			recordHashes.put(entity, result);
+		}
+		return result;
+	}
+
+	protected void hashProperty(MessageDigest digest, Property prop) {
+		hash(digest, prop.getTag() + ' ' + prop.getValue());
+		if (prop instanceof PropertyFile) {
+			File file = ((PropertyFile)prop).getFile();
+			if (file != null) hash(digest, file.length() + " " + file.lastModified());
+		}
+		digest.update((byte)'{');
+		for (Property child : prop.getProperties()) {
+			if (!child.isTransient()) hashProperty(digest, child);
+		}
+		digest.update((byte)'}');
+	}
+
+	protected void hash(MessageDigest digest, String value) {
+		try {
+			digest.update(value.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update((byte)0);
+	}
+
+	protected String toHex(byte[] bytes) {
+		StringBuffer result = new StringBuffer();
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	protected MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Hash of the options - all pages are made again if they changed
+	 */
+	protected String getSettingsHash(Indi rootIndi) throws IllegalAccessException {
+		StringBuffer settings = new StringBuffer(currentLang);
+		for (Field field : getClass().getFields()) {
+			if (Modifier.isStatic(field.getModifiers())) continue;
+			if (field.getName().equals("onlyChangedPages") || field.getName().equals("removeAllFiles")) continue;
+			Object value = field.get(this);
+			if (value instanceof Object[]) value = Arrays.asList((Object[])value);
+			settings.append(';').append(field.getName()).append('=').append(value);
+		}
+		if (rootIndi != null) settings.append(';').append(rootIndi.getId());
+		MessageDigest digest = newDigest();
+		hash(digest, settings.toString());
+		return toHex(digest.digest());
+	}
 	
 	
 	protected void deleteDirContent(File dir, boolean deleteThisDir) {
@@ -605,16 +791,14 @@ public class ReportWebsite extends Report {
 	 */
 	protected Html createIndiDoc(Indi indi) {
 		List<String> handledProperties = new ArrayList<String>();
-		resetNoteAndSourceList();
 
 		String linkPrefix = relativeLinkPrefix(indi.getId());
 
 		// Find out how much we may display
 		boolean isPrivate = isPrivate(indi);
 
-		if (! isPrivate) mapEventLocations = new StringBuffer();
-
 		Html html = new Html(getName(indi), linkPrefix, currentLang);
+		if (! isPrivate) html.mapEventLocations = new StringBuffer();
 		Document doc = html.getDoc();
 		Element bodyNode = html.getBody();
 		html.setDescription(makeDescription(indi, isPrivate));
@@ -868,15 +1052,14 @@ public class ReportWebsite extends Report {
 
 			// Display individual map, it's not that accurate...
 			if (reportDisplayIndividualMap) {
-				if (mapEventLocations != null && mapEventLocations.length() > 0) {
+				if (html.mapEventLocations != null && html.mapEventLocations.length() > 0) {
 					String url = "http://maps.google.com/maps/api/staticmap?size=200x200&maptype=roadmap&sensor=false&markers=";
-					div1.appendChild(html.img(url + mapEventLocations.toString(), ""));
+					div1.appendChild(html.img(url + html.mapEventLocations.toString(), ""));
 				}
 			}
 		}
-		mapEventLocations = null;
 
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 
 		// Link to start and index-page
 		bodyNode.appendChild(backlink(reportIndexFileName, listPersonFileName, linkPrefix, html));
@@ -906,7 +1089,6 @@ public class ReportWebsite extends Report {
 	 */
 	protected Html createSourceDoc(Source source) {
 		List<String> handledProperties = new ArrayList<String>();
-		resetNoteAndSourceList();
 
 		String linkPrefix = relativeLinkPrefix(source.getId());
 
@@ -986,7 +1168,7 @@ public class ReportWebsite extends Report {
 		processReferences(source, linkPrefix, div2, html, handledProperties);
 
 		processNumberNoteSourceChangeRest(source, linkPrefix, div1, source.getId(), html, handledProperties, true);
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 
 		bodyNode.appendChild(backlink(reportIndexFileName, listSourceFileName, linkPrefix, html));
 		makeFooter(bodyNode, html);
@@ -996,7 +1178,6 @@ public class ReportWebsite extends Report {
 	protected Html createRepoDoc(Repository repo) {
 		List<String> handledProperties = new ArrayList<String>();
 		String linkPrefix = relativeLinkPrefix(repo.getId());
-		resetNoteAndSourceList();
 
 		Html html = new Html(getPropertyName("REPO") + " " + repo.getId() + ": " + repo.toString(),
 				linkPrefix, currentLang);
@@ -1017,7 +1198,7 @@ public class ReportWebsite extends Report {
 		if (div2.hasChildNodes()) bodyNode.appendChild(div2);
 
 		processNumberNoteSourceChangeRest(repo, linkPrefix, div1, repo.getId(), html, handledProperties, true);
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 
 		bodyNode.appendChild(backlink(reportIndexFileName, listRepositoryFileName, linkPrefix, html));
 		makeFooter(bodyNode, html);
@@ -1027,7 +1208,6 @@ public class ReportWebsite extends Report {
 	protected Html createMultimediaDoc(Media object) {
 		List<String> handledProperties = new ArrayList<String>();
 		String linkPrefix = relativeLinkPrefix(object.getId());
-		resetNoteAndSourceList();
 
 		Html html = new Html(getPropertyName("OBJE") + " " + object.getId() + ": " + object.toString(),
 				linkPrefix, currentLang);
@@ -1090,20 +1270,14 @@ public class ReportWebsite extends Report {
 				File dstFile = new File(objectDir, srcFile.getName());
 				File thumbFile = new File(dstFile.getParentFile(), "thumb_" + dstFile.getName());
 				try {
-					if (!dstFile.exists() || srcFile.lastModified() > dstFile.lastModified()) {
-						copyFile(srcFile, dstFile);
-					}
+					copyMediaFile(srcFile, dstFile);
 					// Create a thumb
 					if (tryMakeThumb) {
-						if (!thumbFile.exists() || srcFile.lastModified() > thumbFile.lastModified()) {
-							try {
-								makeThumb(dstFile, imgSize, imgSize, thumbFile);
-								thumbMade = true;
-							} catch (Exception e) {
-								println("Failed maiking thumb of:" + dstFile.getPath() + " Error:" + e.getMessage());
-							}
-						} else {
+						try {
+							makeCachedThumb(srcFile, imgSize, imgSize, thumbFile);
 							thumbMade = true;
+						} catch (Exception e) {
+							println("Failed maiking thumb of:" + dstFile.getPath() + " Error:" + e.getMessage());
 						}
 					}
 
@@ -1128,7 +1302,7 @@ public class ReportWebsite extends Report {
 		if (div2.hasChildNodes()) bodyNode.appendChild(div2);
 
 		processNumberNoteSourceChangeRest(object, linkPrefix, div1, object.getId(), html, handledProperties, true);
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 		bodyNode.appendChild(backlink(reportIndexFileName, null, linkPrefix, html));
 		makeFooter(bodyNode, html);
 		return html;
@@ -1137,7 +1311,6 @@ public class ReportWebsite extends Report {
 	protected Html createNoteDoc(Note note) {
 		List<String> handledProperties = new ArrayList<String>();
 		String linkPrefix = relativeLinkPrefix(note.getId());
-		resetNoteAndSourceList();
 
 		Html html = new Html(getPropertyName("NOTE") + " " + note.getId() + ": " + note.toString(),
 				linkPrefix, currentLang);
@@ -1158,7 +1331,7 @@ public class ReportWebsite extends Report {
 		if (div2.hasChildNodes()) bodyNode.appendChild(div2);
 
 		processNumberNoteSourceChangeRest(note, linkPrefix, div1, note.getId(), html, handledProperties, true);
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 		bodyNode.appendChild(backlink(reportIndexFileName, null, linkPrefix, html));
 		makeFooter(bodyNode, html);
 		return html;
@@ -1167,7 +1340,6 @@ public class ReportWebsite extends Report {
 	protected Html createSubmitterDoc(Submitter submitter) {
 		List<String> handledProperties = new ArrayList<String>();
 		String linkPrefix = relativeLinkPrefix(submitter.getId());
-		resetNoteAndSourceList();
 
 		Html html = new Html(getPropertyName("SUBM") + " " + submitter.getId() + ": " + submitter.getName(),
 				linkPrefix, currentLang);
@@ -1197,7 +1369,7 @@ public class ReportWebsite extends Report {
 		if (div2.hasChildNodes()) bodyNode.appendChild(div2);
 
 		processNumberNoteSourceChangeRest(submitter, linkPrefix, div1, submitter.getId(), html, handledProperties, true);
-		addNoteAndSourceList(bodyNode);
+		addNoteAndSourceList(bodyNode, html);
 		bodyNode.appendChild(backlink(reportIndexFileName, null, linkPrefix, html));
 		makeFooter(bodyNode, html);
 		return html;
@@ -1363,11 +1535,9 @@ public class ReportWebsite extends Report {
 								File galleryImage = new File(currentObjectDir, "gallery.jpg");
 								File dstFile = media.getFile();
 								try {
-									if (!galleryImage.exists() || dstFile.lastModified() > galleryImage.lastModified()) {
-										makeThumb(dstFile, 50, 70, galleryImage);
-									}
+									makeCachedThumb(dstFile, 50, 70, galleryImage);
 									makeGalleryImage = false;
-									if (prop instanceof Indi) personsWithImage.add((Indi)prop); // Add to the list of persons displayed in the gallery
+									if (prop instanceof Indi) html.galleryImage = true; // Displayed in the gallery
 								} catch (Exception e) {
 									println("Making gallery thumb of image failed: " + dstFile.getAbsolutePath() +
 											" Error: " + e.getMessage());
@@ -1423,21 +1593,15 @@ public class ReportWebsite extends Report {
 						File dstFile = new File(currentObjectDir, srcFile.getName());
 						File thumbFile = new File(dstFile.getParentFile(), "thumb_" + dstFile.getName());
 						try {
-							if (!dstFile.exists() || srcFile.lastModified() > dstFile.lastModified()) {
-								copyFile(srcFile, dstFile);
-							}
+							copyMediaFile(srcFile, dstFile);
 							// Create a thumb
 							if (tryMakeThumb) {
-								if (!thumbFile.exists() || srcFile.lastModified() > thumbFile.lastModified()) {
-									try {
-										makeThumb(dstFile, imgSize, imgSize, thumbFile);
-										thumbExist = true;
-									} catch (Exception e) {
-										println("Making thumb of image failed: " + dstFile.getAbsolutePath() +
-												" Error: " + e.getMessage());
-									}
-								} else {
+								try {
+									makeCachedThumb(srcFile, imgSize, imgSize, thumbFile);
 									thumbExist = true;
+								} catch (Exception e) {
+									println("Making thumb of image failed: " + dstFile.getAbsolutePath() +
+											" Error: " + e.getMessage());
 								}
 							}
 
@@ -1445,11 +1609,9 @@ public class ReportWebsite extends Report {
 							if (makeGalleryImage && tryMakeThumb) {
 								File galleryImage = new File(dstFile.getParentFile(), "gallery.jpg");
 								try {
-									if (!galleryImage.exists() || srcFile.lastModified() > galleryImage.lastModified()) {
-										makeThumb(dstFile, 50, 70, galleryImage);
-									}
+									makeCachedThumb(srcFile, 50, 70, galleryImage);
 									makeGalleryImage = false;
-									if (prop instanceof Indi) personsWithImage.add((Indi)prop); // Add to the list of persons displayed in the gallery
+									if (prop instanceof Indi) html.galleryImage = true; // Displayed in the gallery
 								} catch (Exception e) {
 									println("Making gallery thumb of image failed: " + dstFile.getAbsolutePath() +
 											" Error: " + e.getMessage());
@@ -1645,9 +1807,9 @@ public class ReportWebsite extends Report {
 		Element place = processPlace(event.getProperty("PLAC"), linkPrefix, id, html);
 		if (place != null) {
 			p.appendChild(place);
-			if (mapEventLocations != null) {
-				if(mapEventLocations.length() > 0) mapEventLocations.append("|");
-				mapEventLocations.append(getEventMapPosition(event));
+			if (html.mapEventLocations != null) {
+				if(html.mapEventLocations.length() > 0) html.mapEventLocations.append("|");
+				html.mapEventLocations.append(getEventMapPosition(event));
 			}
 		}
 
@@ -1858,10 +2020,10 @@ public class ReportWebsite extends Report {
 	protected void processSourceRefs(Element appendTo, Property prop, String linkPrefix, String id, Html html) {
 		Property[] sourceRefs = prop.getProperties("SOUR");
 		if (sourceRefs.length > 0) {
-	    	if (sourceDiv == null) {
-	    		sourceDiv = html.div("left");
-	    		addedSourceProperty = new ArrayList<Property>();
-	    		sourceCounter = 1;
+	    	if (html.sourceDiv == null) {
+	    		html.sourceDiv = html.div("left");
+	    		html.addedSourceProperty = new ArrayList<Property>();
+	    		html.sourceCounter = 1;
 	    	}
 			Element sup = html.sup("source");
 			for (Property sourceRef : sourceRefs) {
@@ -1879,17 +2041,17 @@ public class ReportWebsite extends Report {
 	 */
 	protected Element addSourceRef(Property sourceRef, String linkPrefix, String id, Html html) {
 		int i = 1;
-		for (Property alreadyAdded : addedSourceProperty) {
+		for (Property alreadyAdded : html.addedSourceProperty) {
 			if (propertyStructEquals(sourceRef, alreadyAdded)) {
 				return html.link("#S" + i, "S" + i);
 			}
 			i++;
 		}
-		addedSourceProperty.add(sourceRef);
+		html.addedSourceProperty.add(sourceRef);
 
-		int number = sourceCounter++;
+		int number = html.sourceCounter++;
 		Element p = html.p();
-		sourceDiv.appendChild(p);
+		html.sourceDiv.appendChild(p);
 		Element anchor = html.anchor("S" + number);
 		p.appendChild(anchor);
 		anchor.appendChild(html.text("S" + number + ": "));
@@ -1945,7 +2107,7 @@ public class ReportWebsite extends Report {
 			}
 			// OBJE, in new paragraph
 			Element pObj = processMultimediaLink(sourceRef, linkPrefix, id, html, true, false);
-			if (pObj != null) sourceDiv.appendChild(pObj);
+			if (pObj != null) html.sourceDiv.appendChild(pObj);
 
 	   		reportUnhandledProperties(sourceRef, new String[] {"PAGE", "EVEN", "DATA", "QUAY", "OBJE", "NOTE"});
 		} else {
@@ -1953,7 +2115,7 @@ public class ReportWebsite extends Report {
 			appendDisplayValue(p, sourceRef, false, html);
 			for (Property text : sourceRef.getProperties("TEXT")) {
 				Element sp = html.p();
-				sourceDiv.appendChild(sp);
+				html.sourceDiv.appendChild(sp);
 				sp.appendChild(html.text(getPropertyName("TEXT") + ": "));
 				appendDisplayValue(sp, text, false, html);
 			}
@@ -1970,10 +2132,10 @@ public class ReportWebsite extends Report {
 	protected void processNoteRefs(Element appendTo, Property prop, String linkPrefix, String id, Html html) {
 		Property[] noteRefs = prop.getProperties("NOTE");
 		if (noteRefs.length > 0) {
-	    	if (noteDiv == null) {
-	    		noteDiv = html.div("left");
-	    		addedNoteProperty = new ArrayList<Property>();
-	    		noteCounter = 1;
+	    	if (html.noteDiv == null) {
+	    		html.noteDiv = html.div("left");
+	    		html.addedNoteProperty = new ArrayList<Property>();
+	    		html.noteCounter = 1;
 	    	}
 			Element sup = html.sup("note");
 			for (Property noteRef : noteRefs) {
@@ -1995,17 +2157,17 @@ public class ReportWebsite extends Report {
 	protected Element addNoteRef(Property noteRef, String linkPrefix, String id,
 			Html html) {
 		int i = 1;
-		for (Property alreadyAdded : addedNoteProperty) {
+		for (Property alreadyAdded : html.addedNoteProperty) {
 			if (propertyStructEquals(noteRef, alreadyAdded)) {
 				return html.link("#N" + i, "N" + i);
 			}
 			i++;
 		}
-		addedNoteProperty.add(noteRef);
+		html.addedNoteProperty.add(noteRef);
 
-		int number = noteCounter++;
+		int number = html.noteCounter++;
 		Element p = html.p();
-		noteDiv.appendChild(p);
+		html.noteDiv.appendChild(p);
 		Element anchor = html.anchor("N" + number);
 		p.appendChild(anchor);
 		anchor.appendChild(html.text("N" + number + ": "));
@@ -2070,14 +2232,9 @@ public class ReportWebsite extends Report {
 		}
 	}
 
-	protected void resetNoteAndSourceList() {
-		sourceDiv = null;
-		noteDiv = null;
-	}
-
-	protected void addNoteAndSourceList(Element appendTo) {
-		if (noteDiv != null) appendTo.appendChild(noteDiv);
-		if (sourceDiv != null) appendTo.appendChild(sourceDiv);
+	protected void addNoteAndSourceList(Element appendTo, Html html) {
+		if (html.noteDiv != null) appendTo.appendChild(html.noteDiv);
+		if (html.sourceDiv != null) appendTo.appendChild(html.sourceDiv);
 	}
 
 	/**
@@ -2307,6 +2464,29 @@ public class ReportWebsite extends Report {
 		ImageIO.write(thumbImage, "jpg", thumbFile);
 	}
 
+	/**
+	 * Make a thumb unless it was made from the image as it is now
+	 */
+	protected void makeCachedThumb(File imgFile, int wmax, int hmax, File thumbFile) throws IOException {
+		synchronized (mediaCache.getLock(thumbFile)) {
+			String how = wmax + "x" + hmax;
+			if (mediaCache.isCurrent(imgFile, thumbFile, how)) return;
+			makeThumb(imgFile, wmax, hmax, thumbFile);
+			mediaCache.put(imgFile, thumbFile, how);
+		}
+	}
+
+	/**
+	 * Copy a media file unless it was copied as it is now
+	 */
+	protected void copyMediaFile(File src, File dst) throws IOException {
+		synchronized (mediaCache.getLock(dst)) {
+			if (mediaCache.isCurrent(src, dst, "copy")) return;
+			copyFile(src, dst);
+			mediaCache.put(src, dst, "copy");
+		}
+	}
+
 	protected void copyFile(File src, File dst) throws IOException {
 		FileChannel source = null;
 		FileChannel destination = null;
@@ -3,8 +3,12 @@
  */
 package genj.fo;
 
+import java.io.File;
 import java.util.regex.Matcher;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
 import junit.framework.TestCase;
 
 /**
@@ -45,4 +49,61 @@ public class DocumentTest extends TestCase {
     // done
   }
   
+  /**
+   * a document written while it's being added to looks like one formatted at the end
+   */
+  public void testStreaming() throws Exception {
+    
+    File inMemory = File.createTempFile("document", ".fo");
+    File streamed = File.createTempFile("document", ".fo");
+    try {
+      
+      Document doc = new Document("Test");
+      fill(doc);
+      new XSLFOFormat().format(doc, inMemory);
+      
+      doc = new Document("Test", new XSLFOFormat(), streamed);
+      assertTrue(doc.isStreaming());
+      fill(doc);
+      assertTrue(streamed.length()>0);
+      doc.getFormat().format(doc, doc.getFile());
+      
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      org.w3c.dom.Document a = builder.parse(inMemory), b = builder.parse(streamed);
+      a.normalizeDocument();
+      b.normalizeDocument();
+      assertTrue(a.getDocumentElement().isEqualNode(b.getDocumentElement()));
+      
+    } finally {
+      inMemory.delete();
+      streamed.delete();
+    }
+  }
+  
+  private void fill(Document doc) {
+    for (int s=0;s<3;s++) {
+      doc.startSection("Section "+s, "s"+s);
+      for (int i=0;i<100;i++) {
+        doc.nextParagraph();
+        doc.addText("Paragraph "+i).addIndexTerm("Names", "Name"+(i%10), "Sub"+i);
+      }
+      doc.startList();
+      for (int i=0;i<100;i++) 
+        doc.nextListItem().addText("Item "+i);
+      doc.endList();
+      doc.startTable("width=100%,border=0.5pt solid black");
+      doc.addTableColumn("column-width=20%");
+      doc.addTableColumn("column-width=80%");
+      for (int i=0;i<100;i++) {
+        doc.nextTableRow();
+        doc.addText("Row "+i);
+        doc.nextTableCell();
+        doc.addLink("back", "s"+s);
+      }
+      doc.endTable();
+    }
+  }
+  
 }
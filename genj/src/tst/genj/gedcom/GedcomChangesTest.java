@@ -0,0 +1,113 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test changes delivered to batch listeners once per write lock
+ */
+public class GedcomChangesTest extends TestCase {
+
+  private Gedcom gedcom;
+  private List<GedcomChanges> batches = new ArrayList<GedcomChanges>();
+
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.createEntity(Gedcom.INDI, "I1").addProperty("NAME", "John /Doe/");
+        gedcom.createEntity(Gedcom.INDI, "I2").addProperty("NAME", "Jane /Doe/");
+      }
+    });
+    gedcom.addGedcomBatchListener(new GedcomBatchListener() {
+      public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+        batches.add(changes);
+      }
+    });
+  }
+
+  /**
+   * many changes make one batch
+   */
+  public void testOneBatch() throws GedcomException {
+
+    final Indi i1 = (Indi)gedcom.getEntity("I1");
+    final Property name = i1.getProperty("NAME");
+
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (int i=0;i<10;i++)
+          name.setValue("John"+i+" /Doe/");
+        i1.addProperty("BIRT", "").addProperty("DATE", "1900");
+        gedcom.createEntity(Gedcom.INDI, "I3").addProperty("NAME", "Jim /Doe/");
+        gedcom.deleteEntity(gedcom.getEntity("I2"));
+      }
+    });
+
+    assertEquals(1, batches.size());
+    GedcomChanges changes = batches.get(0);
+    assertEquals(1, changes.getAdded().size());
+    assertEquals("I3", changes.getAdded().iterator().next().getId());
+    assertEquals(1, changes.getDeleted().size());
+    assertEquals(1, changes.getChanged().size());
+    assertSame(i1, changes.getChanged().iterator().next());
+    assertTrue(changes.getProperties(i1).contains(name));
+    assertTrue(changes.getProperties(i1).contains(i1.getProperty("BIRT")));
+  }
+
+  /**
+   * added and deleted again is nothing
+   */
+  public void testNothing() throws GedcomException {
+
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        Entity i3 = gedcom.createEntity(Gedcom.INDI, "I3");
+        i3.addProperty("NAME", "Jim /Doe/");
+        gedcom.deleteEntity(i3);
+      }
+    });
+
+    assertTrue(batches.isEmpty());
+  }
+
+  /**
+   * changes are delivered after the write lock is released - in order
+   */
+  public void testAfterRelease() throws GedcomException {
+
+    final List<Boolean> locked = new ArrayList<Boolean>();
+    gedcom.addGedcomBatchListener(new GedcomBatchListener() {
+      public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
+        locked.add(gedcom.isWriteLocked());
+        // a change following up on another one
+        if (changes.getAdded().size()==1 && "I3".equals(changes.getAdded().iterator().next().getId()))
+          gedcom.doMuteUnitOfWork(new UnitOfWork() {
+            public void perform(Gedcom gedcom) throws GedcomException {
+              gedcom.createEntity(Gedcom.INDI, "I4");
+            }
+          });
+      }
+    });
+
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.createEntity(Gedcom.INDI, "I3");
+      }
+    });
+
+    assertNotNull(gedcom.getEntity("I4"));
+    assertEquals(2, batches.size());
+    assertEquals("I3", batches.get(0).getAdded().iterator().next().getId());
+    assertEquals("I4", batches.get(1).getAdded().iterator().next().getId());
+    assertEquals(2, locked.size());
+    assertFalse(locked.contains(Boolean.TRUE));
+  }
+
+}
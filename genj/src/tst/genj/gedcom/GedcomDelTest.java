@@ -11,6 +11,7 @@ import genj.io.GedcomWriter;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -104,4 +105,66 @@ public class GedcomDelTest extends TestCase {
         validate(gedcom);
     }
 
+    /*
+     * Test method for 'genj.gedcom.Gedcom.deleteEntities(Collection)'
+     */
+    public void testDeleteEntities() throws Exception {
+        Fam fam = createTestFamily();
+        final Gedcom gedcom = fam.getGedcom();
+        final Indi husband = fam.getHusband(), wife = fam.getWife(), child = fam.getChild(0);
+        
+        // count locks and deletes
+        final int[] counts = new int[2];
+        gedcom.addGedcomListener(new GedcomListenerAdapter() {
+          public void gedcomWriteLockAcquired(Gedcom gedcom) {
+            counts[0]++;
+          }
+          public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
+            counts[1]++;
+          }
+        });
+        
+        gedcom.deleteEntities(Arrays.asList(husband, fam));
+        assertEquals(1, counts[0]);
+        assertEquals(2, counts[1]);
+        
+        // order and lookup as expected
+        assertEquals(Arrays.asList(wife, child), gedcom.getEntities());
+        assertNull(gedcom.getEntity("Ihusband"));
+        assertSame(wife, gedcom.getEntity("Iwife"));
+        assertFalse(gedcom.contains(husband));
+        validate(gedcom);
+        
+        // one undo brings both back
+        gedcom.undoUnitOfWork();
+        assertSame(fam, gedcom.getEntity("F1"));
+        assertSame(husband, fam.getHusband());
+        assertEquals(4, gedcom.getEntities().size());
+        validate(gedcom);
+    }
+    
+    /*
+     * Test method for 'genj.gedcom.Gedcom.getEntity(String)' with an id shared by entities of different type
+     */
+    public void testSharedID() throws Exception {
+        Gedcom gedcom = new Gedcom();
+        Entity indi = gedcom.createEntity(Gedcom.INDI, "X1");
+        Entity note = gedcom.createEntity(Gedcom.NOTE, "X1");
+        Entity obje = gedcom.createEntity(Gedcom.OBJE, "X1");
+        assertSame(indi, gedcom.getEntity("X1"));
+        // a renamed entity hands its id over and takes the new one
+        obje.setId("X2");
+        assertSame(indi, gedcom.getEntity("X1"));
+        assertSame(obje, gedcom.getEntity("X2"));
+        indi.setId("X3");
+        assertSame(note, gedcom.getEntity("X1"));
+        assertSame(indi, gedcom.getEntity("X3"));
+        indi.setId("X1");
+        assertSame(note, gedcom.getEntity("X1"));
+        assertSame(indi, gedcom.getEntity(Gedcom.INDI, "X1"));
+        gedcom.deleteEntity(indi);
+        assertSame(note, gedcom.getEntity("X1"));
+        assertSame(note, gedcom.getEntity(Gedcom.NOTE, "X1"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import genj.io.GedcomReaderFactory;
+import genj.util.Origin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Benchmark the heap footprint of a generated large gedcom file
+ * <pre>
+ *   java [-Dgenj.gedcom.compact=true] genj.gedcom.GedcomHeapBenchmark [individuals]
+ * </pre>
+ */
+public class GedcomHeapBenchmark {
+
+  private final static String[]
+    FIRST = { "John", "Mary", "William", "Elizabeth", "James", "Anna", "Charles", "Margaret", "George", "Sarah" },
+    LAST = { "Smith", "Meier", "Brown", "Dupont", "Rossi", "Jansen", "Novak", "Garcia", "Olsen", "Murphy" },
+    PLACES = { "London, England", "Hamburg, Germany", "Paris, France", "Dublin, Ireland", "Oslo, Norway" },
+    MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" },
+    OCCUPATIONS = { "Farmer", "Smith", "Teacher", "Merchant", "Sailor" };
+
+  @SuppressWarnings("deprecation")
+  public static void main(String[] args) throws Exception {
+
+    int indis = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+
+    File file = File.createTempFile("heap", ".ged");
+    file.deleteOnExit();
+    generate(file, indis);
+    System.out.println("Generated "+indis+" individuals into "+file.length()/1024/1024+"MB");
+
+    long before = used();
+    Gedcom gedcom = GedcomReaderFactory.createReader(Origin.create(file.toURL()), null).read();
+    long after = used();
+
+    int props = 0;
+    for (Entity entity : gedcom.getEntities())
+      props += count(entity);
+
+    System.out.println("compact="+Boolean.getBoolean("genj.gedcom.compact")+" heap="+(after-before)/1024/1024+"MB properties="+props+" bytes/property="+(after-before)/props);
+
+    // keep it reachable until here
+    gedcom.getEntities().size();
+  }
+
+  private static int count(Property prop) {
+    int result = 1;
+    for (int i=0;i<prop.getNoOfProperties();i++)
+      result += count(prop.getProperty(i));
+    return result;
+  }
+
+  private static long used() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i=0;i<3;i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory()-runtime.freeMemory();
+  }
+
+  private static void generate(File file, int indis) throws Exception {
+
+    Random random = new Random(0);
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+
+    out.println("0 HEAD");
+    out.println("1 GEDC");
+    out.println("2 VERS 5.5");
+    out.println("2 FORM LINEAGE-LINKED");
+    out.println("1 CHAR UTF-8");
+
+    int fams = indis/3;
+    for (int i=0;i<indis;i++) {
+      out.println("0 @I"+i+"@ INDI");
+      out.println("1 NAME "+FIRST[random.nextInt(FIRST.length)]+" /"+LAST[random.nextInt(LAST.length)]+"/");
+      out.println("1 SEX "+(i%2==0?"M":"F"));
+      event(out, "BIRT", random);
+      if (random.nextBoolean())
+        event(out, "DEAT", random);
+      out.println("1 OCCU "+OCCUPATIONS[random.nextInt(OCCUPATIONS.length)]);
+      if (i<fams*2)
+        out.println("1 FAMS @F"+(i/2)+"@");
+      if (i>=fams*2)
+        out.println("1 FAMC @F"+(i%fams)+"@");
+    }
+    for (int f=0;f<fams;f++) {
+      out.println("0 @F"+f+"@ FAM");
+      out.println("1 HUSB @I"+(f*2)+"@");
+      out.println("1 WIFE @I"+(f*2+1)+"@");
+      for (int c=fams*2+f;c<indis;c+=fams)
+        out.println("1 CHIL @I"+c+"@");
+      event(out, "MARR", random);
+    }
+    out.println("0 TRLR");
+    out.close();
+  }
+
+  private static void event(PrintWriter out, String tag, Random random) {
+    out.println("1 "+tag);
+    if (random.nextInt(10)==0)
+      out.println("2 DATE BET "+(1700+random.nextInt(200))+" AND "+(1800+random.nextInt(200)));
+    else
+      out.println("2 DATE "+(1+random.nextInt(28))+" "+MONTHS[random.nextInt(12)]+" "+(1700+random.nextInt(300)));
+    out.println("2 PLAC "+PLACES[random.nextInt(PLACES.length)]);
+  }
+}
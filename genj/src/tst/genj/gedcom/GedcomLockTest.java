@@ -0,0 +1,203 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import genj.io.Filter;
+import genj.io.GedcomWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test readers and writers of a gedcom
+ */
+public class GedcomLockTest extends TestCase {
+  
+  private Gedcom gedcom;
+  
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.createEntity(Gedcom.INDI, "I1").addProperty("NAME", "John /Doe/");
+      }
+    });
+  }
+  
+  /**
+   * readers read at the same time, writers wait
+   */
+  public void testReadersAndWriters() throws Exception {
+    
+    final CountDownLatch reading = new CountDownLatch(2);
+    final CountDownLatch done = new CountDownLatch(1);
+    final String[] read = new String[2];
+    
+    for (int i=0;i<2;i++) {
+      final int reader = i;
+      new Thread(new Runnable() {
+        public void run() {
+          try {
+            gedcom.doReadUnitOfWork(new UnitOfWork() {
+              public void perform(Gedcom gedcom) throws GedcomException {
+                reading.countDown();
+                try {
+                  // wait for the other reader and a writer 
+                  reading.await();
+                  Thread.sleep(200);
+                } catch (InterruptedException e) {
+                }
+                read[reader] = gedcom.getEntity("I1").getPropertyValue("NAME");
+              }
+            });
+          } catch (GedcomException e) {
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    
+    // both readers in there
+    assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+    // write waits for readers
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I1").getProperty("NAME").setValue("Jane /Doe/");
+      }
+    });
+    
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals("John /Doe/", read[0]);
+    assertEquals("John /Doe/", read[1]);
+  }
+  
+  /**
+   * a reader can't write
+   */
+  public void testWriteWhileReading() throws GedcomException {
+    
+    gedcom.doReadUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        try {
+          gedcom.doUnitOfWork(new UnitOfWork() {
+            public void perform(Gedcom gedcom) throws GedcomException {
+              fail("write while reading");
+            }
+          });
+          fail("write while reading");
+        } catch (GedcomException e) {
+          // expected
+        }
+      }
+    });
+    
+    // and a writer can read
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.doReadUnitOfWork(new UnitOfWork() {
+          public void perform(Gedcom gedcom) throws GedcomException {
+            gedcom.getEntity("I1");
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * a save doesn't keep writers waiting
+   */
+  public void testWriteWhileSaving() throws Exception {
+    
+    final Throwable[] written = new Throwable[1];
+    final boolean[] whileSaving = new boolean[1];
+    final Thread writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          gedcom.doUnitOfWork(new UnitOfWork() {
+            public void perform(Gedcom gedcom) throws GedcomException {
+              gedcom.createEntity(Gedcom.INDI, "I2");
+            }
+          });
+        } catch (Throwable t) {
+          written[0] = t;
+        }
+      }
+    });
+    
+    // change while the header is written
+    new GedcomWriter(gedcom, new ByteArrayOutputStream() {
+      @Override
+      public synchronized void write(byte[] b, int off, int len) {
+        super.write(b, off, len);
+        if (writer.getState()==Thread.State.NEW) try {
+          writer.start();
+          writer.join(2000);
+          whileSaving[0] = !writer.isAlive();
+        } catch (InterruptedException e) {
+        }
+      }
+    }).write();
+    
+    assertTrue(whileSaving[0]);
+    assertNull(written[0]);
+    assertNotNull(gedcom.getEntity("I2"));
+  }
+  
+  /**
+   * a save shows the gedcom as it was before or after a unit of work - not in between
+   */
+  public void testConsistentSave() throws Exception {
+    
+    final boolean[] waiting = new boolean[1];
+    final Thread writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          gedcom.doUnitOfWork(new UnitOfWork() {
+            public void perform(Gedcom gedcom) throws GedcomException {
+              gedcom.getEntity("I1").getProperty("NAME").setValue("Jane /Doe/");
+              gedcom.createEntity(Gedcom.INDI, "I2");
+            }
+          });
+        } catch (Throwable t) {
+        }
+      }
+    });
+    
+    // change while entities are looked at
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GedcomWriter save = new GedcomWriter(gedcom, out);
+    save.setFilters(Collections.<Filter>singletonList(new Filter() {
+      public String getName() {
+        return "test";
+      }
+      public boolean veto(Property property) {
+        return false;
+      }
+      public boolean veto(Entity entity) {
+        if (writer.getState()==Thread.State.NEW) try {
+          writer.start();
+          writer.join(500);
+          waiting[0] = writer.isAlive();
+        } catch (InterruptedException e) {
+        }
+        return false;
+      }
+    }));
+    save.write();
+    writer.join(5000);
+    
+    assertTrue(waiting[0]);
+    String written = out.toString("UTF-8");
+    assertTrue(written.contains("John /Doe/"));
+    assertFalse(written.contains("@I2@"));
+    assertEquals("Jane /Doe/", gedcom.getEntity("I1").getPropertyValue("NAME"));
+  }
+  
+}
@@ -0,0 +1,212 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test kinship queries and updates
+ */
+public class KinshipIndexTest extends TestCase {
+  
+  private Gedcom gedcom;
+  private KinshipIndex kinship;
+  
+  /**
+   * <pre>
+   *   G1 & G2
+   *    |
+   *   A & X     B & Y
+   *    |         |
+   *   C    &    D      (cousins marrying)
+   *    |
+   *   E
+   * </pre>
+   */
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (String id : new String[] { "G1", "G2", "A", "B", "X", "Y", "C", "D", "E" })
+          gedcom.createEntity(Gedcom.INDI, id);
+        family("F1", "G1", "G2", "A", "B");
+        family("F2", "A", "X", "C");
+        family("F3", "Y", "B", "D");
+        family("F4", "C", "D", "E");
+      }
+    });
+    kinship = gedcom.getKinshipIndex();
+  }
+  
+  private void family(String id, String husband, String wife, String... children) throws GedcomException {
+    Fam fam = (Fam)gedcom.createEntity(Gedcom.FAM, id);
+    fam.setHusband(indi(husband));
+    if (wife!=null)
+      fam.setWife(indi(wife));
+    for (String child : children)
+      fam.addChild(indi(child));
+  }
+  
+  private Indi indi(String id) {
+    return (Indi)gedcom.getEntity(id);
+  }
+  
+  private Set<Indi> set(String... ids) {
+    return new HashSet<Indi>(Arrays.asList(indis(ids)));
+  }
+  
+  private Indi[] indis(String... ids) {
+    Indi[] result = new Indi[ids.length];
+    for (int i=0;i<ids.length;i++)
+      result[i] = indi(ids[i]);
+    return result;
+  }
+  
+  /**
+   * ancestors and common ancestors
+   */
+  public void testAncestors() {
+    
+    for (Indi ancestor : gedcom.getIndis()) {
+      for (Indi indi : gedcom.getIndis())
+        assertEquals(ancestor+" ancestor of "+indi, ancestor.isAncestorOf(indi), kinship.isAncestorOf(ancestor, indi));
+    }
+    
+    assertEquals(set("C", "D", "A", "X", "B", "Y", "G1", "G2"), new HashSet<Indi>(kinship.getAncestors(indi("E"))));
+    assertEquals(set("G1", "G2"), new HashSet<Indi>(kinship.getCommonAncestors(indi("C"), indi("D"))));
+    assertEquals(Arrays.asList(indis("A")), kinship.getCommonAncestors(indi("A"), indi("C")).subList(0, 1));
+    assertEquals(Arrays.asList(indis("G1", "G2")), kinship.getLowestCommonAncestors(indi("A"), indi("B")));
+    assertEquals(Arrays.asList(indis("D")), kinship.getLowestCommonAncestors(indi("D"), indi("E")));
+    assertTrue(kinship.getCommonAncestors(indi("X"), indi("Y")).isEmpty());
+    assertNull(kinship.getRelationship(indi("X"), indi("Y")));
+  }
+  
+  /**
+   * <pre>
+   *   GF
+   *    |
+   *    X
+   *    |
+   *    Y
+   *   X & Y
+   *    |
+   *    P
+   * </pre>
+   * parents of P are looked at before X is known to be an ancestor of Y
+   */
+  public void testDiamond() throws GedcomException {
+    
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (String id : new String[] { "GF", "X", "Y", "P" })
+          gedcom.createEntity(Gedcom.INDI, id);
+        family("F1", "GF", null, "X");
+        family("F2", "X", null, "Y");
+        family("F3", "X", "Y", "P");
+      }
+    });
+    kinship = gedcom.getKinshipIndex();
+    
+    assertEquals(set("GF", "X", "Y"), new HashSet<Indi>(kinship.getAncestors(indi("P"))));
+    assertTrue(kinship.isAncestorOf(indi("GF"), indi("Y")));
+    for (Indi ancestor : gedcom.getIndis()) {
+      for (Indi indi : gedcom.getIndis())
+        assertEquals(ancestor+" ancestor of "+indi, ancestor.isAncestorOf(indi), kinship.isAncestorOf(ancestor, indi));
+    }
+  }
+  
+  /**
+   * cousins, removal and degree
+   */
+  public void testRelationships() {
+    
+    // siblings
+    KinshipIndex.Relationship r = kinship.getRelationship(indi("A"), indi("B"));
+    assertEquals(0, r.getCousin());
+    assertEquals(0, r.getRemoval());
+    assertEquals(2, r.getDegree());
+    
+    // first cousins
+    r = kinship.getRelationship(indi("C"), indi("D"));
+    assertEquals(1, r.getCousin());
+    assertEquals(0, r.getRemoval());
+    assertEquals(4, r.getDegree());
+    
+    // aunt and nephew
+    r = kinship.getRelationship(indi("B"), indi("C"));
+    assertEquals(0, r.getCousin());
+    assertEquals(1, r.getRemoval());
+    
+    // direct line
+    r = kinship.getRelationship(indi("G1"), indi("E"));
+    assertTrue(r.isDirect());
+    assertEquals(indi("G1"), r.getAncestor());
+    assertEquals(3, r.getRemoval());
+    
+    // closest way wins
+    r = kinship.getRelationship(indi("E"), indi("B"));
+    assertEquals(indi("B"), r.getAncestor());
+    assertEquals(2, r.getUp());
+    assertEquals(0, r.getDown());
+  }
+  
+  /**
+   * changes of links are picked up
+   */
+  public void testChanges() throws GedcomException {
+    
+    assertTrue(kinship.isAncestorOf(indi("G1"), indi("E")));
+    assertTrue(kinship.isAncestorOf(indi("Y"), indi("E")));
+    
+    // D is adopted
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        indi("D").getProperty("FAMC").addProperty("PEDI", "adopted");
+      }
+    });
+    assertFalse(kinship.isAncestorOf(indi("Y"), indi("E")));
+    assertEquals(set("G1", "G2"), new HashSet<Indi>(kinship.getLowestCommonAncestors(indi("E"), indi("B"))));
+    
+    // C is no child of A & X anymore
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        Indi c = indi("C");
+        c.delProperty(c.getProperty("FAMC"));
+      }
+    });
+    assertFalse(kinship.isAncestorOf(indi("G1"), indi("E")));
+    assertTrue(kinship.isAncestorOf(indi("C"), indi("E")));
+    
+    // but of B & Y
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        ((Fam)gedcom.getEntity("F3")).addChild(indi("C"));
+      }
+    });
+    assertTrue(kinship.isAncestorOf(indi("G2"), indi("E")));
+    assertEquals(indi("B"), kinship.getRelationship(indi("B"), indi("E")).getAncestor());
+    
+    // and B is gone
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.deleteEntity(indi("B"));
+      }
+    });
+    assertFalse(kinship.isAncestorOf(indi("G2"), indi("E")));
+    assertTrue(kinship.isAncestorOf(indi("Y"), indi("C")));
+    
+    // agree with individuals
+    for (Indi ancestor : gedcom.getIndis()) {
+      for (Indi indi : gedcom.getIndis())
+        assertEquals(ancestor+" ancestor of "+indi, ancestor.isAncestorOf(indi), kinship.isAncestorOf(ancestor, indi));
+    }
+  }
+  
+}
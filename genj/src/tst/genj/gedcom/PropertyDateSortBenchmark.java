@@ -0,0 +1,79 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark sorting dates by sort key against comparing points in time
+ * <pre>
+ *   java genj.gedcom.PropertyDateSortBenchmark [dates] [rounds]
+ * </pre>
+ */
+public class PropertyDateSortBenchmark {
+
+  private final static String[] 
+    MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+  
+  public static void main(String[] args) {
+    
+    int n = args.length>0 ? Integer.parseInt(args[0]) : 1000000;
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+
+    Random random = new Random(0);
+    List<PropertyDate> dates = new ArrayList<PropertyDate>(n);
+    long start = System.currentTimeMillis();
+    for (int i=0;i<n;i++) {
+      PropertyDate date = new PropertyDate();
+      date.setValue(value(random));
+      dates.add(date);
+    }
+    System.out.println("Parsed "+n+" dates in "+(System.currentTimeMillis()-start)+"ms");
+    
+    Comparator<PropertyDate> byKey = new Comparator<PropertyDate>() {
+      public int compare(PropertyDate d1, PropertyDate d2) {
+        return d1.compareTo(d2);
+      }
+    };
+    Comparator<PropertyDate> byPIT = new Comparator<PropertyDate>() {
+      public int compare(PropertyDate d1, PropertyDate d2) {
+        return d1.getStart().compareTo(d2.getStart());
+      }
+    };
+    
+    for (int r=0;r<rounds;r++) {
+      System.out.println("round "+r+": points in time "+sort(dates, byPIT, random)+"ms, sort keys "+sort(dates, byKey, random)+"ms");
+    }
+  }
+  
+  private static long sort(List<PropertyDate> dates, Comparator<PropertyDate> comparator, Random random) {
+    List<PropertyDate> copy = new ArrayList<PropertyDate>(dates);
+    Collections.shuffle(copy, random);
+    long start = System.currentTimeMillis();
+    Collections.sort(copy, comparator);
+    return System.currentTimeMillis()-start;
+  }
+  
+  private static String value(Random random) {
+    int year = 1500+random.nextInt(500);
+    switch (random.nextInt(10)) {
+      case 0:
+        return "BET "+year+" AND "+(year+random.nextInt(20));
+      case 1:
+        return "ABT "+MONTHS[random.nextInt(12)]+" "+year;
+      case 2:
+        return "FROM "+year+" TO "+(year+random.nextInt(20));
+      case 3:
+        return "(unknown)";
+      case 4:
+        return "31 FEB "+year;
+      default:
+        return (1+random.nextInt(28))+" "+MONTHS[random.nextInt(12)]+" "+year;
+    }
+  }
+}
@@ -201,4 +201,39 @@ public class PropertyDateTest extends TestCase {
     
   }
   
+  /**
+   * Test sort keys
+   */
+  public void testSortKeys() {
+    
+    String[] ordered = {
+      "(no date)", "1969", "JAN 1970", "1 JAN 1970", "BET 1 JAN 1970 AND 2 JAN 1970", "2 JAN 1970", "FROM 1971 TO 1980", "ABT 1972", "@#DJULIAN@ 1 JAN 1973"
+    };
+    
+    PropertyDate last = null;
+    for (String value : ordered) {
+      PropertyDate date = new PropertyDate();
+      date.setValue(value);
+      if (last!=null) {
+        assertTrue(last.getValue()+" < "+value, last.compareTo(date)<0);
+        assertTrue(value+" > "+last.getValue(), date.compareTo(last)>0);
+      }
+      last = date;
+    }
+    
+    // kept up to date
+    PropertyDate date = new PropertyDate();
+    date.setValue("1 JAN 1970");
+    long key = date.getSortKey();
+    date.getStart().set(2-1, 1-1, 1970);
+    assertTrue(date.getSortKey()>key);
+    date.setValue("1 JAN 1970");
+    assertEquals(key, date.getSortKey());
+    date.setFormat(PropertyDate.FROM_TO);
+    date.getEnd().set(3-1, 1-1, 1970);
+    assertTrue(date.getSortKey()>key);
+    date.setValue("GARBAGE");
+    assertEquals(Long.MIN_VALUE, date.getSortKey());
+  }
+  
 } //PropertyDateTest
@@ -0,0 +1,176 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.gedcom;
+
+import genj.gedcom.RelationshipFinder.Path;
+import genj.gedcom.RelationshipFinder.Relation;
+import genj.io.GedcomReaderFactory;
+import genj.util.Origin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test relationship paths
+ */
+public class RelationshipFinderTest extends TestCase {
+  
+  private Gedcom gedcom;
+  private RelationshipFinder finder;
+  
+  /**
+   * <pre>
+   *   G1 & G2
+   *    |
+   *   A & X     B & Y
+   *    |         |
+   *   C    &    D      (cousins marrying)
+   *    |
+   *   E
+   * </pre>
+   */
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (String id : new String[] { "G1", "G2", "A", "B", "X", "Y", "C", "D", "E", "Z" })
+          gedcom.createEntity(Gedcom.INDI, id);
+        family("F1", "G1", "G2", "A", "B");
+        family("F2", "A", "X", "C");
+        family("F3", "Y", "B", "D");
+        family("F4", "C", "D", "E");
+      }
+    });
+    finder = gedcom.getRelationshipFinder();
+  }
+  
+  private void family(String id, String husband, String wife, String... children) throws GedcomException {
+    Fam fam = (Fam)gedcom.createEntity(Gedcom.FAM, id);
+    fam.setHusband(indi(husband));
+    fam.setWife(indi(wife));
+    for (String child : children)
+      fam.addChild(indi(child));
+  }
+  
+  private Indi indi(String id) {
+    return (Indi)gedcom.getEntity(id);
+  }
+  
+  /**
+   * shortest paths with labelled steps
+   */
+  public void testPaths() {
+    
+    Path path = finder.getPath(indi("E"), indi("X"));
+    assertEquals("E -parent-> C -parent-> X", path.toString());
+    assertEquals(Relation.PARENT, path.getRelation(0));
+    
+    path = finder.getPath(indi("X"), indi("Y"));
+    assertEquals(3, path.getLength());
+    
+    assertEquals(0, finder.getPath(indi("A"), indi("A")).getLength());
+    assertNull(finder.getPath(indi("A"), indi("Z")));
+    
+    // spouses, by way of their child and by way of common ancestors
+    List<Path> paths = finder.getPaths(indi("C"), indi("D"), 4);
+    assertEquals(4, paths.size());
+    assertEquals("C -spouse-> D", paths.get(0).toString());
+    assertEquals("C -child-> E -parent-> D", paths.get(1).toString());
+    assertEquals(4, paths.get(2).getLength());
+    assertEquals(4, paths.get(3).getLength());
+    assertFalse(paths.get(2).toString().equals(paths.get(3).toString()));
+  }
+  
+  /**
+   * changes are picked up
+   */
+  public void testChanges() throws GedcomException {
+    
+    assertNull(finder.getPath(indi("A"), indi("Z")));
+    
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        ((Fam)gedcom.getEntity("F1")).addChild(indi("Z"));
+      }
+    });
+    assertEquals("A -parent-> G1 -child-> Z", finder.getPath(indi("A"), indi("Z")).toString());
+    
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.deleteEntity(indi("C"));
+      }
+    });
+    assertEquals("E -parent-> D -parent-> B -parent-> G1 -child-> A -spouse-> X", finder.getPath(indi("E"), indi("X")).toString());
+  }
+  
+  /**
+   * paths are as short as those found by a simple search
+   */
+  @SuppressWarnings("deprecation")
+  public void testShortest() throws Exception {
+    
+    gedcom = GedcomReaderFactory.createReader(Origin.create(new File("./gedcom/royal92.ged").toURL()), null).read();
+    finder = gedcom.getRelationshipFinder();
+    
+    List<Indi> indis = new ArrayList<Indi>(gedcom.getIndis());
+    Random random = new Random(0);
+    for (int i=0; i<50; i++) {
+      Indi from = indis.get(random.nextInt(indis.size())), to = indis.get(random.nextInt(indis.size()));
+      
+      int length = distance(from, to);
+      List<Path> paths = finder.getPaths(from, to, 3);
+      if (length<0) {
+        assertTrue(paths.isEmpty());
+        continue;
+      }
+      assertEquals(length, paths.get(0).getLength());
+      
+      // each path is simple and longer or equal to the one before
+      for (int p=0; p<paths.size(); p++) {
+        Path path = paths.get(p);
+        assertEquals(from, path.getIndi(0));
+        assertEquals(to, path.getIndi(path.getLength()));
+        Set<Indi> seen = new HashSet<Indi>();
+        for (int s=0; s<=path.getLength(); s++)
+          assertTrue(seen.add(path.getIndi(s)));
+        if (p>0)
+          assertTrue(path.getLength()>=paths.get(p-1).getLength());
+      }
+    }
+  }
+  
+  private int distance(Indi from, Indi to) {
+    Map<Indi, Integer> distances = new HashMap<Indi, Integer>();
+    LinkedList<Indi> todo = new LinkedList<Indi>();
+    distances.put(from, 0);
+    todo.add(from);
+    while (!todo.isEmpty()) {
+      Indi indi = todo.removeFirst();
+      if (indi==to)
+        return distances.get(indi);
+      List<Indi> next = new ArrayList<Indi>(indi.getParents());
+      next.addAll(Arrays.asList(indi.getChildren()));
+      next.addAll(Arrays.asList(indi.getPartners()));
+      for (Indi n : next) {
+        if (!distances.containsKey(n)) {
+          distances.put(n, distances.get(indi)+1);
+          todo.add(n);
+        }
+      }
+    }
+    return -1;
+  }
+  
+}
@@ -0,0 +1,72 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test decoding from a byte buffer against decoding a stream
+ */
+public class ByteBufferReaderTest extends TestCase {
+
+  private Random random = new Random(42);
+
+  public void testLatin1() throws Exception {
+    assertDecoding(Charset.forName("ISO-8859-1"), randomBytes(20000, 256));
+  }
+
+  public void testUTF8() throws Exception {
+    // well formed
+    assertDecoding(Charset.forName("UTF-8"), "Gr\u00fc\u00dfe aus K\u00f6ln - \u20ac \ud83d\ude00 \u0141\u00f3d\u017a\n".getBytes("UTF-8"));
+    // anything goes
+    assertDecoding(Charset.forName("UTF-8"), randomBytes(20000, 256));
+    // mostly ascii
+    assertDecoding(Charset.forName("UTF-8"), randomBytes(20000, 200));
+  }
+
+  public void testAnsel() throws Exception {
+    assertDecoding(new AnselCharset(), randomBytes(20000, 256));
+    assertDecoding(new AnselCharset(), new byte[] { 'a', (byte)0xE1, 'A', (byte)0xE1 });
+  }
+
+  public void testOther() throws Exception {
+    // surrogate pairs don't fit into single characters
+    assertDecoding(Charset.forName("UTF-16LE"), "a \ud83d\ude00\ud83d\ude01 b\n".getBytes("UTF-16LE"));
+    assertDecoding(Charset.forName("UTF-16LE"), randomBytes(20001, 256));
+    assertDecoding(Charset.forName("Windows-1252"), randomBytes(20000, 256));
+  }
+
+  private byte[] randomBytes(int size, int range) {
+    byte[] result = new byte[size];
+    for (int i=0;i<size;i++)
+      result[i] = (byte)random.nextInt(range);
+    return result;
+  }
+
+  private void assertDecoding(Charset charset, byte[] bytes) throws Exception {
+    String expected = readAll(new InputStreamReader(new ByteArrayInputStream(bytes), charset), 8192);
+    assertEquals(charset.name(), expected, readAll(new ByteBufferReader(ByteBuffer.wrap(bytes), charset), 8192));
+    assertEquals(charset.name(), expected, readAll(new ByteBufferReader(ByteBuffer.wrap(bytes), charset), 7));
+    assertEquals(charset.name(), expected, readAll(new ByteBufferReader(ByteBuffer.wrap(bytes), charset), 1));
+  }
+
+  private String readAll(Reader in, int chunk) throws Exception {
+    StringBuilder result = new StringBuilder();
+    char[] buf = new char[chunk];
+    while (true) {
+      int read = in.read(buf, 0, buf.length);
+      if (read<0)
+        break;
+      result.append(buf, 0, read);
+    }
+    return result.toString();
+  }
+}
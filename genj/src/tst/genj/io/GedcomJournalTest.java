@@ -0,0 +1,340 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.io;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Fam;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomException;
+import genj.gedcom.Indi;
+import genj.gedcom.UnitOfWork;
+import genj.util.Origin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Test journaled changes replayed on read
+ */
+public class GedcomJournalTest extends TestCase {
+
+  private File file;
+  private Gedcom gedcom;
+  private GedcomJournal journal;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("journal", ".ged");
+    copy(new FileInputStream("./gedcom/royal92.ged"), new FileOutputStream(file));
+    gedcom = read();
+    journal = new GedcomJournal(gedcom);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    journal.close();
+    GedcomJournal.awaitClose(file);
+    File aside = GedcomJournal.getFile(file);
+    for (File other : file.getParentFile().listFiles()) {
+      if (other.getName().startsWith(aside.getName()+"."))
+        other.delete();
+    }
+    aside.delete();
+    new File(file.getPath()+"~").delete();
+    file.delete();
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    for (int n; (n=in.read(buffer))>0; )
+      out.write(buffer, 0, n);
+    in.close();
+    out.close();
+  }
+
+  @SuppressWarnings("deprecation")
+  private Gedcom read() throws IOException {
+    return GedcomReaderFactory.createReader(Origin.create(file.toURL()), null).read();
+  }
+
+  /**
+   * all entities as gedcom lines by tag and id
+   */
+  private Map<String, String> dump(Gedcom gedcom) throws IOException {
+    Map<String, String> result = new TreeMap<String, String>();
+    for (Entity entity : gedcom.getEntities()) {
+      StringWriter out = new StringWriter();
+      new PropertyWriter(out, false).write(0, entity);
+      result.put(entity.getTag()+" "+entity.getId(), out.toString());
+    }
+    return result;
+  }
+
+  private void change() throws GedcomException {
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I1").getProperty("NAME").setValue("Victoria /Journaled/");
+        Indi indi = (Indi)gedcom.createEntity(Gedcom.INDI);
+        indi.addProperty("NAME", "New /Person/");
+        ((Fam)gedcom.getEntity("F1")).addChild(indi);
+      }
+    });
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.deleteEntity(gedcom.getEntity("I2"));
+        gedcom.getEntity("I3").setId("I99999");
+      }
+    });
+  }
+
+  /**
+   * saved changes are there when reading the file again
+   */
+  public void testSave() throws Exception {
+
+    long length = file.length();
+    change();
+    assertTrue(journal.save());
+    assertEquals(length, file.length());
+
+    Gedcom again = read();
+    assertEquals(dump(gedcom), dump(again));
+    assertFalse(again.hasChanged());
+    assertNull(again.getEntity("I2"));
+    assertNull(again.getEntity("I3"));
+    assertNotNull(again.getEntity("I99999"));
+  }
+
+  /**
+   * changes that weren't saved are recovered or dropped on close
+   */
+  public void testUnsaved() throws Exception {
+
+    Map<String, String> before = dump(gedcom);
+    change();
+
+    // as if we crashed
+    Gedcom again = read();
+    assertEquals(dump(gedcom), dump(again));
+    assertTrue(again.hasChanged());
+
+    // closed without saving
+    journal.close();
+    assertEquals(before, dump(read()));
+  }
+
+  /**
+   * a unit of work that didn't make it to the disk completely
+   */
+  public void testTorn() throws Exception {
+
+    change();
+    assertTrue(journal.save());
+    Map<String, String> saved = dump(gedcom);
+
+    OutputStream out = new FileOutputStream(GedcomJournal.getFile(file), true);
+    out.write("0 @I9999@ INDI\n1 NAME Torn /Write/\nCOMM".getBytes("UTF-8"));
+    out.close();
+
+    assertEquals(saved, dump(read()));
+
+    // continuing after the torn write
+    journal.close();
+    gedcom = read();
+    journal = new GedcomJournal(gedcom);
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I4").getProperty("NAME").setValue("After /Torn/");
+      }
+    });
+    assertTrue(journal.save());
+    assertEquals(dump(gedcom), dump(read()));
+  }
+
+  /**
+   * compacting writes the file and leaves an empty journal
+   */
+  public void testCompact() throws Exception {
+
+    change();
+    assertTrue(journal.save());
+    assertTrue(journal.compact());
+
+    assertTrue(GedcomJournal.read(file).records.isEmpty());
+    assertEquals(dump(gedcom), dump(read()));
+
+    // journaling goes on on top of the new file
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I4").getProperty("NAME").setValue("After /Compact/");
+      }
+    });
+    assertTrue(journal.save());
+    assertEquals(dump(gedcom), dump(read()));
+  }
+
+  /**
+   * closing puts saved changes into the file
+   */
+  public void testClose() throws Exception {
+
+    long length = file.length();
+    change();
+    assertTrue(journal.save());
+    journal.close();
+    GedcomJournal.awaitClose(file);
+
+    assertTrue(length!=file.length());
+    assertFalse(GedcomJournal.getFile(file).exists());
+    assertEquals(dump(gedcom), dump(read()));
+  }
+
+  /**
+   * a journal of another version of the file is kept aside
+   */
+  public void testAside() throws Exception {
+
+    change();
+    assertTrue(journal.save());
+    File old = GedcomJournal.getFile(file);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    copy(new FileInputStream(old), bytes);
+    journal.close();
+    GedcomJournal.awaitClose(file);
+
+    // the journal is back but the file was written meanwhile
+    copy(new ByteArrayInputStream(bytes.toByteArray()), new FileOutputStream(old));
+    Map<String, String> written = dump(read());
+    
+    gedcom = read();
+    assertEquals(written, dump(gedcom));
+    journal = new GedcomJournal(gedcom);
+    assertFalse(old.exists());
+    File[] aside = file.getParentFile().listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(GedcomJournal.getFile(file).getName()+".");
+      }
+    });
+    assertEquals(1, aside.length);
+    assertEquals(bytes.size(), aside[0].length());
+
+    // a new journal
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I4").getProperty("NAME").setValue("After /Aside/");
+      }
+    });
+    assertTrue(journal.save());
+    assertEquals(dump(gedcom), dump(read()));
+  }
+
+  /**
+   * a unit of work while compacting that isn't saved doesn't go into the file
+   */
+  public void testUnsavedWhileCompacting() throws Exception {
+
+    journal.close();
+    journal = new GedcomJournal(gedcom) {
+      @Override
+      void checkpoint(String at) throws IOException {
+        if (at.equals("started")) try {
+          gedcom.doUnitOfWork(new UnitOfWork() {
+            public void perform(Gedcom gedcom) throws GedcomException {
+              gedcom.getEntity("I4").getProperty("NAME").setValue("Unsaved /Compact/");
+            }
+          });
+        } catch (GedcomException e) {
+          throw new IOException(e.getMessage());
+        }
+      }
+    };
+
+    long length = file.length();
+    change();
+    assertTrue(journal.save());
+    Map<String, String> saved = dump(gedcom);
+    assertFalse(journal.compact());
+    assertEquals(length, file.length());
+
+    // dropped on close
+    journal.close();
+    GedcomJournal.awaitClose(file);
+    assertEquals(length, file.length());
+    assertEquals(saved, dump(read()));
+  }
+
+  /**
+   * compaction stopped before the file is replaced
+   */
+  public void testCrashBeforeMove() throws Exception {
+    crash("rebased");
+  }
+
+  /**
+   * compaction stopped after the file is replaced but not the journal
+   */
+  public void testCrashAfterMove() throws Exception {
+    crash("moved");
+  }
+
+  private void crash(final String step) throws Exception {
+
+    journal.close();
+    journal = new GedcomJournal(gedcom) {
+      boolean crashed;
+      @Override
+      void checkpoint(String at) throws IOException {
+        if (!crashed&&at.equals(step)) {
+          crashed = true;
+          throw new IOException("crash "+at);
+        }
+      }
+    };
+
+    long length = file.length();
+    change();
+    assertTrue(journal.save());
+    try {
+      journal.compact();
+      fail("compaction should crash");
+    } catch (IOException e) {
+    }
+    assertEquals(step.equals("moved"), length!=file.length());
+    assertEquals(dump(gedcom), dump(read()));
+
+    // journaling goes on
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        gedcom.getEntity("I4").getProperty("NAME").setValue("After /Crash/");
+      }
+    });
+    assertTrue(journal.save());
+    assertEquals(dump(gedcom), dump(read()));
+    
+    // and compacts
+    assertTrue(journal.compact());
+    assertEquals(dump(gedcom), dump(read()));
+  }
+
+  /**
+   * a changed header needs the file written
+   */
+  public void testHeader() throws Exception {
+    gedcom.setEncoding(Gedcom.UTF8);
+    assertFalse(journal.save());
+  }
+
+}
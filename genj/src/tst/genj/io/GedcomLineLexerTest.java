@@ -0,0 +1,119 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.io;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Test gedcom line lexing
+ */
+public class GedcomLineLexerTest extends TestCase {
+
+  /**
+   * Test level, xref, tag and value
+   */
+  public void testLines() throws Exception {
+
+    GedcomLineLexer lexer = new GedcomLineLexer(new StringReader(
+      "0 @I1@ INDI\r\n1 NAME Nils /Meier/\r2  NOTE  two spaces \n1\tSEX\tM\n3\n0 TRLR"));
+
+    assertLine(lexer, 0, "I1", "INDI", "");
+    assertLine(lexer, 1, "", "NAME", "Nils /Meier/");
+    assertLine(lexer, 2, "", "NOTE", " two spaces ");
+    assertLine(lexer, 1, "", "SEX", "\tM");
+    assertLine(lexer, 3, "", "_TAG", "");
+    assertLine(lexer, 0, "", "TRLR", "");
+    assertFalse(lexer.next());
+
+    // done
+  }
+
+  /**
+   * Test blank lines and level zero detection
+   */
+  public void testRaw() throws Exception {
+
+    GedcomLineLexer lexer = new GedcomLineLexer(new StringReader("  \n00 HEAD\n10 X\n"));
+
+    assertTrue(lexer.next());
+    assertTrue(lexer.isBlank());
+    assertTrue(lexer.next());
+    assertTrue(lexer.isLevelZero());
+    assertTrue(lexer.next());
+    assertFalse(lexer.isLevelZero());
+    assertFalse(lexer.next());
+
+    // done
+  }
+
+  /**
+   * Test indents
+   */
+  public void testIndents() throws Exception {
+
+    GedcomLineLexer lexer = new GedcomLineLexer(new StringReader("NAME foo\n BIRT\n  DATE 1970"));
+
+    assertTrue(lexer.next());
+    lexer.parse(true, 1);
+    assertEquals(1, lexer.getLevel());
+    assertEquals("NAME", lexer.getTag());
+    assertTrue(lexer.next());
+    lexer.parse(true, 2);
+    assertEquals(2, lexer.getLevel());
+    assertTrue(lexer.next());
+    lexer.parse(true, 3);
+    assertEquals(3, lexer.getLevel());
+    assertEquals("1970", lexer.getValue());
+
+    // done
+  }
+
+  /**
+   * Test errors
+   */
+  public void testErrors() throws Exception {
+    assertError("X INDI", 4);
+    assertError("0 @I1 INDI", 5);
+    assertError("0 @I1@", 6);
+    assertError("99999999999 INDI", 7);
+  }
+
+  /**
+   * Test tags are shared
+   */
+  public void testTags() throws Exception {
+    GedcomLineLexer lexer = new GedcomLineLexer(new StringReader("1 _FOO\n1 _FOO"));
+    assertTrue(lexer.next());
+    lexer.parse(false, 1);
+    String tag = lexer.getTag();
+    assertTrue(lexer.next());
+    lexer.parse(false, 2);
+    assertSame(tag, lexer.getTag());
+    assertSame("_FOO", tag);
+  }
+
+  private void assertError(String line, int lineNo) throws Exception {
+    GedcomLineLexer lexer = new GedcomLineLexer(line.toCharArray());
+    assertTrue(lexer.next());
+    try {
+      lexer.parse(false, lineNo);
+      fail("expected format error for "+line);
+    } catch (GedcomFormatException e) {
+      assertEquals(lineNo, e.getLine());
+    }
+  }
+
+  private void assertLine(GedcomLineLexer lexer, int level, String xref, String tag, String value) throws Exception {
+    assertTrue(lexer.next());
+    lexer.parse(false, 0);
+    assertEquals(level, lexer.getLevel());
+    assertEquals(xref, lexer.getXRef());
+    assertEquals(tag, lexer.getTag());
+    assertEquals(value, lexer.getValue());
+  }
+
+}
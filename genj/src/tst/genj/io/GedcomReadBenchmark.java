@@ -0,0 +1,93 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.io;
+
+import genj.gedcom.Gedcom;
+import genj.util.Origin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Benchmark reading a (large) gedcom file through a stream vs. memory mapped
+ * <pre>
+ *   java genj.io.GedcomReadBenchmark file.ged [rounds]
+ * </pre>
+ */
+public class GedcomReadBenchmark {
+
+  @SuppressWarnings("deprecation")
+  public static void main(String[] args) throws Exception {
+
+    File file = new File(args[0]);
+    int rounds = args.length>1 ? Integer.parseInt(args[1]) : 3;
+
+    System.out.println(file+" ("+file.length()/1024/1024+"MB, "+charset(file)+")");
+
+    for (int r=0;r<rounds;r++) {
+
+      // decoding and lexing only
+      long start = System.currentTimeMillis();
+      int lines = lex(new InputStreamReader(new GedcomEncodingSniffer(new FileInputStream(file)), charset(file)));
+      long stream = System.currentTimeMillis()-start;
+
+      start = System.currentTimeMillis();
+      lex(new ByteBufferReader(map(file), charset(file)));
+      long mapped = System.currentTimeMillis()-start;
+
+      System.out.println("lex "+lines+" lines: stream "+stream+"ms, mapped "+mapped+"ms");
+
+      // complete read
+      System.setProperty("genj.gedcom.mmap", "false");
+      start = System.currentTimeMillis();
+      Gedcom left = GedcomReaderFactory.createReader(Origin.create(file.toURL()), null).read();
+      stream = System.currentTimeMillis()-start;
+
+      System.setProperty("genj.gedcom.mmap", "true");
+      start = System.currentTimeMillis();
+      Gedcom right = GedcomReaderFactory.createReader(Origin.create(file.toURL()), null).read();
+      mapped = System.currentTimeMillis()-start;
+
+      System.out.println("read "+left.getEntities().size()+"/"+right.getEntities().size()+" entities: stream "+stream+"ms, mapped "+mapped+"ms");
+    }
+
+  }
+
+  private static Charset charset(File file) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      return new GedcomEncodingSniffer(in).getCharset();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static ByteBuffer map(File file) throws Exception {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static int lex(Reader in) throws Exception {
+    GedcomLineLexer lexer = new GedcomLineLexer(in);
+    int lines = 0;
+    while (lexer.next()) {
+      if (!lexer.isBlank())
+        lexer.parse(false, lines);
+      lines++;
+    }
+    in.close();
+    return lines;
+  }
+}
@@ -3,9 +3,13 @@
  */
 package genj.io;
 
+import genj.gedcom.Entity;
+import genj.gedcom.Fam;
 import genj.gedcom.Gedcom;
 import genj.gedcom.GedcomException;
 import genj.gedcom.Options;
+import genj.gedcom.PropertyXRef;
+import genj.gedcom.UnitOfWork;
 import genj.util.Origin;
 
 import java.io.BufferedReader;
@@ -83,6 +87,186 @@ public class GedcomReadWriteTest extends TestCase {
     
   }
   
+  /**
+   * Read a file sequentially and in parallel / write both / compare
+   */
+  @SuppressWarnings("deprecation")
+  public void testParallelRead() throws IOException, GedcomException {
+    
+    File original = new File("./gedcom/royal92.ged");
+    
+    // read it twice
+    Gedcom sequential = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null, 1).read();
+    Gedcom parallel = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null, 4).read();
+    assertEquals(sequential.getEntities().size(), parallel.getEntities().size());
+    
+    // write both 
+    File left = File.createTempFile("test", ".ged");
+    FileOutputStream out = new FileOutputStream(left);
+    new GedcomWriter(sequential, out).write();
+    out.close();
+    File right = File.createTempFile("test", ".ged");
+    out = new FileOutputStream(right);
+    new GedcomWriter(parallel, out).write();
+    out.close();
+    
+    // there should be no difference
+    assertEquals(left + " <> " + right, Collections.EMPTY_LIST, diff(left, right));
+  }
+  
+  /**
+   * Read a file / compact it / write it / compare
+   */
+  @SuppressWarnings("deprecation")
+  public void testCompact() throws IOException, GedcomException {
+    
+    File original = new File("./gedcom/royal92.ged");
+    
+    // read and compact it
+    Gedcom ged = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null).read();
+    ged.compact();
+    
+    // write it
+    File temp = File.createTempFile("test", ".ged");
+    FileOutputStream out = new FileOutputStream(temp);
+    new GedcomWriter(ged, out).write();
+    out.close();
+    
+    // there should be no difference
+    assertEquals(original + " <> " + temp, Collections.EMPTY_LIST, diff(original, temp));
+    
+    // unlinked references know where they pointed to
+    Fam fam = (Fam)ged.getEntity(Gedcom.FAM, "F1");
+    PropertyXRef husb = (PropertyXRef)fam.getProperty("HUSB");
+    PropertyXRef fams = husb.getTarget();
+    husb.unlink();
+    assertEquals("@"+fams.getEntity().getId()+"@", husb.getValue());
+    assertEquals("@F1@", fams.getValue());
+  }
+  
+  /**
+   * Read a file record by record / write it the same way / compare
+   */
+  @SuppressWarnings("deprecation")
+  public void testStreamReadWrite() throws IOException, GedcomException {
+    
+    File original = new File("./gedcom/royal92.ged");
+    File temp = File.createTempFile("test", ".ged");
+    
+    // stream it
+    GedcomStreamReader reader = new GedcomStreamReader(original, null);
+    final GedcomStreamWriter writer = new GedcomStreamWriter(new FileOutputStream(temp), reader.getEncoding());
+    final String[] husb = new String[1];
+    writer.write(reader.getHeader());
+    int records = reader.read(new GedcomStreamReader.Visitor() {
+      public boolean visit(Entity entity) throws IOException {
+        if (entity.getTag().equals("FAM")&&entity.getId().equals("F1"))
+          husb[0] = entity.getProperty("HUSB", false).getValue();
+        writer.write(entity);
+        return true;
+      }
+    });
+    writer.close();
+    assertEquals(records+1, writer.getEntities());
+    
+    // there should be no difference
+    assertEquals(original + " <> " + temp, Collections.EMPTY_LIST, diff(original, temp));
+    
+    // same as a complete read with references as ids
+    Gedcom ged = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null).read();
+    assertEquals(ged.getEntities().size(), records);
+    assertEquals(ged.getEntity(Gedcom.FAM, "F1").getProperty("HUSB").getValue(), husb[0]);
+  }
+  
+  /**
+   * Read a file / write it with cached encodings / change it / write again / compare with uncached write
+   */
+  @SuppressWarnings("deprecation")
+  public void testCachedWrite() throws IOException, GedcomException {
+    
+    File original = new File("./gedcom/royal92.ged");
+    Gedcom ged = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null).read();
+    
+    System.setProperty("genj.gedcom.cache", "true");
+    try {
+      
+      // first write fills the cache
+      assertEquals(original + " <> cached", Collections.EMPTY_LIST, diff(original, write(ged, 4)));
+      
+      // change a value and an id referenced from elsewhere
+      ged.doUnitOfWork(new UnitOfWork() {
+        public void perform(Gedcom gedcom) throws GedcomException {
+          gedcom.getEntity(Gedcom.INDI, "I1").getProperty("NAME").setValue("Victoria /Hanover/");
+          gedcom.getEntity(Gedcom.INDI, "I2").setId("I999999");
+        }
+      });
+      File cached = write(ged, 4);
+      
+      // compare with a write from scratch
+      System.setProperty("genj.gedcom.cache", "false");
+      assertEquals("cached <> uncached", Collections.EMPTY_LIST, diff(write(ged, 1), cached));
+      
+    } finally {
+      System.clearProperty("genj.gedcom.cache");
+    }
+  }
+  
+  /**
+   * A change while a cached write is written out isn't lost for the next write
+   */
+  @SuppressWarnings("deprecation")
+  public void testCachedWriteWhileChanging() throws IOException, GedcomException {
+    
+    File original = new File("./gedcom/royal92.ged");
+    final Gedcom ged = GedcomReaderFactory.createReader(Origin.create(original.toURL()), null).read();
+    
+    System.setProperty("genj.gedcom.cache", "true");
+    try {
+      
+      // change while the bytes are written
+      final boolean[] changed = new boolean[1];
+      new GedcomWriter(ged, new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          if (changed[0])
+            return;
+          changed[0] = true;
+          try {
+            ged.doUnitOfWork(new UnitOfWork() {
+              public void perform(Gedcom gedcom) throws GedcomException {
+                gedcom.getEntity(Gedcom.INDI, "I1").getProperty("NAME").setValue("Victoria /Changed/");
+              }
+            });
+          } catch (GedcomException e) {
+            throw new IOException(e.getMessage());
+          }
+        }
+      }).write();
+      assertTrue(changed[0]);
+      
+      // the next write shows it
+      File cached = write(ged, 4);
+      System.setProperty("genj.gedcom.cache", "false");
+      assertEquals("cached <> uncached", Collections.EMPTY_LIST, diff(write(ged, 1), cached));
+      
+    } finally {
+      System.clearProperty("genj.gedcom.cache");
+    }
+  }
+  
+  private File write(Gedcom ged, int threads) throws IOException {
+    File temp = File.createTempFile("test", ".ged");
+    FileOutputStream out = new FileOutputStream(temp);
+    GedcomWriter writer = new GedcomWriter(ged, out);
+    writer.setThreads(threads);
+    writer.write();
+    out.close();
+    return temp;
+  }
+  
   private List<String> diff(File file1, File file2) throws IOException {
     return diff(file1, new FileInputStream(file2));
   }
@@ -0,0 +1,199 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.search;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomException;
+import genj.gedcom.Indi;
+import genj.gedcom.Property;
+import genj.gedcom.UnitOfWork;
+import genj.io.GedcomReaderFactory;
+import genj.util.Origin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test index lookups against looking at all properties
+ */
+public class IndexTest extends TestCase {
+  
+  private Gedcom gedcom;
+  private Index index;
+  
+  @SuppressWarnings("deprecation")
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = GedcomReaderFactory.createReader(Origin.create(new File("./gedcom/royal92.ged").toURL()), null).read();
+    index = new Index(gedcom);
+    gedcom.addGedcomListener(index);
+  }
+  
+  /**
+   * simple and regex queries with and without tags
+   */
+  public void testQueries() {
+    assertQuery(simple("victoria"), Collections.<String>emptyList());
+    assertQuery(simple("vic"), Collections.<String>emptyList());
+    assertQuery(simple("london eng"), Collections.<String>emptyList());
+    assertQuery(simple("london"), Arrays.asList("BIRT", "PLAC"));
+    assertQuery(simple("i1"), Collections.<String>emptyList());
+    assertQuery(regex("(Geo|Alb)er"), Collections.<String>emptyList());
+    assertQuery(regex("18[0-9]{2}$"), Arrays.asList("DATE"));
+    assertQuery(regex("^(M|F)"), Arrays.asList("SEX"));
+  }
+  
+  /**
+   * changes are picked up
+   */
+  public void testChanges() throws GedcomException {
+    
+    // index before changes
+    assertQuery(simple("victoria"), Collections.<String>emptyList());
+
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        // rename
+        gedcom.getEntity("I1").getProperty("NAME").setValue("Alexandrina /Hanover/");
+        // delete
+        gedcom.deleteEntity(gedcom.getEntity("I2"));
+        // add
+        Indi indi = (Indi)gedcom.createEntity(Gedcom.INDI);
+        indi.addProperty("NAME", "Victoria /Zzyzx/");
+        indi.addProperty("BIRT", "").addProperty("PLAC", "Zzyzx, California");
+      }
+    });
+    
+    assertQuery(simple("victoria"), Collections.<String>emptyList());
+    assertQuery(simple("alexandrina"), Collections.<String>emptyList());
+    assertQuery(simple("zzyzx"), Arrays.asList("PLAC"));
+    // references show names of what they point to
+    assertQuery(simple("hanover"), Arrays.asList("HUSB"));
+    assertQuery(simple("hanover"), Arrays.asList("WIFE"));
+    assertTrue(index.containsToken("zzyzx"));
+    
+    // values nobody contains anymore are dropped
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (Entity indi : new ArrayList<Entity>(gedcom.getEntities(Gedcom.INDI))) {
+          if (indi.toString().indexOf("Zzyzx")>=0) 
+            gedcom.deleteEntity(indi);
+        }
+      }
+    });
+    assertFalse(index.containsToken("zzyzx"));
+    assertTrue(index.getEntities(simple("zzyzx"), Collections.<String>emptyList()).isEmpty());
+  }
+  
+  /**
+   * tokens added and removed are found before and after suffixes are sorted again
+   */
+  public void testSuffixes() throws GedcomException {
+    
+    assertQuery(simple("ictori"), Collections.<String>emptyList());
+    
+    for (int i=0;i<3;i++) {
+      final int from = i*600;
+      gedcom.doUnitOfWork(new UnitOfWork() {
+        public void perform(Gedcom gedcom) throws GedcomException {
+          for (int j=from;j<from+600;j++)
+            gedcom.getEntity("I"+(j+1)).getProperty("NAME").setValue("Qx"+j+"yz /Suffix/");
+        }
+      });
+      assertQuery(simple("x"+from+"y"), Collections.<String>emptyList());
+      assertQuery(simple("uffi"), Collections.<String>emptyList());
+      assertQuery(simple("ictori"), Collections.<String>emptyList());
+    }
+    
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (int j=0;j<1800;j++)
+          gedcom.getEntity("I"+(j+1)).getProperty("NAME").setValue("Victoria /Again/");
+      }
+    });
+    assertTrue(index.getEntities(simple("x1799y"), Collections.<String>emptyList()).isEmpty());
+    assertFalse(index.containsToken("qx0yz"));
+    assertQuery(simple("gai"), Collections.<String>emptyList());
+  }
+  
+  /**
+   * changes while the index is built are picked up
+   */
+  public void testBuild() throws Exception {
+    
+    final Throwable[] error = new Throwable[1];
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          for (int i=0;i<20;i++) {
+            final int n = i;
+            gedcom.doUnitOfWork(new UnitOfWork() {
+              public void perform(Gedcom gedcom) throws GedcomException {
+                gedcom.getEntity("I"+(n+1)).getProperty("NAME").setValue("Zzyzx"+n+" /Built/");
+              }
+            });
+          }
+        } catch (Throwable t) {
+          error[0] = t;
+        }
+      }
+    });
+    writer.start();
+    index.build();
+    writer.join();
+    
+    assertNull(error[0]);
+    assertQuery(simple("built"), Collections.<String>emptyList());
+    assertQuery(simple("zzyzx19"), Collections.<String>emptyList());
+    assertQuery(simple("victoria"), Collections.<String>emptyList());
+  }
+  
+  private Matcher simple(String pattern) {
+    Matcher result = new SimpleMatcher();
+    result.init(pattern);
+    return result;
+  }
+  
+  private Matcher regex(String pattern) {
+    Matcher result = new RegExMatcher();
+    result.init(pattern);
+    return result;
+  }
+  
+  private void assertQuery(Matcher matcher, List<String> tags) {
+    Set<Entity> expected = scan(matcher, tags);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, index.getEntities(matcher, tags));
+  }
+  
+  private Set<Entity> scan(Matcher matcher, List<String> tags) {
+    Set<Entity> result = new HashSet<Entity>();
+    for (Entity entity : gedcom.getEntities()) {
+      if (matcher.matches(entity.getId()) || scan(entity, entity, matcher, tags))
+        result.add(entity);
+    }
+    return result;
+  }
+  
+  private boolean scan(Entity entity, Property prop, Matcher matcher, List<String> tags) {
+    boolean ok = !prop.isTransient();
+    if (entity!=prop) for (String tag : tags) 
+      ok &= prop.getPath().contains(tag);
+    if (ok && matcher.match(prop.getDisplayValue()).length>0)
+      return true;
+    for (int i=0;i<prop.getNoOfProperties();i++)
+      if (scan(entity, prop.getProperty(i), matcher, tags))
+        return true;
+    return false;
+  }
+  
+}
@@ -0,0 +1,125 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.search;
+
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.Property;
+import genj.io.GedcomReaderFactory;
+import genj.util.Origin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test partitioned searches
+ */
+public class WorkerTest extends TestCase {
+  
+  private Gedcom gedcom;
+  private Index index;
+  
+  @SuppressWarnings("deprecation")
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = GedcomReaderFactory.createReader(Origin.create(new File("./gedcom/royal92.ged").toURL()), null).read();
+    index = new Index(gedcom);
+    gedcom.addGedcomListener(index);
+  }
+  
+  /**
+   * hits come in order of entities and are the same with and without index
+   */
+  public void testOrder() throws InterruptedException {
+    
+    List<Property> scan = search(null, "", "london", false);
+    assertTrue(scan.size()>64);
+    assertEquals(scan, search(index, "", "london", false));
+    
+    scan = search(null, "DATE", "18[0-9]{2}$", true);
+    assertTrue(scan.size()>64);
+    assertEquals(scan, search(index, "DATE", "18[0-9]{2}$", true));
+  }
+  
+  /**
+   * a search can be stopped and started again
+   */
+  public void testRestart() throws InterruptedException {
+    
+    int london = search(null, "", "london", false).size();
+    
+    Collector collector = new Collector();
+    Worker worker = new Worker(collector);
+    worker.start(gedcom, null, "", "a", false);
+    worker.stop();
+    worker.start(gedcom, null, "", "london", false);
+    
+    // the first search might not even start
+    long timeout = System.currentTimeMillis() + 30000;
+    while (collector.await(1).size()!=london && System.currentTimeMillis()<timeout)
+      Thread.sleep(100);
+    assertEquals(london, collector.await(1).size());
+  }
+  
+  private List<Property> search(Index index, String tags, String value, boolean regexp) throws InterruptedException {
+    
+    Collector collector = new Collector();
+    new Worker(collector).start(gedcom, index, tags, value, regexp);
+    List<Hit> hits = collector.await(1);
+    
+    // entities in gedcom order and numbered one after the other
+    List<Entity> order = new ArrayList<Entity>();
+    for (int t=0; t<Gedcom.ENTITIES.length; t++)
+      order.addAll(gedcom.getEntities(Gedcom.ENTITIES[t]));
+    List<Property> result = new ArrayList<Property>();
+    Hit last = null;
+    for (Hit hit : hits) {
+      if (last!=null) {
+        Entity a = last.getProperty().getEntity(), b = hit.getProperty().getEntity();
+        assertTrue(order.indexOf(a)<=order.indexOf(b));
+        assertEquals(a==b ? last.getEntity() : last.getEntity()+1, hit.getEntity());
+      } else {
+        assertEquals(1, hit.getEntity());
+      }
+      last = hit;
+      result.add(hit.getProperty());
+    }
+    
+    return result;
+  }
+  
+  /**
+   * listener keeping hits
+   */
+  private static class Collector implements WorkerListener {
+    
+    private List<Hit> hits = new ArrayList<Hit>();
+    private int stopped = 0;
+    
+    public synchronized void started() {
+      hits.clear();
+    }
+    
+    public synchronized void more(List<Hit> more) {
+      hits.addAll(more);
+    }
+    
+    public synchronized void stopped() {
+      stopped++;
+      notifyAll();
+    }
+    
+    synchronized List<Hit> await(int stops) throws InterruptedException {
+      long timeout = System.currentTimeMillis() + 30000;
+      while (stopped<stops && System.currentTimeMillis()<timeout)
+        wait(1000);
+      assertTrue(stopped>=stops);
+      return new ArrayList<Hit>(hits);
+    }
+  }
+
+}
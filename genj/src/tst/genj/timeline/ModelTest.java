@@ -0,0 +1,154 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.timeline;
+
+import genj.gedcom.Context;
+import genj.gedcom.Entity;
+import genj.gedcom.Gedcom;
+import genj.gedcom.GedcomException;
+import genj.gedcom.Indi;
+import genj.gedcom.Property;
+import genj.gedcom.PropertyDate;
+import genj.gedcom.TagPath;
+import genj.gedcom.UnitOfWork;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test timeline layers and updates
+ */
+public class ModelTest extends TestCase {
+
+  private Gedcom gedcom;
+  private Model model;
+  private int structureChanges;
+
+  @Override
+  protected void setUp() throws Exception {
+    gedcom = new Gedcom();
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        for (int i=0; i<50; i++)
+          birth((Indi)gedcom.createEntity(Gedcom.INDI, "I"+i), (1900+(i*7)%40)+"");
+      }
+    });
+    model = new Model();
+    model.setGedcom(gedcom);
+    model.addListener(new Model.Listener() {
+      public void dataChanged() {
+      }
+      public void structureChanged() {
+        structureChanges++;
+      }
+    });
+  }
+
+  private void birth(Indi indi, String date) {
+    indi.addProperty("BIRT", "").addProperty("DATE", date);
+  }
+
+  /**
+   * events in layers sorted and not overlapping
+   */
+  private void assertLayers() {
+    int count = 0;
+    for (List<Model.Event> layer : model.layers) {
+      assertFalse(layer.isEmpty());
+      for (int i=1; i<layer.size(); i++)
+        assertTrue(layer.get(i-1).to+model.timeAfterEvent <= layer.get(i).from-model.timeBeforeEvent);
+      count += layer.size();
+    }
+    assertEquals(births(), count);
+  }
+
+  private int births() {
+    int result = 0;
+    for (Entity indi : gedcom.getEntities(Gedcom.INDI)) {
+      if (indi.getProperty(new TagPath("INDI:BIRT:DATE"))!=null)
+        result++;
+    }
+    return result;
+  }
+
+  /**
+   * lookups by year and by context
+   */
+  public void testLookup() {
+    assertLayers();
+    for (int l=0; l<model.layers.size(); l++) {
+      for (Model.Event event : model.layers.get(l)) {
+        assertSame(event, model.getEvent(event.from+0.5, l));
+        assertSame(event, model.getEvents(new Context(event.getEntity())).iterator().next());
+      }
+    }
+    assertNull(model.getEvent(1000, 0));
+    assertNull(model.getEvent(1900, model.layers.size()));
+    assertEquals(1900-model.timeBeforeEvent, model.min);
+  }
+
+  /**
+   * single changes update affected events only
+   */
+  public void testUpdates() throws Exception {
+
+    final Indi indi = (Indi)gedcom.getEntity("I3");
+    final Model.Event other = model.getEvents(new Context(gedcom.getEntity("I4"))).iterator().next();
+
+    // a new one
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        birth((Indi)gedcom.createEntity(Gedcom.INDI, "X"), "1850");
+      }
+    });
+    assertEquals(1, structureChanges);
+    assertEquals(1850-model.timeBeforeEvent, model.min);
+    assertLayers();
+
+    // a changed date
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        ((PropertyDate)indi.getProperty(new TagPath("INDI:BIRT:DATE"))).setValue("1960");
+      }
+    });
+    assertEquals(2, structureChanges);
+    assertLayers();
+    Set<Model.Event> events = model.getEvents(new Context(indi));
+    assertEquals(1, events.size());
+    assertEquals(1960D, events.iterator().next().from);
+    assertEquals(Math.ceil(1960+model.timeAfterEvent), Math.ceil(model.max));
+
+    // others' events stay
+    assertSame(other, model.getEvents(new Context(gedcom.getEntity("I4"))).iterator().next());
+
+    // a deleted event and a deleted entity
+    gedcom.doUnitOfWork(new UnitOfWork() {
+      public void perform(Gedcom gedcom) throws GedcomException {
+        Property birt = indi.getProperty("BIRT");
+        indi.delProperty(birt);
+        gedcom.deleteEntity(gedcom.getEntity("X"));
+      }
+    });
+    assertLayers();
+    assertTrue(model.getEvents(new Context(indi)).isEmpty());
+    assertEquals(1900-model.timeBeforeEvent, model.min);
+
+    // same events as when starting fresh
+    Set<Property> incremental = new HashSet<Property>();
+    for (List<Model.Event> layer : model.layers)
+      for (Model.Event event : layer)
+        incremental.add(event.getProperty());
+    Model fresh = new Model();
+    fresh.setGedcom(gedcom);
+    Set<Property> all = new HashSet<Property>();
+    for (List<Model.Event> layer : fresh.layers)
+      for (Model.Event event : layer)
+        all.add(event.getProperty());
+    assertEquals(all, incremental);
+  }
+
+}
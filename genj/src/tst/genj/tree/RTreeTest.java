@@ -0,0 +1,85 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.tree;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test spatial queries against looking at all bounds
+ */
+public class RTreeTest extends TestCase {
+
+  /**
+   * an empty tree
+   */
+  public void testEmpty() {
+    RTree<Integer> tree = new RTree<Integer>(Collections.<Integer>emptyList(), Collections.<Rectangle>emptyList());
+    assertTrue(tree.visit(new Rectangle(0,0,100,100), new Collector()));
+  }
+
+  /**
+   * random rectangles of different counts
+   */
+  public void testRange() {
+    Random random = new Random(42);
+    for (int n : new int[] { 1, 15, 16, 17, 256, 1000, 5000 }) {
+      List<Integer> objects = new ArrayList<Integer>();
+      List<Rectangle> bounds = new ArrayList<Rectangle>();
+      for (int i=0; i<n; i++) {
+        objects.add(i);
+        bounds.add(new Rectangle(random.nextInt(20000)-10000, random.nextInt(2000)-1000, 1+random.nextInt(60), 1+random.nextInt(30)));
+      }
+      RTree<Integer> tree = new RTree<Integer>(objects, bounds);
+      assertEquals(n, tree.size());
+      for (int q=0; q<100; q++) {
+        Rectangle range = new Rectangle(random.nextInt(22000)-11000, random.nextInt(2200)-1100, random.nextInt(2000), random.nextInt(500));
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int i=0; i<n; i++) {
+          Rectangle r = bounds.get(i);
+          if (r.x<=range.x+range.width && r.x+r.width>=range.x && r.y<=range.y+range.height && r.y+r.height>=range.y)
+            expected.add(i);
+        }
+        Collector collector = new Collector();
+        tree.visit(range, collector);
+        assertEquals(expected, new HashSet<Integer>(collector.found));
+        assertEquals(expected.size(), collector.found.size());
+      }
+    }
+  }
+
+  /**
+   * a visitor stopping early
+   */
+  public void testStop() {
+    List<Integer> objects = new ArrayList<Integer>();
+    List<Rectangle> bounds = new ArrayList<Rectangle>();
+    for (int i=0; i<100; i++) {
+      objects.add(i);
+      bounds.add(new Rectangle(i*10, 0, 5, 5));
+    }
+    RTree<Integer> tree = new RTree<Integer>(objects, bounds);
+    Collector collector = new Collector();
+    collector.max = 3;
+    assertFalse(tree.visit(new Rectangle(0,0,1000,10), collector));
+    assertEquals(3, collector.found.size());
+  }
+
+  private static class Collector implements RTree.Visitor<Integer> {
+    List<Integer> found = new ArrayList<Integer>();
+    int max = Integer.MAX_VALUE;
+    public boolean visit(Integer object) {
+      found.add(object);
+      return found.size()<max;
+    }
+  }
+
+}
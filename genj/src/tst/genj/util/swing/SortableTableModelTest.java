@@ -0,0 +1,102 @@
+/**
+ * JUNIT TESTCASE - DONT PACKAGE FOR DISTRIBUTION
+ */
+package genj.util.swing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.table.AbstractTableModel;
+
+import junit.framework.TestCase;
+
+/**
+ * Test sorting by keys and patching in single rows
+ */
+public class SortableTableModelTest extends TestCase {
+
+  private Data data;
+  private SortableTableModel sortable;
+
+  @Override
+  protected void setUp() throws Exception {
+    Random random = new Random(7);
+    data = new Data();
+    for (int i=0; i<500; i++)
+      data.rows.add(new Object[] { Long.valueOf(random.nextInt(100)), random.nextInt(10)==0 ? null : "v"+random.nextInt(50) });
+    sortable = new SortableTableModel(data);
+    sortable.setSortingStatus(0, SortableTableModel.ASCENDING);
+    sortable.setSortingStatus(1, SortableTableModel.DESCENDING);
+    sortable.getValueAt(0, 0);
+  }
+
+  /**
+   * the view has to look like a sort from scratch
+   */
+  private void assertSorted() {
+    assertEquals(data.rows.size(), sortable.getRowCount());
+    for (int i=1; i<sortable.getRowCount(); i++) {
+      long a = (Long)sortable.getValueAt(i-1, 0), b = (Long)sortable.getValueAt(i, 0);
+      assertTrue(a<=b);
+      if (a==b) {
+        String x = (String)sortable.getValueAt(i-1, 1), y = (String)sortable.getValueAt(i, 1);
+        assertTrue(y==null || (x!=null&&x.compareTo(y)>=0));
+      }
+    }
+    for (int i=0; i<sortable.getRowCount(); i++)
+      assertEquals(i, sortable.viewIndex(sortable.modelIndex(i)));
+  }
+
+  public void testSort() {
+    assertSorted();
+    assertEquals(data.rows.size(), data.keys);
+  }
+
+  public void testPatches() {
+
+    int keys = data.keys;
+
+    // insert in middle and at end
+    data.rows.add(10, new Object[] { Long.valueOf(50), "x" });
+    data.fireTableRowsInserted(10, 10);
+    data.rows.add(new Object[] { Long.valueOf(-1), null });
+    data.fireTableRowsInserted(data.rows.size()-1, data.rows.size()-1);
+    assertSorted();
+    assertEquals(-1L, sortable.getValueAt(0, 0));
+
+    // update
+    data.rows.get(20)[0] = Long.valueOf(1000);
+    data.fireTableRowsUpdated(20, 20);
+    assertSorted();
+    assertEquals(1000L, sortable.getValueAt(sortable.getRowCount()-1, 0));
+
+    // delete
+    data.rows.remove(5);
+    data.fireTableRowsDeleted(5, 5);
+    assertSorted();
+
+    // only changed rows had their keys looked up
+    assertEquals(keys+3, data.keys);
+  }
+
+  private static class Data extends AbstractTableModel implements SortableTableModel.KeyProvider {
+    private static final long serialVersionUID = 1L;
+    private List<Object[]> rows = new ArrayList<Object[]>();
+    private int keys = 0;
+    public int getRowCount() {
+      return rows.size();
+    }
+    public int getColumnCount() {
+      return 2;
+    }
+    public Object getValueAt(int row, int col) {
+      return rows.get(row)[col];
+    }
+    public Object getSortKey(int row, int col) {
+      if (col==0)
+        keys++;
+      return rows.get(row)[col];
+    }
+  }
+}
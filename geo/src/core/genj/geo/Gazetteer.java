@@ -0,0 +1,353 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2005 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.geo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local gazetteer - places by normalized name with jurisdiction and coordinate. It's read
+ * from a compact index file that is built from a GeoNames dump (tab separated, one place
+ * per line) and an optional list of first order administrative divisions (admin1CodesASCII.txt)
+ * @see <a href="http://download.geonames.org/export/dump/readme.txt">GeoNames dumps</a>
+ */
+public class Gazetteer {
+  
+  /** file suffix of index files */
+  public final static String SUFFIX = ".gaz";
+  
+  private final static int MAGIC = 0x47415a01;
+  private final static Charset UTF8 = Charset.forName("UTF8");
+
+  /** jurisdictions - name, normalized name and country */
+  private String[] jurisdictions, jurisdictionKeys;
+  private Country[] countries;
+  
+  /** places - city, jurisdiction and coordinate */
+  private String[] cities;
+  private int[] places2jurisdiction;
+  private float[] lats, lons;
+  
+  /** normalized names in order, first reference of each (plus end) and referenced places */
+  private String[] names;
+  private int[] firsts, refs;
+  
+  /**
+   * Constructor - read given index
+   */
+  public Gazetteer(File index) throws IOException {
+    
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index), 64*1024));
+    try {
+      
+      if (in.readInt()!=MAGIC)
+        throw new IOException(index+" is not a gazetteer index");
+      
+      // jurisdictions
+      int n = in.readInt();
+      jurisdictions = new String[n];
+      jurisdictionKeys = new String[n];
+      countries = new Country[n];
+      for (int i=0;i<n;i++) {
+        countries[i] = Country.get(in.readUTF());
+        jurisdictions[i] = in.readUTF();
+        jurisdictionKeys[i] = normalize(jurisdictions[i]);
+      }
+      
+      // places
+      n = in.readInt();
+      cities = new String[n];
+      places2jurisdiction = new int[n];
+      lats = new float[n];
+      lons = new float[n];
+      for (int i=0;i<n;i++) {
+        cities[i] = in.readUTF();
+        places2jurisdiction[i] = in.readInt();
+        lats[i] = in.readFloat();
+        lons[i] = in.readFloat();
+      }
+      
+      // names
+      n = in.readInt();
+      names = new String[n];
+      firsts = new int[n+1];
+      refs = new int[in.readInt()];
+      for (int i=0, r=0;i<n;i++) {
+        names[i] = in.readUTF();
+        firsts[i] = r;
+        for (int j=in.readInt(); j>0; j--)
+          refs[r++] = in.readInt();
+      }
+      firsts[n] = refs.length;
+      
+    } finally {
+      in.close();
+    }
+    
+    // done
+  }
+  
+  /**
+   * Number of places
+   */
+  public int getNumPlaces() {
+    return cities.length;
+  }
+  
+  /**
+   * Find all places matching given location's city (a trailing '*' matches any suffix). Like 
+   * the webservice these are narrowed down to the location's jurisdiction and country as 
+   * far as that leaves any. 
+   * @return list of locations with coordinates
+   */
+  public List<GeoLocation> query(GeoLocation location) {
+    
+    List<GeoLocation> result = new ArrayList<GeoLocation>();
+    
+    // look for name range
+    String city = location.getCity();
+    boolean prefix = city.endsWith("*");
+    String key = normalize(prefix ? city.substring(0, city.length()-1) : city);
+    if (key.length()==0)
+      return result;
+    int from = Arrays.binarySearch(names, key), to;
+    if (prefix) {
+      from = from<0 ? -from-1 : from;
+      to = -Arrays.binarySearch(names, key+'\uffff')-1;
+    } else {
+      if (from<0)
+        return result;
+      to = from+1;
+    }
+    if (from==to)
+      return result;
+    
+    // collect places once
+    int[] places = new int[firsts[to]-firsts[from]];
+    System.arraycopy(refs, firsts[from], places, 0, places.length);
+    if (prefix)
+      Arrays.sort(places);
+    
+    // find location's jurisdiction amongst places' and its country
+    int jurisdiction = -1;
+    for (int j=0; j<location.getJurisdictions().size() && jurisdiction<0; j++) {
+      String name = normalize(location.getJurisdictions().get(j));
+      for (int i=0; i<places.length; i++) {
+        int pj = places2jurisdiction[places[i]];
+        if (jurisdictionKeys[pj].equals(name)) {
+          jurisdiction = pj;
+          break;
+        }
+      }
+    }
+    Country country = location.getCountry();
+    
+    // take places in jurisdiction and country, country only or all
+    for (int pass=jurisdiction<0?1:0; pass<3 && result.isEmpty(); pass++) {
+      for (int i=0; i<places.length; i++) {
+        int place = places[i];
+        if (i>0 && place==places[i-1])
+          continue;
+        int pj = places2jurisdiction[place];
+        if (pass==0 && pj!=jurisdiction)
+          continue;
+        if (pass<2 && country!=null && !country.equals(countries[pj]))
+          continue;
+        String j = jurisdictions[pj];
+        GeoLocation hit = new GeoLocation(cities[place], j.length()>0 ? j : null, countries[pj]);
+        hit.setCoordinate(lats[place], lons[place]);
+        result.add(hit);
+      }
+    }
+    
+    // done
+    return result;
+  }
+  
+  /**
+   * Normalize a name for lookup - lower case without diacritics and punctuation
+   */
+  /*package*/ static String normalize(String name) {
+    String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+    StringBuilder result = new StringBuilder(decomposed.length());
+    boolean space = false;
+    for (int i=0, j=decomposed.length(); i<j; i++) {
+      char c = decomposed.charAt(i);
+      if (Character.getType(c)==Character.NON_SPACING_MARK)
+        continue;
+      if (!Character.isLetterOrDigit(c)) {
+        space = true;
+        continue;
+      }
+      if (space && result.length()>0)
+        result.append(' ');
+      space = false;
+      result.append(Character.toLowerCase(c));
+    }
+    return result.toString();
+  }
+  
+  /**
+   * Build an index from a GeoNames dump - only populated places (feature class P) are considered, 
+   * looked up by their name, ascii name and alternate names
+   * @param dump the GeoNames dump
+   * @param admin1 the GeoNames list of administrative divisions or null
+   * @param index the index file to write
+   * @return number of places
+   */
+  public static int write(File dump, File admin1, File index) throws IOException {
+    
+    // read administrative division names 'CC.A1<tab>name<tab>...'
+    Map<String,String> code2admin1 = new HashMap<String, String>();
+    if (admin1!=null) {
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(admin1), UTF8));
+      try {
+        for (String line = in.readLine(); line!=null; line = in.readLine()) {
+          String[] cols = line.split("\t");
+          if (cols.length>1)
+            code2admin1.put(cols[0], cols[1]);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    
+    // read places
+    Map<String,Integer> key2jurisdiction = new HashMap<String, Integer>();
+    List<String> jurisdictions = new ArrayList<String>();
+    List<String> countries = new ArrayList<String>();
+    List<String> cities = new ArrayList<String>();
+    List<Integer> places2jurisdiction = new ArrayList<Integer>();
+    List<float[]> coordinates = new ArrayList<float[]>();
+    Map<String,List<Integer>> name2places = new HashMap<String, List<Integer>>();
+    
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(dump), UTF8));
+    try {
+      for (String line = in.readLine(); line!=null; line = in.readLine()) {
+        
+        // geonameid, name, asciiname, alternatenames, latitude, longitude, feature class, feature code, country code, cc2, admin1 code, ...
+        String[] cols = line.split("\t");
+        if (cols.length<11 || !"P".equals(cols[6]) || cols[8].length()==0)
+          continue;
+        
+        float[] coordinate;
+        try {
+          coordinate = new float[]{ Float.parseFloat(cols[4]), Float.parseFloat(cols[5]) };
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        
+        // jurisdiction
+        String key = cols[8]+"."+cols[10];
+        Integer jurisdiction = key2jurisdiction.get(key);
+        if (jurisdiction==null) {
+          jurisdiction = jurisdictions.size();
+          key2jurisdiction.put(key, jurisdiction);
+          String name = code2admin1.get(key);
+          jurisdictions.add(name!=null ? name : "");
+          countries.add(cols[8].toLowerCase());
+        }
+        
+        // place
+        Integer place = cities.size();
+        cities.add(cols[1]);
+        places2jurisdiction.add(jurisdiction);
+        coordinates.add(coordinate);
+        
+        // names
+        List<String> names = new ArrayList<String>();
+        names.add(normalize(cols[1]));
+        names.add(normalize(cols[2]));
+        for (String alternate : cols[3].split(","))
+          names.add(normalize(alternate));
+        for (int i=0;i<names.size();i++) {
+          String name = names.get(i);
+          if (name.length()==0 || names.indexOf(name)<i)
+            continue;
+          List<Integer> places = name2places.get(name);
+          if (places==null) {
+            places = new ArrayList<Integer>(1);
+            name2places.put(name, places);
+          }
+          places.add(place);
+        }
+      }
+    } finally {
+      in.close();
+    }
+    
+    // write it
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index), 64*1024));
+    try {
+      out.writeInt(MAGIC);
+      
+      out.writeInt(jurisdictions.size());
+      for (int i=0;i<jurisdictions.size();i++) {
+        out.writeUTF(countries.get(i));
+        out.writeUTF(jurisdictions.get(i));
+      }
+      
+      out.writeInt(cities.size());
+      for (int i=0;i<cities.size();i++) {
+        out.writeUTF(cities.get(i));
+        out.writeInt(places2jurisdiction.get(i));
+        out.writeFloat(coordinates.get(i)[0]);
+        out.writeFloat(coordinates.get(i)[1]);
+      }
+      
+      String[] names = name2places.keySet().toArray(new String[name2places.size()]);
+      Arrays.sort(names);
+      int refs = 0;
+      for (List<Integer> places : name2places.values())
+        refs += places.size();
+      out.writeInt(names.length);
+      out.writeInt(refs);
+      for (String name : names) {
+        List<Integer> places = name2places.get(name);
+        out.writeUTF(name);
+        out.writeInt(places.size());
+        for (Integer place : places)
+          out.writeInt(place);
+      }
+      
+    } finally {
+      out.close();
+    }
+    
+    // done
+    return cities.size();
+  }
+  
+} //Gazetteer
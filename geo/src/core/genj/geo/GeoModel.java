@@ -21,13 +21,13 @@ package genj.geo;
 
 import genj.gedcom.Entity;
 import genj.gedcom.Gedcom;
-import genj.gedcom.GedcomListener;
-import genj.gedcom.Property;
+import genj.gedcom.GedcomBatchListener;
+import genj.gedcom.GedcomChanges;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +45,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 /**
  * Geographic model wrapper for gedcom
  */
-/*package*/ class GeoModel implements GedcomListener {
+/*package*/ class GeoModel implements GedcomBatchListener {
 
   private final static Logger LOG = Logger.getLogger("genj.geo");
   
@@ -99,7 +99,7 @@ import com.vividsolutions.jts.geom.Coordinate;
         fireLocationRemoved(loc);
       }
       // detach
-      gedcom.removeGedcomListener(this);
+      gedcom.removeGedcomBatchListener(this);
     }
     
     // remember
@@ -116,7 +116,7 @@ import com.vividsolutions.jts.geom.Coordinate;
       // start a resolver
       worker.queue(gedcom, locations.keySet(), false);
       // attach
-      gedcom.addGedcomListener(this);
+      gedcom.addGedcomBatchListener(this);
     }
     
     // done
@@ -198,14 +198,34 @@ import com.vividsolutions.jts.geom.Coordinate;
     listeners.remove((GeoModelListener)Spin.over(l));
   }
 
-  public void gedcomEntityAdded(Gedcom gedcom, Entity entity) {
+  public void gedcomChanged(Gedcom gedcom, GedcomChanges changes) {
     
-    // reparse entities changed
-    Set added = GeoLocation.parseEntities(Collections.singletonList(entity));
+    // forget about deleted and changed entities
+    Set<Entity> removed = new HashSet<Entity>(changes.getDeleted());
+    removed.addAll(changes.getChanged());
+    if (!removed.isEmpty()) {
+      List<GeoLocation> current = new ArrayList<GeoLocation>(locations.keySet());
+      for (GeoLocation loc : current) {
+        int before = loc.getNumProperties();
+        loc.removeEntities(removed);
+        if (loc.getNumProperties()==0) {
+          locations.remove(loc);
+          fireLocationRemoved(loc);
+        } else if (loc.getNumProperties()!=before) {
+          fireLocationUpdated(loc);
+        }
+      }
+    }
+    
+    // reparse entities added and changed
+    List<Entity> reparse = new ArrayList<Entity>(changes.getAdded());
+    reparse.addAll(changes.getChanged());
+    if (reparse.isEmpty())
+      return;
+    Set<GeoLocation> added = GeoLocation.parseEntities(reparse);
     
-    for (Iterator locs = added.iterator(); locs.hasNext(); ) {
-      GeoLocation loc = (GeoLocation)locs.next();
-      GeoLocation old = (GeoLocation)locations.get(loc);
+    for (GeoLocation loc : added) {
+      GeoLocation old = locations.get(loc);
       if (old!=null) {
         old.add(loc);
         fireLocationUpdated(old);
@@ -215,38 +235,9 @@ import com.vividsolutions.jts.geom.Coordinate;
       }
     }
     
-    // resolve
-    worker.queue(gedcom, added, true);
-  }
-
-  public void gedcomEntityDeleted(Gedcom gedcom, Entity entity) {
-    
-    List current = new ArrayList(locations.keySet());
-    for (Iterator locs = current.iterator(); locs.hasNext(); ) {
-      GeoLocation loc = (GeoLocation)locs.next();
-      loc.removeEntity(entity);
-      if (loc.getNumProperties()==0) {
-        locations.remove(loc);
-        fireLocationRemoved(loc);
-      } else {
-        fireLocationUpdated(loc);
-      }
-    }
-    
-  }
-
-  public void gedcomPropertyAdded(Gedcom gedcom, Property property, int pos, Property added) {
-    gedcomPropertyChanged(gedcom, property);
-  }
-
-  public void gedcomPropertyChanged(Gedcom gedcom, Property property) {
-    Entity entity = property.getEntity();
-    gedcomEntityDeleted(gedcom, entity);
-    gedcomEntityAdded(gedcom, entity);
-  }
-
-  public void gedcomPropertyDeleted(Gedcom gedcom, Property property, int pos, Property deleted) {
-    gedcomPropertyChanged(gedcom, property);
+    // resolve all at once
+    if (!added.isEmpty())
+      worker.queue(gedcom, added, true);
   }
 
   /**
@@ -42,6 +42,13 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,6 +64,20 @@ public class GeoService {
   final static Charset UTF8 = Charset.forName("UTF8");
   final static Logger LOG = Logger.getLogger("genj.geo");
   final static URL URL = createQueryURL();
+  final static Registry REGISTRY = Registry.get(GeoService.class);
+  
+  /** threads for matching against gazetteers */
+  private final static int THREADS = Runtime.getRuntime().availableProcessors();
+  private final static ExecutorService MATCHERS = new ThreadPoolExecutor(THREADS, THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread result = new Thread(r, "Geo Matcher");
+      result.setDaemon(true);
+      return result;
+    }
+  });
+  static {
+    ((ThreadPoolExecutor)MATCHERS).allowCoreThreadTimeOut(true);
+  }
   
   /** our work directory */
   private static final String GEO_DIR = "geo";
@@ -67,6 +88,9 @@ public class GeoService {
   /** maps */
   private List maps;
   
+  /** local gazetteers */
+  private List<Gazetteer> gazetteers;
+  
   /** our query url */
   private static URL createQueryURL() {
     try {
@@ -120,6 +144,47 @@ public class GeoService {
     return (File[])result.toArray(new File[result.size()]);
   }
   
+  /**
+   * Whether to ask the webservice for locations not found in local gazetteers
+   */
+  public boolean isWebservice() {
+    return REGISTRY.get("webservice", true);
+  }
+  
+  /**
+   * Whether to ask the webservice for locations not found in local gazetteers
+   */
+  public void setWebservice(boolean set) {
+    REGISTRY.put("webservice", Boolean.valueOf(set));
+  }
+  
+  /**
+   * Local gazetteers (*.gaz) in geo directories
+   */
+  /*package*/ synchronized List<Gazetteer> getGazetteers() {
+    
+    // know all gazetteers already?
+    if (gazetteers==null) {
+      
+      gazetteers = new ArrayList<Gazetteer>();
+      
+      File[] files = getGeoFiles();
+      for (int i=0;i<files.length;i++) {
+        if (files[i].getName().endsWith(Gazetteer.SUFFIX)) try {
+          long start = System.currentTimeMillis();
+          Gazetteer gazetteer = new Gazetteer(files[i]);
+          gazetteers.add(gazetteer);
+          LOG.fine("read gazetteer "+files[i]+" with "+gazetteer.getNumPlaces()+" places in "+(System.currentTimeMillis()-start)+"ms");
+        } catch (Throwable t) {
+          LOG.log(Level.WARNING, "problem reading gazetteer from "+files[i], t);
+        }
+      }
+    }
+    
+    // done
+    return gazetteers;
+  }
+  
   /**
    * Find a registry for gedcom file (geo.properties) 
    */
@@ -190,7 +255,7 @@ public class GeoService {
    * @param list list of locations to query
    * @return list of list of locations
    */
-  protected List webservice(URL url, List locations, boolean followRedirect) throws GeoServiceException {
+  protected List<List<GeoLocation>> webservice(URL url, List<GeoLocation> locations, boolean followRedirect) throws GeoServiceException {
 
     long start = System.currentTimeMillis();
     int rowCount = 0, hitCount = 0;
@@ -215,7 +280,7 @@ public class GeoService {
         out.write(HEADER+"\n");
         for (int i=0;i<locations.size();i++) {
           if (i>0) out.write("\n");
-          out.write(encode((GeoLocation)locations.get(i)));
+          out.write(encode(locations.get(i)));
         }
         out.close();
       } catch (IOException e) {
@@ -223,7 +288,7 @@ public class GeoService {
       }
       
       // read input
-      List rows  = new ArrayList();
+      List<List<GeoLocation>> rows  = new ArrayList<List<GeoLocation>>();
       try {
         BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream(), UTF8));
         for (int l=0;l<locations.size();l++) {
@@ -243,7 +308,7 @@ public class GeoService {
           
           // analyze row
           rowCount++;
-          List row = new ArrayList();
+          List<GeoLocation> row = new ArrayList<GeoLocation>();
           if (!line.startsWith("?")) {
             StringTokenizer hits = new StringTokenizer(line, ";");
             while (hits.hasMoreTokens()) {
@@ -279,10 +344,101 @@ public class GeoService {
    * Find all matching locations for given location
    * @return list of matching locations
    */
-  public List query(GeoLocation location) throws GeoServiceException {
+  public List<GeoLocation> query(GeoLocation location) throws GeoServiceException {
+    // try gazetteers first
+    List<GeoLocation> result = new ArrayList<GeoLocation>();
+    for (Gazetteer gazetteer : getGazetteers())
+      result.addAll(gazetteer.query(location));
+    if (!result.isEmpty() || !isWebservice())
+      return result;
     // run query and grab first result list
-    List rows = webservice(URL, Collections.singletonList(location ), true);
-    return rows.isEmpty() ?  new ArrayList() : (List)rows.get(0);
+    List<List<GeoLocation>> rows = webservice(URL, Collections.singletonList(location ), true);
+    return rows.isEmpty() ?  new ArrayList<GeoLocation>() : rows.get(0);
+  }
+  
+  /**
+   * Match locations against local gazetteers - the work is split up between threads
+   * @return those locations that couldn't be matched
+   */
+  private List<GeoLocation> gazetteer(final List<GeoLocation> todos) throws GeoServiceException {
+    
+    final List<Gazetteer> gazetteers = getGazetteers();
+    if (gazetteers.isEmpty())
+      return todos;
+    
+    long start = System.currentTimeMillis();
+    
+    // match slices in parallel
+    final GeoLocation[] misses = new GeoLocation[todos.size()];
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    int slice = Math.max(64, todos.size()/THREADS+1);
+    for (int s=0; s<todos.size(); s+=slice) {
+      final int from = s, to = Math.min(todos.size(), s+slice);
+      futures.add(MATCHERS.submit(new Runnable() {
+        public void run() {
+          for (int i=from; i<to; i++) {
+            GeoLocation todo = todos.get(i);
+            List<GeoLocation> hits = new ArrayList<GeoLocation>();
+            for (Gazetteer gazetteer : gazetteers)
+              hits.addAll(gazetteer.query(todo));
+            if (!match(todo, hits))
+              misses[i] = todo;
+          }
+        }
+      }));
+    }
+    try {
+      for (Future<?> future : futures)
+        future.get();
+    } catch (InterruptedException e) {
+      throw new GeoServiceException("Matching locations was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new GeoServiceException("Matching locations failed", e.getCause());
+    }
+    
+    // collect misses
+    List<GeoLocation> result = new ArrayList<GeoLocation>();
+    for (GeoLocation miss : misses) {
+      if (miss!=null)
+        result.add(miss);
+    }
+    
+    LOG.fine("matched "+(todos.size()-result.size())+" of "+todos.size()+" locations against gazetteers in "+(System.currentTimeMillis()-start)+"ms");
+    
+    // done
+    return result;
+  }
+  
+  /**
+   * Match a location against hits by score
+   * @return whether there was a match 
+   */
+  private boolean match(GeoLocation todo, List<GeoLocation> hits) {
+    
+    // no hits no fun
+    if (hits.isEmpty()) 
+      return false;
+    
+    // calculate match by score
+    GeoLocation match = null;
+    int matchScore = -1;
+    for (int h=0;h<hits.size();h++) {
+      GeoLocation hit = hits.get(h);
+      int hitScore = 0;
+      if (todo.getCity().equals(hit.getCity())) hitScore+=8;
+      if (todo.getJurisdictions().containsAll(hit.getJurisdictions())) hitScore+=4;
+      if (todo.getCountry()!=null&&todo.getCountry().equals(hit.getCountry())) hitScore+=2;
+      if (Country.HERE.equals(hit.getCountry())) hitScore+=1;
+      if (hitScore>matchScore) {
+        match = hit;
+        matchScore = hitScore;
+      }
+    }
+    
+    // keep it
+    todo.setCoordinate(match.getCoordinate());
+    todo.setMatches(hits.size());
+    return true;
   }
   
   /**
@@ -298,10 +454,9 @@ public class GeoService {
     Registry registry = getRegistry(gedcom);
     
     // loop over locations try to use registry for matching
-    List matched = new ArrayList(locations.size());
-    List todos = new ArrayList(locations.size());
-    for (Iterator it=locations.iterator(); it.hasNext(); ) {
-      GeoLocation location = (GeoLocation)it.next();
+    List<GeoLocation> matched = new ArrayList<GeoLocation>(locations.size());
+    List<GeoLocation> todos = new ArrayList<GeoLocation>(locations.size());
+    for (GeoLocation location : locations) {
         // something we can map through the registry or have to add to todo-list?
         String restored  = registry.get(location.getJurisdictionsAsString(), (String)null);
         if (restored!=null) try {
@@ -322,33 +477,26 @@ public class GeoService {
     if (todos.isEmpty() || (todos.size()!=locations.size()&&!matchAll) )
       return matched;
     
-    // do a webservice call for all the todos
-    List rows = webservice(URL, todos, true);
+    // match against local gazetteers first
+    List<GeoLocation> misses = gazetteer(todos);
+    for (GeoLocation todo : todos) {
+      if (todo.isValid()) {
+        remember(gedcom, todo);
+        matched.add(todo);
+      }
+    }
+    
+    // still todos and no webservice?
+    if (misses.isEmpty() || !isWebservice())
+      return matched;
+    
+    // do a webservice call for all the misses
+    List<List<GeoLocation>> rows = webservice(URL, misses, true);
     
-    // recheck todos for results
-    for (int i=0; i<todos.size(); i++) {
-      GeoLocation todo  = (GeoLocation)todos.get(i);
-      List hits = (List)rows.get(i);
-      // no hits no fun
-      if (!hits.isEmpty()) {
-        // calculate match by score
-        GeoLocation match = null;
-        int matchScore = -1;
-        for (int h=0;h<hits.size();h++) {
-          GeoLocation hit = (GeoLocation)hits.get(h);
-          int hitScore = 0;
-          if (todo.getCity().equals(hit.getCity())) hitScore+=8;
-          if (todo.getJurisdictions().containsAll(hit.getJurisdictions())) hitScore+=4;
-          if (todo.getCountry()!=null&&todo.getCountry().equals(hit.getCountry())) hitScore+=2;
-          if (Country.HERE.equals(hit.getCountry())) hitScore+=1;
-          if (hitScore>matchScore) {
-            match = hit;
-            matchScore = hitScore;
-          }
-        }
-        // keep it
-        todo.setCoordinate(match.getCoordinate());
-        todo.setMatches(hits.size());
+    // recheck misses for results
+    for (int i=0; i<misses.size(); i++) {
+      GeoLocation todo  = misses.get(i);
+      if (match(todo, rows.get(i))) {
         remember(gedcom, todo);
         matched.add(todo);
       }
@@ -41,6 +41,8 @@ import java.util.StringTokenizer;
  *  http://geonames.usgs.gov/geonames/stategaz/index.html
  * and GNS (GEOnet Name Server)
  *  http://earth-info.nga.mil/gns/html/cntry_files.html
+ * or GeoNames dumps into a local gazetteer index
+ *  http://download.geonames.org/export/dump/
  */
 public class GeoImport {
 
@@ -73,12 +75,25 @@ public class GeoImport {
     // check argument
     if (args.length<2) {
       log("Use : GeoImport [-j create jurisdictions] [path to folder with geodata files from USGS or GNS] [output filename]");
+      log("   or GeoImport -g [GeoNames dump] [GeoNames admin1CodesASCII.txt] [output filename"+Gazetteer.SUFFIX+"]");
       return;
     }
     
     // run it
     try {
       
+      // gazetteer option?
+      if (args[0].equals("-g")) {
+        if (args.length<3) {
+          log("Err : GeoNames dump and output filename required");
+          return;
+        }
+        File admin1 = args.length>3 ? new File(args[2]) : null;
+        int places = Gazetteer.write(new File(args[1]), admin1, new File(args[args.length-1]));
+        log("Done: "+places+" places written to "+args[args.length-1]);
+        return;
+      }
+      
       int files = 0;
       
       // jurisdiction option?
@@ -0,0 +1,108 @@
+/**
+ * GenJ - GenealogyJ
+ *
+ * Copyright (C) 1997 - 2005 Nils Meier <nils@meiers.net>
+ *
+ * This piece of code is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package genj.geo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test building and querying a local gazetteer
+ */
+public class GazetteerTest extends TestCase {
+
+  private final static String[] PLACES = {
+    "1\tK\u00F6ln\tKoln\tCologne,Koeln\t50.93\t6.95\tP\tPPLA2\tDE\t\t07\t",
+    "2\tSiegburg\tSiegburg\t\t50.79\t7.20\tP\tPPLA3\tDE\t\t07\t",
+    "3\tCelle\tCelle\t\t52.62\t10.08\tP\tPPLA3\tDE\t\t06\t",
+    "4\tCelle\tCelle\t\t43.97\t10.43\tP\tPPL\tIT\t\t16\t",
+    "5\tCelle Ligure\tCelle Ligure\t\t44.34\t8.55\tP\tPPL\tIT\t\t08\t",
+    "6\tRhein\tRhein\t\t50.0\t7.0\tH\tSTM\tDE\t\t07\t"
+  };
+  
+  private final static String[] ADMIN1 = {
+    "DE.07\tNordrhein-Westfalen\tNordrhein-Westfalen\t2861876",
+    "DE.06\tNiedersachsen\tNiedersachsen\t2862926",
+    "IT.16\tTuscany\tTuscany\t3165361",
+    "IT.08\tLiguria\tLiguria\t3174725"
+  };
+  
+  private Gazetteer gazetteer;
+  
+  @Override
+  protected void setUp() throws Exception {
+    File dump = write(PLACES), admin1 = write(ADMIN1), index = File.createTempFile("test", Gazetteer.SUFFIX);
+    index.deleteOnExit();
+    assertEquals(5, Gazetteer.write(dump, admin1, index));
+    gazetteer = new Gazetteer(index);
+    assertEquals(5, gazetteer.getNumPlaces());
+  }
+  
+  private File write(String[] lines) throws Exception {
+    File file = File.createTempFile("test", ".txt");
+    file.deleteOnExit();
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF8");
+    for (String line : lines)
+      out.write(line+"\n");
+    out.close();
+    return file;
+  }
+  
+  public void testNames() {
+    
+    // by name, ascii name and alternate names
+    for (String name : new String[] { "K\u00F6ln", "Koln", "koeln", "COLOGNE" }) {
+      List<GeoLocation> hits = gazetteer.query(new GeoLocation(name, null, null));
+      assertEquals(name, 1, hits.size());
+      assertEquals("K\u00F6ln", hits.get(0).getCity());
+      assertEquals("Nordrhein-Westfalen", hits.get(0).getJurisdictions().get(0));
+      assertEquals("de", hits.get(0).getCountry().getCode());
+      assertEquals(50.93, hits.get(0).getCoordinate().y, 0.01);
+      assertEquals(6.95, hits.get(0).getCoordinate().x, 0.01);
+    }
+    
+    // only populated places
+    assertTrue(gazetteer.query(new GeoLocation("Rhein", null, null)).isEmpty());
+    assertTrue(gazetteer.query(new GeoLocation("Lohmar", null, null)).isEmpty());
+    
+    // prefix
+    assertEquals(3, gazetteer.query(new GeoLocation("Cel*", null, null)).size());
+    assertEquals(1, gazetteer.query(new GeoLocation("Celle L*", null, null)).size());
+  }
+  
+  public void testNarrowing() {
+    
+    // all, by country, by jurisdiction
+    assertEquals(2, gazetteer.query(new GeoLocation("Celle", null, null)).size());
+    assertEquals(1, gazetteer.query(new GeoLocation("Celle", null, Country.get("it"))).size());
+    List<GeoLocation> hits = gazetteer.query(new GeoLocation("Celle", "niedersachsen", null));
+    assertEquals(1, hits.size());
+    assertEquals("de", hits.get(0).getCountry().getCode());
+    
+    // unknown jurisdiction and country are ignored
+    assertEquals(2, gazetteer.query(new GeoLocation("Celle", "Bayern", null)).size());
+    assertEquals(2, gazetteer.query(new GeoLocation("Celle", null, Country.get("fr"))).size());
+  }
+  
+}
@@ -33,7 +33,7 @@ import gj.layout.Port;
 import gj.layout.Routing;
 import gj.model.Edge;
 import gj.model.Vertex;
-import gj.routing.dijkstra.DijkstraShortestPath;
+import gj.routing.astar.AStarShortestPath;
 import gj.util.DelegatingGraph;
 import gj.util.LayoutHelper;
 import gj.visibility.VisibilityGraph;
@@ -125,7 +125,7 @@ public class EuclideanShortestPathLayout implements GraphLayout, EdgeLayout {
     Vertex dest = graph.getVertex(wrapper.destPort);
     
     // find shortest path for edge
-    List<Vertex> route = new DijkstraShortestPath().getShortestPath(graph, source, dest);
+    List<Vertex> route = new AStarShortestPath().getShortestPath(graph, source, dest);
 
     // debug
     List<Point2D> ps = new ArrayList<Point2D>(route.size());
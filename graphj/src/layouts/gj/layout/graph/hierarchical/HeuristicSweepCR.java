@@ -0,0 +1,287 @@
+/**
+ * This file is part of GraphJ
+ * 
+ * Copyright (C) 2009 Nils Meier
+ * 
+ * GraphJ is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * GraphJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with GraphJ; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package gj.layout.graph.hierarchical;
+
+import java.util.Arrays;
+
+/**
+ * crossing reduction by sweeping alternating up and down the layers, ordering each layer by
+ * the barycenter or median of its neighbours in the layer before - crossings are counted with
+ * an accumulator tree in O(E log V) and the best order seen is kept
+ * @see <a href="http://jgaa.info/accepted/2004/BarthMutzelJuenger2004.8.2.pdf">Simple and Efficient Bilayer Cross Counting</a>
+ */
+public class HeuristicSweepCR implements CrossingReduction {
+  
+  /**
+   * heuristics for ordering a layer
+   */
+  public enum Heuristic {
+    Barycenter,
+    Median
+  }
+  
+  private Heuristic heuristic = Heuristic.Barycenter;
+  private int iterations = 12;
+  
+  /** order of ids in layers and positions of ids */
+  private int[][] orders, positions;
+  
+  /** neighbours' ids in layer-1 (outgoing) and layer+1 (incoming) */
+  private int[][][] outs, ins;
+  
+  /**
+   * Constructor
+   */
+  public HeuristicSweepCR() {
+  }
+  
+  /**
+   * Constructor
+   */
+  public HeuristicSweepCR(Heuristic heuristic, int iterations) {
+    setHeuristic(heuristic);
+    setIterations(iterations);
+  }
+
+  /**
+   * Accessor - heuristic for ordering a layer
+   */
+  public Heuristic getHeuristic() {
+    return heuristic;
+  }
+
+  /**
+   * Accessor - heuristic for ordering a layer
+   */
+  public void setHeuristic(Heuristic heuristic) {
+    this.heuristic = heuristic;
+  }
+
+  /**
+   * Accessor - maximum number of sweeps over all layers
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * Accessor - maximum number of sweeps over all layers
+   */
+  public void setIterations(int iterations) {
+    this.iterations = Math.max(0, iterations);
+  }
+
+  /**
+   * algorithmic part of reducing crossings of layers via layout
+   */
+  public void reduceCrossings(LayerAssignment layerAssignment) {
+    
+    int height = layerAssignment.getHeight();
+    
+    // ids are positions at start
+    orders = new int[height][];
+    positions = new int[height][];
+    outs = new int[height][][];
+    ins = new int[height][][];
+    for (int l=0;l<height;l++) {
+      int width = layerAssignment.getWidth(l);
+      orders[l] = new int[width];
+      positions[l] = new int[width];
+      outs[l] = new int[width][];
+      ins[l] = new int[width][];
+      for (int u=0;u<width;u++) {
+        orders[l][u] = u;
+        positions[l][u] = u;
+        outs[l][u] = layerAssignment.getOutgoingIndices(l, u);
+        ins[l][u] = layerAssignment.getIncomingIndices(l, u);
+      }
+    }
+    
+    // sweep up from sinks and down again until there's no improvement
+    int[][] best = copy(orders);
+    long crossings = getCrossings();
+    int misses = 0;
+    for (int i=0; i<iterations && crossings>0 && misses<2; i++) {
+      
+      if (i%2==0) {
+        for (int l=1;l<height;l++)
+          order(l, l-1, outs[l]);
+      } else {
+        for (int l=height-2;l>=0;l--)
+          order(l, l+1, ins[l]);
+      }
+      
+      long c = getCrossings();
+      if (c<crossings) {
+        crossings = c;
+        best = copy(orders);
+        misses = 0;
+      } else {
+        misses++;
+      }
+    }
+    
+    // apply best order
+    for (int l=0;l<height;l++) 
+      apply(layerAssignment, l, best[l]);
+    
+    // done
+    orders = positions = null;
+    outs = ins = null;
+  }
+  
+  /**
+   * reorder layer by heuristic of neighbours' positions in fixed layer - vertices without
+   * neighbours keep their position
+   */
+  private void order(int layer, int fixed, int[][] neighbours) {
+    
+    int[] order = orders[layer];
+    int width = order.length;
+    
+    // sort movable vertices by weight and then current position
+    long[] keys = new long[width];
+    int n = 0;
+    for (int u=0;u<width;u++) {
+      int[] ns = neighbours[order[u]];
+      if (ns.length>0)
+        keys[n++] = ((long)Float.floatToIntBits(weight(ns, positions[fixed]))<<32) | u;
+    }
+    Arrays.sort(keys, 0, n);
+    
+    // place them in free slots
+    int[] result = new int[width];
+    for (int u=0, k=0;u<width;u++) {
+      int id = order[u];
+      result[u] = neighbours[id].length>0 ? order[(int)keys[k++]] : id;
+    }
+    for (int u=0;u<width;u++) {
+      order[u] = result[u];
+      positions[layer][result[u]] = u;
+    }
+    
+    // done
+  }
+  
+  /**
+   * weight of a vertex by its neighbours' positions (non-negative)
+   */
+  private float weight(int[] neighbours, int[] positions) {
+    
+    if (heuristic==Heuristic.Barycenter) {
+      long sum = 0;
+      for (int i=0;i<neighbours.length;i++)
+        sum += positions[neighbours[i]];
+      return sum/(float)neighbours.length;
+    }
+    
+    int[] ps = new int[neighbours.length];
+    for (int i=0;i<ps.length;i++)
+      ps[i] = positions[neighbours[i]];
+    Arrays.sort(ps);
+    int m = ps.length/2;
+    return ps.length%2==1 ? ps[m] : (ps[m-1]+ps[m])/2F;
+  }
+  
+  /**
+   * total number of crossings in current order
+   */
+  private long getCrossings() {
+    long result = 0;
+    for (int l=1;l<orders.length;l++)
+      result += getCrossings(orders[l], outs[l], positions[l-1]);
+    return result;
+  }
+
+  /**
+   * number of crossings between a layer and its fixed neighbour layer by counting inversions 
+   * of neighbour positions with an accumulator tree 
+   */
+  /*package*/ static long getCrossings(int[] order, int[][] neighbours, int[] positions) {
+    
+    // accumulator tree with a leaf per position in the neighbour layer
+    int first = 1;
+    while (first<positions.length) 
+      first *= 2;
+    int[] tree = new int[2*first-1];
+    first -= 1;
+    
+    long result = 0;
+    int[] ps = new int[4];
+    for (int u=0;u<order.length;u++) {
+      
+      // neighbour positions of u in ascending order
+      int[] ns = neighbours[order[u]];
+      if (ns.length>ps.length)
+        ps = new int[ns.length];
+      for (int i=0;i<ns.length;i++)
+        ps[i] = positions[ns[i]];
+      Arrays.sort(ps, 0, ns.length);
+      
+      // count edges to the right that have been seen
+      for (int i=0;i<ns.length;i++) {
+        int index = ps[i] + first;
+        tree[index]++;
+        while (index>0) {
+          if (index%2==1)
+            result += tree[index+1];
+          index = (index-1)/2;
+          tree[index]++;
+        }
+      }
+    }
+    
+    return result;
+  }
+  
+  /**
+   * apply order of ids to layer of assignment via swaps
+   */
+  private void apply(LayerAssignment layerAssignment, int layer, int[] order) {
+    
+    // ids at positions (positions are ids at start)
+    int width = order.length;
+    int[] at = new int[width], pos = new int[width];
+    for (int u=0;u<width;u++) {
+      at[u] = u;
+      pos[u] = u;
+    }
+    
+    for (int u=0;u<width;u++) {
+      int v = pos[order[u]];
+      if (v==u)
+        continue;
+      layerAssignment.swapVertices(layer, u, v);
+      int id = at[u];
+      at[v] = id;
+      pos[id] = v;
+      at[u] = order[u];
+      pos[order[u]] = u;
+    }
+  }
+  
+  private static int[][] copy(int[][] orders) {
+    int[][] result = new int[orders.length][];
+    for (int i=0;i<orders.length;i++)
+      result[i] = orders[i].clone();
+    return result;
+  }
+  
+} //HeuristicSweepCR
@@ -52,6 +52,7 @@ public class HierarchicalLayout implements GraphLayout {
   private double alignmentOfLayers = 0.5;
   private Comparator<Vertex> orderOfVerticesInLayer = null;
   private VertexPositioning positioning = VertexPositioning.Simplex;
+  private CrossingReduction crossingReduction = new HeuristicSweepCR();
   
   /**
    * do the layout
@@ -72,7 +73,7 @@ public class HierarchicalLayout implements GraphLayout {
     context.getLogger().fine("Layer assignment with "+layerAssignment.getHeight()+" layers, maximum width "+layerAssignment.getWidth()+", "+layerAssignment.getNumDummyVertices()+" dummy vertices");
     
     // 2nd step - crossing reduction
-    new LayerByLayerSweepCR().reduceCrossings(layerAssignment);
+    crossingReduction.reduceCrossings(layerAssignment);
     
     // 3rd step - vertex positioning and edge routing
     return new CompactVertexPositioning().apply(graph2d, layerAssignment);
@@ -163,6 +164,20 @@ public class HierarchicalLayout implements GraphLayout {
     this.positioning = positioning;
   }
   
+  /**
+   * Accessor - crossing reduction
+   */
+  public CrossingReduction getCrossingReduction() {
+    return crossingReduction;
+  }
+  
+  /**
+   * Accessor - crossing reduction
+   */
+  public void setCrossingReduction(CrossingReduction crossingReduction) {
+    this.crossingReduction = crossingReduction;
+  }
+  
   /**
    * Accessor - whether to pick ports for edges
    */
@@ -0,0 +1,59 @@
+/**
+ * This file is part of GraphJ
+ * 
+ * Copyright (C) 2009 Nils Meier
+ * 
+ * GraphJ is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * GraphJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with GraphJ; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package gj.routing.astar;
+
+import gj.layout.GraphNotSupportedException;
+import gj.model.Vertex;
+import gj.model.WeightedGraph;
+import gj.routing.dijkstra.DijkstraShortestPath;
+import gj.visibility.VisibilityGraph;
+
+import java.util.List;
+
+/**
+ * An implementation of the A* shortest path algorithm for visibility graphs - the 
+ * euclidean distance to the sink is a lower bound for edges weighted by their length
+ * so fewer vertices have to be looked at than with plain Dijkstra
+ * @see <a href="http://en.wikipedia.org/wiki/A*_search_algorithm">A* on Wikipedia</a>
+ */
+public class AStarShortestPath extends DijkstraShortestPath {
+
+  /**
+   * calculate the shortes path from given source to destination in graph
+   * @param graph
+   * @param source
+   * @param sink
+   * @throws GraphNotSupportedException if sink can't be reached from source
+   */
+  public List<Vertex> getShortestPath(VisibilityGraph graph, Vertex source, Vertex sink) throws GraphNotSupportedException {
+    return super.getShortestPath(graph, source, sink);
+  }
+  
+  /**
+   * estimate is the straight line from vertex to sink (none for graphs other than visibility graphs)
+   */
+  @Override
+  protected double getEstimate(WeightedGraph graph, Vertex vertex, Vertex sink) {
+    if (!(graph instanceof VisibilityGraph))
+      return 0;
+    return ((VisibilityGraph)graph).getDistance(vertex, sink);
+  }
+  
+} //AStarShortestPath
@@ -19,112 +19,216 @@
  */
 package gj.routing.dijkstra;
 
-import static gj.util.LayoutHelper.getNormalizedEdges;
-import static gj.util.LayoutHelper.getOther;
 import gj.layout.GraphNotSupportedException;
 import gj.model.Edge;
 import gj.model.Vertex;
 import gj.model.WeightedGraph;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 /**
- * An implementation of the shortes path algorithm by Dijkstra
+ * An implementation of the shortes path algorithm by Dijkstra - vertices are numbered
+ * as they are reached, distances are kept in primitive arrays and the frontier in a 
+ * binary heap with decrease-key
  * @see <a href="http://en.wikipedia.org/wiki/Dijkstra%27s_algorithm">Dijkstra on Wikepedia</a>
  */
 public class DijkstraShortestPath {
   
+  /** vertices by number and their numbers */
+  private Vertex[] vertices;
+  private Map<Vertex,Integer> vertex2index;
+  private int size;
+  
+  /** distance from source, estimated distance to sink, predecessor on path */
+  private double[] distance, estimate;
+  private int[] previous;
+  
+  /** frontier heap of vertex numbers and position of vertices in heap (-1 not yet, -2 done) */
+  private int[] heap, positions;
+  private int heapSize;
+  
   /**
    * calculate the shortes path from given source to destination in graph
    * @param graph
    * @param source
    * @param sink
+   * @throws GraphNotSupportedException if sink can't be reached from source
    */
   public List<Vertex> getShortestPath(WeightedGraph graph, Vertex source, Vertex sink) throws GraphNotSupportedException {
     
-    // preload unvisited and start with source
-    final Map<Vertex,Integer> vertex2distance = new HashMap<Vertex, Integer>();
-    
-    List<Vertex> considered = new ArrayList<Vertex>();
-    
-    Vertex cursor = source;
-    setDistance(vertex2distance, source, 0);
+    // init
+    int capacity = 16;
+    vertices = new Vertex[capacity];
+    vertex2index = new HashMap<Vertex, Integer>();
+    size = 0;
+    distance = new double[capacity];
+    estimate = new double[capacity];
+    previous = new int[capacity];
+    heap = new int[capacity];
+    positions = new int[capacity];
+    heapSize = 0;
     
-    // loop from cursor through all unvisited vertices until we hit dest
-    while (!cursor.equals(sink)) {
+    try {
       
-      // consider all neighbours
-      int dist2here = vertex2distance.get(cursor);
-
-      for (Edge edge : getNormalizedEdges(cursor)) {
-        Vertex neighbour = getOther(edge, cursor);
-        int dist2there = dist2here + getWeight(graph, edge);
-        if (dist2there < getDistance(vertex2distance, neighbour)) {
-          setDistance(vertex2distance, neighbour, dist2there);
-
-          int pos=0;
-          while (pos<considered.size() && dist2there<getDistance(vertex2distance, considered.get(pos))) pos++;
-          considered.add(pos, neighbour);
+      // start with source
+      int from = index(graph, source, sink);
+      distance[from] = 0;
+      push(from);
+      
+      // loop over closest frontier vertex until we hit sink
+      while (heapSize>0) {
+        
+        int cursor = pop();
+        Vertex vertex = vertices[cursor];
+        if (vertex.equals(sink))
+          return path(cursor);
+        
+        // consider all neighbours
+        for (Edge edge : vertex.getEdges()) {
+          Vertex neighbour = edge.getStart().equals(vertex) ? edge.getEnd() : edge.getStart();
+          if (neighbour.equals(vertex))
+            continue;
+          int there = index(graph, neighbour, sink);
+          if (positions[there]==-2)
+            continue;
+          double dist2there = distance[cursor] + graph.getWeight(edge);
+          if (dist2there < distance[there]) {
+            distance[there] = dist2there;
+            previous[there] = cursor;
+            if (positions[there]<0)
+              push(there);
+            else
+              up(positions[there]);
+          }
         }
       }
       
-      // pick next considered with min distance
-      cursor = considered.remove(considered.size()-1);
-      if (cursor==null)
-        throw new GraphNotSupportedException("Graph is not spanning");
+      throw new GraphNotSupportedException("Sink is not reachable from source");
       
+    } finally {
+      vertices = null;
+      vertex2index = null;
+      distance = estimate = null;
+      previous = heap = positions = null;
     }
-
-    // walk distance backwards to collect the resulting path
+  }
+  
+  /**
+   * estimated distance from vertex to sink - has to be a lower bound for the result
+   * to be a shortest path (none for dijkstra)
+   */
+  protected double getEstimate(WeightedGraph graph, Vertex vertex, Vertex sink) {
+    return 0;
+  }
+  
+  /**
+   * helper - walk predecessors backwards to collect the resulting path
+   */
+  private List<Vertex> path(int sink) {
     LinkedList<Vertex> result = new LinkedList<Vertex>();
-    int distance = vertex2distance.get(sink);
-    result.addFirst(sink);
-    while (!cursor.equals(source)) {
-      
-      // look through neighbours
-      for (Edge edge : getNormalizedEdges(cursor)) {
-        Vertex neighbour = getOther(edge, cursor);
-        int dist2there = distance - getWeight(graph, edge);
-        if (getDistance(vertex2distance, neighbour) == dist2there) {
-          distance = dist2there;
-          cursor = neighbour;
-          result.addFirst(cursor);
-          break;
-        }
-      }
-      
-      // backtrack
-    }
-    
-    // done
+    for (int cursor=sink; cursor>=0; cursor=previous[cursor])
+      result.addFirst(vertices[cursor]);
     return result;
   }
   
   /**
-   * helper - weight of edge
+   * helper - number of a vertex (numbering it if not seen yet)
+   */
+  private int index(WeightedGraph graph, Vertex vertex, Vertex sink) {
+    Integer result = vertex2index.get(vertex);
+    if (result!=null)
+      return result.intValue();
+    if (size==vertices.length) {
+      int capacity = size*2;
+      vertices = Arrays.copyOf(vertices, capacity);
+      distance = Arrays.copyOf(distance, capacity);
+      estimate = Arrays.copyOf(estimate, capacity);
+      previous = Arrays.copyOf(previous, capacity);
+      heap = Arrays.copyOf(heap, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+    }
+    int i = size++;
+    vertices[i] = vertex;
+    distance[i] = Double.POSITIVE_INFINITY;
+    estimate[i] = getEstimate(graph, vertex, sink);
+    previous[i] = -1;
+    positions[i] = -1;
+    vertex2index.put(vertex, i);
+    return i;
+  }
+  
+  /**
+   * helper - heap key of a vertex
    */
-  private int getWeight(WeightedGraph graph, Edge edge) {
-    return (int)Math.ceil(graph.getWeight(edge));
+  private double key(int vertex) {
+    return distance[vertex] + estimate[vertex];
   }
   
   /**
-   * helper - set distance value of a vertex
+   * helper - add vertex to heap
    */
-  private void setDistance(Map<Vertex,Integer> vertex2distance, Vertex vertex, double distance) {
-    vertex2distance.put(vertex, new Integer((int)Math.ceil(distance))); 
+  private void push(int vertex) {
+    heap[heapSize] = vertex;
+    positions[vertex] = heapSize;
+    up(heapSize++);
   }
   
   /**
-   * helper - get distance value of a vertex
+   * helper - remove vertex with smallest key from heap
    */
-  private int getDistance(Map<Vertex,Integer> vertex2distance, Vertex vertex) {
-    Integer i = vertex2distance.get(vertex);
-    return i==null ? Integer.MAX_VALUE : i.intValue();
+  private int pop() {
+    int result = heap[0];
+    positions[result] = -2;
+    if (--heapSize>0) {
+      heap[0] = heap[heapSize];
+      positions[heap[0]] = 0;
+      down(0);
+    }
+    return result;
   }
   
+  /**
+   * helper - move heap element up to its place
+   */
+  private void up(int pos) {
+    int vertex = heap[pos];
+    double key = key(vertex);
+    while (pos>0) {
+      int parent = (pos-1)/2;
+      if (key(heap[parent])<=key)
+        break;
+      heap[pos] = heap[parent];
+      positions[heap[pos]] = pos;
+      pos = parent;
+    }
+    heap[pos] = vertex;
+    positions[vertex] = pos;
+  }
+  
+  /**
+   * helper - move heap element down to its place
+   */
+  private void down(int pos) {
+    int vertex = heap[pos];
+    double key = key(vertex);
+    while (true) {
+      int child = pos*2+1;
+      if (child>=heapSize)
+        break;
+      if (child+1<heapSize && key(heap[child+1])<key(heap[child]))
+        child++;
+      if (key<=key(heap[child]))
+        break;
+      heap[pos] = heap[child];
+      positions[heap[pos]] = pos;
+      pos = child;
+    }
+    heap[pos] = vertex;
+    positions[vertex] = pos;
+  }
 
 } //DijkstraShortestPath
@@ -139,6 +139,11 @@ public class VisibilityGraph implements Graph2D, WeightedGraph {
     return result;
   }
 
+  /** straight line distance between two vertices */
+  public double getDistance(Vertex a, Vertex b) {
+    return ((PointLocation)a).distance((PointLocation)b);
+  }
+
   /** helper for rounding */
   Point round(Point2D p) {
     return new Point((int)p.getX(), (int)p.getY());
@@ -0,0 +1,202 @@
+/**
+ * This file is part of GraphJ
+ * 
+ * Copyright (C) 2009 Nils Meier
+ * 
+ * GraphJ is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * GraphJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with GraphJ; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package gj.layout.graph.hierarchical;
+
+import gj.layout.Graph2D;
+import gj.model.Edge;
+import gj.model.Vertex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test crossing counting and reduction
+ */
+public class HeuristicSweepCRTest extends TestCase {
+  
+  public void testCrossings() {
+    Random random = new Random(13);
+    for (int r=0;r<50;r++) {
+      Layers layers = new Layers(random, 2, 1+random.nextInt(30), random.nextInt(60));
+      assertEquals(layers.bruteForce(), layers.getCrossings());
+    }
+  }
+  
+  public void testReduction() {
+    Random random = new Random(7);
+    for (HeuristicSweepCR.Heuristic heuristic : HeuristicSweepCR.Heuristic.values()) {
+      for (int r=0;r<20;r++) {
+        Layers layers = new Layers(random, 2+random.nextInt(8), 1+random.nextInt(40), random.nextInt(300));
+        long before = layers.bruteForce();
+        new HeuristicSweepCR(heuristic, 12).reduceCrossings(layers);
+        long after = layers.bruteForce();
+        assertTrue(after<=before);
+        assertEquals(after, layers.getCrossings());
+        assertTrue(layers.isPermutation());
+      }
+    }
+    
+    // two crossing edges
+    Layers layers = new Layers(2, 2);
+    layers.connect(1, 0, 0, 1);
+    layers.connect(1, 1, 0, 0);
+    assertEquals(1, layers.bruteForce());
+    new HeuristicSweepCR().reduceCrossings(layers);
+    assertEquals(0, layers.bruteForce());
+  }
+  
+  /**
+   * a layering of ids with edges from layer l to l-1
+   */
+  private static class Layers implements LayerAssignment {
+    
+    private int[][] layers;
+    private List<int[]> edges = new ArrayList<int[]>();
+    
+    Layers(int height, int width) {
+      layers = new int[height][width];
+      for (int l=0;l<height;l++)
+        for (int u=0;u<width;u++)
+          layers[l][u] = u;
+    }
+    
+    Layers(Random random, int height, int width, int edges) {
+      layers = new int[height][];
+      for (int l=0;l<height;l++) {
+        layers[l] = new int[1+random.nextInt(width)];
+        for (int u=0;u<layers[l].length;u++)
+          layers[l][u] = u;
+      }
+      for (int e=0;e<edges;e++) {
+        int l = 1+random.nextInt(height-1);
+        connect(l, random.nextInt(layers[l].length), l-1, random.nextInt(layers[l-1].length));
+      }
+    }
+    
+    void connect(int l1, int id1, int l2, int id2) {
+      edges.add(new int[]{ l1, id1, l2, id2 });
+    }
+    
+    int pos(int l, int id) {
+      for (int u=0;u<layers[l].length;u++)
+        if (layers[l][u]==id) return u;
+      throw new IllegalArgumentException();
+    }
+    
+    boolean isPermutation() {
+      for (int l=0;l<layers.length;l++) 
+        for (int id=0;id<layers[l].length;id++)
+          pos(l, id);
+      return true;
+    }
+    
+    long bruteForce() {
+      long result = 0;
+      for (int i=0;i<edges.size();i++) {
+        int[] a = edges.get(i);
+        for (int j=i+1;j<edges.size();j++) {
+          int[] b = edges.get(j);
+          if (a[0]!=b[0]) continue;
+          int a1 = pos(a[0], a[1]), a2 = pos(a[2], a[3]), b1 = pos(b[0], b[1]), b2 = pos(b[2], b[3]);
+          if ((a1<b1&&a2>b2) || (a1>b1&&a2<b2))
+            result++;
+        }
+      }
+      return result;
+    }
+    
+    long getCrossings() {
+      long result = 0;
+      for (int l=1;l<layers.length;l++) {
+        int[][] neighbours = new int[layers[l].length][];
+        for (int u=0;u<neighbours.length;u++)
+          neighbours[u] = getOutgoingIndices(l, u);
+        int[] order = new int[neighbours.length];
+        for (int u=0;u<order.length;u++) 
+          order[u] = u;
+        int[] positions = new int[layers[l-1].length];
+        for (int u=0;u<positions.length;u++) 
+          positions[u] = u;
+        result += HeuristicSweepCR.getCrossings(order, neighbours, positions);
+      }
+      return result;
+    }
+    
+    private int[] indices(int layer, int u, int other) {
+      int id = layers[layer][u];
+      List<Integer> result = new ArrayList<Integer>();
+      for (int[] e : edges) {
+        if (e[0]==layer&&e[1]==id&&e[2]==other) result.add(pos(e[2], e[3]));
+        if (e[2]==layer&&e[3]==id&&e[0]==other) result.add(pos(e[0], e[1]));
+      }
+      int[] is = new int[result.size()];
+      for (int i=0;i<is.length;i++)
+        is[i] = result.get(i);
+      return is;
+    }
+    
+    public int[] getOutgoingIndices(int layer, int u) {
+      return indices(layer, u, layer-1);
+    }
+    
+    public int[] getIncomingIndices(int layer, int u) {
+      return indices(layer, u, layer+1);
+    }
+    
+    public void swapVertices(int layer, int u, int v) {
+      int id = layers[layer][u];
+      layers[layer][u] = layers[layer][v];
+      layers[layer][v] = id;
+    }
+    
+    public int getHeight() {
+      return layers.length;
+    }
+    
+    public int getWidth(int layer) {
+      return layers[layer].length;
+    }
+    
+    public void assignLayers(Graph2D graph, Comparator<Vertex> orderOfVerticesInLayer) {
+      throw new IllegalArgumentException("n/a");
+    }
+    
+    public int getNumDummyVertices() {
+      return 0;
+    }
+    
+    public int getWidth() {
+      throw new IllegalArgumentException("n/a");
+    }
+    
+    public Vertex getVertex(int layer, int u) {
+      throw new IllegalArgumentException("n/a");
+    }
+    
+    public Routing getRouting(Edge edge) {
+      throw new IllegalArgumentException("n/a");
+    }
+  }
+  
+}
@@ -0,0 +1,170 @@
+/**
+ * This file is part of GraphJ
+ * 
+ * Copyright (C) 2009 Nils Meier
+ * 
+ * GraphJ is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * GraphJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with GraphJ; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package gj.routing;
+
+import gj.layout.GraphNotSupportedException;
+import gj.model.Edge;
+import gj.model.Graph;
+import gj.model.Vertex;
+import gj.model.WeightedGraph;
+import gj.routing.astar.AStarShortestPath;
+import gj.routing.dijkstra.DijkstraShortestPath;
+import gj.util.DefaultGraph;
+import gj.util.DefaultVertex;
+import gj.util.LayoutHelper;
+import gj.visibility.VisibilityGraph;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark shortest paths in visibility graphs of random rectangles - the former list based 
+ * Dijkstra against the heap based one and A*
+ * <pre>
+ *   java gj.routing.ShortestPathBenchmark [rectangles] [paths]
+ * </pre>
+ */
+public class ShortestPathBenchmark {
+
+  public static void main(String[] args) throws GraphNotSupportedException {
+    
+    int n = args.length>0 ? Integer.parseInt(args[0]) : 100;
+    int paths = args.length>1 ? Integer.parseInt(args[1]) : 200;
+    
+    Random random = new Random(0);
+    long start = System.currentTimeMillis();
+    VisibilityGraph graph = createGraph(n, random);
+    System.out.println("Visibility graph of "+n+" rectangles with "+graph.getVertices().size()+" vertices and "+graph.getEdges().size()+" edges in "+(System.currentTimeMillis()-start)+"ms");
+    
+    // random pairs
+    List<Vertex> all = new ArrayList<Vertex>(graph.getVertices());
+    Vertex[] sources = new Vertex[paths], sinks = new Vertex[paths];
+    for (int i=0;i<paths;i++) {
+      sources[i] = all.get(random.nextInt(all.size()));
+      sinks[i] = all.get(random.nextInt(all.size()));
+    }
+    
+    for (int r=0;r<3;r++) {
+      
+      double lold = 0, ldijkstra = 0, lastar = 0;
+      
+      start = System.currentTimeMillis();
+      for (int i=0;i<paths;i++) 
+        lold += length(graph, getShortestPathOld(graph, sources[i], sinks[i]));
+      long old = System.currentTimeMillis()-start;
+      
+      start = System.currentTimeMillis();
+      for (int i=0;i<paths;i++) 
+        ldijkstra += length(graph, new DijkstraShortestPath().getShortestPath(graph, sources[i], sinks[i]));
+      long dijkstra = System.currentTimeMillis()-start;
+      
+      start = System.currentTimeMillis();
+      for (int i=0;i<paths;i++) 
+        lastar += length(graph, new AStarShortestPath().getShortestPath(graph, sources[i], sinks[i]));
+      long astar = System.currentTimeMillis()-start;
+      
+      System.out.println("round "+r+": list "+old+"ms, heap "+dijkstra+"ms, a* "+astar+"ms for "+paths+" paths (total length "+(int)lold+"/"+(int)ldijkstra+"/"+(int)lastar+")");
+    }
+  }
+  
+  /**
+   * visibility graph of non-overlapping random rectangles on a grid
+   */
+  /*package*/ static VisibilityGraph createGraph(int n, Random random) {
+    final List<Vertex> vertices = new ArrayList<Vertex>(n);
+    for (int i=0;i<n;i++)
+      vertices.add(new DefaultVertex<Integer>(i));
+    DefaultGraph graph2d = new DefaultGraph(new Graph() {
+      public Collection<? extends Vertex> getVertices() {
+        return vertices;
+      }
+      public Collection<? extends Edge> getEdges() {
+        return new ArrayList<Edge>();
+      }
+    });
+    int cols = (int)Math.ceil(Math.sqrt(n));
+    for (int i=0;i<n;i++) 
+      graph2d.setShape(vertices.get(i), new Rectangle((i%cols)*100+random.nextInt(40), (i/cols)*100+random.nextInt(40), 10+random.nextInt(40), 10+random.nextInt(40)));
+    return new VisibilityGraph(graph2d);
+  }
+  
+  /*package*/ static double length(VisibilityGraph graph, List<Vertex> path) {
+    double result = 0;
+    for (int i=1;i<path.size();i++)
+      result += graph.getDistance(path.get(i-1), path.get(i));
+    return result;
+  }
+  
+  /**
+   * the former list based implementation with boxed (rounded) distances
+   */
+  /*package*/ static List<Vertex> getShortestPathOld(WeightedGraph graph, Vertex source, Vertex sink) {
+    
+    Map<Vertex,Integer> vertex2distance = new HashMap<Vertex, Integer>();
+    List<Vertex> considered = new ArrayList<Vertex>();
+    
+    Vertex cursor = source;
+    vertex2distance.put(source, 0);
+    
+    while (!cursor.equals(sink)) {
+      int dist2here = vertex2distance.get(cursor);
+      for (Edge edge : LayoutHelper.getNormalizedEdges(cursor)) {
+        Vertex neighbour = LayoutHelper.getOther(edge, cursor);
+        int dist2there = dist2here + (int)Math.ceil(graph.getWeight(edge));
+        if (dist2there < getDistance(vertex2distance, neighbour)) {
+          vertex2distance.put(neighbour, dist2there);
+          int pos=0;
+          while (pos<considered.size() && dist2there<getDistance(vertex2distance, considered.get(pos))) pos++;
+          considered.add(pos, neighbour);
+        }
+      }
+      cursor = considered.remove(considered.size()-1);
+    }
+
+    LinkedList<Vertex> result = new LinkedList<Vertex>();
+    int distance = vertex2distance.get(sink);
+    result.addFirst(sink);
+    while (!cursor.equals(source)) {
+      for (Edge edge : LayoutHelper.getNormalizedEdges(cursor)) {
+        Vertex neighbour = LayoutHelper.getOther(edge, cursor);
+        int dist2there = distance - (int)Math.ceil(graph.getWeight(edge));
+        if (getDistance(vertex2distance, neighbour) == dist2there) {
+          distance = dist2there;
+          cursor = neighbour;
+          result.addFirst(cursor);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+  
+  private static int getDistance(Map<Vertex,Integer> vertex2distance, Vertex vertex) {
+    Integer i = vertex2distance.get(vertex);
+    return i==null ? Integer.MAX_VALUE : i.intValue();
+  }
+
+} //ShortestPathBenchmark
@@ -0,0 +1,132 @@
+/**
+ * This file is part of GraphJ
+ *
+ * Copyright (C) 2009 Nils Meier
+ *
+ * GraphJ is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * GraphJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GraphJ; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package gj.routing;
+
+import gj.layout.GraphNotSupportedException;
+import gj.model.Edge;
+import gj.model.Vertex;
+import gj.model.WeightedGraph;
+import gj.routing.astar.AStarShortestPath;
+import gj.routing.dijkstra.DijkstraShortestPath;
+import gj.util.DefaultEdge;
+import gj.util.DefaultVertex;
+import gj.visibility.VisibilityGraph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test heap based Dijkstra and A* against the former list based shortest path
+ */
+public class ShortestPathTest extends TestCase {
+
+  /**
+   * paths in a visibility graph - the former version rounds weights up so its paths
+   * can be longer by less than one per edge of a shortest path
+   */
+  public void testVisibilityGraph() throws GraphNotSupportedException {
+
+    Random random = new Random(0);
+    VisibilityGraph graph = ShortestPathBenchmark.createGraph(30, random);
+    List<Vertex> all = new ArrayList<Vertex>(graph.getVertices());
+
+    for (int i=0;i<50;i++) {
+      Vertex source = all.get(random.nextInt(all.size()));
+      Vertex sink = all.get(random.nextInt(all.size()));
+
+      List<Vertex> dijkstra = new DijkstraShortestPath().getShortestPath(graph, source, sink);
+      List<Vertex> astar = new AStarShortestPath().getShortestPath(graph, source, sink);
+      List<Vertex> old = ShortestPathBenchmark.getShortestPathOld(graph, source, sink);
+
+      double length = ShortestPathBenchmark.length(graph, dijkstra);
+      assertEquals(length, ShortestPathBenchmark.length(graph, astar), 0.000001);
+      assertEquals(length, ShortestPathBenchmark.length(graph, old), dijkstra.size());
+      assertTrue(length <= ShortestPathBenchmark.length(graph, old) + 0.000001);
+    }
+  }
+
+  /**
+   * paths in a graph that is not a visibility graph - A* falls back to Dijkstra
+   */
+  public void testOtherGraph() throws GraphNotSupportedException {
+
+    // a grid with integer weights
+    Random random = new Random(0);
+    int n = 8;
+    DefaultVertex<?>[] vertices = new DefaultVertex<?>[n*n];
+    for (int i=0;i<vertices.length;i++)
+      vertices[i] = new DefaultVertex<Integer>(i);
+    final Map<Edge, Integer> weights = new HashMap<Edge, Integer>();
+    for (int i=0;i<vertices.length;i++) {
+      if (i%n<n-1)
+        weights.put(edge(vertices[i], vertices[i+1]), 1+random.nextInt(9));
+      if (i/n<n-1)
+        weights.put(edge(vertices[i], vertices[i+n]), 1+random.nextInt(9));
+    }
+    final List<Vertex> all = new ArrayList<Vertex>();
+    for (DefaultVertex<?> vertex : vertices)
+      all.add(vertex);
+    WeightedGraph graph = new WeightedGraph() {
+      public double getWeight(Edge edge) {
+        return weights.get(edge);
+      }
+      public Collection<? extends Vertex> getVertices() {
+        return all;
+      }
+      public Collection<? extends Edge> getEdges() {
+        return weights.keySet();
+      }
+    };
+
+    for (int i=0;i<50;i++) {
+      Vertex source = all.get(random.nextInt(all.size()));
+      Vertex sink = all.get(random.nextInt(all.size()));
+
+      int length = length(graph, new DijkstraShortestPath().getShortestPath(graph, source, sink));
+      assertEquals(length, length(graph, new AStarShortestPath().getShortestPath(graph, source, sink)));
+      assertEquals(length, length(graph, ShortestPathBenchmark.getShortestPathOld(graph, source, sink)));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Edge edge(DefaultVertex<?> from, DefaultVertex<?> to) {
+    return new DefaultEdge<Integer>((DefaultVertex<Integer>)from, (DefaultVertex<Integer>)to);
+  }
+
+  private int length(WeightedGraph graph, List<Vertex> path) {
+    int result = 0;
+    for (int i=1;i<path.size();i++) {
+      for (Edge edge : path.get(i).getEdges()) {
+        if (edge.getStart().equals(path.get(i-1)) || edge.getEnd().equals(path.get(i-1))) {
+          result += (int)graph.getWeight(edge);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+} //ShortestPathTest